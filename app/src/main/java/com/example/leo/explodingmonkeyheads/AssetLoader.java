@@ -0,0 +1,316 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads and decodes assets on an executor, off the UI thread. Every asset is a task that
+ * may depend on other assets: it's submitted once all of them are loaded, so independent
+ * assets load in parallel and a composite one (e.g. everything the renderer needs) is
+ * ready when its parts are. A failure fails the assets that depend on it.
+ *
+ * <p>Results are published through {@link Asset}, a future that also takes callbacks.
+ * Callbacks run on the thread that completed the asset, a loader thread usually.</p>
+ *
+ * <p>{@link #cancel()} stops the loading, e.g. when the activity pauses: the tasks not
+ * started yet never run and the running ones are interrupted.</p>
+ */
+public class AssetLoader {
+
+    /**
+     * Receives the outcome of an asset, unless it's cancelled.
+     */
+    public interface Callback<T> {
+        void onLoaded(T value);
+
+        void onFailed(String name, Throwable error);
+    }
+
+    public static final int PENDING = 0, LOADED = 1, FAILED = 2, CANCELLED = 3;
+
+    /**
+     * An asset being loaded, or done loading.
+     */
+    public static final class Asset<T> {
+        private final AssetLoader loader;
+        private final String name;
+        private final Callable<T> task;
+        // dependencies not loaded yet, plus one until the asset is wired to all of them
+        private final AtomicInteger waitingFor;
+
+        // guarded by this
+        private int state = PENDING;
+        private T value;
+        private Throwable error;
+        private Future<?> future;
+        private final List<Asset<?>> dependents = new ArrayList<>();
+        private final List<Callback<? super T>> callbacks = new ArrayList<>();
+
+        Asset(AssetLoader loader, String name, Callable<T> task, int dependencies) {
+            this.loader = loader;
+            this.name = name;
+            this.task = task;
+            this.waitingFor = new AtomicInteger(dependencies + 1);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public synchronized int getState() {
+            return state;
+        }
+
+        public synchronized boolean isDone() {
+            return state != PENDING;
+        }
+
+        /**
+         * @return - The loaded value, without waiting.
+         * @throws IllegalStateException - If the asset isn't loaded.
+         */
+        public synchronized T getValue() {
+            if (state != LOADED) {
+                throw new IllegalStateException("asset " + name + " not loaded, state " + state);
+            }
+            return value;
+        }
+
+        /**
+         * Waits until the asset is done.
+         *
+         * @return - The loaded value.
+         * @throws ExecutionException - If it, or an asset it depends on, failed.
+         * @throws CancellationException - If the loading was cancelled.
+         */
+        public synchronized T get() throws InterruptedException, ExecutionException {
+            while (state == PENDING) {
+                wait();
+            }
+
+            if (state == FAILED) {
+                throw new ExecutionException("could not load " + name, error);
+            }
+            if (state == CANCELLED) {
+                throw new CancellationException("loading of " + name + " cancelled");
+            }
+            return value;
+        }
+
+        /**
+         * Calls back once the asset is done, right away if it already is.
+         */
+        public void addCallback(Callback<? super T> callback) {
+            int done;
+            synchronized (this) {
+                if (state == PENDING) {
+                    callbacks.add(callback);
+                    return;
+                }
+                done = state;
+            }
+
+            if (done == LOADED) {
+                callback.onLoaded(value);
+            } else if (done == FAILED) {
+                callback.onFailed(name, error);
+            }
+        }
+
+        private void addDependent(Asset<?> dependent) {
+            int done;
+            Throwable failure;
+            synchronized (this) {
+                if (state == PENDING) {
+                    dependents.add(dependent);
+                    return;
+                }
+                done = state;
+                failure = error;
+            }
+
+            dependent.onDependencyDone(done, failure);
+        }
+
+        private void onDependencyDone(int dependencyState, Throwable dependencyError) {
+            if (dependencyState == LOADED) {
+                if (waitingFor.decrementAndGet() == 0) {
+                    loader.submit(this);
+                }
+            } else if (dependencyState == FAILED) {
+                finish(FAILED, null, dependencyError);
+            } else {
+                finish(CANCELLED, null, null);
+            }
+        }
+
+        private synchronized void setFuture(Future<?> future) {
+            this.future = future;
+        }
+
+        private void run() {
+            synchronized (this) {
+                if (state != PENDING) {
+                    return; // cancelled before it started
+                }
+            }
+
+            try {
+                finish(LOADED, task.call(), null);
+            } catch (Throwable e) {
+                finish(FAILED, null, e);
+            }
+        }
+
+        private void cancel() {
+            Future<?> running;
+            synchronized (this) {
+                running = future;
+            }
+            if (finish(CANCELLED, null, null) && running != null) {
+                running.cancel(true);
+            }
+        }
+
+        /**
+         * @return - Whether the asset was still pending, only the first outcome counts.
+         */
+        private boolean finish(int outcome, T loaded, Throwable failure) {
+            List<Asset<?>> toNotify;
+            List<Callback<? super T>> toCall;
+            synchronized (this) {
+                if (state != PENDING) {
+                    return false;
+                }
+
+                state = outcome;
+                value = loaded;
+                error = failure;
+                toNotify = new ArrayList<>(dependents);
+                toCall = new ArrayList<>(callbacks);
+                dependents.clear();
+                callbacks.clear();
+                notifyAll();
+            }
+
+            for (Callback<? super T> callback : toCall) {
+                if (outcome == LOADED) {
+                    callback.onLoaded(loaded);
+                } else if (outcome == FAILED) {
+                    callback.onFailed(name, failure);
+                }
+            }
+            for (Asset<?> dependent : toNotify) {
+                dependent.onDependencyDone(outcome, failure);
+            }
+            return true;
+        }
+    }
+
+    private final ExecutorService executor;
+    private final List<Asset<?>> assets = new ArrayList<>(); // guarded by this
+    private boolean cancelled;
+
+    /**
+     * @param executor - Runs the tasks, as many at once as it has threads.
+     */
+    public AssetLoader(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Loads an asset once its dependencies are loaded, or right away without any.
+     *
+     * @param task - Loads and decodes the asset, on a loader thread; may read the values of the dependencies.
+     */
+    public <T> Asset<T> load(String name, Callable<T> task, Asset<?>... dependencies) {
+        Asset<T> asset = new Asset<>(this, name, task, dependencies.length);
+        synchronized (this) {
+            assets.add(asset);
+            if (cancelled) {
+                asset.cancel();
+                return asset;
+            }
+        }
+
+        for (Asset<?> dependency : dependencies) {
+            dependency.addDependent(asset);
+        }
+        asset.onDependencyDone(LOADED, null); // wired, release the extra count
+        return asset;
+    }
+
+    private void submit(final Asset<?> asset) {
+        synchronized (this) {
+            if (cancelled) {
+                asset.cancel();
+                return;
+            }
+
+            try {
+                asset.setFuture(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        asset.run();
+                    }
+                }));
+            } catch (RejectedExecutionException e) {
+                asset.finish(FAILED, null, e);
+            }
+        }
+    }
+
+    /**
+     * Cancels every asset not done yet. Their callbacks aren't called.
+     */
+    public void cancel() {
+        List<Asset<?>> toCancel;
+        synchronized (this) {
+            cancelled = true;
+            toCancel = new ArrayList<>(assets);
+        }
+
+        for (Asset<?> asset : toCancel) {
+            asset.cancel();
+        }
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+}
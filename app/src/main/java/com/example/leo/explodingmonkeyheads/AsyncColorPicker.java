@@ -0,0 +1,338 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+/**
+ * Color picking without stalling the GL thread. Every tap gets one pixel of a small
+ * offscreen framebuffer: the picking pass is drawn with a projection narrowed down to
+ * the tapped pixel, scissored to that pixel, and read back {@link #FRAME_DELAY} frames
+ * later, once the GPU is done with it. The id under the tap is then handed to the
+ * {@link Listener}, on the GL thread.
+ *
+ * <p>On GLES 3.0 the pixel is copied into a pixel buffer object right after the pass,
+ * so the late read only maps a few bytes the GPU already wrote. On GLES 2.0 the
+ * glReadPixels itself is deferred to the start of a later frame, before that frame
+ * issues anything, so it never waits for the frame being drawn.</p>
+ */
+public class AsyncColorPicker {
+    public static final int FRAME_DELAY = 2;
+    static final int MAX_PENDING = 4; // one pixel of the framebuffer each
+
+    // state of every slot
+    private static final int FREE = 0, QUEUED = 1, DRAWN = 2;
+
+    public interface Listener {
+        /**
+         * @param id - Picking id under the tap, {@link ColorProvider#NO_ID} for the background.
+         */
+        void onPicked(int id);
+    }
+
+    /**
+     * Draws the objects with their picking colors, depth testing on.
+     */
+    public interface Pass {
+        void drawPickingPass(float[] projectionMatrix);
+    }
+
+    private final GLStateCache state;
+    private final GLBackend gl;
+    private final boolean usePixelBuffers;
+    private Listener listener;
+
+    private final int[] slotStates = new int[MAX_PENDING];
+    private final float[] tapX = new float[MAX_PENDING], tapY = new float[MAX_PENDING];
+    private final long[] drawnAt = new long[MAX_PENDING];
+    private long frame;
+
+    private final int[] ids = new int[MAX_PENDING];
+    private final int[] pixelBuffers = new int[MAX_PENDING];
+    private int framebuffer, colorTexture, depthBuffer;
+    private boolean created;
+    private final ByteBuffer pixel = ByteBuffer.allocateDirect(4).order(ByteOrder.nativeOrder());
+    private final float[] pickMatrix = new float[16], pickProjection = new float[16];
+
+    /**
+     * @param usePixelBuffers - Whether to read back through pixel buffer objects, GLES 3.0 only.
+     */
+    public AsyncColorPicker(GLStateCache state, boolean usePixelBuffers) {
+        this.state = state;
+        this.gl = state.getBackend();
+        this.usePixelBuffers = usePixelBuffers;
+    }
+
+    public Listener getListener() {
+        return listener;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public boolean isUsingPixelBuffers() {
+        return usePixelBuffers;
+    }
+
+    /**
+     * Creates the framebuffer and, if used, the pixel buffers. Must be called on the GL
+     * thread every time a context is created, pending taps are dropped.
+     */
+    public void create() {
+        gl.glGenTextures(1, ids, 0);
+        colorTexture = ids[0];
+        gl.glBindTexture(GLES20.GL_TEXTURE_2D, colorTexture);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+        // 8 bits per channel, the renderbuffer formats of GLES 2.0 can't hold a 24 bits id
+        gl.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, MAX_PENDING, 1, 0, GLES20.GL_RGBA,
+                GLES20.GL_UNSIGNED_BYTE, null);
+        gl.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+        gl.glGenRenderbuffers(1, ids, 0);
+        depthBuffer = ids[0];
+        gl.glBindRenderbuffer(GLES20.GL_RENDERBUFFER, depthBuffer);
+        gl.glRenderbufferStorage(GLES20.GL_RENDERBUFFER, GLES20.GL_DEPTH_COMPONENT16, MAX_PENDING, 1);
+        gl.glBindRenderbuffer(GLES20.GL_RENDERBUFFER, 0);
+
+        gl.glGenFramebuffers(1, ids, 0);
+        framebuffer = ids[0];
+        gl.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffer);
+        gl.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D,
+                colorTexture, 0);
+        gl.glFramebufferRenderbuffer(GLES20.GL_FRAMEBUFFER, GLES20.GL_DEPTH_ATTACHMENT, GLES20.GL_RENDERBUFFER,
+                depthBuffer);
+        int status = gl.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+        gl.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        if (status != GLES20.GL_FRAMEBUFFER_COMPLETE) {
+            throw new RuntimeException("incomplete picking framebuffer: " + status);
+        }
+
+        if (usePixelBuffers) {
+            gl.glGenBuffers(MAX_PENDING, pixelBuffers, 0);
+            for (int buffer : pixelBuffers) {
+                state.bindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, buffer);
+                gl.glBufferData(GLES30.GL_PIXEL_PACK_BUFFER, 4, null, GLES30.GL_STREAM_READ);
+            }
+            state.bindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+        }
+
+        for (int slot = 0; slot < MAX_PENDING; slot++) {
+            slotStates[slot] = FREE;
+        }
+        created = true;
+    }
+
+    /**
+     * Forgets the GL objects, for when the context that owned them is gone.
+     */
+    public void invalidate() {
+        created = false;
+        for (int slot = 0; slot < MAX_PENDING; slot++) {
+            slotStates[slot] = FREE;
+        }
+    }
+
+    public boolean isCreated() {
+        return created;
+    }
+
+    /**
+     * Queues a tap, drawn by the next {@link #update}.
+     *
+     * @param x, y - Window coordinates, y from the top as in touch events.
+     * @return - False if too many taps are still in flight, the tap is then dropped.
+     */
+    public boolean request(float x, float y) {
+        if (!created) {
+            return false;
+        }
+
+        for (int slot = 0; slot < MAX_PENDING; slot++) {
+            if (slotStates[slot] == FREE) {
+                tapX[slot] = x;
+                tapY[slot] = y;
+                slotStates[slot] = QUEUED;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return - Number of taps queued or waiting for their pixel.
+     */
+    public int getPendingCount() {
+        int pending = 0;
+        for (int slotState : slotStates) {
+            if (slotState != FREE) {
+                pending++;
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Reads back the taps drawn long enough ago. Call once per frame on the GL thread,
+     * before any of the frame's commands: on GLES 2.0 glReadPixels waits for the work
+     * issued before it, which then only belongs to earlier frames. Leaves the default
+     * framebuffer bound.
+     *
+     * @return - Whether any tap was read back.
+     */
+    public boolean readBack() {
+        if (!created) {
+            return false;
+        }
+
+        boolean bound = false;
+        for (int slot = 0; slot < MAX_PENDING; slot++) {
+            if (slotStates[slot] == DRAWN && frame - drawnAt[slot] >= FRAME_DELAY) {
+                if (!bound) {
+                    gl.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffer);
+                    bound = true;
+                }
+                read(slot);
+            }
+        }
+        if (bound) {
+            gl.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        }
+        return bound;
+    }
+
+    /**
+     * Draws the queued taps. Call once per frame on the GL thread, after the frame itself
+     * is drawn. Leaves the default framebuffer bound, but the viewport and clear color are
+     * the caller's to restore.
+     *
+     * @param projectionMatrix - Projection of the whole window.
+     * @return - Whether anything was drawn, i.e. the viewport and clear color changed.
+     */
+    public boolean drawQueued(Pass pass, float[] projectionMatrix, int width, int height) {
+        if (!created || !hasQueued()) {
+            frame++;
+            return false;
+        }
+
+        gl.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffer);
+        state.enable(GLES20.GL_SCISSOR_TEST);
+        state.enable(GLES20.GL_DEPTH_TEST);
+        gl.glClearColor(0f, 0f, 0f, 0f); // black is no id
+        for (int slot = 0; slot < MAX_PENDING; slot++) {
+            if (slotStates[slot] == QUEUED) {
+                draw(slot, pass, projectionMatrix, width, height);
+            }
+        }
+        state.disable(GLES20.GL_DEPTH_TEST);
+        state.disable(GLES20.GL_SCISSOR_TEST);
+        gl.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+
+        frame++;
+        return true;
+    }
+
+    private boolean hasQueued() {
+        for (int slotState : slotStates) {
+            if (slotState == QUEUED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void draw(int slot, Pass pass, float[] projectionMatrix, int width, int height) {
+        // only the slot's pixel is cleared and drawn, the others may still wait for their read
+        gl.glViewport(slot, 0, 1, 1);
+        gl.glScissor(slot, 0, 1, 1);
+        gl.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+
+        setPickMatrix(pickMatrix, tapX[slot], height - tapY[slot], width, height);
+        Mat4.multiplyMM(pickProjection, 0, pickMatrix, 0, projectionMatrix, 0);
+        pass.drawPickingPass(pickProjection);
+
+        if (usePixelBuffers) {
+            // the copy into the buffer runs on the GPU, mapping it later won't wait
+            state.bindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, pixelBuffers[slot]);
+            gl.glReadPixels(slot, 0, 1, 1, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, 0);
+            state.bindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+        }
+
+        drawnAt[slot] = frame;
+        slotStates[slot] = DRAWN;
+    }
+
+    private void read(int slot) {
+        int id;
+        if (usePixelBuffers) {
+            state.bindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, pixelBuffers[slot]);
+            Buffer mapped = gl.glMapBufferRange(GLES30.GL_PIXEL_PACK_BUFFER, 0, 4, GLES30.GL_MAP_READ_BIT);
+            id = mapped == null ? ColorProvider.NO_ID : decode((ByteBuffer) mapped);
+            gl.glUnmapBuffer(GLES30.GL_PIXEL_PACK_BUFFER);
+            state.bindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+        } else {
+            pixel.clear();
+            gl.glReadPixels(slot, 0, 1, 1, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixel);
+            id = decode(pixel);
+        }
+
+        slotStates[slot] = FREE;
+        if (listener != null) {
+            listener.onPicked(id);
+        }
+    }
+
+    private static int decode(ByteBuffer rgba) {
+        return ColorProvider.decode(rgba.get(0) & 0xFF, rgba.get(1) & 0xFF, rgba.get(2) & 0xFF);
+    }
+
+    /**
+     * Scales clip space so the given window pixel covers the whole viewport, like gluPickMatrix.
+     *
+     * @param x, y - Window coordinates, y from the bottom.
+     */
+    static void setPickMatrix(float[] m, float x, float y, int width, int height) {
+        // center of the pixel in normalized device coordinates, and the scale that blows it up to [-1, 1]
+        float px = (float) Math.floor(x) + 0.5f, py = (float) Math.floor(y) + 0.5f;
+        float cx = 2f * px / width - 1f, cy = 2f * py / height - 1f;
+        float sx = width, sy = height;
+
+        Mat4.setIdentityM(m, 0);
+        m[0] = sx;
+        m[5] = sy;
+        m[12] = -cx * sx;
+        m[13] = -cy * sy;
+    }
+}
@@ -50,33 +50,45 @@ class Color {
     }
 }
 
+/**
+ * Turns picking ids into colors and back: every id gets its own 24 bits RGB color, so
+ * up to {@link #MAX_ID} + 1 objects can be told apart by a single pixel. Black is left
+ * for the background, see {@link #decode(int, int, int)}. The ids themselves come from
+ * {@link PickingIdAllocator}.
+ */
 public class ColorProvider {
-    private static int r, g, b;
+    public static final int NO_ID = -1;
+    public static final int MAX_ID = 0xFFFFFE; // black aside
 
-    private ColorProvider() { } // good old singleton
+    private ColorProvider() { }
 
-    public synchronized static void reset() {
-        r = g = b = 1;
+    /**
+     * @return - The color encoding the id: bits 0-7 in red, 8-15 in green and 16-23 in blue, off by one.
+     */
+    public static Color toColor(int id) {
+        int rgb = encode(id);
+        return new Color(rgb & 0xFF, (rgb >> 8) & 0xFF, (rgb >> 16) & 0xFF);
     }
 
-    {
-        reset(); // static blocks are indeed useful in Java!
+    /**
+     * @return - The id as 0xBBGGRR, the layout of an RGBA pixel read back as little endian bytes.
+     */
+    public static int encode(int id) {
+        if (id < 0 || id > MAX_ID) {
+            throw new IllegalArgumentException("picking id out of range: " + id);
+        }
+        return id + 1;
     }
 
-    public synchronized static Color getNextColor() {
-        r++;
-        if (r >= 255) {
-            r = 255;  // clamp the value
-            g++;
-            if (g >= 255) {
-                g = 255;
-                b++;
-                if (b >= 255) {
-                    b = 255;
-                }
-            }
-        }
+    /**
+     * @param r, g, b - Channels of a picking pixel, 0 to 255.
+     * @return - The id drawn with that color, or NO_ID for the background.
+     */
+    public static int decode(int r, int g, int b) {
+        return (r | g << 8 | b << 16) - 1;
+    }
 
-        return new Color(r, g, b);
+    public static int decode(Color c) {
+        return decode(c.getR(), c.getG(), c.getB());
     }
 }
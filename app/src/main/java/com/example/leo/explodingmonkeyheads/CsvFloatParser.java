@@ -0,0 +1,324 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Streaming parser for comma-separated float lists such as res/raw/positions.
+ *
+ * <p>Bytes are read from the stream in chunks and each number is decoded on the fly
+ * into a growing float array, so no per-token Strings are created. Whitespace around
+ * the numbers and a trailing comma are accepted, anything else is reported through a
+ * {@link MalformedDataException} pointing at the offending token.</p>
+ *
+ * <p>A parser instance keeps its buffers between calls, so parsing several resources
+ * with the same instance does not allocate once the buffers are large enough. It is
+ * not thread safe.</p>
+ */
+public class CsvFloatParser {
+
+    /**
+     * Thrown when a token is not a valid number.
+     */
+    public static class MalformedDataException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final long offset;
+        private final int index;
+
+        MalformedDataException(String token, long offset, int index) {
+            super("malformed number '" + token + "' at byte " + offset + " (value #" + index + ")");
+            this.offset = offset;
+            this.index = index;
+        }
+
+        /**
+         * @return - Offset, in bytes from the start of the stream, where the bad token begins.
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return - Index of the bad token among all the values of the stream.
+         */
+        public int getIndex() {
+            return index;
+        }
+    }
+
+    static final int MAX_TOKEN_LENGTH = 64;
+    static final int MAX_MANTISSA_DIGITS = 18; // still fits in a long
+
+    // exact powers of ten, used by the fast conversion paths
+    private static final float[] FLOAT_POWERS_OF_TEN = {
+            1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f };
+    private static final double[] DOUBLE_POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private final byte[] chunk;
+    private final char[] token = new char[MAX_TOKEN_LENGTH];
+    private float[] values;
+    private int count;
+
+    // state of the number being decoded
+    private int tokenLength;
+    private long tokenOffset;
+    private boolean negative, negativeExponent, inFraction, inExponent, hasDigits, hasExponentDigits, truncated;
+    private long mantissa;
+    private int mantissaDigits, decimalExponent, exponent;
+    private boolean afterToken; // a number ended with whitespace, only a comma may follow
+
+    public CsvFloatParser() {
+        this(8192, 1024);
+    }
+
+    public CsvFloatParser(int chunkSize, int initialCapacity) {
+        chunk = new byte[chunkSize];
+        values = new float[Math.max(initialCapacity, 16)];
+    }
+
+    /**
+     * Parses the whole stream and returns the values in an exactly sized array.
+     */
+    public float[] parse(InputStream in) throws IOException {
+        int n = parseAll(in); // may replace the values array, so call it first
+        return Arrays.copyOf(values, n);
+    }
+
+    /**
+     * Parses the whole stream into the internal buffer, see {@link #getValues()}.
+     *
+     * @return - The number of values read.
+     */
+    public int parseAll(InputStream in) throws IOException {
+        count = 0;
+        resetToken();
+        afterToken = false;
+
+        long offset = 0;
+        int read;
+
+        while ((read = in.read(chunk)) != -1) {
+            for (int i = 0; i < read; i++, offset++) {
+                accept(chunk[i], offset);
+            }
+        }
+
+        if (tokenLength > 0) {
+            endToken();
+        }
+
+        return count;
+    }
+
+    /**
+     * @return - The internal buffer holding the last parsed values; only the first
+     * {@link #getCount()} entries are meaningful and the array is reused by the next parse.
+     */
+    public float[] getValues() {
+        return values;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    private void accept(byte b, long offset) throws MalformedDataException {
+        switch (b) {
+            case ',':
+                if (tokenLength > 0) {
+                    endToken();
+                } else if (!afterToken) {
+                    throw new MalformedDataException("", offset, count); // empty value
+                }
+                afterToken = false;
+                return;
+            case ' ':
+            case '\t':
+            case '\r':
+            case '\n':
+                if (tokenLength > 0) {
+                    endToken();
+                    afterToken = true;
+                }
+                return;
+            default:
+                if (afterToken) { // e.g. "1.0 2.0", a separator is missing
+                    tokenOffset = offset;
+                    append(b);
+                    throw malformed();
+                }
+                if (tokenLength == 0) {
+                    tokenOffset = offset;
+                }
+                append(b);
+                decode(b);
+        }
+    }
+
+    private void append(byte b) throws MalformedDataException {
+        if (tokenLength == MAX_TOKEN_LENGTH) {
+            throw malformed();
+        }
+        token[tokenLength++] = (char) (b & 0xFF);
+    }
+
+    /**
+     * Feeds one character of the current token to the number decoder.
+     */
+    private void decode(byte b) throws MalformedDataException {
+        if (b >= '0' && b <= '9') {
+            int digit = b - '0';
+
+            if (inExponent) {
+                hasExponentDigits = true;
+                if (exponent < 10000) { // anything larger over/underflows anyway
+                    exponent = exponent * 10 + digit;
+                }
+            } else {
+                hasDigits = true;
+                if (mantissa == 0 && digit == 0) {
+                    if (inFraction) {
+                        decimalExponent--; // leading zeros only shift the exponent
+                    }
+                } else if (mantissaDigits < MAX_MANTISSA_DIGITS) {
+                    mantissa = mantissa * 10 + digit;
+                    mantissaDigits++;
+                    if (inFraction) {
+                        decimalExponent--;
+                    }
+                } else {
+                    truncated = true; // too many digits, let Float.parseFloat round them
+                }
+            }
+            return;
+        }
+
+        switch (b) {
+            case '-':
+            case '+':
+                if (tokenLength == 1) {
+                    negative = b == '-';
+                } else if (inExponent && isExponentMarker(token[tokenLength - 2])) {
+                    negativeExponent = b == '-';
+                } else {
+                    throw malformed();
+                }
+                return;
+            case '.':
+                if (inFraction || inExponent) {
+                    throw malformed();
+                }
+                inFraction = true;
+                return;
+            case 'e':
+            case 'E':
+                if (inExponent || !hasDigits) {
+                    throw malformed();
+                }
+                inExponent = true;
+                return;
+            default:
+                throw malformed();
+        }
+    }
+
+    private static boolean isExponentMarker(char c) {
+        return c == 'e' || c == 'E';
+    }
+
+    private void endToken() throws MalformedDataException {
+        if (!hasDigits || (inExponent && !hasExponentDigits)) {
+            throw malformed();
+        }
+
+        if (count == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[count++] = toFloat();
+
+        resetToken();
+    }
+
+    private float toFloat() {
+        if (mantissa == 0) {
+            return negative ? -0f : 0f;
+        }
+
+        int e10 = decimalExponent + (negativeExponent ? -exponent : exponent);
+        float value;
+
+        if (truncated) {
+            value = slowPath();
+        } else if (mantissa <= (1 << 24) && e10 >= -10 && e10 <= 10) {
+            // both operands are exact floats, so a single operation rounds correctly
+            value = e10 < 0 ? mantissa / FLOAT_POWERS_OF_TEN[-e10] : mantissa * FLOAT_POWERS_OF_TEN[e10];
+        } else if (mantissa < (1L << 53) && e10 >= -22 && e10 <= 22) {
+            double d = e10 < 0 ? mantissa / DOUBLE_POWERS_OF_TEN[-e10] : mantissa * DOUBLE_POWERS_OF_TEN[e10];
+            value = (float) d;
+
+            if (isHalfway(d, value)) {
+                value = slowPath(); // rounding twice could be off by one ulp here
+            }
+        } else {
+            value = slowPath();
+        }
+
+        return negative ? -value : value;
+    }
+
+    private static boolean isHalfway(double d, float rounded) {
+        float neighbour = d > rounded ? Math.nextUp(rounded) : Math.nextAfter(rounded, Double.NEGATIVE_INFINITY);
+        return ((double) rounded + (double) neighbour) / 2 == d;
+    }
+
+    /**
+     * Exact but allocating conversion, only needed for unusually long or large numbers.
+     */
+    private float slowPath() {
+        int start = token[0] == '-' || token[0] == '+' ? 1 : 0;
+        return Float.parseFloat(new String(token, start, tokenLength - start));
+    }
+
+    private MalformedDataException malformed() {
+        return new MalformedDataException(new String(token, 0, tokenLength), tokenOffset, count);
+    }
+
+    private void resetToken() {
+        tokenLength = 0;
+        negative = negativeExponent = inFraction = inExponent = hasDigits = hasExponentDigits = truncated = false;
+        mantissa = 0;
+        mantissaDigits = decimalExponent = exponent = 0;
+    }
+}
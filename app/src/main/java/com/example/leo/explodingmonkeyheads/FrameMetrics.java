@@ -0,0 +1,268 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records where the frame budget goes: the CPU time of every phase of the frame, the
+ * total, the interval since the previous frame and, when timer queries are available,
+ * the GPU time (see {@link GpuFrameTimer}).
+ *
+ * <p>The last {@link #getCapacity()} frames are kept in a ring written by the GL thread
+ * only, without locks or allocations. {@link #snapshot()} may be called from any thread:
+ * it copies the ring, drops the frames overwritten while it was copying and computes
+ * the percentiles with {@link LatencyHistogram}s.</p>
+ */
+public class FrameMetrics {
+    public static final int PHASE_CAMERA = 0, PHASE_UPDATE = 1, PHASE_DRAW = 2, PHASE_PICKING = 3;
+    public static final int PHASE_COUNT = 4;
+    static final String[] PHASE_NAMES = { "camera", "update", "draw", "picking" };
+
+    // after the phases, every slot of the ring holds these
+    static final int CPU_TOTAL = PHASE_COUNT, INTERVAL = PHASE_COUNT + 1, GPU = PHASE_COUNT + 2;
+    static final int FIELDS = PHASE_COUNT + 3;
+    static final long NOT_MEASURED = -1L;
+
+    private final int capacity, slots;
+    private final AtomicLongArray ring;
+    private final AtomicLong written = new AtomicLong(); // frames committed so far
+
+    // state of the frame being recorded, GL thread only
+    private final long[] pending = new long[FIELDS];
+    private int currentPhase = -1;
+    private long phaseStart, lastFrameEnd = NOT_MEASURED;
+
+    public FrameMetrics(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+
+        this.capacity = capacity;
+        // one spare slot for the frame being written, so snapshots still see capacity frames
+        this.slots = capacity + 1;
+        this.ring = new AtomicLongArray(slots * FIELDS);
+        clearPending();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return - Number of frames recorded since the creation.
+     */
+    public long getFrameCount() {
+        return written.get();
+    }
+
+    private void clearPending() {
+        for (int i = 0; i < FIELDS; i++) {
+            pending[i] = (i == INTERVAL || i == GPU) ? NOT_MEASURED : 0L;
+        }
+    }
+
+    /**
+     * Starts timing a phase, ending the previous one if needed. Phases may run more
+     * than once per frame, their times add up.
+     */
+    public void beginPhase(int phase) {
+        long now = System.nanoTime();
+        if (currentPhase >= 0) {
+            pending[currentPhase] += now - phaseStart;
+        }
+
+        currentPhase = phase;
+        phaseStart = now;
+    }
+
+    public void endPhase() {
+        if (currentPhase >= 0) {
+            pending[currentPhase] += System.nanoTime() - phaseStart;
+            currentPhase = -1;
+        }
+    }
+
+    /**
+     * Sets the GPU time reported for the current frame. Timer query results arrive a
+     * few frames late, so it actually belongs to a recent frame.
+     */
+    public void setGpuTime(long nanos) {
+        pending[GPU] = nanos;
+    }
+
+    /**
+     * Commits the phases timed since the previous call as one frame.
+     */
+    public void endFrame() {
+        endPhase();
+
+        long now = System.nanoTime();
+        pending[INTERVAL] = lastFrameEnd == NOT_MEASURED ? NOT_MEASURED : now - lastFrameEnd;
+        lastFrameEnd = now;
+
+        commit();
+    }
+
+    /**
+     * Records a whole frame at once, mostly for tests and offline measurements.
+     *
+     * @param phaseNanos - CPU time of every phase, PHASE_COUNT values.
+     * @param intervalNanos - Time since the previous frame, or NOT_MEASURED.
+     * @param gpuNanos - GPU time, or NOT_MEASURED.
+     */
+    public void recordFrame(long[] phaseNanos, long intervalNanos, long gpuNanos) {
+        System.arraycopy(phaseNanos, 0, pending, 0, PHASE_COUNT);
+        pending[INTERVAL] = intervalNanos;
+        pending[GPU] = gpuNanos;
+
+        commit();
+    }
+
+    private void commit() {
+        long total = 0;
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            total += pending[i];
+        }
+        pending[CPU_TOTAL] = total;
+
+        long frame = written.get();
+        int base = (int) (frame % slots) * FIELDS;
+        for (int i = 0; i < FIELDS; i++) {
+            ring.lazySet(base + i, pending[i]);
+        }
+        // publish the slot, readers check the counter again after copying
+        written.set(frame + 1);
+
+        clearPending();
+    }
+
+    /**
+     * Summarizes the frames currently in the ring, safe to call from any thread.
+     */
+    public Snapshot snapshot() {
+        long end = written.get();
+        long start = Math.max(0L, end - capacity);
+
+        long[] copy = new long[(int) (end - start) * FIELDS];
+        for (long frame = start; frame < end; frame++) {
+            int base = (int) (frame % slots) * FIELDS;
+            for (int i = 0; i < FIELDS; i++) {
+                copy[(int) (frame - start) * FIELDS + i] = ring.get(base + i);
+            }
+        }
+
+        // the writer may have lapped the oldest frames while they were being copied
+        long overwritten = Math.max(start, written.get() - slots + 1);
+
+        LatencyHistogram[] histograms = new LatencyHistogram[FIELDS];
+        for (int i = 0; i < FIELDS; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        for (long frame = overwritten; frame < end; frame++) {
+            int base = (int) (frame - start) * FIELDS;
+            for (int i = 0; i < FIELDS; i++) {
+                long value = copy[base + i];
+                if (value != NOT_MEASURED) {
+                    histograms[i].record(value);
+                }
+            }
+        }
+
+        return new Snapshot(histograms, Math.max(0L, end - overwritten));
+    }
+
+    /**
+     * Percentiles of the frames that were in the ring when the snapshot was taken.
+     */
+    public static class Snapshot {
+        private final LatencyHistogram[] histograms;
+        public final long frames;
+
+        Snapshot(LatencyHistogram[] histograms, long frames) {
+            this.histograms = histograms;
+            this.frames = frames;
+        }
+
+        /**
+         * @param field - One of the PHASE_ constants, or CPU_TOTAL, INTERVAL, GPU.
+         */
+        public LatencyHistogram get(int field) {
+            return histograms[field];
+        }
+
+        public LatencyHistogram getCpuTotal() {
+            return histograms[CPU_TOTAL];
+        }
+
+        public LatencyHistogram getInterval() {
+            return histograms[INTERVAL];
+        }
+
+        public LatencyHistogram getGpu() {
+            return histograms[GPU];
+        }
+
+        /**
+         * @return - Frames per second derived from the mean interval, 0 when unknown.
+         */
+        public double getFps() {
+            double mean = getInterval().getMean();
+            return mean > 0 ? 1e9 / mean : 0.0;
+        }
+
+        private static void append(StringBuilder sb, String name, LatencyHistogram h) {
+            if (h.getTotalCount() == 0) {
+                return;
+            }
+
+            sb.append(String.format(Locale.US, "\n  %-8s p50 %7.3f  p95 %7.3f  p99 %7.3f  max %7.3f ms", name,
+                    h.getValueAtPercentile(50) / 1e6, h.getValueAtPercentile(95) / 1e6,
+                    h.getValueAtPercentile(99) / 1e6, h.getMax() / 1e6));
+        }
+
+        /**
+         * @return - A multi-line summary, e.g. for logcat.
+         */
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.US, "%d frames, %.1f fps", frames, getFps()));
+            for (int i = 0; i < PHASE_COUNT; i++) {
+                append(sb, PHASE_NAMES[i], histograms[i]);
+            }
+            append(sb, "cpu", getCpuTotal());
+            append(sb, "gpu", getGpu());
+            append(sb, "interval", getInterval());
+            return sb.toString();
+        }
+    }
+}
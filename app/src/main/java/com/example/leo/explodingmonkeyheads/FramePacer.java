@@ -0,0 +1,156 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+/**
+ * Decides which display refreshes get a new frame, so the scene can render below the
+ * refresh rate and save battery: 30 Hz on a 60 Hz display means every other vsync.
+ * Frames only ever land on whole vsync intervals, so the pacing stays even.
+ *
+ * <p>Rendering starts at the target rate. When adaptive, the pacer steps down an
+ * interval while the frames keep missing their budget, and back up once they would fit
+ * the faster one with room to spare, never slower than {@link #MIN_RATE} Hz.</p>
+ *
+ * <p>{@link #isFrameDue} runs on the UI thread, with the vsync times of Choreographer;
+ * {@link #onFrameRendered} on the GL thread. Only the interval is shared.</p>
+ */
+public class FramePacer {
+    public static final float MIN_RATE = 30f; // slowest the adaptive pacing goes
+
+    static final int SLOW_FRAMES = 10; // frames over budget in a row before slowing down
+    static final int FAST_FRAMES = 120; // frames fitting the faster rate in a row before speeding up
+    static final float OVER_BUDGET = 0.9f, FAST_BUDGET = 0.6f; // of the frame time
+
+    private final long vsyncNanos;
+    private final int maxInterval;
+    private int minInterval = 1; // from the target rate
+    private volatile int interval = 1; // vsyncs per frame
+    private boolean adaptive = true;
+
+    // GL thread
+    private int slowFrames, fastFrames;
+
+    // UI thread
+    private boolean paced; // whether a frame was rendered yet
+    private long lastFrameTime;
+
+    /**
+     * @param refreshRate - Refresh rate of the display, in Hz.
+     */
+    public FramePacer(float refreshRate) {
+        if (!(refreshRate > 0f)) {
+            throw new IllegalArgumentException("bad refresh rate: " + refreshRate);
+        }
+
+        vsyncNanos = (long) (1e9 / refreshRate);
+        maxInterval = Math.max(1, (int) (refreshRate / MIN_RATE + 0.01f));
+    }
+
+    public long getVsyncNanos() {
+        return vsyncNanos;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * @return - Frames per second the pacer currently aims at.
+     */
+    public float getRate() {
+        return 1e9f / (vsyncNanos * interval);
+    }
+
+    /**
+     * Sets the fastest rate to render at, e.g. 30 to save battery or 120 on a 120 Hz display.
+     * Rounded to the closest whole vsync interval not faster than it.
+     */
+    public void setTargetRate(float rate) {
+        int target = (int) Math.ceil(1e9 / vsyncNanos / rate - 0.01);
+        minInterval = Math.max(1, Math.min(target, maxInterval));
+        interval = minInterval;
+        slowFrames = fastFrames = 0;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+        if (!adaptive) {
+            interval = minInterval;
+        }
+    }
+
+    /**
+     * @param frameTimeNanos - Time of the vsync, as given to a Choreographer.FrameCallback.
+     * @return - Whether to render a frame for it.
+     */
+    public boolean isFrameDue(long frameTimeNanos) {
+        // half a vsync of slack, vsync times jitter
+        if (paced && frameTimeNanos - lastFrameTime < interval * vsyncNanos - vsyncNanos / 2) {
+            return false;
+        }
+
+        paced = true;
+        lastFrameTime = frameTimeNanos;
+        return true;
+    }
+
+    /**
+     * Takes the cost of the frame into account when adaptive.
+     *
+     * @param cpuNanos - Time the GL thread spent on the frame.
+     * @param gpuNanos - GPU time of a recent frame, or FrameMetrics.NOT_MEASURED.
+     */
+    public void onFrameRendered(long cpuNanos, long gpuNanos) {
+        if (!adaptive) {
+            return;
+        }
+
+        long cost = Math.max(cpuNanos, gpuNanos);
+        int current = interval;
+        if (cost > OVER_BUDGET * current * vsyncNanos) {
+            fastFrames = 0;
+            if (++slowFrames >= SLOW_FRAMES && current < maxInterval) {
+                interval = current + 1;
+                slowFrames = 0;
+            }
+        } else if (current > minInterval && cost < FAST_BUDGET * (current - 1) * vsyncNanos) {
+            slowFrames = 0;
+            if (++fastFrames >= FAST_FRAMES) {
+                interval = current - 1;
+                fastFrames = 0;
+            }
+        } else {
+            slowFrames = fastFrames = 0;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+/**
+ * The six planes of a view frustum, extracted from a projection x camera matrix
+ * (Gribb and Hartmann). The planes are normalized, so plugging a point into one gives
+ * its signed distance, positive inside.
+ */
+public class Frustum {
+    public static final int PLANE_COUNT = 6;
+
+    private final float[] planes = new float[PLANE_COUNT * 4]; // a, b, c, d of every plane
+
+    /**
+     * @param m - Column-major matrix from world to clip space, e.g. projection x camera.
+     */
+    public void set(float[] m) {
+        // left, right, bottom, top, near, far: the 4th row of the matrix plus or minus another row
+        for (int p = 0; p < PLANE_COUNT; p++) {
+            int row = p / 2;
+            float sign = (p & 1) == 0 ? 1f : -1f;
+
+            float a = m[3] + sign * m[row];
+            float b = m[7] + sign * m[4 + row];
+            float c = m[11] + sign * m[8 + row];
+            float d = m[15] + sign * m[12 + row];
+
+            float length = (float) Math.sqrt(a * a + b * b + c * c);
+            if (length > 0f) {
+                a /= length;
+                b /= length;
+                c /= length;
+                d /= length;
+            }
+            planes[p * 4] = a;
+            planes[p * 4 + 1] = b;
+            planes[p * 4 + 2] = c;
+            planes[p * 4 + 3] = d;
+        }
+    }
+
+    /**
+     * @return - a, b, c, d of every plane, the inside is where a * x + b * y + c * z + d >= 0.
+     */
+    public float[] getPlanes() {
+        return planes;
+    }
+
+    /**
+     * @param spheres - Center xyz and radius of spheres packed one after another.
+     * @param offset - Where the sphere starts in the array.
+     * @return - Whether any part of the sphere may be inside the frustum.
+     */
+    public boolean intersectsSphere(float[] spheres, int offset) {
+        float x = spheres[offset], y = spheres[offset + 1], z = spheres[offset + 2], r = spheres[offset + 3];
+        for (int p = 0; p < PLANE_COUNT * 4; p += 4) {
+            if (planes[p] * x + planes[p + 1] * y + planes[p + 2] * z + planes[p + 3] < -r) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
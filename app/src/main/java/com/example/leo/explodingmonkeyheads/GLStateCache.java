@@ -0,0 +1,398 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.opengl.GLES20;
+
+/**
+ * Shadows the GL state the renderer touches (current program, bound buffers, enabled
+ * vertex attribute arrays and their pointers, capabilities, front face / cull mode and
+ * the last value uploaded to every uniform) and drops the calls that wouldn't change
+ * it. Drawing 64 heads that share a program, a mesh and most of their uniforms turns
+ * into a handful of real state changes per head.
+ *
+ * <p>The cache only knows about calls made through it: anything that changes the same
+ * state directly must be followed by {@link #invalidate()}, which must also be called
+ * whenever a new EGL context is created.</p>
+ */
+public class GLStateCache {
+    static final int MAX_VERTEX_ATTRIBS = 16; // GLES 2.0 guarantees 8, no current GPU exposes more than 16
+    static final int UNKNOWN = Integer.MIN_VALUE;
+    // GL doesn't promise small, dense uniform locations; calls past this one go through uncached
+    static final int MAX_CACHED_UNIFORM_LOCATION = 63;
+
+    private final GLBackend gl;
+
+    private int program;
+    private int arrayBuffer, elementArrayBuffer;
+    private int frontFace, cullFace;
+
+    // capabilities are few, a linear search beats boxing them into a map
+    private final int[] caps = { GLES20.GL_CULL_FACE, GLES20.GL_DEPTH_TEST, GLES20.GL_BLEND, GLES20.GL_SCISSOR_TEST };
+    private final int[] capStates = new int[caps.length]; // UNKNOWN, 0 or 1
+
+    private final int[] attribEnabled = new int[MAX_VERTEX_ATTRIBS]; // UNKNOWN, 0 or 1
+    // buffer, size, type, normalized, stride and offset of every attribute pointer
+    private final int[][] attribPointers = new int[MAX_VERTEX_ATTRIBS][6];
+
+    // uniforms belong to the program, so every program keeps its own values, indexed by location
+    private final Map<Integer, float[][]> uniformsByProgram = new HashMap<>();
+    private float[][] uniforms;
+
+    private int issuedCalls, elidedCalls;
+    private long totalIssuedCalls, totalElidedCalls;
+
+    public GLStateCache(GLBackend gl) {
+        this.gl = gl;
+        invalidate();
+    }
+
+    public GLBackend getBackend() {
+        return gl;
+    }
+
+    /**
+     * Forgets everything, the next call for every piece of state goes through.
+     */
+    public void invalidate() {
+        program = arrayBuffer = elementArrayBuffer = frontFace = cullFace = UNKNOWN;
+        Arrays.fill(capStates, UNKNOWN);
+        Arrays.fill(attribEnabled, UNKNOWN);
+        for (int[] pointer : attribPointers) {
+            pointer[0] = UNKNOWN;
+        }
+        uniformsByProgram.clear();
+        uniforms = null;
+    }
+
+    /**
+     * Starts a new frame for the per-frame counters.
+     */
+    public void beginFrame() {
+        issuedCalls = elidedCalls = 0;
+    }
+
+    /**
+     * @return - Calls forwarded to the backend since {@link #beginFrame()}.
+     */
+    public int getIssuedCalls() {
+        return issuedCalls;
+    }
+
+    /**
+     * @return - Calls dropped because they wouldn't have changed anything, since {@link #beginFrame()}.
+     */
+    public int getElidedCalls() {
+        return elidedCalls;
+    }
+
+    public long getTotalIssuedCalls() {
+        return totalIssuedCalls;
+    }
+
+    public long getTotalElidedCalls() {
+        return totalElidedCalls;
+    }
+
+    private boolean elide(boolean unchanged) {
+        if (unchanged) {
+            elidedCalls++;
+            totalElidedCalls++;
+        } else {
+            issuedCalls++;
+            totalIssuedCalls++;
+        }
+        return unchanged;
+    }
+
+    public void useProgram(int program) {
+        if (elide(this.program == program)) {
+            return;
+        }
+
+        gl.glUseProgram(program);
+        this.program = program;
+
+        uniforms = uniformsByProgram.get(program);
+        if (uniforms == null) {
+            uniforms = new float[0][];
+            uniformsByProgram.put(program, uniforms);
+        }
+    }
+
+    /**
+     * Must be called when a program is deleted, its id may be reused by the next one.
+     */
+    public void onProgramDeleted(int program) {
+        uniformsByProgram.remove(program);
+        if (this.program == program) {
+            this.program = UNKNOWN;
+            uniforms = null;
+        }
+    }
+
+    public void bindBuffer(int target, int buffer) {
+        if (target == GLES20.GL_ARRAY_BUFFER) {
+            if (elide(arrayBuffer == buffer)) {
+                return;
+            }
+            arrayBuffer = buffer;
+        } else if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER) {
+            if (elide(elementArrayBuffer == buffer)) {
+                return;
+            }
+            elementArrayBuffer = buffer;
+        } else {
+            elide(false);
+        }
+
+        gl.glBindBuffer(target, buffer);
+    }
+
+    /**
+     * Must be called when a buffer is deleted, GL unbinds it and its id may be reused.
+     */
+    public void onBufferDeleted(int buffer) {
+        if (arrayBuffer == buffer) {
+            arrayBuffer = UNKNOWN;
+        }
+        if (elementArrayBuffer == buffer) {
+            elementArrayBuffer = UNKNOWN;
+        }
+        for (int[] pointer : attribPointers) {
+            if (pointer[0] == buffer) {
+                pointer[0] = UNKNOWN;
+            }
+        }
+    }
+
+    public void enableVertexAttribArray(int index) {
+        if (index < 0 || elide(attribEnabled[index] == 1)) {
+            return;
+        }
+
+        gl.glEnableVertexAttribArray(index);
+        attribEnabled[index] = 1;
+    }
+
+    public void disableVertexAttribArray(int index) {
+        if (index < 0 || elide(attribEnabled[index] == 0)) {
+            return;
+        }
+
+        gl.glDisableVertexAttribArray(index);
+        attribEnabled[index] = 0;
+    }
+
+    /**
+     * Points an attribute at the currently bound array buffer.
+     */
+    public void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+        if (index < 0) {
+            return;
+        }
+
+        int[] p = attribPointers[index];
+        int n = normalized ? 1 : 0;
+        if (elide(arrayBuffer != UNKNOWN && p[0] == arrayBuffer && p[1] == size && p[2] == type && p[3] == n
+                && p[4] == stride && p[5] == offset)) {
+            return;
+        }
+
+        gl.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+        p[0] = arrayBuffer;
+        p[1] = size;
+        p[2] = type;
+        p[3] = n;
+        p[4] = stride;
+        p[5] = offset;
+    }
+
+    public void enable(int cap) {
+        setCapability(cap, true);
+    }
+
+    public void disable(int cap) {
+        setCapability(cap, false);
+    }
+
+    private void setCapability(int cap, boolean enabled) {
+        int state = enabled ? 1 : 0;
+        int i = 0;
+        while (i < caps.length && caps[i] != cap) {
+            i++;
+        }
+
+        if (i < caps.length) {
+            if (elide(capStates[i] == state)) {
+                return;
+            }
+            capStates[i] = state;
+        } else {
+            elide(false); // not tracked
+        }
+
+        if (enabled) {
+            gl.glEnable(cap);
+        } else {
+            gl.glDisable(cap);
+        }
+    }
+
+    public void frontFace(int mode) {
+        if (elide(frontFace == mode)) {
+            return;
+        }
+
+        gl.glFrontFace(mode);
+        frontFace = mode;
+    }
+
+    public void cullFace(int mode) {
+        if (elide(cullFace == mode)) {
+            return;
+        }
+
+        gl.glCullFace(mode);
+        cullFace = mode;
+    }
+
+    // the uniform setters act on the current program, which must have been set through useProgram
+
+    public void uniform1f(int location, float x) {
+        if (location < 0) {
+            return; // GL ignores -1 as well
+        }
+
+        float[] v = uniform(location, 1);
+        if (elide(v != null && same(v[0], x))) {
+            return;
+        }
+
+        gl.glUniform1f(location, x);
+        if (v != null) {
+            v[0] = x;
+        }
+    }
+
+    public void uniform4f(int location, float x, float y, float z, float w) {
+        if (location < 0) {
+            return;
+        }
+
+        float[] v = uniform(location, 4);
+        if (elide(v != null && same(v[0], x) && same(v[1], y) && same(v[2], z) && same(v[3], w))) {
+            return;
+        }
+
+        gl.glUniform4f(location, x, y, z, w);
+        if (v != null) {
+            v[0] = x;
+            v[1] = y;
+            v[2] = z;
+            v[3] = w;
+        }
+    }
+
+    public void uniform4fv(int location, float[] value, int offset) {
+        if (location < 0) {
+            return;
+        }
+
+        float[] v = uniform(location, 4);
+        if (elide(v != null && same(v, value, offset))) {
+            return;
+        }
+
+        gl.glUniform4fv(location, 1, value, offset);
+        if (v != null) {
+            System.arraycopy(value, offset, v, 0, 4);
+        }
+    }
+
+    public void uniformMatrix4fv(int location, float[] value, int offset) {
+        if (location < 0) {
+            return;
+        }
+
+        float[] v = uniform(location, 16);
+        if (elide(v != null && same(v, value, offset))) {
+            return;
+        }
+
+        gl.glUniformMatrix4fv(location, 1, false, value, offset);
+        if (v != null) {
+            System.arraycopy(value, offset, v, 0, 16);
+        }
+    }
+
+    /**
+     * @return - The cached value of a uniform of the current program, NaN-filled while unknown,
+     *           or null if the location is past {@link #MAX_CACHED_UNIFORM_LOCATION}.
+     */
+    private float[] uniform(int location, int size) {
+        if (uniforms == null) {
+            throw new IllegalStateException("no program in use");
+        }
+
+        if (location > MAX_CACHED_UNIFORM_LOCATION) {
+            return null;
+        }
+        if (location >= uniforms.length) {
+            uniforms = Arrays.copyOf(uniforms, location + 1);
+            uniformsByProgram.put(program, uniforms);
+        }
+
+        float[] v = uniforms[location];
+        if (v == null || v.length != size) {
+            v = new float[size];
+            Arrays.fill(v, Float.NaN);
+            uniforms[location] = v;
+        }
+        return v;
+    }
+
+    // compares bit patterns, so NaN (unknown) never matches and -0 is a change
+    private static boolean same(float a, float b) {
+        return Float.floatToRawIntBits(a) == Float.floatToRawIntBits(b) && a == a;
+    }
+
+    private static boolean same(float[] cached, float[] value, int offset) {
+        for (int i = 0; i < cached.length; i++) {
+            if (!same(cached[i], value[offset + i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
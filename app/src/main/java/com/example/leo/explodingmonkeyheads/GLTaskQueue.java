@@ -0,0 +1,79 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+import java.util.ArrayDeque;
+
+/**
+ * Work for the GL thread spread over several frames, e.g. compiling the programs and
+ * uploading the buffers once the assets are loaded: every frame runs tasks until its
+ * budget is spent, at least one, so the display keeps getting frames meanwhile.
+ *
+ * <p>GL thread only.</p>
+ */
+public class GLTaskQueue {
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+    public void post(Runnable task) {
+        tasks.addLast(task);
+    }
+
+    public boolean isEmpty() {
+        return tasks.isEmpty();
+    }
+
+    public int size() {
+        return tasks.size();
+    }
+
+    public void clear() {
+        tasks.clear();
+    }
+
+    /**
+     * Runs the tasks in order until the budget is spent. A task longer than the budget
+     * still runs, alone.
+     *
+     * @param budgetNanos - Time the tasks may take this frame.
+     * @return - How many tasks ran.
+     */
+    public int run(long budgetNanos) {
+        long start = System.nanoTime();
+        int ran = 0;
+        while (!tasks.isEmpty() && (ran == 0 || System.nanoTime() - start < budgetNanos)) {
+            tasks.pollFirst().run();
+            ran++;
+        }
+        return ran;
+    }
+
+    public void runAll() {
+        run(Long.MAX_VALUE);
+    }
+}
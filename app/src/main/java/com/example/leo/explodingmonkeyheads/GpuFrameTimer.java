@@ -0,0 +1,138 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+/**
+ * Measures the GPU time of every frame with GL_EXT_disjoint_timer_query. On a GLES 3.0
+ * context the extension plugs GL_TIME_ELAPSED_EXT into the core query functions, which
+ * are the only ones reachable from Java.
+ *
+ * <p>Results are read a few frames late, from a small ring of queries, so the CPU
+ * never waits for the GPU. Frames whose query isn't done yet or was disjoint (e.g. the
+ * GPU changed frequency) are simply not reported.</p>
+ */
+public class GpuFrameTimer {
+    static final String EXTENSION = "GL_EXT_disjoint_timer_query";
+    static final int GL_TIME_ELAPSED_EXT = 0x88BF;
+    static final int GL_GPU_DISJOINT_EXT = 0x8FBB;
+    static final int QUERY_COUNT = 4;
+
+    private final GLBackend gl;
+    private final int[] queries = new int[QUERY_COUNT];
+    private final int[] result = new int[1];
+    private int next, inFlight; // the oldest query in flight is (next - inFlight) mod QUERY_COUNT
+    private boolean created, running;
+
+    public GpuFrameTimer(GLBackend gl) {
+        this.gl = gl;
+    }
+
+    /**
+     * @return - Whether the current context can time frames, must be called on the GL thread.
+     */
+    public static boolean isSupported(GLBackend gl, int glesVersion) {
+        if (!InstancedBatch.isSupported(glesVersion)) {
+            return false; // same requirements as the GLES30 bindings
+        }
+
+        String extensions = gl.glGetString(GLES20.GL_EXTENSIONS);
+        return extensions != null && extensions.contains(EXTENSION);
+    }
+
+    public void create() {
+        gl.glGenQueries(QUERY_COUNT, queries, 0);
+        next = inFlight = 0;
+        running = false;
+        created = true;
+
+        // clear a pending disjoint flag, earlier work isn't measured anyway
+        gl.glGetIntegerv(GL_GPU_DISJOINT_EXT, result, 0);
+    }
+
+    /**
+     * Forgets the queries, for when the context that owned them is gone.
+     */
+    public void invalidate() {
+        created = running = false;
+        next = inFlight = 0;
+    }
+
+    public boolean isCreated() {
+        return created;
+    }
+
+    /**
+     * Starts timing the GPU work of the frame. Skipped when every query is still in flight.
+     */
+    public void begin() {
+        if (!created || running || inFlight == QUERY_COUNT) {
+            return;
+        }
+
+        gl.glBeginQuery(GL_TIME_ELAPSED_EXT, queries[next]);
+        running = true;
+    }
+
+    public void end() {
+        if (!running) {
+            return;
+        }
+
+        gl.glEndQuery(GL_TIME_ELAPSED_EXT);
+        running = false;
+        next = (next + 1) % QUERY_COUNT;
+        inFlight++;
+    }
+
+    /**
+     * @return - GPU time in nanoseconds of the oldest finished frame, or
+     *           {@link FrameMetrics#NOT_MEASURED} if none is available yet.
+     */
+    public long poll() {
+        if (inFlight == 0) {
+            return FrameMetrics.NOT_MEASURED;
+        }
+
+        int oldest = queries[(next - inFlight + QUERY_COUNT) % QUERY_COUNT];
+        gl.glGetQueryObjectuiv(oldest, GLES30.GL_QUERY_RESULT_AVAILABLE, result, 0);
+        if (result[0] == GLES20.GL_FALSE) {
+            return FrameMetrics.NOT_MEASURED;
+        }
+
+        gl.glGetQueryObjectuiv(oldest, GLES30.GL_QUERY_RESULT, result, 0);
+        long nanos = result[0] & 0xffffffffL;
+        inFlight--;
+
+        gl.glGetIntegerv(GL_GPU_DISJOINT_EXT, result, 0);
+        return result[0] == GLES20.GL_FALSE ? nanos : FrameMetrics.NOT_MEASURED;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+/**
+ * Turns gyroscope samples into camera rotations: the angular speeds around the device's
+ * y and x axes, integrated over the time between samples, become degrees added to the
+ * camera's x and y angles. Speeds under the noise floor are ignored, so a device lying
+ * still doesn't slowly turn the camera.
+ *
+ * <p>The rotation accumulates until {@link #clearPending()}, i.e. until it could be
+ * queued, see {@link InputQueue}. Not thread safe, fed by the sensor listener.</p>
+ */
+public class GyroCamera {
+    public static final float DEFAULT_NOISE = 0.02f; // rad/s
+    // a longer gap (e.g. the sensor was paused) isn't integrated
+    static final long MAX_STEP_NANOS = 100000000L;
+
+    private static final float DEGREES_PER_RADIAN = (float) (180.0 / Math.PI);
+
+    private float noise = DEFAULT_NOISE;
+    private float sensitivity = 1f;
+    private long lastTimestamp;
+    private boolean started;
+    private float pendingX, pendingY;
+
+    public float getNoise() {
+        return noise;
+    }
+
+    /**
+     * @param noise - Angular speed in rad/s under which an axis counts as still.
+     */
+    public void setNoise(float noise) {
+        this.noise = noise;
+    }
+
+    public float getSensitivity() {
+        return sensitivity;
+    }
+
+    /**
+     * @param sensitivity - Camera degrees per degree the device turns, negative to invert.
+     */
+    public void setSensitivity(float sensitivity) {
+        this.sensitivity = sensitivity;
+    }
+
+    /**
+     * Integrates one sample. The first one after {@link #reset()} only sets the time.
+     *
+     * @param rateX - Angular speed around the device's x axis, rad/s.
+     * @param rateY - Angular speed around the device's y axis, rad/s.
+     * @param timestampNanos - Time of the sample, as in SensorEvent.timestamp.
+     * @return - Whether there's rotation pending.
+     */
+    public boolean onSample(float rateX, float rateY, long timestampNanos) {
+        long step = timestampNanos - lastTimestamp;
+        lastTimestamp = timestampNanos;
+        if (!started || step <= 0 || step > MAX_STEP_NANOS) {
+            started = true;
+            return hasPending();
+        }
+
+        float scale = step * 1e-9f * DEGREES_PER_RADIAN * sensitivity;
+        if (Math.abs(rateY) > noise) {
+            pendingX += rateY * scale;
+        }
+        if (Math.abs(rateX) > noise) {
+            pendingY += rateX * scale;
+        }
+        return hasPending();
+    }
+
+    public boolean hasPending() {
+        return pendingX != 0f || pendingY != 0f;
+    }
+
+    /**
+     * @return - Degrees to add to the camera's x angle.
+     */
+    public float getPendingX() {
+        return pendingX;
+    }
+
+    /**
+     * @return - Degrees to add to the camera's y angle.
+     */
+    public float getPendingY() {
+        return pendingY;
+    }
+
+    public void clearPending() {
+        pendingX = pendingY = 0f;
+    }
+
+    /**
+     * Forgets the pending rotation and the last sample, e.g. when the sensor is registered again.
+     */
+    public void reset() {
+        clearPending();
+        started = false;
+    }
+}
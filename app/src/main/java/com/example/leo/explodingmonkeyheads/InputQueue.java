@@ -0,0 +1,153 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands input from the UI thread to the GL thread without locks or allocations: a
+ * single-producer, single-consumer ring of preallocated events. The producer fills a
+ * slot, then publishes it by moving the tail; the consumer reads up to the tail it
+ * sees, then frees the slots by moving the head. The ordered writes of
+ * {@link AtomicLong#lazySet(long)} make the slot contents visible before the index.
+ *
+ * <p>Exactly one thread may call {@link #offer}, e.g. the UI thread for both touch and
+ * sensor events (a listener registered without a Handler runs there), and exactly one
+ * may call {@link #drain}, the GL thread once per frame. Draining coalesces the camera
+ * deltas of the frame into a single rotation.</p>
+ */
+public class InputQueue {
+    public static final int CAMERA = 1; // x, y: degrees to add to the camera angles
+    public static final int TAP = 2; // x, y: window coordinates of the tap
+
+    /**
+     * Receives the drained events on the consumer thread.
+     */
+    public interface Consumer {
+        /**
+         * Called once per drain with the sum of the camera events, if there were any.
+         */
+        void onCameraRotated(float dx, float dy);
+
+        /**
+         * Called for every tap, in order.
+         */
+        void onTap(float x, float y);
+    }
+
+    private final int mask;
+    private final int[] types;
+    private final float[] xs, ys;
+    private final AtomicLong head = new AtomicLong(); // next slot to read, written by the consumer
+    private final AtomicLong tail = new AtomicLong(); // next slot to write, written by the producer
+    private long cachedHead; // producer's last look at head, rereads it only when the ring seems full
+
+    /**
+     * @param capacity - Number of events that can wait, a power of two.
+     */
+    public InputQueue(int capacity) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+
+        mask = capacity - 1;
+        types = new int[capacity];
+        xs = new float[capacity];
+        ys = new float[capacity];
+    }
+
+    public int getCapacity() {
+        return types.length;
+    }
+
+    /**
+     * @return - Events waiting, only a snapshot when called while the other thread works.
+     */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * Queues an event, producer thread only.
+     *
+     * @param type - {@link #CAMERA} or {@link #TAP}.
+     * @return - False if the ring is full; the caller keeps the event, e.g. adds a camera
+     *           delta to its next one.
+     */
+    public boolean offer(int type, float x, float y) {
+        long t = tail.get();
+        if (t - cachedHead == types.length) {
+            cachedHead = head.get();
+            if (t - cachedHead == types.length) {
+                return false;
+            }
+        }
+
+        int slot = (int) t & mask;
+        types[slot] = type;
+        xs[slot] = x;
+        ys[slot] = y;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Hands every waiting event to the consumer, consumer thread only. Taps are passed in
+     * order, then the camera deltas are passed as one.
+     *
+     * @return - Number of events drained.
+     */
+    public int drain(Consumer consumer) {
+        long h = head.get();
+        long t = tail.get();
+        if (h == t) {
+            return 0;
+        }
+
+        float dx = 0f, dy = 0f;
+        boolean rotated = false;
+        for (long i = h; i < t; i++) {
+            int slot = (int) i & mask;
+            if (types[slot] == CAMERA) {
+                dx += xs[slot];
+                dy += ys[slot];
+                rotated = true;
+            } else {
+                consumer.onTap(xs[slot], ys[slot]);
+            }
+        }
+        // the slots are read, the producer may reuse them
+        head.lazySet(t);
+
+        if (rotated) {
+            consumer.onCameraRotated(dx, dy);
+        }
+        return (int) (t - h);
+    }
+}
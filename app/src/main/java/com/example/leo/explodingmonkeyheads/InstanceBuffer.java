@@ -0,0 +1,137 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import android.opengl.GLES20;
+
+/**
+ * CPU-side staging area for the per-instance attribute stream of the instanced
+ * rendering path: one model matrix, color and explosion time per head, packed in
+ * a direct buffer following {@link #LAYOUT} so it can be uploaded as it is.
+ *
+ * <p>The buffer is reused from frame to frame and only reallocated when the number
+ * of instances outgrows it.</p>
+ */
+public class InstanceBuffer {
+    // the model matrix goes in as 4 column vectors, attributes can't be larger than a vec4
+    public static final VertexLayout LAYOUT = new VertexLayout()
+            .add("iModelColumn0", 4, GLES20.GL_FLOAT, false)
+            .add("iModelColumn1", 4, GLES20.GL_FLOAT, false)
+            .add("iModelColumn2", 4, GLES20.GL_FLOAT, false)
+            .add("iModelColumn3", 4, GLES20.GL_FLOAT, false)
+            .add("iColor", 4, GLES20.GL_UNSIGNED_BYTE, true) // exact for the 8 bits picking colors
+            .add("iTime", 1, GLES20.GL_FLOAT, false);
+
+    static final int MODEL_OFFSET = LAYOUT.getAttribute(0).offset;
+    static final int COLOR_OFFSET = LAYOUT.getAttribute(4).offset;
+    static final int TIME_OFFSET = LAYOUT.getAttribute(5).offset;
+
+    private ByteBuffer buffer;
+    private int count;
+
+    public InstanceBuffer(int initialCapacity) {
+        buffer = allocate(Math.max(initialCapacity, 1));
+    }
+
+    private static ByteBuffer allocate(int instances) {
+        return ByteBuffer.allocateDirect(instances * LAYOUT.getStride()).order(ByteOrder.nativeOrder());
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getCapacity() {
+        return buffer.capacity() / LAYOUT.getStride();
+    }
+
+    /**
+     * @return - Size in bytes of the packed instances.
+     */
+    public int getSizeInBytes() {
+        return count * LAYOUT.getStride();
+    }
+
+    /**
+     * @return - The packed instances, from position 0 to {@link #getSizeInBytes()}.
+     */
+    public ByteBuffer getBuffer() {
+        buffer.limit(getSizeInBytes()).position(0);
+        return buffer;
+    }
+
+    /**
+     * Appends one instance.
+     *
+     * @param modelMatrix - Column-major 4x4 model matrix.
+     * @param r - Red component of the color, [0, 1].
+     * @param time - Explosion time, 0 for intact heads.
+     */
+    public void add(float[] modelMatrix, int offset, float r, float g, float b, float a, float time) {
+        if (count == getCapacity()) {
+            grow();
+        }
+        buffer.limit(buffer.capacity()); // getBuffer() may have narrowed it
+
+        int base = count * LAYOUT.getStride();
+
+        for (int i = 0; i < 16; i++) {
+            buffer.putFloat(base + MODEL_OFFSET + i * 4, modelMatrix[offset + i]);
+        }
+
+        buffer.put(base + COLOR_OFFSET, toUnsignedByte(r));
+        buffer.put(base + COLOR_OFFSET + 1, toUnsignedByte(g));
+        buffer.put(base + COLOR_OFFSET + 2, toUnsignedByte(b));
+        buffer.put(base + COLOR_OFFSET + 3, toUnsignedByte(a));
+
+        buffer.putFloat(base + TIME_OFFSET, time);
+
+        count++;
+    }
+
+    private void grow() {
+        ByteBuffer bigger = allocate(getCapacity() * 2);
+
+        buffer.limit(getSizeInBytes()).position(0);
+        bigger.put(buffer);
+        buffer = bigger;
+        buffer.clear();
+    }
+
+    private static byte toUnsignedByte(float value) {
+        return (byte) Math.round(Math.max(0f, Math.min(1f, value)) * 255f);
+    }
+}
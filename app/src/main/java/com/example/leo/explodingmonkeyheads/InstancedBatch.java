@@ -0,0 +1,212 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+import android.opengl.GLES20;
+import android.os.Build;
+
+/**
+ * Draws every monkey head with a single instanced draw call per level of detail
+ * (GLES 3.0). The model matrix, color and explosion time of each head are packed into
+ * a per-instance attribute stream that is re-uploaded every frame, while the mesh
+ * itself stays in the shared {@link MeshBuffers}.
+ *
+ * <p>On GLES 2.0 devices {@link #isSupported} is false and the renderer keeps drawing
+ * the heads one by one.</p>
+ */
+public class InstancedBatch {
+    private final GLStateCache state;
+    private final GLBackend gl;
+    private final InstanceBuffer instances;
+    private final int[] ids = new int[1];
+    private final float[] color = new float[4]; // drawn color of the head being added
+    private final int[] wholeMesh = new int[2]; // a single group of heads, drawn with the whole mesh
+
+    private ShaderProgram program; // null until created for the current context
+    private int[] meshAttributeLocations, instanceAttributeLocations;
+    private int instanceBufferId, instanceBufferSize;
+    private int cameraMatrixHandle, projectionMatrixHandle, positionScaleHandle, positionOffsetHandle;
+
+    public InstancedBatch(GLStateCache state, int initialCapacity) {
+        this.state = state;
+        this.gl = state.getBackend();
+        instances = new InstanceBuffer(initialCapacity);
+    }
+
+    /**
+     * @param glesVersion - Major version of the current context.
+     */
+    public static boolean isSupported(int glesVersion) {
+        return glesVersion >= 3 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+    }
+
+    /**
+     * Compiles the instancing program and creates the instance buffer object, must be
+     * called on the GL thread every time a context is created.
+     */
+    public void create(String vertexShaderCode, String fragmentShaderCode) {
+        create(vertexShaderCode, fragmentShaderCode, null);
+    }
+
+    /**
+     * @param programCache - Where to load the program from and save it to, null to always compile it.
+     */
+    public void create(String vertexShaderCode, String fragmentShaderCode, ProgramBinaryCache programCache) {
+        program = new ShaderProgram(state, vertexShaderCode, fragmentShaderCode, programCache);
+
+        meshAttributeLocations = program.getAttribLocations(QuantizedMesh.LAYOUT);
+        instanceAttributeLocations = program.getAttribLocations(InstanceBuffer.LAYOUT);
+        cameraMatrixHandle = program.getUniformLocation("uCameraMatrix");
+        projectionMatrixHandle = program.getUniformLocation("uProjectionMatrix");
+        positionScaleHandle = program.getUniformLocation("uPositionScale");
+        positionOffsetHandle = program.getUniformLocation("uPositionOffset");
+
+        gl.glGenBuffers(1, ids, 0);
+        instanceBufferId = ids[0];
+        instanceBufferSize = 0;
+
+        MonkeyHeadsRenderer.checkGlError(gl, "InstancedBatch.create");
+    }
+
+    public boolean isCreated() {
+        return program != null;
+    }
+
+    /**
+     * Forgets the GL object ids, for when the context that owned them is gone.
+     */
+    public void invalidate() {
+        program = null;
+        instanceBufferId = instanceBufferSize = 0;
+    }
+
+    /**
+     * Draws the first count heads with one instanced call.
+     *
+     * @param objectPickingMode - Whether to use each head's unique picking color.
+     */
+    public void draw(MonkeyHead[] heads, int count, MeshBuffers meshBuffers, float[] cameraMatrix,
+                     float[] projectionMatrix, boolean objectPickingMode) {
+        wholeMesh[1] = count;
+        draw(heads, wholeMesh, null, meshBuffers, cameraMatrix, projectionMatrix, objectPickingMode);
+    }
+
+    /**
+     * Draws the heads grouped by level of detail, one instanced call per level. The
+     * instances are uploaded once; every call points the instance attributes at its group.
+     *
+     * @param heads - Sorted by level.
+     * @param levelStarts - Level l draws heads[levelStarts[l]] to heads[levelStarts[l + 1] - 1].
+     * @param lods - The levels packed in the mesh buffers, null to draw the whole mesh.
+     * @param objectPickingMode - Whether to use each head's unique picking color.
+     */
+    public void draw(MonkeyHead[] heads, int[] levelStarts, MeshLods lods, MeshBuffers meshBuffers,
+                     float[] cameraMatrix, float[] projectionMatrix, boolean objectPickingMode) {
+        int levelCount = lods != null ? lods.getLevelCount() : 1;
+        int count = levelStarts[levelCount];
+
+        instances.clear();
+        for (int i = 0; i < count; i++) {
+            MonkeyHead head = heads[i];
+            SceneStore scene = head.getScene();
+            int index = head.getIndex();
+            if (objectPickingMode) {
+                int rgb = ColorProvider.encode(head.getPickingId());
+                instances.add(scene.drawnModels, head.getMatrixOffset(), (rgb & 0xFF) / 255f, (rgb >> 8 & 0xFF) / 255f,
+                        (rgb >> 16 & 0xFF) / 255f, 1f, scene.getExplosionTime(index));
+            } else {
+                scene.getDrawnColor(index, color);
+                instances.add(scene.drawnModels, head.getMatrixOffset(), color[0], color[1], color[2], color[3],
+                        scene.getExplosionTime(index));
+            }
+        }
+
+        if (instances.getCount() == 0) {
+            return;
+        }
+
+        program.use();
+        program.setMat4(cameraMatrixHandle, cameraMatrix);
+        program.setMat4(projectionMatrixHandle, projectionMatrix);
+        QuantizedMesh quantized = meshBuffers.getQuantizedMesh();
+        program.setVec4(positionScaleHandle, quantized.getPositionScale());
+        program.setVec4(positionOffsetHandle, quantized.getPositionOffset());
+
+        meshBuffers.bind(meshAttributeLocations);
+        uploadInstances();
+        state.frontFace(GLES20.GL_CW);
+
+        VertexLayout layout = InstanceBuffer.LAYOUT;
+        for (int level = 0; level < levelCount; level++) {
+            int first = levelStarts[level], instanceCount = levelStarts[level + 1] - first;
+            if (instanceCount == 0) {
+                continue;
+            }
+
+            // GLES 3.0 has no base instance, the attributes start at the group instead
+            for (int i = 0; i < layout.getAttributeCount(); i++) {
+                int location = instanceAttributeLocations[i];
+                if (location < 0) {
+                    continue;
+                }
+
+                VertexLayout.Attribute a = layout.getAttribute(i);
+                state.enableVertexAttribArray(location);
+                state.vertexAttribPointer(location, a.components, a.type, a.normalized, layout.getStride(),
+                        first * layout.getStride() + a.offset);
+                gl.glVertexAttribDivisor(location, 1); // advance once per instance, not per vertex
+            }
+
+            if (lods != null) {
+                meshBuffers.drawInstanced(lods.getFirstIndex(level), lods.getIndexCount(level), instanceCount);
+            } else {
+                meshBuffers.drawInstanced(instanceCount);
+            }
+        }
+
+        // the per-object path reuses these locations and expects per-vertex attributes
+        for (int location : instanceAttributeLocations) {
+            if (location >= 0) {
+                gl.glVertexAttribDivisor(location, 0);
+                state.disableVertexAttribArray(location);
+            }
+        }
+    }
+
+    private void uploadInstances() {
+        state.bindBuffer(GLES20.GL_ARRAY_BUFFER, instanceBufferId);
+
+        // grow the buffer object along with the staging buffer
+        instanceBufferSize = Math.max(instanceBufferSize, instances.getCapacity() * InstanceBuffer.LAYOUT.getStride());
+
+        // orphan last frame's storage so the driver doesn't wait for the GPU to be done with it
+        gl.glBufferData(GLES20.GL_ARRAY_BUFFER, instanceBufferSize, null, GLES20.GL_STREAM_DRAW);
+        gl.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, instances.getSizeInBytes(), instances.getBuffer());
+    }
+}
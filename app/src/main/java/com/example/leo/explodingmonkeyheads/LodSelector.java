@@ -0,0 +1,150 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+import java.util.Arrays;
+
+/**
+ * Picks the level of detail of every object from how large its error would look on
+ * screen: the coarsest level whose error, projected at the object's depth, stays under
+ * a pixel tolerance. Since the projected error shrinks with the distance, the further
+ * (i.e. the smaller on screen) an object is, the coarser its level.
+ *
+ * <p>An object only moves to a coarser level once that level's error is well under the
+ * tolerance, see {@link #setHysteresis}, so objects hovering around a threshold don't
+ * flicker between two levels. Moving to a finer level happens right away.</p>
+ */
+public class LodSelector {
+    public static final float DEFAULT_PIXEL_TOLERANCE = 4f;
+    public static final float DEFAULT_HYSTERESIS = 0.25f;
+
+    // closer than this, every object gets the finest level
+    static final float MIN_DEPTH = 1e-3f;
+
+    private float[] errors = {0f}; // per level, finest first, in object units
+    private int[] levels = new int[0]; // current level of every object
+    private float pixelsPerUnit; // size on screen of one unit at a depth of 1
+    private float pixelTolerance = DEFAULT_PIXEL_TOLERANCE, hysteresis = DEFAULT_HYSTERESIS;
+
+    /**
+     * Sets the levels to choose from and puts every object back on the finest one.
+     *
+     * @param errors - Error of every level, finest first and never decreasing, see {@link MeshLods#getErrors()}.
+     * @param objectCount - Number of objects tracked, indexed from 0.
+     */
+    public void setLevels(float[] errors, int objectCount) {
+        for (int level = 1; level < errors.length; level++) {
+            if (errors[level] < errors[level - 1]) {
+                throw new IllegalArgumentException("errors must grow with the levels");
+            }
+        }
+
+        this.errors = errors.clone();
+        if (levels.length != objectCount) {
+            levels = new int[objectCount];
+        } else {
+            Arrays.fill(levels, 0);
+        }
+    }
+
+    public int getLevelCount() {
+        return errors.length;
+    }
+
+    /**
+     * @param projectionMatrix - Perspective projection, as set by Mat4.frustumM().
+     * @param viewportHeight - Height of the viewport in pixels.
+     */
+    public void setProjection(float[] projectionMatrix, int viewportHeight) {
+        // [5] maps a unit of view space at a depth of 1 to half the viewport's height
+        pixelsPerUnit = projectionMatrix[5] * viewportHeight * 0.5f;
+    }
+
+    public float getPixelTolerance() {
+        return pixelTolerance;
+    }
+
+    /**
+     * @param pixelTolerance - How many pixels a level's error may cover on screen.
+     */
+    public void setPixelTolerance(float pixelTolerance) {
+        this.pixelTolerance = pixelTolerance;
+    }
+
+    public float getHysteresis() {
+        return hysteresis;
+    }
+
+    /**
+     * @param hysteresis - Fraction of the tolerance a coarser level's error must stay under
+     *                     before an object switches to it, between 0 and 1.
+     */
+    public void setHysteresis(float hysteresis) {
+        if (hysteresis < 0f || hysteresis >= 1f) {
+            throw new IllegalArgumentException("hysteresis must be in [0, 1)");
+        }
+        this.hysteresis = hysteresis;
+    }
+
+    /**
+     * @param depth - Distance along the view direction, in view space units.
+     * @return - How many pixels the level's error covers on screen at that depth.
+     */
+    public float getProjectedError(int level, float depth) {
+        return errors[level] * pixelsPerUnit / Math.max(depth, MIN_DEPTH);
+    }
+
+    /**
+     * Updates the object's level for this frame.
+     *
+     * @param depth - Depth of the object's closest point, in view space units.
+     * @return - The level to draw the object with.
+     */
+    public int select(int object, float depth) {
+        float pixelsPerError = pixelsPerUnit / Math.max(depth, MIN_DEPTH);
+        int level = levels[object];
+
+        while (level > 0 && errors[level] * pixelsPerError > pixelTolerance) {
+            level--;
+        }
+        while (level + 1 < errors.length && errors[level + 1] * pixelsPerError <= pixelTolerance * (1f - hysteresis)) {
+            level++;
+        }
+
+        levels[object] = level;
+        return level;
+    }
+
+    /**
+     * @return - The level picked by the last {@link #select} of the object.
+     */
+    public int getLevel(int object) {
+        return levels[object];
+    }
+}
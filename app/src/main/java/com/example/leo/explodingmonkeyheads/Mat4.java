@@ -0,0 +1,176 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+/**
+ * The subset of {@link android.opengl.Matrix} used by the renderer, with the same
+ * signatures and column-major layout. It's plain Java so the frame loop can run on the
+ * JVM, where android.opengl.Matrix is only a stub, and none of the methods allocate.
+ */
+public final class Mat4 {
+    private Mat4() { }
+
+    public static void setIdentityM(float[] m, int offset) {
+        for (int i = 0; i < 16; i++) {
+            m[offset + i] = (i % 5 == 0) ? 1f : 0f;
+        }
+    }
+
+    /**
+     * Multiplies m by a translation matrix in place, m = m * T.
+     */
+    public static void translateM(float[] m, int offset, float x, float y, float z) {
+        for (int i = 0; i < 4; i++) {
+            m[offset + 12 + i] += m[offset + i] * x + m[offset + 4 + i] * y + m[offset + 8 + i] * z;
+        }
+    }
+
+    /**
+     * Multiplies m by a rotation matrix in place, m = m * R.
+     *
+     * @param a - Angle in degrees.
+     */
+    public static void rotateM(float[] m, int offset, float a, float x, float y, float z) {
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        if (length == 0f) {
+            return;
+        }
+        x /= length;
+        y /= length;
+        z /= length;
+
+        float radians = (float) Math.toRadians(a);
+        float s = (float) Math.sin(radians);
+        float c = (float) Math.cos(radians);
+        float nc = 1f - c;
+
+        // rows of the 3x3 rotation, as built by Matrix.setRotateM
+        float r00 = x * x * nc + c, r01 = x * y * nc - z * s, r02 = x * z * nc + y * s;
+        float r10 = y * x * nc + z * s, r11 = y * y * nc + c, r12 = y * z * nc - x * s;
+        float r20 = z * x * nc - y * s, r21 = z * y * nc + x * s, r22 = z * z * nc + c;
+
+        // only the first three columns of m change
+        for (int i = 0; i < 4; i++) {
+            float m0 = m[offset + i], m1 = m[offset + 4 + i], m2 = m[offset + 8 + i];
+            m[offset + i] = m0 * r00 + m1 * r10 + m2 * r20;
+            m[offset + 4 + i] = m0 * r01 + m1 * r11 + m2 * r21;
+            m[offset + 8 + i] = m0 * r02 + m1 * r12 + m2 * r22;
+        }
+    }
+
+    public static void frustumM(float[] m, int offset, float left, float right, float bottom, float top,
+                                float near, float far) {
+        if (left == right || top == bottom || near == far || near <= 0f || far <= 0f) {
+            throw new IllegalArgumentException("invalid frustum");
+        }
+
+        float width = 1f / (right - left);
+        float height = 1f / (top - bottom);
+        float depth = 1f / (near - far);
+
+        setIdentityM(m, offset);
+        m[offset] = 2f * near * width;
+        m[offset + 5] = 2f * near * height;
+        m[offset + 8] = (right + left) * width;
+        m[offset + 9] = (top + bottom) * height;
+        m[offset + 10] = (far + near) * depth;
+        m[offset + 11] = -1f;
+        m[offset + 14] = 2f * far * near * depth;
+        m[offset + 15] = 0f;
+    }
+
+    /**
+     * result = lhs * rhs for a column vector rhs of 4 floats, result must not overlap either operand.
+     */
+    public static void multiplyMV(float[] result, int resultOffset, float[] lhs, int lhsOffset,
+                                  float[] rhs, int rhsOffset) {
+        float x = rhs[rhsOffset], y = rhs[rhsOffset + 1], z = rhs[rhsOffset + 2], w = rhs[rhsOffset + 3];
+        for (int row = 0; row < 4; row++) {
+            result[resultOffset + row] = lhs[lhsOffset + row] * x + lhs[lhsOffset + 4 + row] * y
+                    + lhs[lhsOffset + 8 + row] * z + lhs[lhsOffset + 12 + row] * w;
+        }
+    }
+
+    /**
+     * Inverts m into mInv with cofactors, mInv must not overlap m.
+     *
+     * @return - False, leaving mInv untouched, if m is singular.
+     */
+    public static boolean invertM(float[] mInv, int mInvOffset, float[] m, int mOffset) {
+        float m00 = m[mOffset], m01 = m[mOffset + 1], m02 = m[mOffset + 2], m03 = m[mOffset + 3];
+        float m10 = m[mOffset + 4], m11 = m[mOffset + 5], m12 = m[mOffset + 6], m13 = m[mOffset + 7];
+        float m20 = m[mOffset + 8], m21 = m[mOffset + 9], m22 = m[mOffset + 10], m23 = m[mOffset + 11];
+        float m30 = m[mOffset + 12], m31 = m[mOffset + 13], m32 = m[mOffset + 14], m33 = m[mOffset + 15];
+
+        // 2x2 determinants of the first two and last two columns
+        float a0 = m00 * m11 - m01 * m10, a1 = m00 * m12 - m02 * m10, a2 = m00 * m13 - m03 * m10;
+        float a3 = m01 * m12 - m02 * m11, a4 = m01 * m13 - m03 * m11, a5 = m02 * m13 - m03 * m12;
+        float b0 = m20 * m31 - m21 * m30, b1 = m20 * m32 - m22 * m30, b2 = m20 * m33 - m23 * m30;
+        float b3 = m21 * m32 - m22 * m31, b4 = m21 * m33 - m23 * m31, b5 = m22 * m33 - m23 * m32;
+
+        float det = a0 * b5 - a1 * b4 + a2 * b3 + a3 * b2 - a4 * b1 + a5 * b0;
+        if (det == 0f) {
+            return false;
+        }
+        float invDet = 1f / det;
+
+        mInv[mInvOffset] = (m11 * b5 - m12 * b4 + m13 * b3) * invDet;
+        mInv[mInvOffset + 1] = (-m01 * b5 + m02 * b4 - m03 * b3) * invDet;
+        mInv[mInvOffset + 2] = (m31 * a5 - m32 * a4 + m33 * a3) * invDet;
+        mInv[mInvOffset + 3] = (-m21 * a5 + m22 * a4 - m23 * a3) * invDet;
+        mInv[mInvOffset + 4] = (-m10 * b5 + m12 * b2 - m13 * b1) * invDet;
+        mInv[mInvOffset + 5] = (m00 * b5 - m02 * b2 + m03 * b1) * invDet;
+        mInv[mInvOffset + 6] = (-m30 * a5 + m32 * a2 - m33 * a1) * invDet;
+        mInv[mInvOffset + 7] = (m20 * a5 - m22 * a2 + m23 * a1) * invDet;
+        mInv[mInvOffset + 8] = (m10 * b4 - m11 * b2 + m13 * b0) * invDet;
+        mInv[mInvOffset + 9] = (-m00 * b4 + m01 * b2 - m03 * b0) * invDet;
+        mInv[mInvOffset + 10] = (m30 * a4 - m31 * a2 + m33 * a0) * invDet;
+        mInv[mInvOffset + 11] = (-m20 * a4 + m21 * a2 - m23 * a0) * invDet;
+        mInv[mInvOffset + 12] = (-m10 * b3 + m11 * b1 - m12 * b0) * invDet;
+        mInv[mInvOffset + 13] = (m00 * b3 - m01 * b1 + m02 * b0) * invDet;
+        mInv[mInvOffset + 14] = (-m30 * a3 + m31 * a1 - m32 * a0) * invDet;
+        mInv[mInvOffset + 15] = (m20 * a3 - m21 * a1 + m22 * a0) * invDet;
+        return true;
+    }
+
+    /**
+     * result = lhs * rhs, result must not overlap either operand.
+     */
+    public static void multiplyMM(float[] result, int resultOffset, float[] lhs, int lhsOffset,
+                                  float[] rhs, int rhsOffset) {
+        for (int col = 0; col < 4; col++) {
+            float r0 = rhs[rhsOffset + col * 4], r1 = rhs[rhsOffset + col * 4 + 1],
+                    r2 = rhs[rhsOffset + col * 4 + 2], r3 = rhs[rhsOffset + col * 4 + 3];
+            for (int row = 0; row < 4; row++) {
+                result[resultOffset + col * 4 + row] = lhs[lhsOffset + row] * r0 + lhs[lhsOffset + 4 + row] * r1
+                        + lhs[lhsOffset + 8 + row] * r2 + lhs[lhsOffset + 12 + row] * r3;
+            }
+        }
+    }
+}
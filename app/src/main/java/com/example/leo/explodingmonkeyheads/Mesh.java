@@ -0,0 +1,150 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import android.opengl.GLES20;
+
+/**
+ * Vertex data of a mesh, stored interleaved (position xyz, normal xyz) in a
+ * native-order direct buffer that can be handed to OpenGL as it is. Indexed
+ * meshes also carry a triangle list of unsigned short (or int) indices.
+ */
+public class Mesh {
+    public static final int COORDS_PER_VERTEX = 3;
+    public static final int FLOATS_PER_VERTEX = COORDS_PER_VERTEX * 2; // position + normal
+    public static final int STRIDE = FLOATS_PER_VERTEX * 4; // 4 bytes per float
+    public static final int POSITION_OFFSET = 0;
+    public static final int NORMAL_OFFSET = COORDS_PER_VERTEX; // in floats
+
+    public static final VertexLayout LAYOUT = new VertexLayout()
+            .add("vPosition", COORDS_PER_VERTEX, GLES20.GL_FLOAT, false)
+            .add("vNormal", COORDS_PER_VERTEX, GLES20.GL_FLOAT, false);
+
+    private final FloatBuffer vertices;
+    private final int vertexCount;
+    private final Buffer indices;
+    private final int indexCount, indexType;
+
+    public Mesh(FloatBuffer vertices, int vertexCount) {
+        this(vertices, vertexCount, null, 0, 0);
+    }
+
+    /**
+     * @param indices - ShortBuffer or IntBuffer with the triangle list, or null.
+     * @param indexType - GL_UNSIGNED_SHORT or GL_UNSIGNED_INT, matching the buffer type.
+     */
+    public Mesh(FloatBuffer vertices, int vertexCount, Buffer indices, int indexCount, int indexType) {
+        if (vertices.capacity() < vertexCount * FLOATS_PER_VERTEX) {
+            throw new IllegalArgumentException("buffer too small for " + vertexCount + " vertices");
+        }
+        if (indices != null && indices.capacity() < indexCount) {
+            throw new IllegalArgumentException("buffer too small for " + indexCount + " indices");
+        }
+
+        this.vertices = vertices;
+        this.vertexCount = vertexCount;
+        this.indices = indices;
+        this.indexCount = indexCount;
+        this.indexType = indexType;
+    }
+
+    /**
+     * Builds a mesh out of separate position and normal arrays, as produced by the legacy
+     * comma-separated resources.
+     */
+    public static Mesh interleave(float[] positions, float[] normals) {
+        if (positions.length % COORDS_PER_VERTEX != 0 || positions.length != normals.length) {
+            throw new IllegalArgumentException("positions and normals must have the same number of xyz triplets");
+        }
+
+        int vertexCount = positions.length / COORDS_PER_VERTEX;
+
+        ByteBuffer bb = ByteBuffer.allocateDirect(vertexCount * STRIDE);
+        bb.order(ByteOrder.nativeOrder());
+
+        FloatBuffer vertices = bb.asFloatBuffer();
+        for (int i = 0; i < positions.length; i += COORDS_PER_VERTEX) {
+            vertices.put(positions, i, COORDS_PER_VERTEX);
+            vertices.put(normals, i, COORDS_PER_VERTEX);
+        }
+        vertices.position(0);
+
+        return new Mesh(vertices, vertexCount);
+    }
+
+    /**
+     * @return - The interleaved vertex data, positioned at the first position component.
+     */
+    public FloatBuffer getVertices() {
+        return vertices;
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public boolean isIndexed() {
+        return indices != null;
+    }
+
+    /**
+     * @return - The index list positioned at its start, or null for non-indexed meshes.
+     */
+    public Buffer getIndices() {
+        return indices;
+    }
+
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    public int getIndexType() {
+        return indexType;
+    }
+
+    /**
+     * @return - Number of vertices the GPU has to process to draw the whole mesh.
+     */
+    public int getElementCount() {
+        return isIndexed() ? indexCount : vertexCount;
+    }
+
+    public float getPosition(int vertex, int component) {
+        return vertices.get(vertex * FLOATS_PER_VERTEX + POSITION_OFFSET + component);
+    }
+
+    public float getNormal(int vertex, int component) {
+        return vertices.get(vertex * FLOATS_PER_VERTEX + NORMAL_OFFSET + component);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+/**
+ * Local bounds of a mesh: its axis-aligned box, a bounding sphere and the longest
+ * normal, which is how fast the explosion shader pushes a vertex out per unit of time.
+ * Placing the sphere with a model matrix gives the world bounds of an object.
+ */
+public class MeshBounds {
+    public final float minX, minY, minZ, maxX, maxY, maxZ;
+    public final float centerX, centerY, centerZ, radius;
+    public final float maxNormalLength;
+
+    public MeshBounds(Mesh mesh) {
+        float x0 = Float.MAX_VALUE, y0 = Float.MAX_VALUE, z0 = Float.MAX_VALUE;
+        float x1 = -Float.MAX_VALUE, y1 = -Float.MAX_VALUE, z1 = -Float.MAX_VALUE;
+        float normalSquared = 0f;
+        for (int v = 0; v < mesh.getVertexCount(); v++) {
+            float x = mesh.getPosition(v, 0), y = mesh.getPosition(v, 1), z = mesh.getPosition(v, 2);
+            x0 = Math.min(x0, x);
+            y0 = Math.min(y0, y);
+            z0 = Math.min(z0, z);
+            x1 = Math.max(x1, x);
+            y1 = Math.max(y1, y);
+            z1 = Math.max(z1, z);
+
+            float nx = mesh.getNormal(v, 0), ny = mesh.getNormal(v, 1), nz = mesh.getNormal(v, 2);
+            normalSquared = Math.max(normalSquared, nx * nx + ny * ny + nz * nz);
+        }
+
+        if (mesh.getVertexCount() == 0) {
+            x0 = y0 = z0 = x1 = y1 = z1 = 0f;
+        }
+        minX = x0;
+        minY = y0;
+        minZ = z0;
+        maxX = x1;
+        maxY = y1;
+        maxZ = z1;
+        maxNormalLength = (float) Math.sqrt(normalSquared);
+
+        // the sphere around the box center is a bit loose but a single pass, good enough to cull
+        centerX = (x0 + x1) / 2f;
+        centerY = (y0 + y1) / 2f;
+        centerZ = (z0 + z1) / 2f;
+        float radiusSquared = 0f;
+        for (int v = 0; v < mesh.getVertexCount(); v++) {
+            float dx = mesh.getPosition(v, 0) - centerX;
+            float dy = mesh.getPosition(v, 1) - centerY;
+            float dz = mesh.getPosition(v, 2) - centerZ;
+            radiusSquared = Math.max(radiusSquared, dx * dx + dy * dy + dz * dz);
+        }
+        radius = (float) Math.sqrt(radiusSquared);
+    }
+
+    /**
+     * Places the bounding sphere in the space the model matrix maps into.
+     *
+     * @param m - Model matrix of the object.
+     * @param explosionTime - How far the explosion has gone, the sphere grows with it.
+     * @param result - Receives the center xyz and the radius.
+     */
+    public void transformSphere(float[] m, float explosionTime, float[] result) {
+        transformSphere(m, 0, explosionTime, result);
+    }
+
+    /**
+     * @param offset - Where the matrix starts in m, e.g. in the matrices of a {@link SceneStore}.
+     */
+    public void transformSphere(float[] m, int offset, float explosionTime, float[] result) {
+        float m0 = m[offset], m1 = m[offset + 1], m2 = m[offset + 2];
+        float m4 = m[offset + 4], m5 = m[offset + 5], m6 = m[offset + 6];
+        float m8 = m[offset + 8], m9 = m[offset + 9], m10 = m[offset + 10];
+        result[0] = m0 * centerX + m4 * centerY + m8 * centerZ + m[offset + 12];
+        result[1] = m1 * centerX + m5 * centerY + m9 * centerZ + m[offset + 13];
+        result[2] = m2 * centerX + m6 * centerY + m10 * centerZ + m[offset + 14];
+
+        // the largest axis scale, 1 for the rigid transforms of the heads
+        float scale = Math.max(m0 * m0 + m1 * m1 + m2 * m2,
+                Math.max(m4 * m4 + m5 * m5 + m6 * m6, m8 * m8 + m9 * m9 + m10 * m10));
+        result[3] = (radius + maxNormalLength * Math.abs(explosionTime)) * (float) Math.sqrt(scale);
+    }
+}
@@ -0,0 +1,218 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+import java.nio.Buffer;
+
+import android.opengl.GLES20;
+
+/**
+ * GPU-side copy of a {@link Mesh}: one interleaved vertex buffer object plus an
+ * element buffer for indexed meshes. The data is uploaded once and shared by every
+ * object drawn with the mesh, so draw calls no longer stream client-side arrays.
+ *
+ * <p>The vertices are uploaded either as the mesh stores them, or packed by a
+ * {@link QuantizedMesh} into half the memory (and bandwidth).</p>
+ *
+ * <p>Buffer ids belong to the EGL context that created them. When the context is
+ * lost (e.g. after onPause) they silently become invalid, so {@link #invalidate()}
+ * followed by {@link #upload()} must be called from onSurfaceCreated.</p>
+ */
+public class MeshBuffers {
+    private final GLStateCache state;
+    private final GLBackend gl;
+    private final Mesh mesh;
+    private final VertexLayout layout;
+    private final Buffer vertices;
+    private final QuantizedMesh quantized; // null for float vertices
+    private final int[] ids = new int[2];
+    private int vertexBufferId, indexBufferId; // 0 while not uploaded
+
+    public MeshBuffers(GLStateCache state, Mesh mesh, VertexLayout layout) {
+        if (layout.getStride() != Mesh.STRIDE) {
+            throw new IllegalArgumentException("layout doesn't match the mesh's vertex stride");
+        }
+
+        this.state = state;
+        this.gl = state.getBackend();
+        this.mesh = mesh;
+        this.layout = layout;
+        this.vertices = mesh.getVertices().duplicate().position(0);
+        this.quantized = null;
+    }
+
+    /**
+     * Uploads the packed vertices (in {@link QuantizedMesh#LAYOUT}) and the mesh's indices.
+     */
+    public MeshBuffers(GLStateCache state, QuantizedMesh quantized) {
+        this.state = state;
+        this.gl = state.getBackend();
+        this.mesh = quantized.getMesh();
+        this.layout = QuantizedMesh.LAYOUT;
+        this.vertices = quantized.getVertices().duplicate().position(0);
+        this.quantized = quantized;
+    }
+
+    public Mesh getMesh() {
+        return mesh;
+    }
+
+    public VertexLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * @return - The packed vertices, with the uniforms to decode them; null for float vertices.
+     */
+    public QuantizedMesh getQuantizedMesh() {
+        return quantized;
+    }
+
+    public boolean isUploaded() {
+        return vertexBufferId != 0;
+    }
+
+    /**
+     * Creates the buffer objects and uploads the mesh, unless that's already done.
+     */
+    public void upload() {
+        if (isUploaded()) {
+            return;
+        }
+
+        gl.glGenBuffers(mesh.isIndexed() ? 2 : 1, ids, 0);
+        vertexBufferId = ids[0];
+
+        state.bindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBufferId);
+        gl.glBufferData(GLES20.GL_ARRAY_BUFFER, mesh.getVertexCount() * layout.getStride(),
+                vertices, GLES20.GL_STATIC_DRAW);
+
+        if (mesh.isIndexed()) {
+            indexBufferId = ids[1];
+            state.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBufferId);
+            gl.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, mesh.getIndexCount() * getIndexSize(),
+                    mesh.getIndices(), GLES20.GL_STATIC_DRAW);
+        }
+
+        MonkeyHeadsRenderer.checkGlError(gl, "glBufferData");
+    }
+
+    /**
+     * Forgets the buffer ids without deleting them, for when the context that owned them is gone.
+     */
+    public void invalidate() {
+        vertexBufferId = indexBufferId = 0;
+    }
+
+    /**
+     * Deletes the buffer objects while the context is still alive.
+     */
+    public void release() {
+        if (!isUploaded()) {
+            return;
+        }
+
+        ids[0] = vertexBufferId;
+        ids[1] = indexBufferId;
+        gl.glDeleteBuffers(indexBufferId != 0 ? 2 : 1, ids, 0);
+        state.onBufferDeleted(vertexBufferId);
+        state.onBufferDeleted(indexBufferId);
+        invalidate();
+    }
+
+    /**
+     * Binds the buffers and points the given attribute locations at them. Through the
+     * state cache, binding the same buffers again for the next object is free.
+     *
+     * @param attributeLocations - Shader attribute location for each attribute of the
+     *                             layout, in layout order; -1 skips an attribute.
+     */
+    public void bind(int[] attributeLocations) {
+        state.bindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBufferId);
+
+        for (int i = 0; i < layout.getAttributeCount(); i++) {
+            if (attributeLocations[i] < 0) {
+                continue;
+            }
+
+            VertexLayout.Attribute a = layout.getAttribute(i);
+            state.enableVertexAttribArray(attributeLocations[i]);
+            state.vertexAttribPointer(attributeLocations[i], a.components, a.type, a.normalized,
+                    layout.getStride(), a.offset);
+        }
+
+        if (indexBufferId != 0) {
+            state.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBufferId);
+        }
+    }
+
+    /**
+     * Draws the whole mesh, the buffers must be bound.
+     */
+    public void draw() {
+        draw(0, mesh.getElementCount());
+    }
+
+    /**
+     * Draws part of the mesh, e.g. one level of a {@link MeshLods}; the buffers must be bound.
+     *
+     * @param first - First index, or first vertex for non-indexed meshes.
+     * @param count - Number of indices (or vertices) to draw.
+     */
+    public void draw(int first, int count) {
+        if (indexBufferId != 0) {
+            gl.glDrawElements(GLES20.GL_TRIANGLES, count, mesh.getIndexType(), first * getIndexSize());
+        } else {
+            gl.glDrawArrays(GLES20.GL_TRIANGLES, first, count);
+        }
+    }
+
+    /**
+     * Draws the mesh instanceCount times with a single call, GLES 3.0 only.
+     */
+    public void drawInstanced(int instanceCount) {
+        drawInstanced(0, mesh.getElementCount(), instanceCount);
+    }
+
+    /**
+     * Draws part of the mesh instanceCount times with a single call, GLES 3.0 only.
+     */
+    public void drawInstanced(int first, int count, int instanceCount) {
+        if (indexBufferId != 0) {
+            gl.glDrawElementsInstanced(GLES20.GL_TRIANGLES, count, mesh.getIndexType(), first * getIndexSize(),
+                    instanceCount);
+        } else {
+            gl.glDrawArraysInstanced(GLES20.GL_TRIANGLES, first, count, instanceCount);
+        }
+    }
+
+    private int getIndexSize() {
+        return mesh.getIndexType() == GLES20.GL_UNSIGNED_SHORT ? 2 : 4;
+    }
+}
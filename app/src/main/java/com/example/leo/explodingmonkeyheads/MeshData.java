@@ -0,0 +1,161 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+import android.opengl.GLES20;
+
+/**
+ * CPU-side copy of a mesh used by the offline processing steps (welding, cache
+ * optimization, ...): interleaved vertices in the same layout as {@link Mesh}
+ * plus an optional triangle list of indices.
+ */
+public class MeshData {
+    public final float[] vertices; // interleaved position + normal
+    public final int[] indices; // null for non-indexed meshes
+    public final int vertexCount;
+
+    public MeshData(float[] vertices, int[] indices) {
+        if (vertices.length % Mesh.FLOATS_PER_VERTEX != 0) {
+            throw new IllegalArgumentException("vertex data must hold whole vertices");
+        }
+        if (indices != null && indices.length % 3 != 0) {
+            throw new IllegalArgumentException("indices must describe whole triangles");
+        }
+
+        this.vertices = vertices;
+        this.indices = indices;
+        this.vertexCount = vertices.length / Mesh.FLOATS_PER_VERTEX;
+    }
+
+    /**
+     * Interleaves separate position and normal arrays into a non-indexed mesh.
+     */
+    public static MeshData fromArrays(float[] positions, float[] normals) {
+        if (positions.length % Mesh.COORDS_PER_VERTEX != 0 || positions.length != normals.length) {
+            throw new IllegalArgumentException("positions and normals must have the same number of xyz triplets");
+        }
+
+        float[] vertices = new float[positions.length * 2];
+        for (int i = 0, v = 0; i < positions.length; i += Mesh.COORDS_PER_VERTEX, v += Mesh.FLOATS_PER_VERTEX) {
+            System.arraycopy(positions, i, vertices, v + Mesh.POSITION_OFFSET, Mesh.COORDS_PER_VERTEX);
+            System.arraycopy(normals, i, vertices, v + Mesh.NORMAL_OFFSET, Mesh.COORDS_PER_VERTEX);
+        }
+
+        return new MeshData(vertices, null);
+    }
+
+    /**
+     * Reads a GL-ready mesh back into arrays.
+     */
+    public static MeshData fromMesh(Mesh mesh) {
+        float[] vertices = new float[mesh.getVertexCount() * Mesh.FLOATS_PER_VERTEX];
+        FloatBuffer source = mesh.getVertices().duplicate();
+        source.position(0);
+        source.get(vertices);
+
+        if (!mesh.isIndexed()) {
+            return new MeshData(vertices, null);
+        }
+
+        int[] indices = new int[mesh.getIndexCount()];
+        if (mesh.getIndices() instanceof ShortBuffer) {
+            ShortBuffer sb = (ShortBuffer) mesh.getIndices();
+            for (int i = 0; i < indices.length; i++) {
+                indices[i] = sb.get(i) & 0xFFFF;
+            }
+        } else {
+            IntBuffer ib = (IntBuffer) mesh.getIndices();
+            for (int i = 0; i < indices.length; i++) {
+                indices[i] = ib.get(i);
+            }
+        }
+        return new MeshData(vertices, indices);
+    }
+
+    public boolean isIndexed() {
+        return indices != null;
+    }
+
+    public int getTriangleCount() {
+        return (isIndexed() ? indices.length : vertexCount) / 3;
+    }
+
+    /**
+     * @return - The vertex referenced by the given corner of the triangle list.
+     */
+    public int vertexAt(int corner) {
+        return isIndexed() ? indices[corner] : corner;
+    }
+
+    /**
+     * GLES 2.0 only guarantees 16 bits indices, larger meshes need OES_element_index_uint.
+     */
+    public int getIndexType() {
+        return vertexCount <= 0x10000 ? GLES20.GL_UNSIGNED_SHORT : GLES20.GL_UNSIGNED_INT;
+    }
+
+    /**
+     * Copies the data into native-order direct buffers ready to be drawn.
+     */
+    public Mesh toMesh() {
+        FloatBuffer vertexBuffer = ByteBuffer.allocateDirect(vertices.length * 4)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        vertexBuffer.put(vertices);
+        vertexBuffer.position(0);
+
+        if (!isIndexed()) {
+            return new Mesh(vertexBuffer, vertexCount);
+        }
+
+        Buffer indexBuffer;
+        if (getIndexType() == GLES20.GL_UNSIGNED_SHORT) {
+            ShortBuffer sb = ByteBuffer.allocateDirect(indices.length * 2)
+                    .order(ByteOrder.nativeOrder()).asShortBuffer();
+            for (int index : indices) {
+                sb.put((short) index);
+            }
+            indexBuffer = sb;
+        } else {
+            IntBuffer ib = ByteBuffer.allocateDirect(indices.length * 4)
+                    .order(ByteOrder.nativeOrder()).asIntBuffer();
+            ib.put(indices);
+            indexBuffer = ib;
+        }
+        indexBuffer.position(0);
+
+        return new Mesh(vertexBuffer, vertexCount, indexBuffer, indices.length, getIndexType());
+    }
+}
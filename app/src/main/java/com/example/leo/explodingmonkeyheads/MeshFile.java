@@ -0,0 +1,304 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+import android.opengl.GLES20;
+
+/**
+ * Reads and writes the binary mesh format used by the res/raw/*.mesh resources.
+ *
+ * <p>All values are little-endian. A 32 bytes header is followed by the interleaved
+ * vertex data and, for indexed meshes, the triangle list:</p>
+ *
+ * <pre>
+ *  0  int    magic ("EMSH")
+ *  4  short  format version
+ *  6  short  number of attributes (up to 4)
+ *  8  int    vertex count
+ * 12  int    vertex stride in bytes
+ * 16  byte[] attribute layout, one (semantic, components) pair per attribute
+ * 24  int    FNV-1a checksum of the vertex and index data
+ * 28  int    index count (always 0 in version 1 files)
+ * 32  float  vertex data, vertexCount * stride bytes
+ *  .  ushort indices, or uint when vertexCount exceeds 65536, padded to 4 bytes
+ * </pre>
+ *
+ * Since the payload is already laid out the way OpenGL expects it, the loader can
+ * map the file and hand the buffer to glVertexAttribPointer without parsing anything.
+ */
+public class MeshFile {
+    public static final int MAGIC = 0x48534D45; // "EMSH" read as a little-endian int
+    public static final int VERSION = 2;
+    public static final int HEADER_SIZE = 32;
+
+    public static final int SEMANTIC_POSITION = 1;
+    public static final int SEMANTIC_NORMAL = 2;
+
+    static final int CHECKSUM_OFFSET = 24;
+    static final int INDEX_COUNT_OFFSET = 28;
+
+    private MeshFile() { }
+
+    /**
+     * Writes the given positions and normals (3 floats per vertex each) interleaved
+     * into the binary mesh format.
+     */
+    public static void write(OutputStream out, float[] positions, float[] normals) throws IOException {
+        write(out, MeshData.fromArrays(positions, normals));
+    }
+
+    /**
+     * Writes a (possibly indexed) mesh into the binary mesh format.
+     */
+    public static void write(OutputStream out, MeshData mesh) throws IOException {
+        int vertexCount = mesh.vertexCount;
+        int stride = Mesh.STRIDE;
+        int indexCount = mesh.isIndexed() ? mesh.indices.length : 0;
+
+        ByteBuffer payload = ByteBuffer.allocate(payloadSize(vertexCount, indexCount))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (float value : mesh.vertices) {
+            payload.putFloat(value);
+        }
+        for (int i = 0; i < indexCount; i++) {
+            if (mesh.getIndexType() == GLES20.GL_UNSIGNED_SHORT) {
+                payload.putShort((short) mesh.indices[i]);
+            } else {
+                payload.putInt(mesh.indices[i]);
+            }
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putShort((short) VERSION);
+        header.putShort((short) 2);
+        header.putInt(vertexCount);
+        header.putInt(stride);
+        header.put((byte) SEMANTIC_POSITION).put((byte) 3);
+        header.put((byte) SEMANTIC_NORMAL).put((byte) 3);
+        header.position(CHECKSUM_OFFSET);
+        header.putInt(checksum(payload, 0, payload.capacity()));
+        header.putInt(indexCount);
+
+        out.write(header.array());
+        out.write(payload.array());
+        out.flush();
+    }
+
+    /**
+     * Maps a mesh straight from a file, e.g. an uncompressed raw resource. On little-endian
+     * devices (that is, nearly all of them) the mapped pages are used as the vertex buffer
+     * as they are; otherwise the data is copied once into a native-order direct buffer.
+     */
+    public static Mesh map(FileChannel channel, long offset, long length) throws IOException {
+        ByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        file.order(ByteOrder.LITTLE_ENDIAN);
+
+        return fromBuffer(file);
+    }
+
+    /**
+     * Reads a mesh from a stream (used when the resource is compressed and cannot be mapped).
+     * The vertex data is read directly into a native-order direct buffer.
+     */
+    public static Mesh read(InputStream in) throws IOException {
+        ReadableByteChannel channel = Channels.newChannel(in);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, header);
+        header.flip();
+        int payloadSize = validateHeader(header);
+
+        ByteBuffer payload = ByteBuffer.allocateDirect(payloadSize).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, payload);
+        payload.flip();
+
+        verifyChecksum(header, payload);
+
+        return toMesh(header, payload);
+    }
+
+    static Mesh fromBuffer(ByteBuffer file) throws IOException {
+        if (file.remaining() < HEADER_SIZE) {
+            throw new IOException("mesh file is too short: " + file.remaining() + " bytes");
+        }
+
+        ByteBuffer header = file.duplicate();
+        header.limit(header.position() + HEADER_SIZE);
+        header = header.slice().order(ByteOrder.LITTLE_ENDIAN);
+        int payloadSize = validateHeader(header);
+
+        if (file.remaining() - HEADER_SIZE < payloadSize) {
+            throw new IOException("mesh file is truncated, expected " + payloadSize + " bytes of vertex data");
+        }
+
+        ByteBuffer payload = file.duplicate();
+        payload.position(file.position() + HEADER_SIZE);
+        payload.limit(payload.position() + payloadSize);
+        payload = payload.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+        verifyChecksum(header, payload);
+
+        return toMesh(header, payload);
+    }
+
+    /**
+     * Validates the header and returns the size of the vertex data in bytes.
+     */
+    private static int validateHeader(ByteBuffer header) throws IOException {
+        int magic = header.getInt(0);
+        if (magic != MAGIC) {
+            throw new IOException("not a mesh file, bad magic 0x" + Integer.toHexString(magic));
+        }
+
+        int version = header.getShort(4);
+        if (version < 1 || version > VERSION) {
+            throw new IOException("unsupported mesh format version " + version);
+        }
+
+        int attributeCount = header.getShort(6);
+        if (attributeCount != 2
+                || header.get(16) != SEMANTIC_POSITION || header.get(17) != 3
+                || header.get(18) != SEMANTIC_NORMAL || header.get(19) != 3) {
+            throw new IOException("unsupported attribute layout, expected position(3) + normal(3)");
+        }
+
+        int vertexCount = header.getInt(8);
+        int stride = header.getInt(12);
+        if (vertexCount < 0 || stride != Mesh.STRIDE) {
+            throw new IOException("invalid vertex count " + vertexCount + " or stride " + stride);
+        }
+
+        int indexCount = header.getInt(INDEX_COUNT_OFFSET);
+        if (indexCount < 0 || indexCount % 3 != 0) {
+            throw new IOException("invalid index count " + indexCount);
+        }
+
+        return payloadSize(vertexCount, indexCount);
+    }
+
+    private static int indexSize(int vertexCount) {
+        return vertexCount <= 0x10000 ? 2 : 4;
+    }
+
+    private static int payloadSize(int vertexCount, int indexCount) {
+        int indexBytes = (indexCount * indexSize(vertexCount) + 3) & ~3;
+        return vertexCount * Mesh.STRIDE + indexBytes;
+    }
+
+    private static void verifyChecksum(ByteBuffer header, ByteBuffer payload) throws IOException {
+        int expected = header.getInt(CHECKSUM_OFFSET);
+        int actual = checksum(payload, payload.position(), payload.limit());
+
+        if (expected != actual) {
+            throw new IOException("mesh checksum mismatch, the file is corrupted");
+        }
+    }
+
+    private static Mesh toMesh(ByteBuffer header, ByteBuffer payload) {
+        if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN || !payload.isDirect()) {
+            // byte-swap (or just move into direct memory) once, GL needs native-order direct buffers
+            payload = toNativeOrder(header, payload);
+        }
+        payload.order(ByteOrder.nativeOrder());
+
+        int vertexCount = header.getInt(8);
+        int indexCount = header.getInt(INDEX_COUNT_OFFSET);
+        int vertexBytes = vertexCount * Mesh.STRIDE;
+
+        ByteBuffer vertexData = payload.duplicate();
+        vertexData.limit(vertexData.position() + vertexBytes);
+        FloatBuffer vertices = vertexData.slice().order(ByteOrder.nativeOrder()).asFloatBuffer();
+
+        if (indexCount == 0) {
+            return new Mesh(vertices, vertexCount);
+        }
+
+        ByteBuffer indexData = payload.duplicate();
+        indexData.position(indexData.position() + vertexBytes);
+        indexData = indexData.slice().order(ByteOrder.nativeOrder());
+
+        if (indexSize(vertexCount) == 2) {
+            return new Mesh(vertices, vertexCount, indexData.asShortBuffer(), indexCount, GLES20.GL_UNSIGNED_SHORT);
+        }
+        return new Mesh(vertices, vertexCount, indexData.asIntBuffer(), indexCount, GLES20.GL_UNSIGNED_INT);
+    }
+
+    private static ByteBuffer toNativeOrder(ByteBuffer header, ByteBuffer payload) {
+        int vertexBytes = header.getInt(8) * Mesh.STRIDE;
+        int indexSize = indexSize(header.getInt(8));
+
+        ByteBuffer source = payload.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer copy = ByteBuffer.allocateDirect(source.remaining()).order(ByteOrder.nativeOrder());
+
+        int start = source.position();
+        for (int i = 0; i < vertexBytes; i += 4) {
+            copy.putFloat(i, source.getFloat(start + i));
+        }
+        for (int i = vertexBytes; i + indexSize <= source.remaining(); i += indexSize) {
+            if (indexSize == 2) {
+                copy.putShort(i, source.getShort(start + i));
+            } else {
+                copy.putInt(i, source.getInt(start + i));
+            }
+        }
+
+        return copy;
+    }
+
+    /**
+     * 32 bits FNV-1a hash, cheap enough to run over the mapped data without copying it.
+     */
+    static int checksum(ByteBuffer buffer, int from, int to) {
+        int hash = 0x811C9DC5;
+        for (int i = from; i < to; i++) {
+            hash ^= buffer.get(i) & 0xFF;
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+
+    private static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("unexpected end of mesh data");
+            }
+        }
+    }
+}
@@ -0,0 +1,311 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+import java.util.Arrays;
+
+/**
+ * Offline mesh processing: turns the fully de-indexed triangle soup exported from Blender
+ * into an indexed mesh that the GPU can draw with fewer vertex shader invocations.
+ *
+ * <ol>
+ * <li>{@link #weld} merges vertices whose position and normal are bitwise identical.</li>
+ * <li>{@link #optimizeVertexCache} reorders the triangles so that consecutive triangles
+ * reuse the vertices left in the post-transform cache (Tom Forsyth's "Linear-Speed
+ * Vertex Cache Optimisation").</li>
+ * <li>{@link #optimizeVertexFetch} renumbers the vertices in the order they are first
+ * used, so the vertex fetch walks memory mostly sequentially.</li>
+ * </ol>
+ *
+ * None of the steps changes the set of triangles or their winding.
+ */
+public class MeshIndexer {
+    // Forsyth's scoring constants, tuned for a 32 entries LRU cache
+    static final int CACHE_SIZE = 32;
+    static final float CACHE_DECAY_POWER = 1.5f;
+    static final float LAST_TRIANGLE_SCORE = 0.75f;
+    static final float VALENCE_BOOST_SCALE = 2.0f;
+    static final float VALENCE_BOOST_POWER = 0.5f;
+
+    // a typical FIFO post-transform cache size on mobile GPUs, used to report the ACMR
+    public static final int REPORTED_CACHE_SIZE = 16;
+
+    private MeshIndexer() { }
+
+    /**
+     * Runs the whole pipeline: weld, optimize for the vertex cache, then for vertex fetch.
+     */
+    public static MeshData process(MeshData mesh) {
+        MeshData welded = weld(mesh);
+        int[] indices = optimizeVertexCache(welded.indices, welded.vertexCount);
+
+        return optimizeVertexFetch(new MeshData(welded.vertices, indices));
+    }
+
+    /**
+     * Builds a table of unique vertices (identical position and normal) and an index
+     * buffer referencing it. Works on both indexed and non-indexed input.
+     */
+    public static MeshData weld(MeshData mesh) {
+        final int stride = Mesh.FLOATS_PER_VERTEX;
+        int corners = mesh.getTriangleCount() * 3;
+
+        int[] indices = new int[corners];
+        float[] unique = new float[mesh.vertexCount * stride];
+        int uniqueCount = 0;
+
+        // open addressing table of unique vertex ids, sized to stay at most half full
+        int capacity = Integer.highestOneBit(Math.max(mesh.vertexCount, 1) * 2) * 2;
+        int[] table = new int[capacity];
+        Arrays.fill(table, -1);
+
+        for (int c = 0; c < corners; c++) {
+            int src = mesh.vertexAt(c) * stride;
+            int slot = hash(mesh.vertices, src) & (capacity - 1);
+
+            while (true) {
+                int candidate = table[slot];
+
+                if (candidate == -1) {
+                    System.arraycopy(mesh.vertices, src, unique, uniqueCount * stride, stride);
+                    table[slot] = uniqueCount;
+                    indices[c] = uniqueCount++;
+                    break;
+                }
+                if (sameVertex(mesh.vertices, src, unique, candidate * stride)) {
+                    indices[c] = candidate;
+                    break;
+                }
+
+                slot = (slot + 1) & (capacity - 1);
+            }
+        }
+
+        return new MeshData(Arrays.copyOf(unique, uniqueCount * stride), indices);
+    }
+
+    private static int hash(float[] vertices, int offset) {
+        int h = 0;
+        for (int i = 0; i < Mesh.FLOATS_PER_VERTEX; i++) {
+            h = h * 31 + Float.floatToIntBits(vertices[offset + i]);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean sameVertex(float[] a, int aOffset, float[] b, int bOffset) {
+        for (int i = 0; i < Mesh.FLOATS_PER_VERTEX; i++) {
+            if (Float.floatToIntBits(a[aOffset + i]) != Float.floatToIntBits(b[bOffset + i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reorders the triangles of an index buffer for post-transform cache locality.
+     *
+     * @return - A new index buffer with the same triangles in a cache friendly order.
+     */
+    public static int[] optimizeVertexCache(int[] indices, int vertexCount) {
+        int triangleCount = indices.length / 3;
+
+        // triangles adjacent to each vertex, the live ones are kept at the front of each range
+        int[] offsets = new int[vertexCount + 1];
+        for (int index : indices) {
+            offsets[index + 1]++;
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+
+        int[] remaining = new int[vertexCount];
+        int[] adjacency = new int[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            int v = indices[i];
+            adjacency[offsets[v] + remaining[v]++] = i / 3;
+        }
+
+        int[] cachePosition = new int[vertexCount];
+        Arrays.fill(cachePosition, -1);
+
+        float[] vertexScore = new float[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            vertexScore[v] = score(-1, remaining[v]);
+        }
+
+        boolean[] emitted = new boolean[triangleCount];
+        int[] output = new int[indices.length];
+        int[] cache = new int[CACHE_SIZE + 3], newCache = new int[CACHE_SIZE + 3];
+        int cacheCount = 0;
+        int scanCursor = 0;
+        int best = -1;
+
+        for (int emittedCount = 0; emittedCount < triangleCount; emittedCount++) {
+            if (best < 0) {
+                // dead end, nothing in the cache has triangles left: continue in input order
+                while (emitted[scanCursor]) {
+                    scanCursor++;
+                }
+                best = scanCursor;
+            }
+
+            emitted[best] = true;
+            System.arraycopy(indices, best * 3, output, emittedCount * 3, 3);
+
+            int newCount = 0;
+            for (int k = 0; k < 3; k++) {
+                int v = indices[best * 3 + k];
+
+                // remove the triangle from the vertex's live adjacency
+                int start = offsets[v], end = start + remaining[v];
+                for (int a = start; a < end; a++) {
+                    if (adjacency[a] == best) {
+                        adjacency[a] = adjacency[end - 1];
+                        adjacency[end - 1] = best;
+                        break;
+                    }
+                }
+                remaining[v]--;
+
+                newCache[newCount++] = v;
+            }
+
+            // the previous cache content moves back behind the triangle's vertices
+            for (int i = 0; i < cacheCount; i++) {
+                int v = cache[i];
+                if (v != newCache[0] && v != newCache[1] && v != newCache[2]) {
+                    newCache[newCount++] = v;
+                }
+            }
+
+            for (int i = 0; i < newCount; i++) {
+                int v = newCache[i];
+                cachePosition[v] = i < CACHE_SIZE ? i : -1;
+                vertexScore[v] = score(cachePosition[v], remaining[v]);
+            }
+
+            // rescore the live triangles touching the cache and pick the best one
+            best = -1;
+            float bestScore = -1f;
+            for (int i = 0; i < newCount; i++) {
+                int v = newCache[i];
+                for (int a = offsets[v], end = offsets[v] + remaining[v]; a < end; a++) {
+                    int t = adjacency[a];
+                    float s = vertexScore[indices[t * 3]] + vertexScore[indices[t * 3 + 1]]
+                            + vertexScore[indices[t * 3 + 2]];
+
+                    if (s > bestScore) {
+                        bestScore = s;
+                        best = t;
+                    }
+                }
+            }
+
+            int[] swap = cache;
+            cache = newCache;
+            newCache = swap;
+            cacheCount = Math.min(newCount, CACHE_SIZE);
+        }
+
+        return output;
+    }
+
+    static float score(int cachePosition, int remainingTriangles) {
+        if (remainingTriangles == 0) {
+            return -1f; // nothing left to draw with this vertex
+        }
+
+        float score = 0f;
+        if (cachePosition >= 0) {
+            if (cachePosition < 3) {
+                // used by the last triangle, deliberately a bit lower so strips don't dominate
+                score = LAST_TRIANGLE_SCORE;
+            } else {
+                float scaler = 1f / (CACHE_SIZE - 3);
+                score = (float) Math.pow(1f - (cachePosition - 3) * scaler, CACHE_DECAY_POWER);
+            }
+        }
+
+        // boost vertices with few triangles left, so they get finished and leave the cache
+        score += VALENCE_BOOST_SCALE * (float) Math.pow(remainingTriangles, -VALENCE_BOOST_POWER);
+        return score;
+    }
+
+    /**
+     * Renumbers the vertices in the order the index buffer first references them and
+     * drops unreferenced ones.
+     */
+    public static MeshData optimizeVertexFetch(MeshData mesh) {
+        final int stride = Mesh.FLOATS_PER_VERTEX;
+
+        int[] remap = new int[mesh.vertexCount];
+        Arrays.fill(remap, -1);
+
+        int[] indices = new int[mesh.indices.length];
+        float[] vertices = new float[mesh.vertices.length];
+        int next = 0;
+
+        for (int i = 0; i < indices.length; i++) {
+            int v = mesh.indices[i];
+            if (remap[v] < 0) {
+                System.arraycopy(mesh.vertices, v * stride, vertices, next * stride, stride);
+                remap[v] = next++;
+            }
+            indices[i] = remap[v];
+        }
+
+        return new MeshData(Arrays.copyOf(vertices, next * stride), indices);
+    }
+
+    /**
+     * Average cache miss ratio: vertices transformed per triangle with a FIFO
+     * post-transform cache of the given size. 3.0 means no reuse at all, 0.5 is the
+     * theoretical best for large regular meshes.
+     */
+    public static float acmr(MeshData mesh, int cacheSize) {
+        int corners = mesh.getTriangleCount() * 3;
+        if (corners == 0) {
+            return 0f;
+        }
+
+        // a vertex is in the FIFO if fewer than cacheSize misses happened since it was loaded
+        int[] loadedAt = new int[mesh.vertexCount];
+        Arrays.fill(loadedAt, Integer.MIN_VALUE / 2);
+        int misses = 0;
+
+        for (int c = 0; c < corners; c++) {
+            int v = mesh.vertexAt(c);
+            if (misses - loadedAt[v] >= cacheSize) {
+                loadedAt[v] = misses++;
+            }
+        }
+
+        return misses / (float) (corners / 3);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+/**
+ * Levels of detail of a mesh, all packed into one {@link Mesh} so they share a vertex
+ * and an index buffer: level 0 is the mesh itself, every further level has about half
+ * the triangles of the previous one (see {@link MeshSimplifier}) and is drawn from its
+ * own range of the index buffer.
+ */
+public class MeshLods {
+    public static final int DEFAULT_LEVEL_COUNT = 4;
+
+    // a level must save at least this fraction of the previous one's triangles to be kept
+    static final float MIN_REDUCTION = 0.15f;
+
+    private final Mesh base, mesh;
+    private final int[] firstIndex, indexCount, triangleCount;
+    private final float[] errors;
+
+    private MeshLods(Mesh base, Mesh mesh, int[] firstIndex, int[] indexCount, int[] triangleCount, float[] errors) {
+        this.base = base;
+        this.mesh = mesh;
+        this.firstIndex = firstIndex;
+        this.indexCount = indexCount;
+        this.triangleCount = triangleCount;
+        this.errors = errors;
+    }
+
+    /**
+     * A single level, the mesh as it is.
+     */
+    public static MeshLods single(Mesh mesh) {
+        int elements = mesh.getElementCount();
+        return new MeshLods(mesh, mesh, new int[] {0}, new int[] {elements}, new int[] {elements / 3},
+                new float[] {0f});
+    }
+
+    /**
+     * Simplifies the mesh into up to levelCount levels, halving the triangles every time.
+     * Takes a few tens of milliseconds for the monkey head, so it belongs on a loader thread.
+     *
+     * @param levelCount - Levels wanted, including the mesh itself; fewer are built when the
+     *                     simplifier can't get rid of enough triangles anymore.
+     */
+    public static MeshLods build(Mesh mesh, int levelCount) {
+        MeshData base = MeshData.fromMesh(mesh);
+        if (!base.isIndexed()) {
+            base = MeshIndexer.weld(base); // the levels are drawn from index ranges
+        }
+
+        MeshData[] levels = new MeshData[levelCount];
+        float[] errors = new float[levelCount];
+        levels[0] = base;
+        int count = 1;
+
+        for (int level = 1; level < levelCount; level++) {
+            int previous = levels[count - 1].getTriangleCount();
+            MeshData simplified = MeshSimplifier.simplify(base, base.getTriangleCount() >> level,
+                    Float.POSITIVE_INFINITY);
+            if (simplified.getTriangleCount() == 0 || simplified.getTriangleCount() > previous * (1f - MIN_REDUCTION)) {
+                break;
+            }
+
+            levels[count] = simplified;
+            // coarser levels must never claim to be closer, the selection relies on it
+            errors[count] = Math.max(errors[count - 1], MeshSimplifier.measureError(base, simplified));
+            count++;
+        }
+
+        return pack(mesh, levels, errors, count);
+    }
+
+    /**
+     * Concatenates the levels' vertices, and their indices rebased onto the shared vertex
+     * buffer. Level 0 comes first and unchanged, so the packed mesh starts with the base mesh.
+     */
+    private static MeshLods pack(Mesh base, MeshData[] levels, float[] errors, int count) {
+        int vertexFloats = 0, indices = 0;
+        for (int level = 0; level < count; level++) {
+            vertexFloats += levels[level].vertices.length;
+            indices += levels[level].indices.length;
+        }
+
+        float[] packedVertices = new float[vertexFloats];
+        int[] packedIndices = new int[indices];
+        int[] firstIndex = new int[count], indexCount = new int[count], triangleCount = new int[count];
+        int vertexOffset = 0, indexOffset = 0;
+
+        for (int level = 0; level < count; level++) {
+            MeshData data = levels[level];
+            System.arraycopy(data.vertices, 0, packedVertices, vertexOffset * Mesh.FLOATS_PER_VERTEX,
+                    data.vertices.length);
+            for (int i = 0; i < data.indices.length; i++) {
+                packedIndices[indexOffset + i] = data.indices[i] + vertexOffset;
+            }
+
+            firstIndex[level] = indexOffset;
+            indexCount[level] = data.indices.length;
+            triangleCount[level] = data.getTriangleCount();
+            vertexOffset += data.vertexCount;
+            indexOffset += data.indices.length;
+        }
+
+        Mesh packed = new MeshData(packedVertices, packedIndices).toMesh();
+        float[] levelErrors = new float[count];
+        System.arraycopy(errors, 0, levelErrors, 0, count);
+        return new MeshLods(base, packed, firstIndex, indexCount, triangleCount, levelErrors);
+    }
+
+    /**
+     * @return - The mesh the levels were built from, e.g. for picking and bounds.
+     */
+    public Mesh getBase() {
+        return base;
+    }
+
+    /**
+     * @return - Every level in one mesh, the one to upload.
+     */
+    public Mesh getMesh() {
+        return mesh;
+    }
+
+    public int getLevelCount() {
+        return firstIndex.length;
+    }
+
+    /**
+     * @return - Where the level starts in the index buffer (in the vertices for non-indexed meshes).
+     */
+    public int getFirstIndex(int level) {
+        return firstIndex[level];
+    }
+
+    public int getIndexCount(int level) {
+        return indexCount[level];
+    }
+
+    public int getTriangleCount(int level) {
+        return triangleCount[level];
+    }
+
+    /**
+     * @return - How far, in mesh units, the level's surface strays from the base mesh's.
+     */
+    public float getError(int level) {
+        return errors[level];
+    }
+
+    /**
+     * @return - A copy of the errors of all levels, finest first.
+     */
+    public float[] getErrors() {
+        return errors.clone();
+    }
+}
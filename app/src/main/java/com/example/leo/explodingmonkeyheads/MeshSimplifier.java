@@ -0,0 +1,681 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Mesh decimation by edge collapses ordered by quadric error metrics (Garland and
+ * Heckbert, "Surface Simplification Using Quadric Error Metrics"), used to build the
+ * coarser levels of detail of a mesh, see {@link MeshLods}.
+ *
+ * <p>The exported mesh is flat shaded, so hardly any vertex is shared between two
+ * triangles. The simplifier works on the mesh welded by position instead, where each
+ * vertex accumulates the planes of its triangles, and writes the result back flat
+ * shaded with face normals: exploded heads still break into separate triangles.</p>
+ *
+ * <p>Collapses that would flip a triangle or pinch the surface are skipped, and the
+ * open borders (e.g. around the eyes) are held in place by extra planes.</p>
+ */
+public class MeshSimplifier {
+    // weight of the planes perpendicular to the open borders, high enough to keep them in place
+    static final double BORDER_WEIGHT = 100.0;
+    // collapses may not turn a triangle by more than ~80 degrees
+    static final double MIN_NORMAL_COSINE = 0.17;
+
+    private static final int QUADRIC = 10; // upper triangle of the symmetric 4x4 matrix
+
+    private MeshSimplifier() { }
+
+    /**
+     * A candidate collapse of the edge (a, b) into a at (x, y, z), valid as long as
+     * neither vertex changed since it was queued.
+     */
+    private static final class Collapse implements Comparable<Collapse> {
+        final int a, b, versionA, versionB;
+        final double cost, x, y, z;
+
+        Collapse(int a, int b, int versionA, int versionB, double cost, double x, double y, double z) {
+            this.a = a;
+            this.b = b;
+            this.versionA = versionA;
+            this.versionB = versionB;
+            this.cost = cost;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        @Override
+        public int compareTo(Collapse other) {
+            return Double.compare(cost, other.cost);
+        }
+    }
+
+    /**
+     * Collapses edges, cheapest first, until the mesh has at most targetTriangles
+     * triangles or the next collapse would move the surface further than maxError.
+     *
+     * @param mesh - Indexed or not, with the layout of {@link Mesh}.
+     * @param targetTriangles - Triangle budget of the result.
+     * @param maxError - Largest distance, in mesh units, a vertex may move away from the
+     *                   planes of the triangles it replaces; infinite to only stop at the budget.
+     * @return - A new indexed, flat shaded mesh, optimized by {@link MeshIndexer#process}.
+     */
+    public static MeshData simplify(MeshData mesh, int targetTriangles, float maxError) {
+        final int stride = Mesh.FLOATS_PER_VERTEX;
+
+        // weld by position, the normals are rebuilt from the faces at the end
+        int[] positionOf = new int[mesh.vertexCount];
+        double[] positions = new double[mesh.vertexCount * 3];
+        int vertexCount = weldPositions(mesh, positionOf, positions);
+
+        int triangleCount = mesh.getTriangleCount();
+        int[] triangles = new int[triangleCount * 3];
+        boolean[] dead = new boolean[triangleCount];
+        int liveTriangles = 0;
+        double winding = 0.0; // whether the stored normals follow the windings or face the other way
+        double[] normal = new double[3];
+
+        for (int t = 0; t < triangleCount; t++) {
+            for (int k = 0; k < 3; k++) {
+                triangles[t * 3 + k] = positionOf[mesh.vertexAt(t * 3 + k)];
+            }
+            if (isDegenerate(triangles, t)) {
+                dead[t] = true;
+                continue;
+            }
+            liveTriangles++;
+
+            faceNormal(positions, triangles, t, normal);
+            for (int k = 0; k < 3; k++) {
+                int v = mesh.vertexAt(t * 3 + k) * stride + Mesh.NORMAL_OFFSET;
+                winding += normal[0] * mesh.vertices[v] + normal[1] * mesh.vertices[v + 1]
+                        + normal[2] * mesh.vertices[v + 2];
+            }
+        }
+
+        // triangles around each vertex, grown as collapses hand them over
+        int[][] vertexTriangles = new int[vertexCount][];
+        int[] vertexTriangleCount = new int[vertexCount];
+        for (int t = 0; t < triangleCount; t++) {
+            if (!dead[t]) {
+                for (int k = 0; k < 3; k++) {
+                    addTriangle(vertexTriangles, vertexTriangleCount, triangles[t * 3 + k], t);
+                }
+            }
+        }
+
+        double[] quadrics = new double[vertexCount * QUADRIC];
+        addPlanes(positions, triangles, dead, quadrics);
+        addBorderPlanes(positions, triangles, dead, vertexTriangles, vertexTriangleCount, quadrics);
+
+        int[] versions = new int[vertexCount];
+        boolean[] removed = new boolean[vertexCount];
+        PriorityQueue<Collapse> queue = new PriorityQueue<>();
+        for (int t = 0; t < triangleCount; t++) {
+            if (dead[t]) {
+                continue;
+            }
+            for (int k = 0; k < 3; k++) {
+                int a = triangles[t * 3 + k], b = triangles[t * 3 + (k + 1) % 3];
+                if (a < b) { // each edge once, the other triangle has it the other way around
+                    queue.add(collapse(a, b, versions, positions, quadrics));
+                }
+            }
+        }
+
+        double maxCost = (double) maxError * maxError;
+        while (liveTriangles > targetTriangles && !queue.isEmpty()) {
+            Collapse c = queue.poll();
+            if (removed[c.a] || removed[c.b] || versions[c.a] != c.versionA || versions[c.b] != c.versionB) {
+                continue; // stale, a newer candidate was queued when the vertices changed
+            }
+            if (c.cost > maxCost) {
+                break;
+            }
+            if (!keepsManifold(c.a, c.b, triangles, dead, vertexTriangles, vertexTriangleCount)
+                    || flipsTriangle(c, c.a, c.b, positions, triangles, dead, vertexTriangles, vertexTriangleCount)
+                    || flipsTriangle(c, c.b, c.a, positions, triangles, dead, vertexTriangles, vertexTriangleCount)) {
+                continue; // queued again if one of its vertices changes
+            }
+
+            // b goes away, a moves to the collapse point and takes over b's triangles
+            positions[c.a * 3] = c.x;
+            positions[c.a * 3 + 1] = c.y;
+            positions[c.a * 3 + 2] = c.z;
+            for (int i = 0; i < QUADRIC; i++) {
+                quadrics[c.a * QUADRIC + i] += quadrics[c.b * QUADRIC + i];
+            }
+            removed[c.b] = true;
+            versions[c.a]++;
+
+            for (int i = 0; i < vertexTriangleCount[c.b]; i++) {
+                int t = vertexTriangles[c.b][i];
+                if (dead[t]) {
+                    continue;
+                }
+                if (contains(triangles, t, c.a)) {
+                    dead[t] = true; // the collapsed edge's own triangles
+                    liveTriangles--;
+                } else {
+                    replace(triangles, t, c.b, c.a);
+                    addTriangle(vertexTriangles, vertexTriangleCount, c.a, t);
+                }
+            }
+            vertexTriangleCount[c.b] = 0;
+            compact(vertexTriangles, vertexTriangleCount, c.a, dead);
+
+            // the edges around a changed cost, the others didn't
+            for (int n : neighborsOf(c.a, triangles, dead, vertexTriangles, vertexTriangleCount)) {
+                queue.add(collapse(c.a, n, versions, positions, quadrics));
+            }
+        }
+
+        return flatShaded(positions, triangles, dead, liveTriangles, winding < 0.0);
+    }
+
+    /**
+     * Largest distance between the two surfaces, measured from the vertices of each one
+     * to the triangles of the other: a cheap, symmetric estimate of the Hausdorff distance.
+     *
+     * @return - The distance in mesh units.
+     */
+    public static float measureError(MeshData a, MeshData b) {
+        return (float) Math.max(vertexDistance(a, b), vertexDistance(b, a));
+    }
+
+    private static double vertexDistance(MeshData from, MeshData to) {
+        final int stride = Mesh.FLOATS_PER_VERTEX;
+        double[] triangle = new double[9];
+        double worst = 0.0;
+
+        // flat shaded meshes repeat every position several times, measure each once
+        double[] positions = new double[from.vertexCount * 3];
+        int positionCount = weldPositions(from, new int[from.vertexCount], positions);
+
+        for (int p = 0; p < positionCount; p++) {
+            double px = positions[p * 3], py = positions[p * 3 + 1], pz = positions[p * 3 + 2];
+            double nearest = Double.MAX_VALUE;
+
+            // once under the worst so far, the remaining triangles can't make it matter
+            for (int t = 0; t < to.getTriangleCount() && nearest > worst; t++) {
+                for (int k = 0; k < 3; k++) {
+                    int corner = to.vertexAt(t * 3 + k) * stride;
+                    triangle[k * 3] = to.vertices[corner];
+                    triangle[k * 3 + 1] = to.vertices[corner + 1];
+                    triangle[k * 3 + 2] = to.vertices[corner + 2];
+                }
+                nearest = Math.min(nearest, squaredDistanceToTriangle(px, py, pz, triangle));
+            }
+            worst = Math.max(worst, nearest);
+        }
+
+        return Math.sqrt(worst);
+    }
+
+    /**
+     * Closest point on a triangle by Voronoi regions, see Ericson's "Real-Time Collision
+     * Detection" 5.1.5.
+     */
+    static double squaredDistanceToTriangle(double px, double py, double pz, double[] t) {
+        double abx = t[3] - t[0], aby = t[4] - t[1], abz = t[5] - t[2];
+        double acx = t[6] - t[0], acy = t[7] - t[1], acz = t[8] - t[2];
+        double apx = px - t[0], apy = py - t[1], apz = pz - t[2];
+        double qx, qy, qz;
+
+        double d1 = abx * apx + aby * apy + abz * apz, d2 = acx * apx + acy * apy + acz * apz;
+        if (d1 <= 0.0 && d2 <= 0.0) {
+            return squared(px - t[0], py - t[1], pz - t[2]);
+        }
+
+        double bpx = px - t[3], bpy = py - t[4], bpz = pz - t[5];
+        double d3 = abx * bpx + aby * bpy + abz * bpz, d4 = acx * bpx + acy * bpy + acz * bpz;
+        if (d3 >= 0.0 && d4 <= d3) {
+            return squared(bpx, bpy, bpz);
+        }
+
+        double vc = d1 * d4 - d3 * d2;
+        if (vc <= 0.0 && d1 >= 0.0 && d3 <= 0.0) {
+            double v = d1 / (d1 - d3);
+            return squared(apx - v * abx, apy - v * aby, apz - v * abz);
+        }
+
+        double cpx = px - t[6], cpy = py - t[7], cpz = pz - t[8];
+        double d5 = abx * cpx + aby * cpy + abz * cpz, d6 = acx * cpx + acy * cpy + acz * cpz;
+        if (d6 >= 0.0 && d5 <= d6) {
+            return squared(cpx, cpy, cpz);
+        }
+
+        double vb = d5 * d2 - d1 * d6;
+        if (vb <= 0.0 && d2 >= 0.0 && d6 <= 0.0) {
+            double w = d2 / (d2 - d6);
+            return squared(apx - w * acx, apy - w * acy, apz - w * acz);
+        }
+
+        double va = d3 * d6 - d5 * d4;
+        if (va <= 0.0 && (d4 - d3) >= 0.0 && (d5 - d6) >= 0.0) {
+            double w = (d4 - d3) / ((d4 - d3) + (d5 - d6));
+            qx = t[3] + w * (t[6] - t[3]);
+            qy = t[4] + w * (t[7] - t[4]);
+            qz = t[5] + w * (t[8] - t[5]);
+            return squared(px - qx, py - qy, pz - qz);
+        }
+
+        double denom = 1.0 / (va + vb + vc);
+        double v = vb * denom, w = vc * denom;
+        return squared(apx - abx * v - acx * w, apy - aby * v - acy * w, apz - abz * v - acz * w);
+    }
+
+    private static double squared(double x, double y, double z) {
+        return x * x + y * y + z * z;
+    }
+
+    /**
+     * Maps every vertex to a unique position, the same way {@link MeshIndexer#weld}
+     * does with whole vertices.
+     *
+     * @return - The number of unique positions written to positions.
+     */
+    private static int weldPositions(MeshData mesh, int[] positionOf, double[] positions) {
+        final int stride = Mesh.FLOATS_PER_VERTEX;
+        int capacity = Integer.highestOneBit(Math.max(mesh.vertexCount, 1) * 2) * 2;
+        int[] table = new int[capacity];
+        Arrays.fill(table, -1);
+        int count = 0;
+
+        for (int v = 0; v < mesh.vertexCount; v++) {
+            int src = v * stride + Mesh.POSITION_OFFSET;
+            int h = 0;
+            for (int i = 0; i < 3; i++) {
+                h = h * 31 + Float.floatToIntBits(mesh.vertices[src + i]);
+            }
+            int slot = (h ^ (h >>> 16)) & (capacity - 1);
+
+            while (true) {
+                int candidate = table[slot];
+                if (candidate == -1) {
+                    for (int i = 0; i < 3; i++) {
+                        positions[count * 3 + i] = mesh.vertices[src + i];
+                    }
+                    table[slot] = count;
+                    positionOf[v] = count++;
+                    break;
+                }
+                if (positions[candidate * 3] == mesh.vertices[src]
+                        && positions[candidate * 3 + 1] == mesh.vertices[src + 1]
+                        && positions[candidate * 3 + 2] == mesh.vertices[src + 2]) {
+                    positionOf[v] = candidate;
+                    break;
+                }
+                slot = (slot + 1) & (capacity - 1);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Adds the plane of every triangle to the quadrics of its vertices, so their error
+     * is the sum of the squared distances to those planes.
+     */
+    private static void addPlanes(double[] positions, int[] triangles, boolean[] dead, double[] quadrics) {
+        double[] normal = new double[3];
+        for (int t = 0; t < dead.length; t++) {
+            if (dead[t]) {
+                continue;
+            }
+            faceNormal(positions, triangles, t, normal);
+            if (normalize(normal) == 0.0) {
+                continue;
+            }
+
+            int p = triangles[t * 3] * 3;
+            double d = -(normal[0] * positions[p] + normal[1] * positions[p + 1] + normal[2] * positions[p + 2]);
+            for (int k = 0; k < 3; k++) {
+                addPlane(quadrics, triangles[t * 3 + k], normal[0], normal[1], normal[2], d, 1.0);
+            }
+        }
+    }
+
+    /**
+     * Adds a heavy plane through every border edge, perpendicular to its triangle, so the
+     * border vertices can slide along the border but hardly away from it.
+     */
+    private static void addBorderPlanes(double[] positions, int[] triangles, boolean[] dead,
+                                        int[][] vertexTriangles, int[] vertexTriangleCount, double[] quadrics) {
+        double[] normal = new double[3];
+        for (int t = 0; t < dead.length; t++) {
+            if (dead[t]) {
+                continue;
+            }
+            for (int k = 0; k < 3; k++) {
+                int a = triangles[t * 3 + k], b = triangles[t * 3 + (k + 1) % 3];
+                if (countTriangles(a, b, triangles, dead, vertexTriangles, vertexTriangleCount) != 1) {
+                    continue;
+                }
+
+                faceNormal(positions, triangles, t, normal);
+                double ex = positions[b * 3] - positions[a * 3], ey = positions[b * 3 + 1] - positions[a * 3 + 1],
+                        ez = positions[b * 3 + 2] - positions[a * 3 + 2];
+                double[] border = {ey * normal[2] - ez * normal[1], ez * normal[0] - ex * normal[2],
+                        ex * normal[1] - ey * normal[0]};
+                if (normalize(border) == 0.0) {
+                    continue;
+                }
+
+                double d = -(border[0] * positions[a * 3] + border[1] * positions[a * 3 + 1]
+                        + border[2] * positions[a * 3 + 2]);
+                addPlane(quadrics, a, border[0], border[1], border[2], d, BORDER_WEIGHT);
+                addPlane(quadrics, b, border[0], border[1], border[2], d, BORDER_WEIGHT);
+            }
+        }
+    }
+
+    private static void addPlane(double[] quadrics, int vertex, double a, double b, double c, double d, double weight) {
+        int q = vertex * QUADRIC;
+        quadrics[q] += weight * a * a;
+        quadrics[q + 1] += weight * a * b;
+        quadrics[q + 2] += weight * a * c;
+        quadrics[q + 3] += weight * a * d;
+        quadrics[q + 4] += weight * b * b;
+        quadrics[q + 5] += weight * b * c;
+        quadrics[q + 6] += weight * b * d;
+        quadrics[q + 7] += weight * c * c;
+        quadrics[q + 8] += weight * c * d;
+        quadrics[q + 9] += weight * d * d;
+    }
+
+    private static double error(double[] q, double x, double y, double z) {
+        return q[0] * x * x + 2 * q[1] * x * y + 2 * q[2] * x * z + 2 * q[3] * x
+                + q[4] * y * y + 2 * q[5] * y * z + 2 * q[6] * y
+                + q[7] * z * z + 2 * q[8] * z + q[9];
+    }
+
+    /**
+     * Finds where the edge (a, b) collapses to: the point of least error when the quadric
+     * can be solved for it, otherwise the best of the end points and the middle.
+     */
+    private static Collapse collapse(int a, int b, int[] versions, double[] positions, double[] quadrics) {
+        double[] q = new double[QUADRIC];
+        for (int i = 0; i < QUADRIC; i++) {
+            q[i] = quadrics[a * QUADRIC + i] + quadrics[b * QUADRIC + i];
+        }
+
+        double bestX = 0.0, bestY = 0.0, bestZ = 0.0, best = Double.MAX_VALUE;
+
+        // the gradient is zero where [q0 q1 q2; q1 q4 q5; q2 q5 q7] p = -[q3 q6 q8]
+        double c00 = q[4] * q[7] - q[5] * q[5], c01 = q[2] * q[5] - q[1] * q[7], c02 = q[1] * q[5] - q[2] * q[4];
+        double det = q[0] * c00 + q[1] * c01 + q[2] * c02;
+        double scale = q[0] + q[4] + q[7];
+        if (Math.abs(det) > 1e-9 * scale * scale * scale) {
+            double c11 = q[0] * q[7] - q[2] * q[2], c12 = q[1] * q[2] - q[0] * q[5], c22 = q[0] * q[4] - q[1] * q[1];
+            double x = -(c00 * q[3] + c01 * q[6] + c02 * q[8]) / det;
+            double y = -(c01 * q[3] + c11 * q[6] + c12 * q[8]) / det;
+            double z = -(c02 * q[3] + c12 * q[6] + c22 * q[8]) / det;
+            best = error(q, x, y, z);
+            bestX = x;
+            bestY = y;
+            bestZ = z;
+        }
+
+        for (int i = 0; i < 3; i++) {
+            double t = i * 0.5;
+            double x = positions[a * 3] + t * (positions[b * 3] - positions[a * 3]);
+            double y = positions[a * 3 + 1] + t * (positions[b * 3 + 1] - positions[a * 3 + 1]);
+            double z = positions[a * 3 + 2] + t * (positions[b * 3 + 2] - positions[a * 3 + 2]);
+            double e = error(q, x, y, z);
+            if (e < best) {
+                best = e;
+                bestX = x;
+                bestY = y;
+                bestZ = z;
+            }
+        }
+
+        // rounding can leave tiny negative errors on flat areas
+        return new Collapse(a, b, versions[a], versions[b], Math.max(best, 0.0), bestX, bestY, bestZ);
+    }
+
+    /**
+     * The link condition: a and b may only share the neighbors across the edge's own
+     * triangles, otherwise the collapse pinches the surface into a non-manifold edge.
+     * Edges of back to back triangles (the fin on top of the monkey's head) are kept too:
+     * the collapse would remove both without any error, they lie in the same plane.
+     */
+    private static boolean keepsManifold(int a, int b, int[] triangles, boolean[] dead,
+                                         int[][] vertexTriangles, int[] vertexTriangleCount) {
+        int firstOpposite = -1;
+        for (int i = 0; i < vertexTriangleCount[a]; i++) {
+            int t = vertexTriangles[a][i];
+            if (dead[t] || !contains(triangles, t, b)) {
+                continue;
+            }
+            int opposite = triangles[t * 3] ^ triangles[t * 3 + 1] ^ triangles[t * 3 + 2] ^ a ^ b;
+            if (opposite == firstOpposite) {
+                return false;
+            }
+            firstOpposite = opposite;
+        }
+
+        int[] aNeighbors = neighborsOf(a, triangles, dead, vertexTriangles, vertexTriangleCount);
+        int[] bNeighbors = neighborsOf(b, triangles, dead, vertexTriangles, vertexTriangleCount);
+
+        int shared = 0;
+        for (int v : aNeighbors) {
+            if (indexOf(bNeighbors, bNeighbors.length, v) >= 0) {
+                shared++;
+            }
+        }
+        return shared <= countTriangles(a, b, triangles, dead, vertexTriangles, vertexTriangleCount);
+    }
+
+    /**
+     * @return - The vertices sharing a live triangle with v, each once.
+     */
+    private static int[] neighborsOf(int v, int[] triangles, boolean[] dead,
+                                     int[][] vertexTriangles, int[] vertexTriangleCount) {
+        int[] neighbors = new int[16];
+        int count = 0;
+        for (int i = 0; i < vertexTriangleCount[v]; i++) {
+            int t = vertexTriangles[v][i];
+            if (dead[t]) {
+                continue;
+            }
+            for (int k = 0; k < 3; k++) {
+                int n = triangles[t * 3 + k];
+                if (n != v && indexOf(neighbors, count, n) < 0) {
+                    if (count == neighbors.length) {
+                        neighbors = Arrays.copyOf(neighbors, count * 2);
+                    }
+                    neighbors[count++] = n;
+                }
+            }
+        }
+        return Arrays.copyOf(neighbors, count);
+    }
+
+    private static int countTriangles(int a, int b, int[] triangles, boolean[] dead,
+                                      int[][] vertexTriangles, int[] vertexTriangleCount) {
+        int count = 0;
+        for (int i = 0; i < vertexTriangleCount[a]; i++) {
+            int t = vertexTriangles[a][i];
+            if (!dead[t] && contains(triangles, t, b)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return - Whether moving vertex to the collapse point turns one of its triangles
+     * that survive the collapse too far, or makes it degenerate.
+     */
+    private static boolean flipsTriangle(Collapse c, int vertex, int other, double[] positions, int[] triangles,
+                                         boolean[] dead, int[][] vertexTriangles, int[] vertexTriangleCount) {
+        double[] before = new double[3], after = new double[3];
+        for (int i = 0; i < vertexTriangleCount[vertex]; i++) {
+            int t = vertexTriangles[vertex][i];
+            if (dead[t] || contains(triangles, t, other)) {
+                continue;
+            }
+
+            faceNormal(positions, triangles, t, before);
+            double x = positions[vertex * 3], y = positions[vertex * 3 + 1], z = positions[vertex * 3 + 2];
+            positions[vertex * 3] = c.x;
+            positions[vertex * 3 + 1] = c.y;
+            positions[vertex * 3 + 2] = c.z;
+            faceNormal(positions, triangles, t, after);
+            positions[vertex * 3] = x;
+            positions[vertex * 3 + 1] = y;
+            positions[vertex * 3 + 2] = z;
+
+            double lengths = Math.sqrt(squared(before[0], before[1], before[2]) * squared(after[0], after[1], after[2]));
+            double dot = before[0] * after[0] + before[1] * after[1] + before[2] * after[2];
+            if (lengths == 0.0 || dot < MIN_NORMAL_COSINE * lengths) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Unnormalized normal of the triangle, following its winding.
+     */
+    private static void faceNormal(double[] positions, int[] triangles, int t, double[] result) {
+        int p0 = triangles[t * 3] * 3, p1 = triangles[t * 3 + 1] * 3, p2 = triangles[t * 3 + 2] * 3;
+        double ux = positions[p1] - positions[p0], uy = positions[p1 + 1] - positions[p0 + 1],
+                uz = positions[p1 + 2] - positions[p0 + 2];
+        double vx = positions[p2] - positions[p0], vy = positions[p2 + 1] - positions[p0 + 1],
+                vz = positions[p2 + 2] - positions[p0 + 2];
+        result[0] = uy * vz - uz * vy;
+        result[1] = uz * vx - ux * vz;
+        result[2] = ux * vy - uy * vx;
+    }
+
+    /**
+     * @return - The length the vector had, 0 leaves it as it is.
+     */
+    private static double normalize(double[] v) {
+        double length = Math.sqrt(squared(v[0], v[1], v[2]));
+        if (length > 0.0) {
+            v[0] /= length;
+            v[1] /= length;
+            v[2] /= length;
+        }
+        return length;
+    }
+
+    private static boolean isDegenerate(int[] triangles, int t) {
+        int a = triangles[t * 3], b = triangles[t * 3 + 1], c = triangles[t * 3 + 2];
+        return a == b || b == c || a == c;
+    }
+
+    private static boolean contains(int[] triangles, int t, int v) {
+        return triangles[t * 3] == v || triangles[t * 3 + 1] == v || triangles[t * 3 + 2] == v;
+    }
+
+    private static void replace(int[] triangles, int t, int from, int to) {
+        for (int k = 0; k < 3; k++) {
+            if (triangles[t * 3 + k] == from) {
+                triangles[t * 3 + k] = to;
+            }
+        }
+    }
+
+    private static int indexOf(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void addTriangle(int[][] vertexTriangles, int[] vertexTriangleCount, int v, int t) {
+        int[] list = vertexTriangles[v];
+        if (list == null) {
+            list = vertexTriangles[v] = new int[8];
+        } else if (vertexTriangleCount[v] == list.length) {
+            list = vertexTriangles[v] = Arrays.copyOf(list, list.length * 2);
+        }
+        list[vertexTriangleCount[v]++] = t;
+    }
+
+    /**
+     * Drops the dead triangles from the vertex's list, so it doesn't only grow.
+     */
+    private static void compact(int[][] vertexTriangles, int[] vertexTriangleCount, int v, boolean[] dead) {
+        int count = 0;
+        for (int i = 0; i < vertexTriangleCount[v]; i++) {
+            int t = vertexTriangles[v][i];
+            if (!dead[t]) {
+                vertexTriangles[v][count++] = t;
+            }
+        }
+        vertexTriangleCount[v] = count;
+    }
+
+    /**
+     * Writes the live triangles out with their face normals, then welds and reorders
+     * them like the shipped mesh.
+     *
+     * @param flipNormals - Whether the normals face against the windings.
+     */
+    private static MeshData flatShaded(double[] positions, int[] triangles, boolean[] dead, int liveTriangles,
+                                       boolean flipNormals) {
+        final int stride = Mesh.FLOATS_PER_VERTEX;
+        float[] vertices = new float[liveTriangles * 3 * stride];
+        double[] normal = new double[3];
+        int v = 0;
+
+        for (int t = 0; t < dead.length; t++) {
+            if (dead[t]) {
+                continue;
+            }
+            faceNormal(positions, triangles, t, normal);
+            normalize(normal);
+            if (flipNormals) {
+                normal[0] = -normal[0];
+                normal[1] = -normal[1];
+                normal[2] = -normal[2];
+            }
+
+            for (int k = 0; k < 3; k++, v += stride) {
+                int p = triangles[t * 3 + k] * 3;
+                for (int i = 0; i < 3; i++) {
+                    vertices[v + Mesh.POSITION_OFFSET + i] = (float) positions[p + i];
+                    vertices[v + Mesh.NORMAL_OFFSET + i] = (float) normal[i];
+                }
+            }
+        }
+
+        return MeshIndexer.process(new MeshData(vertices, null));
+    }
+}
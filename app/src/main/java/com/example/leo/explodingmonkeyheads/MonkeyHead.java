@@ -28,94 +28,143 @@ http://leopoldolomas.info
 
 package com.example.leo.explodingmonkeyheads;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
 import java.util.Random;
 
 import android.opengl.GLES20;
-import android.opengl.Matrix;
 
+/**
+ * Handle of one head: its transform, color and explosion live in a {@link SceneStore},
+ * at {@link #getIndex()}.
+ */
 public class MonkeyHead {
-    private boolean useExplosionAnimation; // whether the explosion animation is currently active
-    float color[]; // object's color
-
     final static float step = 0.3f;
-    float elapsedTime = step;
 
-    static FloatBuffer vertexBuffer, normalsBuffer;
-    static int mDefaultProgram = -1, mExplosionProgram = -1;
+    static GLStateCache glState; // shared with the renderer
+    static MeshBuffers meshBuffers; // GPU copy of the mesh, shared by all the heads
+    static ShaderProgram mDefaultProgram; // null until compiled for the current context
+    static ProgramBinaryCache programCache; // programs saved by earlier runs, null if the context can't load them
 
-    int mColorHandle, mPositionHandle, mNormalHandle, mModelViewMatrixHandle,
-            mProjectionMatrixHandle, mCameraMatrixHandle, mElapsedTimeHandle;
+    // locations resolved once after linking, attributes in QuantizedMesh.LAYOUT order
+    static int[] attributeLocations;
+    static int mColorHandle, mModelViewMatrixHandle, mProjectionMatrixHandle, mCameraMatrixHandle,
+            mElapsedTimeHandle, mPositionScaleHandle, mPositionOffsetHandle;
 
     public static String explosionVertexShaderCode, simpleFragmentShaderCode;
 
-    // for simplicity, we assume the projection matrix will be constant
-    float[] modelViewMatrix, projectionMatrix;
-    public static float[] positions, normals; // vertices and normals data
+    final SceneStore scene;
+    final int index;
 
-    final int coordsPerVertex = 3;
-    final int vertexCount;
-    final int vertexStride = coordsPerVertex * 4; // 4 bytes per vertex
+    // for simplicity, we assume the projection matrix will be constant
+    float[] projectionMatrix;
+    public static Mesh mesh; // interleaved vertices and normals data
+    static MeshLods lods; // levels of detail of the mesh, these are uploaded; null for just the mesh
+    static QuantizedMesh quantizedMesh; // what's uploaded, packed ahead of time; null to pack it here
 
-    Color pickingColor; // unique color used to determine what specific object was picked by the player
-    float rotFactorAroundX, rotFactorAroundY, rotFactorAroundZ; // determines how much the object must rotate around each axis
+    // unique id, drawn as a color to determine what specific object was picked by the player
+    int pickingId = ColorProvider.NO_ID;
+    private static final float[] drawnColor = new float[4]; // GL thread only
 
     final static Random random = new Random();
 
     /**
-     * Compiles the shaders and links the program, only if it hasn't been done yet
+     * Compiles the shaders, links the program and uploads the mesh to the GPU,
+     * only if it hasn't been done yet
      */
     public static void compileShaders() {
-        if (mDefaultProgram != -1) {
+        if (mDefaultProgram != null) {
             return; // early return if GL program already exists
         }
 
-        // initialize vertex buffer
-        ByteBuffer bb = ByteBuffer.allocateDirect(positions.length * 4);
-        bb.order(ByteOrder.nativeOrder());
+        Mesh uploaded = lods != null ? lods.getMesh() : mesh;
+        if (meshBuffers == null || meshBuffers.getMesh() != uploaded) {
+            // half the memory and vertex fetch bandwidth of the float vertices
+            QuantizedMesh packed = quantizedMesh != null && quantizedMesh.getMesh() == uploaded
+                    ? quantizedMesh : QuantizedMesh.quantize(uploaded);
+            meshBuffers = new MeshBuffers(glState, packed);
+        }
+        meshBuffers.upload();
+
+        mDefaultProgram = new ShaderProgram(glState, explosionVertexShaderCode, simpleFragmentShaderCode,
+                programCache);
+
+        attributeLocations = mDefaultProgram.getAttribLocations(QuantizedMesh.LAYOUT);
+        mColorHandle = mDefaultProgram.getUniformLocation("vColor");
+        mCameraMatrixHandle = mDefaultProgram.getUniformLocation("uCameraMatrix");
+        mModelViewMatrixHandle = mDefaultProgram.getUniformLocation("uModelViewMatrix");
+        mProjectionMatrixHandle = mDefaultProgram.getUniformLocation("uProjectionMatrix");
+        mElapsedTimeHandle = mDefaultProgram.getUniformLocation("time");
+        mPositionScaleHandle = mDefaultProgram.getUniformLocation("uPositionScale");
+        mPositionOffsetHandle = mDefaultProgram.getUniformLocation("uPositionOffset");
+    }
 
-        vertexBuffer = bb.asFloatBuffer();
-        vertexBuffer.put(positions);
-        vertexBuffer.position(0);
+    /**
+     * Forgets the program and buffer ids, must be called when a new EGL context is
+     * created since the objects of the previous one are gone.
+     */
+    public static void invalidateGlObjects() {
+        mDefaultProgram = null;
 
-        // initialize normals buffer
-        bb = ByteBuffer.allocateDirect(normals.length * 4);
-        bb.order(ByteOrder.nativeOrder());
+        if (meshBuffers != null) {
+            meshBuffers.invalidate();
+        }
+    }
 
-        normalsBuffer = bb.asFloatBuffer();
-        normalsBuffer.put(normals);
-        normalsBuffer.position(0);
+    /**
+     * Adds a head with a random color and rotation axis to the store.
+     */
+    public MonkeyHead(SceneStore scene) {
+        compileShaders();
 
-        int explosionVertexShader = MonkeyHeadsRenderer.loadShader(
-                GLES20.GL_VERTEX_SHADER, explosionVertexShaderCode);
-        int simpleFragmentShader = MonkeyHeadsRenderer.loadShader(
-                GLES20.GL_FRAGMENT_SHADER, simpleFragmentShaderCode);
+        this.scene = scene;
+        float r = random.nextFloat(), g = random.nextFloat(), b = random.nextFloat();
+        float x = random.nextFloat(), y = random.nextFloat(), z = random.nextFloat();
+        index = scene.add(x, y, z, r, g, b, 1.0f);
+    }
 
-        mDefaultProgram = GLES20.glCreateProgram();
-        GLES20.glAttachShader(mDefaultProgram, explosionVertexShader);
-        GLES20.glAttachShader(mDefaultProgram, simpleFragmentShader);
-        GLES20.glLinkProgram(mDefaultProgram);
+    /**
+     * Brings the head back intact where it was, with a new random color and rotation axis.
+     */
+    public void respawn() {
+        float r = random.nextFloat(), g = random.nextFloat(), b = random.nextFloat();
+        float x = random.nextFloat(), y = random.nextFloat(), z = random.nextFloat();
+        scene.respawn(index, x, y, z, r, g, b, 1.0f);
     }
 
-    public MonkeyHead() {
-        compileShaders();
+    /**
+     * @return - Whether the explosion is over, the head is then neither drawn nor picked.
+     */
+    public boolean isFinished() {
+        return scene.isFinished(index);
+    }
 
-        color = new float[] { random.nextFloat(), random.nextFloat(), random.nextFloat(), 1.0f };
-        rotFactorAroundX = random.nextFloat();
-        rotFactorAroundY = random.nextFloat();
-        rotFactorAroundZ = random.nextFloat();
+    public SceneStore getScene() {
+        return scene;
+    }
 
-        vertexCount = positions.length / coordsPerVertex;
+    public int getIndex() {
+        return index;
     }
 
-    public float[] getModelViewMatrix() {
-        return modelViewMatrix;
+    /**
+     * @return - Where the model matrix starts in the store's matrices.
+     */
+    public int getMatrixOffset() {
+        return index * SceneStore.MATRIX;
+    }
+
+    /**
+     * Copies the model matrix out of the store, as drawn.
+     *
+     * @return - result, for chaining.
+     */
+    public float[] getModelViewMatrix(float[] result) {
+        System.arraycopy(scene.drawnModels, getMatrixOffset(), result, 0, SceneStore.MATRIX);
+        return result;
     }
 
     public void setModelViewMatrix(float[] modelViewMatrix) {
-        this.modelViewMatrix = modelViewMatrix;
+        System.arraycopy(modelViewMatrix, 0, scene.models, getMatrixOffset(), SceneStore.MATRIX);
+        scene.resetInterpolation(index);
     }
 
     public float[] getProjectionMatrix() {
@@ -126,16 +175,34 @@ public class MonkeyHead {
         this.projectionMatrix = projectionMatrix;
     }
 
-    public float[] getColor() {
-        return color;
+    /**
+     * @return - A new color encoding the picking id, see {@link ColorProvider}.
+     */
+    public Color getPickingColor() {
+        return ColorProvider.toColor(pickingId);
     }
 
-    public Color getPickingColor() {
-        return pickingColor;
+    public int getPickingId() {
+        return pickingId;
+    }
+
+    /**
+     * Sets the id the picking color encodes.
+     */
+    public void setPickingId(int pickingId) {
+        ColorProvider.encode(pickingId); // throws if out of range
+        this.pickingId = pickingId;
+    }
+
+    /**
+     * Forgets the picking id, once it was given back to the allocator.
+     */
+    public void clearPickingId() {
+        pickingId = ColorProvider.NO_ID;
     }
 
     public void setPickingColor(Color pickingColor) {
-        this.pickingColor = pickingColor;
+        setPickingId(ColorProvider.decode(pickingColor));
     }
 
     public String getExplosionVertexShaderCode() {
@@ -155,11 +222,26 @@ public class MonkeyHead {
     }
 
     public boolean isUseExplosionAnimation() {
-        return useExplosionAnimation;
+        return scene.isExploding(index);
     }
 
     public void setUseExplosionAnimation(boolean useExplosionAnimation) {
-        this.useExplosionAnimation = useExplosionAnimation;
+        scene.setExploding(index, useExplosionAnimation);
+    }
+
+    /**
+     * @return - The time passed to the explosion shader, 0 while the head is intact.
+     */
+    public float getExplosionTime() {
+        return scene.getExplosionTime(index);
+    }
+
+    /**
+     * Advances the rotation and, if active, the explosion animation by one step. The
+     * renderer updates the whole store at once instead.
+     */
+    public void update() {
+        scene.update(index, index + 1);
     }
 
     public void draw(float[] cameraMatrix) {
@@ -167,75 +249,47 @@ public class MonkeyHead {
     }
 
     public void draw(float[] cameraMatrix, boolean objectPickingMode) {
-        GLES20.glUseProgram(mDefaultProgram);
-
-        mPositionHandle = GLES20.glGetAttribLocation(mDefaultProgram, "vPosition");
-        mNormalHandle = GLES20.glGetAttribLocation(mDefaultProgram, "vNormal");
-
-        GLES20.glEnableVertexAttribArray(mPositionHandle);
-        GLES20.glEnableVertexAttribArray(mNormalHandle);
-
-        GLES20.glVertexAttribPointer(
-                mPositionHandle,
-                coordsPerVertex,
-                GLES20.GL_FLOAT,
-                false,
-                vertexStride,
-                vertexBuffer);
+        draw(cameraMatrix, projectionMatrix, objectPickingMode);
+    }
 
-        GLES20.glVertexAttribPointer(
-                mNormalHandle,
-                coordsPerVertex,
-                GLES20.GL_FLOAT,
-                false,
-                vertexStride,
-                normalsBuffer);
+    /**
+     * @param projectionMatrix - Used instead of the head's own, e.g. narrowed down to a tapped pixel.
+     */
+    public void draw(float[] cameraMatrix, float[] projectionMatrix, boolean objectPickingMode) {
+        draw(cameraMatrix, projectionMatrix, objectPickingMode, 0);
+    }
 
-        mColorHandle = GLES20.glGetUniformLocation(mDefaultProgram, "vColor");
-        MonkeyHeadsRenderer.checkGlError("glGetUniformLocation");
+    /**
+     * @param level - Level of detail to draw, see {@link MeshLods}.
+     */
+    public void draw(float[] cameraMatrix, float[] projectionMatrix, boolean objectPickingMode, int level) {
+        mDefaultProgram.use();
+        meshBuffers.bind(attributeLocations);
 
         // set the monkey head color
-        float[] c = objectPickingMode ?
-                new float[] { pickingColor.getR() / 255.0f, pickingColor.getG() / 255.0f, pickingColor.getB() / 255.0f, 1f } : color;
-        GLES20.glUniform4fv(mColorHandle, 1, c, 0);
-
-        mCameraMatrixHandle = GLES20.glGetUniformLocation(mDefaultProgram, "uCameraMatrix");
-        MonkeyHeadsRenderer.checkGlError("glGetUniformLocation");
-
-        mModelViewMatrixHandle = GLES20.glGetUniformLocation(mDefaultProgram, "uModelViewMatrix");
-        MonkeyHeadsRenderer.checkGlError("glGetUniformLocation");
-
-        mProjectionMatrixHandle = GLES20.glGetUniformLocation(mDefaultProgram, "uProjectionMatrix");
-        MonkeyHeadsRenderer.checkGlError("glGetUniformLocation");
-
-        mElapsedTimeHandle = GLES20.glGetUniformLocation(mDefaultProgram, "time");
-        MonkeyHeadsRenderer.checkGlError("glGetUniformLocation");
-
-        GLES20.glUniformMatrix4fv(mCameraMatrixHandle, 1, false, cameraMatrix, 0);
-        MonkeyHeadsRenderer.checkGlError("glUniformMatrix4fv");
-
-        GLES20.glUniformMatrix4fv(mProjectionMatrixHandle, 1, false, projectionMatrix, 0);
-        MonkeyHeadsRenderer.checkGlError("glUniformMatrix4fv");
-
-        Matrix.rotateM(modelViewMatrix, 0, step, rotFactorAroundX, rotFactorAroundY, rotFactorAroundZ);
-
-        GLES20.glUniformMatrix4fv(mModelViewMatrixHandle, 1, false, modelViewMatrix, 0);
-        MonkeyHeadsRenderer.checkGlError("glUniformMatrix4fv");
-
-        if (useExplosionAnimation) {
-            GLES20.glUniform1f(mElapsedTimeHandle, elapsedTime);
-            MonkeyHeadsRenderer.checkGlError("glUniform1f");
-            elapsedTime += step;
+        if (objectPickingMode) {
+            int rgb = ColorProvider.encode(pickingId);
+            mDefaultProgram.setVec4(mColorHandle,
+                    (rgb & 0xFF) / 255.0f, (rgb >> 8 & 0xFF) / 255.0f, (rgb >> 16 & 0xFF) / 255.0f, 1f);
         } else {
-            GLES20.glUniform1f(mElapsedTimeHandle, 0f);
-            MonkeyHeadsRenderer.checkGlError("glUniform1f");
+            scene.getDrawnColor(index, drawnColor);
+            mDefaultProgram.setVec4(mColorHandle, drawnColor[0], drawnColor[1], drawnColor[2], drawnColor[3]);
         }
 
-        // draw the object
-        GLES20.glFrontFace(GLES20.GL_CW);
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, vertexCount);
-
-        // disable vertex array
-        GLES20.glDisableVertexAttribArray(mPositionHandle);
+        mDefaultProgram.setMat4(mCameraMatrixHandle, cameraMatrix);
+        mDefaultProgram.setMat4(mProjectionMatrixHandle, projectionMatrix);
+        mDefaultProgram.setMat4(mModelViewMatrixHandle, scene.drawnModels, getMatrixOffset());
+        mDefaultProgram.setFloat(mElapsedTimeHandle, getExplosionTime());
+        QuantizedMesh quantized = meshBuffers.getQuantizedMesh();
+        mDefaultProgram.setVec4(mPositionScaleHandle, quantized.getPositionScale());
+        mDefaultProgram.setVec4(mPositionOffsetHandle, quantized.getPositionOffset());
+
+        // draw the object, the attribute arrays stay enabled for the next head
+        glState.frontFace(GLES20.GL_CW);
+        if (lods != null) {
+            meshBuffers.draw(lods.getFirstIndex(level), lods.getIndexCount(level));
+        } else {
+            meshBuffers.draw();
+        }
     }
 }
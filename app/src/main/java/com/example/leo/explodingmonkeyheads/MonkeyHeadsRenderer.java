@@ -31,20 +31,22 @@ package com.example.leo.explodingmonkeyheads;
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
-import android.opengl.Matrix;
 import android.util.Log;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.util.HashMap;
-
 public class MonkeyHeadsRenderer implements GLSurfaceView.Renderer {
     private static final String TAG = "MonkeyHeadsRenderer";
 
+    // glGetError forces the driver to sync with the GPU, so only poll it in debug builds
+    static final boolean CHECK_GL_ERRORS = BuildConfig.DEBUG;
+
+    static final float BACKGROUND = 0.4f; // gray level of the background
+
     MonkeyHead[] monkeyHeads;
-    HashMap<Integer, MonkeyHead> colorMonkeyHeadsMap = new HashMap<>();
 
     final int noOfObjects = 64; // the number of heads to be drawn on the screen
     final int dimensionLength = 22; // the larger the dimension length, the more spacing between each head
@@ -53,45 +55,210 @@ public class MonkeyHeadsRenderer implements GLSurfaceView.Renderer {
     final float[] mProjectionMatrix = new float[16];
     final float[] mCameraMatrix = new float[16];
 
-    float[] positions, normals;
+    Mesh mesh;
     String explosionVertexShaderCode, simpleVertexShaderCode, simpleFragmentShaderCode;
+    String instancedVertexShaderCode, instancedFragmentShaderCode;
+
+    final GLBackend gl; // every GL call goes through here, so the renderer can run headless
+    // shadows the GL state so redundant calls are dropped, shared with the heads
+    final GLStateCache glState;
+
+    int glesVersion = 2; // major version of the context requested by the view
+    ProgramBinaryCache programCache; // linked programs saved across runs, null to always compile them
+
+    // GL objects are created by these tasks, a few every frame, once the assets are there
+    static final long UPLOAD_BUDGET_NANOS = 4000000L;
+    final GLTaskQueue glTasks = new GLTaskQueue();
+    private boolean surfaceCreated;
+    InstancedBatch instancedBatch; // null when instancing isn't available, heads are drawn one by one
+
+    // taps are resolved on the CPU against the heads' meshes, see onTapEvent()
+    RayPicker rayPicker;
+    // hierarchy over the heads' world bounds, refitted every frame as they rotate and explode
+    SceneBvh sceneBvh;
+    // matrices, colors and explosions of the heads, one array per field; the heads index into it
+    SceneStore scene;
+    // advances the store on every core before the frame is submitted, see draw()
+    final SceneUpdater sceneUpdater = new SceneUpdater(SceneUpdater.getDefaultPool(), SceneUpdater.DEFAULT_GRAIN);
+    private float[] spheres; // world bounding sphere of every head, center xyz and radius
+    private final float[] sphere = new float[4];
+
+    // heads that survived the culling this frame, by level of detail then in index order;
+    // only these are drawn
+    final Frustum frustum = new Frustum();
+    private final float[] viewProjectionMatrix = new float[16];
+    private int[] candidates;
+    private boolean[] inView; // by head, set while cull() runs, all false between frames
+    MonkeyHead[] visibleHeads;
+    private MonkeyHead[] sortedHeads; // swapped with visibleHeads when sorting by level
+    int visibleCount;
+
+    // levels of detail of the mesh, the further a head the coarser; one level unless set
+    MeshLods meshLods;
+    QuantizedMesh quantizedMesh; // the levels packed for upload off the GL thread, null to pack them when needed
+    final LodSelector lodSelector = new LodSelector();
+    int[] lodStarts; // visibleHeads[lodStarts[l]] to visibleHeads[lodStarts[l + 1] - 1] use level l
+    private int[] lodCursors;
+
+    // when enabled, taps are resolved by drawing the picking colors instead, a few frames late
+    boolean colorPicking;
+    // maps the picking ids back to the heads, with room for the heads of one context
+    final PickingIdAllocator<MonkeyHead> pickingIds = new PickingIdAllocator<>(noOfObjects);
+    AsyncColorPicker colorPicker; // null unless color picking is enabled
+    private MonkeyHead[] pickedHeads; // heads drawn by the picking pass, culled to the tapped pixel
+    private final AsyncColorPicker.Pass pickingPass = new AsyncColorPicker.Pass() {
+        @Override
+        public void drawPickingPass(float[] projectionMatrix) {
+            drawPicking(projectionMatrix);
+        }
+    };
+    private final AsyncColorPicker.Listener explodeOnPick = new AsyncColorPicker.Listener() {
+        @Override
+        public void onPicked(int id) {
+            MonkeyHead head = findByPickingId(id);
+            if (head != null) {
+                head.setUseExplosionAnimation(true);
+            }
+        }
+    };
+
+    // where the frame budget goes, see getFrameMetrics()
+    final FrameMetrics metrics = new FrameMetrics(600);
+    GpuFrameTimer gpuTimer; // null when timer queries aren't available
+    int metricsLogInterval = 0; // frames between two logcat summaries, 0 to never log
+
+    // explosions last this many seconds, fading into the background over the last fadeDuration,
+    // then the heads wait respawnDelay seconds in the pool before coming back intact
+    float explosionDuration = 2f, fadeDuration = 0.5f, respawnDelay = 1f;
+    ObjectPool<MonkeyHead> deadHeads;
+
+    // the heads move by fixed steps of simulated time, whatever the frame rate
+    SimulationClock clock = new SimulationClock();
+    // which vsyncs get a frame, see MyGLSurfaceView; created once the refresh rate is known
+    FramePacer framePacer;
+    // renders fill-bound frames below the surface's resolution, null to always render at full resolution
+    RenderScaleController renderScale;
+    ScaledFramebuffer scaledFramebuffer; // null unless render scaling is on and the context can blit
 
-    private long lastTick = 0L;
     int viewportWidth, viewportHeight;
-    float cameraAngleX, cameraAngleY;
+    // both angles in one value, so a frame never sees half of an update from another thread
+    private final AtomicLong cameraAngles = new AtomicLong();
+
+    // touch and sensor input from the UI thread, drained at the start of every frame
+    static final int INPUT_CAPACITY = 64;
+    final InputQueue input = new InputQueue(INPUT_CAPACITY);
+    private final InputQueue.Consumer inputConsumer = new InputQueue.Consumer() {
+        @Override
+        public void onCameraRotated(float dx, float dy) {
+            rotateCamera(dx, dy);
+        }
 
-    public MonkeyHeadsRenderer() { }
+        @Override
+        public void onTap(float x, float y) {
+            onTapEvent((int) x, (int) y);
+        }
+    };
+
+    public MonkeyHeadsRenderer() {
+        this(new AndroidGLBackend());
+    }
+
+    public MonkeyHeadsRenderer(GLBackend gl) {
+        this.gl = gl;
+        this.glState = new GLStateCache(gl);
+    }
+
+    // the camera angles may be read and set from any thread
 
     public float getCameraAngleX() {
-        return cameraAngleX;
+        return angleX(cameraAngles.get());
     }
 
     public void setCameraAngleX(float cameraAngleX) {
-        this.cameraAngleX = cameraAngleX;
+        long angles;
+        do {
+            angles = cameraAngles.get();
+        } while (!cameraAngles.compareAndSet(angles, packAngles(cameraAngleX, angleY(angles))));
     }
 
     public float getCameraAngleY() {
-        return cameraAngleY;
+        return angleY(cameraAngles.get());
     }
 
     public void setCameraAngleY(float cameraAngleY) {
-        this.cameraAngleY = cameraAngleY;
+        long angles;
+        do {
+            angles = cameraAngles.get();
+        } while (!cameraAngles.compareAndSet(angles, packAngles(angleX(angles), cameraAngleY)));
+    }
+
+    public void setCameraAngles(float cameraAngleX, float cameraAngleY) {
+        cameraAngles.set(packAngles(cameraAngleX, cameraAngleY));
+    }
+
+    /**
+     * Adds to both camera angles at once, in degrees.
+     */
+    public void rotateCamera(float dx, float dy) {
+        long angles;
+        do {
+            angles = cameraAngles.get();
+        } while (!cameraAngles.compareAndSet(angles, packAngles(angleX(angles) + dx, angleY(angles) + dy)));
+    }
+
+    private static long packAngles(float x, float y) {
+        return ((long) Float.floatToIntBits(x) << 32) | (Float.floatToIntBits(y) & 0xFFFFFFFFL);
+    }
+
+    private static float angleX(long angles) {
+        return Float.intBitsToFloat((int) (angles >>> 32));
+    }
+
+    private static float angleY(long angles) {
+        return Float.intBitsToFloat((int) angles);
+    }
+
+    /**
+     * @return - Where the UI thread queues touch and sensor input for the GL thread.
+     */
+    public InputQueue getInputQueue() {
+        return input;
     }
 
-    public float[] getPositions() {
-        return positions;
+    public Mesh getMesh() {
+        return mesh;
     }
 
-    public void setPositions(float[] positions) {
-        this.positions = positions;
+    public void setMesh(Mesh mesh) {
+        this.mesh = mesh;
     }
 
-    public float[] getNormals() {
-        return normals;
+    public MeshLods getMeshLods() {
+        return meshLods;
     }
 
-    public void setNormals(float[] normals) {
-        this.normals = normals;
+    /**
+     * Must be set before the surface is created, along with its base mesh; without
+     * levels of detail every head is drawn with the whole mesh.
+     */
+    public void setMeshLods(MeshLods meshLods) {
+        this.meshLods = meshLods;
+    }
+
+    public QuantizedMesh getQuantizedMesh() {
+        return quantizedMesh;
+    }
+
+    /**
+     * Must be set before the surface is created. Only used if it packs the vertices that
+     * are uploaded, i.e. those of the levels of detail (or of the mesh without levels).
+     */
+    public void setQuantizedMesh(QuantizedMesh quantizedMesh) {
+        this.quantizedMesh = quantizedMesh;
+    }
+
+    public LodSelector getLodSelector() {
+        return lodSelector;
     }
 
     public String getExplosionVertexShaderCode() {
@@ -118,13 +285,207 @@ public class MonkeyHeadsRenderer implements GLSurfaceView.Renderer {
         this.simpleFragmentShaderCode = simpleFragmentShaderCode;
     }
 
+    public String getInstancedVertexShaderCode() {
+        return instancedVertexShaderCode;
+    }
+
+    public void setInstancedVertexShaderCode(String instancedVertexShaderCode) {
+        this.instancedVertexShaderCode = instancedVertexShaderCode;
+    }
+
+    public String getInstancedFragmentShaderCode() {
+        return instancedFragmentShaderCode;
+    }
+
+    public void setInstancedFragmentShaderCode(String instancedFragmentShaderCode) {
+        this.instancedFragmentShaderCode = instancedFragmentShaderCode;
+    }
+
+    public float getExplosionDuration() {
+        return explosionDuration;
+    }
+
+    public float getFadeDuration() {
+        return fadeDuration;
+    }
+
+    /**
+     * @param explosionDuration - Seconds an explosion lasts.
+     * @param fadeDuration - Seconds at its end the head spends fading out, at most explosionDuration.
+     */
+    public void setExplosionDuration(float explosionDuration, float fadeDuration) {
+        this.explosionDuration = explosionDuration;
+        this.fadeDuration = fadeDuration;
+        if (scene != null) {
+            applyExplosionDuration();
+        }
+    }
+
+    public float getRespawnDelay() {
+        return respawnDelay;
+    }
+
+    /**
+     * @param respawnDelay - Seconds between the end of an explosion and the head coming back.
+     */
+    public void setRespawnDelay(float respawnDelay) {
+        this.respawnDelay = respawnDelay;
+    }
+
+    private void applyExplosionDuration() {
+        // the store counts in explosion time, one head step per clock step
+        float perSecond = MonkeyHead.step * 1e9f / clock.getStepNanos();
+        scene.setExplosionDuration(explosionDuration * perSecond, fadeDuration * perSecond);
+    }
+
+    public SimulationClock getClock() {
+        return clock;
+    }
+
+    public void setClock(SimulationClock clock) {
+        this.clock = clock;
+    }
+
+    public FramePacer getFramePacer() {
+        return framePacer;
+    }
+
+    public void setFramePacer(FramePacer framePacer) {
+        this.framePacer = framePacer;
+    }
+
+    public RenderScaleController getRenderScaleController() {
+        return renderScale;
+    }
+
+    /**
+     * Must be set before the surface is created. It's only used when the context can
+     * blit, see {@link ScaledFramebuffer#isSupported(int)}.
+     */
+    public void setRenderScaleController(RenderScaleController renderScale) {
+        this.renderScale = renderScale;
+    }
+
+    public FrameMetrics getFrameMetrics() {
+        return metrics;
+    }
+
+    public int getMetricsLogInterval() {
+        return metricsLogInterval;
+    }
+
+    public void setMetricsLogInterval(int metricsLogInterval) {
+        this.metricsLogInterval = metricsLogInterval;
+    }
+
+    public int getGlesVersion() {
+        return glesVersion;
+    }
+
+    public void setGlesVersion(int glesVersion) {
+        this.glesVersion = glesVersion;
+    }
+
+    public ProgramBinaryCache getProgramCache() {
+        return programCache;
+    }
+
+    /**
+     * Must be set before the surface is created. It's only used when the context can
+     * load program binaries, see {@link ProgramBinaryCache#isSupported(GLBackend, int)}.
+     */
+    public void setProgramCache(ProgramBinaryCache programCache) {
+        this.programCache = programCache;
+    }
+
+    public boolean isColorPicking() {
+        return colorPicking;
+    }
+
+    /**
+     * Must be set before the surface is created.
+     */
+    public void setColorPicking(boolean colorPicking) {
+        this.colorPicking = colorPicking;
+    }
+
+    public GLStateCache getGlState() {
+        return glState;
+    }
+
+    /**
+     * @return - Whether the mesh and shaders needed to draw the heads are set.
+     */
+    public boolean hasAssets() {
+        return mesh != null && explosionVertexShaderCode != null && simpleFragmentShaderCode != null;
+    }
+
+    /**
+     * Takes the assets loaded in the background and, if the surface already exists, starts
+     * creating the GL objects. Must run on the GL thread, see GLSurfaceView.queueEvent().
+     */
+    public void onAssetsLoaded(SceneAssets assets) {
+        setMesh(assets.getMesh());
+        setMeshLods(assets.getMeshLods());
+        setQuantizedMesh(assets.getQuantizedMesh());
+        setExplosionVertexShaderCode(assets.getExplosionVertexShaderCode());
+        setSimpleFragmentShaderCode(assets.getSimpleFragmentShaderCode());
+        setInstancedVertexShaderCode(assets.getInstancedVertexShaderCode());
+        setInstancedFragmentShaderCode(assets.getInstancedFragmentShaderCode());
+
+        if (surfaceCreated) {
+            glTasks.clear();
+            postGlObjects();
+        }
+    }
+
+    /**
+     * @return - Whether the heads are drawn, rather than the placeholder while the assets load.
+     */
+    public boolean isReady() {
+        return monkeyHeads != null && glTasks.isEmpty();
+    }
+
     private void initializeObjects() {
+        MonkeyHead.glState = glState;
         MonkeyHead.explosionVertexShaderCode = explosionVertexShaderCode;
         MonkeyHead.simpleFragmentShaderCode = simpleFragmentShaderCode;
-        MonkeyHead.positions = getPositions();
-        MonkeyHead.normals = getNormals();
+        MonkeyHead.mesh = getMesh();
+        if (meshLods == null || meshLods.getBase() != getMesh()) {
+            meshLods = MeshLods.single(getMesh());
+        }
+        MonkeyHead.lods = meshLods;
+        MonkeyHead.quantizedMesh = quantizedMesh;
+        lodSelector.setLevels(meshLods.getErrors(), noOfObjects);
+        lodStarts = new int[meshLods.getLevelCount() + 1];
+        lodCursors = new int[meshLods.getLevelCount()];
+
+        // the heads of the previous context give their picking ids back
+        if (monkeyHeads != null) {
+            for (MonkeyHead head : monkeyHeads) {
+                if (head.getPickingId() != ColorProvider.NO_ID) { // the dead ones already did
+                    pickingIds.release(head.getPickingId());
+                }
+            }
+        }
 
         monkeyHeads = new MonkeyHead[noOfObjects];
+        scene = new SceneStore(noOfObjects, MonkeyHead.step);
+        scene.setFadeColor(BACKGROUND, BACKGROUND, BACKGROUND);
+        applyExplosionDuration();
+        deadHeads = new ObjectPool<>(noOfObjects);
+        spheres = new float[noOfObjects * 4];
+        sceneBvh = new SceneBvh(noOfObjects);
+        candidates = new int[noOfObjects];
+        inView = new boolean[noOfObjects];
+        visibleHeads = new MonkeyHead[noOfObjects];
+        sortedHeads = new MonkeyHead[noOfObjects];
+        pickedHeads = new MonkeyHead[noOfObjects];
+        visibleCount = 0;
+
+        if (rayPicker == null || rayPicker.getMesh() != getMesh()) {
+            rayPicker = new RayPicker(getMesh());
+        }
 
         int objsPerDimension = (int) Math.cbrt(noOfObjects);
         float currentX, currentY, currentZ;
@@ -139,29 +500,205 @@ public class MonkeyHeadsRenderer implements GLSurfaceView.Renderer {
                     currentY = (float) (y * spacing - (dimensionLength / 2.0));
                     currentZ = (float) (z * spacing - (dimensionLength / 2.0));
 
-                    monkeyHeads[i] = new MonkeyHead();
+                    monkeyHeads[i] = new MonkeyHead(scene);
+                    monkeyHeads[i].setProjectionMatrix(mProjectionMatrix);
+                    Mat4.translateM(scene.models, monkeyHeads[i].getMatrixOffset(), currentX, currentY, currentZ);
+                    scene.resetInterpolation(i);
 
-                    float[] viewMatrix = new float[16];
-                    Matrix.setIdentityM(viewMatrix, 0);
-                    Matrix.translateM(viewMatrix, 0, currentX, currentY, currentZ);
-
-                    monkeyHeads[i].setModelViewMatrix(viewMatrix);
-                    Color c = ColorProvider.getNextColor();
-                    monkeyHeads[i].setPickingColor(c);
-                    colorMonkeyHeadsMap.put(c.getR() + c.getG() + c.getB(), monkeyHeads[i]);
+                    monkeyHeads[i].setPickingId(pickingIds.allocate(monkeyHeads[i]));
 
                     i++;
                 }
             }
         }
+
+        updateBounds();
+        sceneBvh.build(noOfObjects);
+    }
+
+    /**
+     * Copies the current bounds of every head into the hierarchy, which still needs a refit.
+     * The spheres grow with the explosion, so the pieces of a head never pop out of view.
+     */
+    private void updateBounds() {
+        MeshBounds bounds = rayPicker.getBounds();
+        for (int i = 0; i < monkeyHeads.length; i++) {
+            bounds.transformSphere(scene.drawnModels, i * SceneStore.MATRIX, scene.getExplosionTime(i), sphere);
+            if (scene.isFinished(i)) {
+                sphere[3] = 0f; // not drawn, keeps the hierarchy tight
+            }
+            System.arraycopy(sphere, 0, spheres, i * 4, 4);
+            sceneBvh.setSphere(i, sphere[0], sphere[1], sphere[2], sphere[3]);
+        }
+    }
+
+    /**
+     * Moves the heads whose explosion just finished out of the picking index and into the
+     * pool, and respawns the ones that waited long enough. Memory and draw cost stay the
+     * same however many heads explode.
+     */
+    private void recycleHeads() {
+        long now = clock.getSteps();
+        long delay = (long) (respawnDelay * 1e9 / clock.getStepNanos());
+
+        for (MonkeyHead head : monkeyHeads) {
+            if (head.isFinished() && head.getPickingId() != ColorProvider.NO_ID) {
+                pickingIds.release(head.getPickingId());
+                head.clearPickingId();
+                deadHeads.release(head, now + delay);
+            }
+        }
+
+        MonkeyHead head;
+        while ((head = deadHeads.acquire(now)) != null) {
+            head.respawn();
+            head.setPickingId(pickingIds.allocate(head));
+        }
+    }
+
+    /**
+     * Collects the heads whose bounding sphere is at least partly inside the view frustum:
+     * the hierarchy rejects whole groups of heads by their boxes, the spheres then decide.
+     *
+     * @param projectionMatrix - Projection of the frustum, the camera is the current one.
+     * @param result - Receives the heads in index order.
+     * @return - Number of heads written to result.
+     */
+    private int cull(float[] projectionMatrix, MonkeyHead[] result) {
+        Mat4.multiplyMM(viewProjectionMatrix, 0, projectionMatrix, 0, mCameraMatrix, 0);
+        frustum.set(viewProjectionMatrix);
+
+        int candidateCount = sceneBvh.queryPlanes(frustum.getPlanes(), Frustum.PLANE_COUNT, candidates);
+
+        // the candidates come in the hierarchy's order, marking them and scanning the marks keeps
+        // the draw order stable from frame to frame without sorting, which may allocate
+        int first = inView.length, last = -1;
+        for (int c = 0; c < candidateCount; c++) {
+            int i = candidates[c];
+            if (!scene.isFinished(i) && frustum.intersectsSphere(spheres, i * 4)) {
+                inView[i] = true;
+                first = Math.min(first, i);
+                last = Math.max(last, i);
+            }
+        }
+
+        int count = 0;
+        for (int i = first; i <= last; i++) {
+            if (inView[i]) {
+                inView[i] = false;
+                result[count++] = monkeyHeads[i];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return - Number of heads drawn by the last frame.
+     */
+    public int getVisibleCount() {
+        return visibleCount;
+    }
+
+    /**
+     * @return - Number of heads the last frame skipped because they were out of view, 0 until the
+     *           heads exist.
+     */
+    public int getCulledCount() {
+        return monkeyHeads == null ? 0 : monkeyHeads.length - visibleCount;
     }
 
     @Override
     public void onSurfaceCreated(GL10 unused, EGLConfig config) {
         // Set the background frame color
-        GLES20.glClearColor(0.4f, 0.4f, 0.4f, 1.0f);
+        gl.glClearColor(BACKGROUND, BACKGROUND, BACKGROUND, 1.0f);
+
+        // this may be a new context after the previous one was lost, re-create the GL objects
+        glState.invalidate();
+        MonkeyHead.invalidateGlObjects();
+        surfaceCreated = true;
+
+        // a new context may come with another driver, which can't load the old binaries
+        MonkeyHead.programCache = null;
+        if (programCache != null && ProgramBinaryCache.isSupported(gl, glesVersion)) {
+            programCache.onContextCreated(gl);
+            MonkeyHead.programCache = programCache;
+        }
+        glTasks.clear();
 
-        initializeObjects();
+        // with the assets at hand (a new context) there's nothing to wait for, otherwise
+        // the placeholder shows until onAssetsLoaded()
+        if (hasAssets()) {
+            postGlObjects();
+            glTasks.runAll();
+        }
+    }
+
+    /**
+     * Queues the creation of the GL objects, in batches run by the next frames.
+     */
+    private void postGlObjects() {
+        // the default program, the mesh buffers and the heads
+        glTasks.post(new Runnable() {
+            @Override
+            public void run() {
+                initializeObjects();
+            }
+        });
+
+        if (InstancedBatch.isSupported(glesVersion) && instancedVertexShaderCode != null) {
+            glTasks.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (instancedBatch == null) {
+                        instancedBatch = new InstancedBatch(glState, noOfObjects);
+                    }
+                    instancedBatch.invalidate();
+                    instancedBatch.create(instancedVertexShaderCode, instancedFragmentShaderCode,
+                            MonkeyHead.programCache);
+                }
+            });
+        }
+
+        if (colorPicking) {
+            glTasks.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (colorPicker == null) {
+                        colorPicker = new AsyncColorPicker(glState, InstancedBatch.isSupported(glesVersion));
+                        colorPicker.setListener(explodeOnPick);
+                    }
+                    colorPicker.invalidate();
+                    colorPicker.create();
+                }
+            });
+        }
+
+        if (renderScale != null && ScaledFramebuffer.isSupported(glesVersion)) {
+            glTasks.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (scaledFramebuffer == null) {
+                        scaledFramebuffer = new ScaledFramebuffer(gl);
+                    }
+                    scaledFramebuffer.invalidate();
+                    scaledFramebuffer.create();
+                    renderScale.reset();
+                }
+            });
+        }
+
+        if (GpuFrameTimer.isSupported(gl, glesVersion)) {
+            glTasks.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (gpuTimer == null) {
+                        gpuTimer = new GpuFrameTimer(gl);
+                    }
+                    gpuTimer.invalidate();
+                    gpuTimer.create();
+                }
+            });
+        }
     }
 
     public void draw() {
@@ -169,44 +706,198 @@ public class MonkeyHeadsRenderer implements GLSurfaceView.Renderer {
     }
 
     public void draw(boolean objectPickingMode) {
+        glState.beginFrame();
+
+        // picking is timed as a whole by onTapEvent
+        if (!objectPickingMode) {
+            metrics.beginPhase(FrameMetrics.PHASE_CAMERA);
+        }
+
         // Draw background color
-        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+        gl.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+
+        long angles = cameraAngles.get();
+        Mat4.setIdentityM(mCameraMatrix, 0);
+        Mat4.rotateM(mCameraMatrix, 0, -angleX(angles), 0.0f, 1.0f, 0f);
+        Mat4.rotateM(mCameraMatrix, 0, -angleY(angles), 1.0f, 0.0f, 0f);
+
+        // simulation first, on the pool's workers when there are enough heads; the GL
+        // thread waits for it, then only reads the store. Picking redraws show the scene
+        // as it is, only real frames move the clock
+        if (!objectPickingMode) {
+            metrics.beginPhase(FrameMetrics.PHASE_UPDATE);
+            sceneUpdater.update(scene, clock.advance(), clock.getAlpha());
+            recycleHeads();
+        }
+
+        updateBounds();
+        sceneBvh.refit();
+        visibleCount = cull(mProjectionMatrix, visibleHeads);
+        selectLods();
 
-        Matrix.setIdentityM(mCameraMatrix, 0);
-        Matrix.rotateM(mCameraMatrix, 0, -cameraAngleX, 0.0f, 1.0f, 0f);
-        Matrix.rotateM(mCameraMatrix, 0, -cameraAngleY, 1.0f, 0.0f, 0f);
+        if (!objectPickingMode) {
+            metrics.beginPhase(FrameMetrics.PHASE_DRAW);
+        }
+
+        if (instancedBatch != null) {
+            instancedBatch.draw(visibleHeads, lodStarts, meshLods, MonkeyHead.meshBuffers, mCameraMatrix,
+                    mProjectionMatrix, objectPickingMode);
+        } else {
+            for (int level = 0; level < meshLods.getLevelCount(); level++) {
+                for (int i = lodStarts[level]; i < lodStarts[level + 1]; i++) {
+                    visibleHeads[i].draw(mCameraMatrix, mProjectionMatrix, objectPickingMode, level);
+                }
+            }
+        }
+    }
+
+    /**
+     * Picks the level of detail of every visible head from the depth of its bounding
+     * sphere's closest point, then sorts the visible heads by level, so each level is
+     * drawn in one go.
+     */
+    private void selectLods() {
+        int levelCount = meshLods.getLevelCount();
+        Arrays.fill(lodStarts, 0);
+        if (levelCount == 1) {
+            lodStarts[1] = visibleCount;
+            return;
+        }
+
+        for (int i = 0; i < visibleCount; i++) {
+            int index = visibleHeads[i].getIndex(), s = index * 4;
+            // the camera looks down -z
+            float depth = -(mCameraMatrix[2] * spheres[s] + mCameraMatrix[6] * spheres[s + 1]
+                    + mCameraMatrix[10] * spheres[s + 2] + mCameraMatrix[14]) - spheres[s + 3];
+            lodStarts[lodSelector.select(index, depth) + 1]++;
+        }
+        for (int level = 0; level < levelCount; level++) {
+            lodStarts[level + 1] += lodStarts[level];
+        }
+
+        // a counting sort keeps the index order within each level
+        System.arraycopy(lodStarts, 0, lodCursors, 0, levelCount);
+        for (int i = 0; i < visibleCount; i++) {
+            MonkeyHead head = visibleHeads[i];
+            sortedHeads[lodCursors[lodSelector.getLevel(head.getIndex())]++] = head;
+        }
+        MonkeyHead[] swap = visibleHeads;
+        visibleHeads = sortedHeads;
+        sortedHeads = swap;
+    }
+
+    /**
+     * Draws the picking colors of the heads that can still be picked, for {@link AsyncColorPicker}.
+     *
+     * @param projectionMatrix - Projection narrowed down to the tapped pixel, so culling leaves a head or two.
+     */
+    private void drawPicking(float[] projectionMatrix) {
+        int culled = cull(projectionMatrix, pickedHeads);
+
+        // exploding heads aren't where their mesh says anymore, and can't explode twice
+        int count = 0;
+        for (int i = 0; i < culled; i++) {
+            if (!pickedHeads[i].isUseExplosionAnimation()) {
+                pickedHeads[count++] = pickedHeads[i];
+            }
+        }
 
-        for (MonkeyHead t : monkeyHeads) {
-            t.draw(mCameraMatrix, objectPickingMode);
+        if (instancedBatch != null) {
+            instancedBatch.draw(pickedHeads, count, MonkeyHead.meshBuffers, mCameraMatrix, projectionMatrix, true);
+        } else {
+            for (int i = 0; i < count; i++) {
+                pickedHeads[i].draw(mCameraMatrix, projectionMatrix, true);
+            }
         }
     }
 
     @Override
     public void onDrawFrame(GL10 unused) {
-        //long currentTime = System.currentTimeMillis();
-        //long dt = currentTime - lastTick;
+        // taps are resolved against the last frame, the camera moves for this one
+        input.drain(inputConsumer);
 
-        // TODO draw only 60 frames per second, this had to be disabled due to weird flickering problems
-        //if (dt > 17) { // only 60 FPS (1000 ms / 60 fps)
-            draw();
-          //  lastTick = currentTime;
-        //}
+        if (!glTasks.isEmpty()) {
+            glTasks.run(UPLOAD_BUDGET_NANOS);
+        }
+        if (!isReady()) {
+            // placeholder: just the background, while the assets load or upload
+            gl.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+            clock.reset(); // the heads start moving with the first real frame
+            return;
+        }
+
+        // the frame rate is up to the FramePacer, the speed of the animations to the clock
+        long frameStart = System.nanoTime();
+        long gpuTime = FrameMetrics.NOT_MEASURED;
+        boolean scaling = renderScale != null && scaledFramebuffer != null && scaledFramebuffer.isCreated();
+
+        // the late picking reads go first, on GLES 2.0 glReadPixels waits for everything issued before it
+        if (colorPicker != null) {
+            metrics.beginPhase(FrameMetrics.PHASE_PICKING);
+            colorPicker.readBack();
+        }
+
+        if (gpuTimer != null) {
+            gpuTimer.begin();
+        }
+
+        // fill-bound frames draw fewer pixels, stretched over the surface afterwards
+        boolean offscreen = scaling && renderScale.getScale() < RenderScaleController.MAX_SCALE
+                && scaledFramebuffer.begin(viewportWidth, viewportHeight, renderScale.getScale());
+        draw();
+        if (offscreen) {
+            scaledFramebuffer.end();
+        }
+
+        if (gpuTimer != null) {
+            gpuTimer.end();
+            gpuTime = gpuTimer.poll();
+            metrics.setGpuTime(gpuTime);
+        }
+
+        if (colorPicker != null) {
+            metrics.beginPhase(FrameMetrics.PHASE_PICKING);
+            if (colorPicker.drawQueued(pickingPass, mProjectionMatrix, viewportWidth, viewportHeight)) {
+                gl.glViewport(0, 0, viewportWidth, viewportHeight);
+                gl.glClearColor(BACKGROUND, BACKGROUND, BACKGROUND, 1.0f);
+            }
+        }
+        metrics.endFrame();
+
+        long cpuTime = System.nanoTime() - frameStart;
+        if (scaling) {
+            long budget = framePacer != null ? framePacer.getInterval() * framePacer.getVsyncNanos()
+                    : RenderScaleController.DEFAULT_BUDGET_NANOS;
+            renderScale.onFrameRendered(cpuTime, gpuTime, budget);
+        }
+        // the resolution gives way first, the frame rate once the scale is out of room
+        if (framePacer != null && (!scaling || renderScale.isSaturated())) {
+            framePacer.onFrameRendered(cpuTime, gpuTime);
+        }
+
+        if (metricsLogInterval > 0 && metrics.getFrameCount() % metricsLogInterval == 0) {
+            Log.i(TAG, "frame metrics: " + metrics.snapshot() + "\n  culled " + getCulledCount() + " of "
+                    + monkeyHeads.length + " heads" + (scaling ? ", render scale " + renderScale.getScale() : ""));
+        }
     }
 
     @Override
     public void onSurfaceChanged(GL10 unused, int width, int height) {
         // Adjust the viewport based on geometry changes,
         // such as screen rotation
-        GLES20.glViewport(0, 0, width, height);
+        gl.glViewport(0, 0, width, height);
 
         float ratio = (float) width / height;
 
         // this projection matrix is applied to object coordinates
         // in the onDrawFrame() method
-        Matrix.frustumM(mProjectionMatrix, 0, -ratio, ratio, -1, 1, 3, 50);
+        Mat4.frustumM(mProjectionMatrix, 0, -ratio, ratio, -1, 1, 3, 50);
+        lodSelector.setProjection(mProjectionMatrix, height);
 
-        for (MonkeyHead t : monkeyHeads) {
-            t.setProjectionMatrix(mProjectionMatrix);
+        if (monkeyHeads != null) {
+            for (MonkeyHead t : monkeyHeads) {
+                t.setProjectionMatrix(mProjectionMatrix);
+            }
         }
 
         this.viewportHeight = height;
@@ -219,19 +910,30 @@ public class MonkeyHeadsRenderer implements GLSurfaceView.Renderer {
      * <p><strong>Note:</strong> When developing shaders, use the checkGlError()
      * method to debug shader coding errors.</p>
      *
+     * @param gl - Backend of the current context.
      * @param type - Vertex or fragment shader type.
      * @param shaderCode - String containing the shader code.
      * @return - Returns an id for the shader.
+     * @throws RuntimeException - If the shader doesn't compile, with the driver's info log.
      */
-    public static int loadShader(int type, String shaderCode){
+    public static int loadShader(GLBackend gl, int type, String shaderCode){
 
         // create a vertex shader type (GLES20.GL_VERTEX_SHADER)
         // or a fragment shader type (GLES20.GL_FRAGMENT_SHADER)
-        int shader = GLES20.glCreateShader(type);
+        int shader = gl.glCreateShader(type);
 
         // add the source code to the shader and compile it
-        GLES20.glShaderSource(shader, shaderCode);
-        GLES20.glCompileShader(shader);
+        gl.glShaderSource(shader, shaderCode);
+        gl.glCompileShader(shader);
+
+        int[] compiled = new int[1];
+        gl.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
+        if (compiled[0] != GLES20.GL_TRUE) {
+            String log = gl.glGetShaderInfoLog(shader);
+            gl.glDeleteShader(shader);
+            Log.e(TAG, "could not compile shader " + type + ": " + log);
+            throw new RuntimeException("could not compile shader " + type + ": " + log);
+        }
 
         return shader;
     }
@@ -241,46 +943,68 @@ public class MonkeyHeadsRenderer implements GLSurfaceView.Renderer {
     * just after making it:
     *
     * <pre>
-    * mColorHandle = GLES20.glGetUniformLocation(mProgram, "vColor");
-    * MonkeyHeadsRenderer.checkGlError("glGetUniformLocation");</pre>
+    * mColorHandle = gl.glGetUniformLocation(mProgram, "vColor");
+    * MonkeyHeadsRenderer.checkGlError(gl, "glGetUniformLocation");</pre>
     *
-    * If the operation is not successful, the check throws an error.
+    * If the operation is not successful, the check throws an error. Release builds
+    * skip the check altogether, see {@link #CHECK_GL_ERRORS}.
     *
+    * @param gl - Backend the call was made through.
     * @param glOperation - Name of the OpenGL call to check.
     */
-    public static void checkGlError(String glOperation) {
+    public static void checkGlError(GLBackend gl, String glOperation) {
+        if (!CHECK_GL_ERRORS) {
+            return;
+        }
+
         int error;
-        while ((error = GLES20.glGetError()) != GLES20.GL_NO_ERROR) {
+        while ((error = gl.glGetError()) != GLES20.GL_NO_ERROR) {
             Log.e(TAG, glOperation + ": glError " + error);
             throw new RuntimeException(glOperation + ": glError " + error);
         }
     }
 
+    /**
+     * Explodes the head under the given window point, if any. The point is unprojected
+     * with the matrices of the last frame, i.e. what the player saw when tapping. With
+     * color picking the head explodes {@link AsyncColorPicker#FRAME_DELAY} frames later.
+     * GL thread only, the view queues its taps in {@link #getInputQueue()}.
+     */
     public void onTapEvent(int x, int y) {
-        draw(true); // re-draw scene using unique color per object
+        if (!isReady()) {
+            return; // nothing to pick yet
+        }
 
-        ByteBuffer PixelBuffer = ByteBuffer.allocateDirect(4);
-        PixelBuffer.order(ByteOrder.nativeOrder());
-        PixelBuffer.position(0);
+        if (colorPicker != null) {
+            // drawn and read back by the next frames, see onDrawFrame()
+            colorPicker.request(x + 0.5f, y + 0.5f);
+            return;
+        }
 
-        // read the pixel touched by the player
-        GLES20.glReadPixels(x, this.viewportHeight - y, 1, 1, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, PixelBuffer);
-        byte b [] = new byte[4];
-        PixelBuffer.get(b);
+        metrics.beginPhase(FrameMetrics.PHASE_PICKING); // added to the next frame's times
 
-        int cr = b[0];
-        int cg = b[1];
-        int cb = b[2];
+        // aim at the center of the touched pixel
+        if (rayPicker.setRay(x + 0.5f, y + 0.5f, viewportWidth, viewportHeight, mProjectionMatrix, mCameraMatrix)) {
+            int picked = rayPicker.pick(sceneBvh, scene);
+            if (picked != RayPicker.NO_HIT) {
+                monkeyHeads[picked].setUseExplosionAnimation(true);
+            }
+        }
 
-        cr = (cr < 0) ? (256 - Math.abs(cr)) : cr;
-        cg = (cg < 0) ? (256 - Math.abs(cg)) : cg;
-        cb = (cb < 0) ? (256 - Math.abs(cb)) : cb;
+        metrics.endPhase();
+    }
 
-        // retrieve the picked object by its color hash
-        MonkeyHead pickedMonkeyHead = colorMonkeyHeadsMap.get(cr + cg + cb);
+    /**
+     * @return - The head drawn with the given picking color, or null for the background.
+     */
+    MonkeyHead findByPickingColor(int r, int g, int b) {
+        return findByPickingId(ColorProvider.decode(r, g, b));
+    }
 
-        if (pickedMonkeyHead != null) {
-            pickedMonkeyHead.setUseExplosionAnimation(true);
-        }
+    /**
+     * @return - The head with the given picking id, or null for {@link ColorProvider#NO_ID}.
+     */
+    MonkeyHead findByPickingId(int id) {
+        return pickingIds.get(id);
     }
 }
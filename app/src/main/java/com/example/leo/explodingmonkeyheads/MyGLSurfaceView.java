@@ -28,17 +28,34 @@ http://leopoldolomas.info
 
 package com.example.leo.explodingmonkeyheads;
 
+import android.app.ActivityManager;
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.content.res.Resources;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.opengl.GLSurfaceView;
+import android.os.Build;
 import android.support.v4.view.MotionEventCompat;
+import android.util.Log;
+import android.view.Choreographer;
 import android.view.MotionEvent;
+import android.view.WindowManager;
+import android.widget.Toast;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * A view container where OpenGL ES graphics can be drawn on screen.
@@ -46,36 +63,289 @@ import java.io.InputStreamReader;
  * interacting with drawn objects.
  */
 public class MyGLSurfaceView extends GLSurfaceView {
+    private static final String TAG = "MyGLSurfaceView";
 
     final MonkeyHeadsRenderer mRenderer;
     // variables used to keep track of user's touch gestures
     float mOriginX, mOriginY, mPreviousX, mPreviousY;
     final float touchScaleFactor = 0.05f;
 
+    // touches and gyroscope samples go to the GL thread through here, both from the UI thread
+    private final InputQueue input;
+    private final SensorManager sensorManager;
+    private final GyroCamera gyroCamera = new GyroCamera();
+    private boolean gyroscopeCamera;
+    private final SensorEventListener gyroscopeListener = new SensorEventListener() {
+        @Override
+        public void onSensorChanged(SensorEvent event) {
+            // rad/s around the device's x, y and z axes; a rotation the queue can't take yet
+            // waits for the next sample
+            if (gyroCamera.onSample(event.values[0], event.values[1], event.timestamp)
+                    && input.offer(InputQueue.CAMERA, gyroCamera.getPendingX(), gyroCamera.getPendingY())) {
+                gyroCamera.clearPending();
+            }
+        }
+
+        @Override
+        public void onAccuracyChanged(Sensor sensor, int accuracy) {
+        }
+    };
+
+    // asks for a frame on the vsyncs the renderer's FramePacer picks, null before Android 4.1
+    private Choreographer.FrameCallback pacing;
+    private boolean resumed;
+
+    // the mesh and shaders load in the background, the renderer shows a placeholder meanwhile
+    private final int glesVersion;
+    private ExecutorService loaderThreads;
+    private AssetLoader assetLoader; // null when not loading
+    private volatile boolean assetsLoaded;
+
     public MyGLSurfaceView(Context context, SensorManager mSensorManager, Resources resources) {
         super(context);
+        sensorManager = mSensorManager;
 
-        // Create an OpenGL ES 2.0 context.
-        setEGLContextClientVersion(2);
+        // Create an OpenGL ES 3.0 context when the device supports it (for instanced drawing), 2.0 otherwise.
+        glesVersion = supportsGles3(context) ? 3 : 2;
+        setEGLContextClientVersion(glesVersion);
 
         // Set the Renderer for drawing on the GLSurfaceView
         mRenderer = new MonkeyHeadsRenderer();
+        mRenderer.setGlesVersion(glesVersion);
+        input = mRenderer.getInputQueue();
+        // the code cache is cleared by app updates, which may change the shaders anyway
+        File cacheRoot = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                ? context.getCodeCacheDir() : context.getCacheDir();
+        ProgramBinaryCache programCache = new ProgramBinaryCache(new File(cacheRoot, "programs"));
+        programCache.setListener(new ProgramBinaryCache.Listener() {
+            @Override
+            public void onDropped(String fileName, String reason) {
+                Log.w(TAG, "program cache dropped " + fileName + ": " + reason);
+            }
+        });
+        mRenderer.setProgramCache(programCache);
+        if (BuildConfig.DEBUG) {
+            mRenderer.setMetricsLogInterval(600); // a summary every ~10 seconds
+        }
         setRenderer(mRenderer);
 
-        float[] positions = readArraysResource(R.raw.positions);
-        float[] normals = readArraysResource(R.raw.normals);
+        float refreshRate = 60f;
+        WindowManager wm = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        if (wm != null) {
+            refreshRate = wm.getDefaultDisplay().getRefreshRate();
+        }
+        mRenderer.setFramePacer(new FramePacer(refreshRate));
+        // fill-bound devices trade resolution for frame rate, on GLES 3.0 where the frame can be blitted
+        mRenderer.setRenderScaleController(new RenderScaleController());
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            // without Choreographer, the view keeps rendering on every vsync
+            setRenderMode(RENDERMODE_WHEN_DIRTY);
+            pacing = new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    if (!resumed) {
+                        return;
+                    }
+
+                    if (mRenderer.getFramePacer().isFrameDue(frameTimeNanos)) {
+                        requestRender();
+                    }
+                    Choreographer.getInstance().postFrameCallback(this);
+                }
+            };
+        }
 
-        mRenderer.setPositions(positions);
-        mRenderer.setNormals(normals);
+        loadAssets();
+    }
 
-        String explosionVertexShaderCode = readResource(R.raw.explosion_vertex_shader);
-        String simpleFragmentShaderCode = readResource(R.raw.simple_fragment_shader);
+    /**
+     * Loads the mesh and the shaders in parallel, then hands them to the renderer on the GL thread.
+     */
+    private void loadAssets() {
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        loaderThreads = Executors.newFixedThreadPool(threads);
+        assetLoader = new AssetLoader(loaderThreads);
+
+        final AssetLoader.Asset<Mesh> mesh = assetLoader.load("mesh", new Callable<Mesh>() {
+            @Override
+            public Mesh call() {
+                try {
+                    return readMeshResource(R.raw.monkey_head);
+                } catch (IOException e) {
+                    // fall back to the (much slower) comma-separated resources
+                    Log.w(TAG, "could not load the binary mesh, parsing the text resources instead", e);
+                    return readLegacyMesh(R.raw.positions, R.raw.normals);
+                }
+            }
+        });
+        // simplified once the mesh is there, still off the GL thread
+        final AssetLoader.Asset<MeshLods> lods = assetLoader.load("levels of detail", new Callable<MeshLods>() {
+            @Override
+            public MeshLods call() {
+                return MeshLods.build(mesh.getValue(), MeshLods.DEFAULT_LEVEL_COUNT);
+            }
+        }, mesh);
+        final AssetLoader.Asset<QuantizedMesh> packedVertices = assetLoader.load("packed vertices",
+                new Callable<QuantizedMesh>() {
+                    @Override
+                    public QuantizedMesh call() {
+                        return QuantizedMesh.quantize(lods.getValue().getMesh());
+                    }
+                }, lods);
+        final AssetLoader.Asset<String> explosionVertexShader = loadShader(R.raw.explosion_vertex_shader);
+        final AssetLoader.Asset<String> simpleFragmentShader = loadShader(R.raw.simple_fragment_shader);
+        final AssetLoader.Asset<String> instancedVertexShader, instancedFragmentShader;
+
+        List<AssetLoader.Asset<?>> parts = new ArrayList<>();
+        parts.add(mesh);
+        parts.add(lods);
+        parts.add(packedVertices);
+        parts.add(explosionVertexShader);
+        parts.add(simpleFragmentShader);
+        if (InstancedBatch.isSupported(glesVersion)) {
+            instancedVertexShader = loadShader(R.raw.explosion_instanced_vertex_shader);
+            instancedFragmentShader = loadShader(R.raw.instanced_fragment_shader);
+            parts.add(instancedVertexShader);
+            parts.add(instancedFragmentShader);
+        } else {
+            instancedVertexShader = instancedFragmentShader = null;
+        }
 
-        mRenderer.setExplosionVertexShaderCode(explosionVertexShaderCode);
-        mRenderer.setSimpleFragmentShaderCode(simpleFragmentShaderCode);
+        AssetLoader.Asset<SceneAssets> scene = assetLoader.load("scene", new Callable<SceneAssets>() {
+            @Override
+            public SceneAssets call() {
+                return new SceneAssets(mesh.getValue(), lods.getValue(), packedVertices.getValue(),
+                        explosionVertexShader.getValue(), simpleFragmentShader.getValue(),
+                        instancedVertexShader != null ? instancedVertexShader.getValue() : null,
+                        instancedFragmentShader != null ? instancedFragmentShader.getValue() : null);
+            }
+        }, parts.toArray(new AssetLoader.Asset<?>[parts.size()]));
+
+        final ExecutorService threadsToStop = loaderThreads;
+        final AssetLoader failedLoader = assetLoader;
+        scene.addCallback(new AssetLoader.Callback<SceneAssets>() {
+            @Override
+            public void onLoaded(final SceneAssets assets) {
+                assetsLoaded = true;
+                threadsToStop.shutdown();
+                queueEvent(new Runnable() {
+                    @Override
+                    public void run() {
+                        mRenderer.onAssetsLoaded(assets);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailed(String name, Throwable error) {
+                threadsToStop.shutdown();
+                Log.e(TAG, "could not load " + name, error);
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (assetLoader != failedLoader) {
+                            return; // cancelled by onPause() meanwhile
+                        }
+                        // the next onResume() tries again, the placeholder stays until then
+                        assetLoader = null;
+                        Toast.makeText(getContext(), R.string.assets_failed, Toast.LENGTH_LONG).show();
+                    }
+                });
+            }
+        });
+    }
+
+    private AssetLoader.Asset<String> loadShader(final int resourceId) {
+        return assetLoader.load("shader " + resourceId, new Callable<String>() {
+            @Override
+            public String call() throws IOException {
+                return readResource(resourceId);
+            }
+        });
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+
+        // the time spent paused isn't simulated
+        queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                mRenderer.getClock().reset();
+            }
+        });
+
+        if (!assetsLoaded && assetLoader == null) {
+            loadAssets(); // the previous attempt was cancelled by onPause()
+        }
+
+        resumed = true;
+        if (pacing != null) {
+            Choreographer.getInstance().postFrameCallback(pacing);
+        }
+        registerGyroscope();
     }
 
-    private String readResource(int resourceId) {
+    public boolean isGyroscopeCamera() {
+        return gyroscopeCamera;
+    }
+
+    /**
+     * Turns the camera along with the device, besides dragging. Off by default.
+     */
+    public void setGyroscopeCamera(boolean gyroscopeCamera) {
+        if (this.gyroscopeCamera == gyroscopeCamera) {
+            return;
+        }
+        this.gyroscopeCamera = gyroscopeCamera;
+        if (!resumed || sensorManager == null) {
+            return; // onResume() registers the listener
+        }
+        if (gyroscopeCamera) {
+            registerGyroscope();
+        } else {
+            sensorManager.unregisterListener(gyroscopeListener);
+        }
+    }
+
+    private void registerGyroscope() {
+        Sensor gyroscope = gyroscopeCamera && sensorManager != null
+                ? sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE) : null;
+        if (gyroscope != null) {
+            gyroCamera.reset();
+            // without a Handler the samples arrive on the UI thread, the queue's only producer
+            sensorManager.registerListener(gyroscopeListener, gyroscope, SensorManager.SENSOR_DELAY_GAME);
+        }
+    }
+
+    @Override
+    public void onPause() {
+        resumed = false;
+        if (pacing != null) {
+            Choreographer.getInstance().removeFrameCallback(pacing);
+        }
+        if (gyroscopeCamera && sensorManager != null) {
+            sensorManager.unregisterListener(gyroscopeListener);
+        }
+
+        // don't keep decoding for an activity that may never come back
+        if (!assetsLoaded && assetLoader != null) {
+            assetLoader.cancel();
+            loaderThreads.shutdownNow();
+            assetLoader = null;
+        }
+
+        super.onPause();
+    }
+
+    private static boolean supportsGles3(Context context) {
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        return am != null && am.getDeviceConfigurationInfo().reqGlEsVersion >= 0x30000;
+    }
+
+    private String readResource(int resourceId) throws IOException {
         InputStream is = getResources().openRawResource(resourceId);
         BufferedReader br = new BufferedReader(new InputStreamReader(is));
         StringBuilder r = new StringBuilder();
@@ -85,28 +355,67 @@ public class MyGLSurfaceView extends GLSurfaceView {
             while ((line = br.readLine()) != null) {
                 r.append(line).append('\n');
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+        } finally {
+            br.close();
         }
 
         return r.toString();
     }
 
-    private float[] readArraysResource(int resourceId) {
-        String rawStr = readResource(resourceId);
-        String[] elements = rawStr.split(",");
-
-        float[] array = new float[elements.length];
+    /**
+     * Loads a binary mesh resource, see {@link MeshFile}. The resource is stored uncompressed
+     * in the APK (see aaptOptions in build.gradle) so it can be memory-mapped directly.
+     */
+    private Mesh readMeshResource(int resourceId) throws IOException {
+        AssetFileDescriptor afd;
+        try {
+            afd = getResources().openRawResourceFd(resourceId);
+        } catch (Resources.NotFoundException e) {
+            afd = null;
+        }
 
-        for (int i = 0; i < array.length; i++) {
+        if (afd == null) { // the resource got compressed, read it as a stream instead
+            InputStream is = getResources().openRawResource(resourceId);
             try {
-                array[i] = Float.parseFloat(elements[i]);
-            } catch (NumberFormatException ex) {
-                ex.printStackTrace();
+                return MeshFile.read(is);
+            } finally {
+                is.close();
             }
         }
 
-        return array;
+        FileInputStream fis = afd.createInputStream();
+        try {
+            return MeshFile.map(fis.getChannel(), afd.getStartOffset(), afd.getLength());
+        } finally {
+            fis.close();
+            afd.close();
+        }
+    }
+
+    /**
+     * Loads a mesh from the legacy comma-separated positions and normals resources.
+     */
+    private Mesh readLegacyMesh(int positionsResourceId, int normalsResourceId) {
+        CsvFloatParser parser = new CsvFloatParser();
+
+        try {
+            float[] positions = readArraysResource(parser, positionsResourceId);
+            float[] normals = readArraysResource(parser, normalsResourceId);
+
+            return MeshIndexer.process(MeshData.fromArrays(positions, normals)).toMesh();
+        } catch (IOException e) {
+            throw new RuntimeException("could not load the mesh resources", e);
+        }
+    }
+
+    private float[] readArraysResource(CsvFloatParser parser, int resourceId) throws IOException {
+        InputStream is = getResources().openRawResource(resourceId);
+
+        try {
+            return parser.parse(is);
+        } finally {
+            is.close();
+        }
     }
 
     @Override
@@ -126,21 +435,18 @@ public class MyGLSurfaceView extends GLSurfaceView {
                 float dx = x - mPreviousX;
                 float dy = y - mPreviousY;
 
-                mRenderer.setCameraAngleX(mRenderer.getCameraAngleX() + (dx * touchScaleFactor));
-                mRenderer.setCameraAngleY(mRenderer.getCameraAngleY() + (dy * touchScaleFactor));
-
-                mPreviousX = x;
-                mPreviousY = y;
+                // coalesced with the other moves of the frame; if the queue is full, the
+                // next move carries this one too
+                if (input.offer(InputQueue.CAMERA, dx * touchScaleFactor, dy * touchScaleFactor)) {
+                    mPreviousX = x;
+                    mPreviousY = y;
+                }
                 return true;
             case (MotionEvent.ACTION_UP) :
                 boolean isTap = Math.abs(mOriginX - x) < 2.0 && Math.abs(mOriginY - y) < 2.0;
 
-                if (isTap) {
-                    queueEvent(new Runnable(){
-                        @Override
-                        public void run() {
-                            mRenderer.onTapEvent((int)x, (int)y);
-                        }});
+                if (isTap && !input.offer(InputQueue.TAP, x, y)) {
+                    Log.w(TAG, "input queue full, tap dropped");
                 }
 
                 return true;
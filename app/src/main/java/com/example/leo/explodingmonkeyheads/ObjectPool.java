@@ -0,0 +1,97 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+/**
+ * Fixed-size pool of objects waiting to be reused, handed out in the order they came
+ * back, each only once its ready time has passed: a dead head respawns a while after
+ * its explosion, not right away. The ready times are expected to follow the release
+ * order, as with a fixed delay. Releasing and acquiring never allocate.
+ *
+ * <p>Not thread safe, the renderer only touches it from the GL thread.</p>
+ */
+public class ObjectPool<T> {
+    private final Object[] objects; // ring, oldest at head
+    private final long[] readyTimes;
+    private int head, size;
+
+    public ObjectPool(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+
+        objects = new Object[capacity];
+        readyTimes = new long[capacity];
+    }
+
+    public int getCapacity() {
+        return objects.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param readyTime - When the object may be handed out again, in the caller's time unit.
+     * @throws IllegalStateException - When the pool is full.
+     */
+    public void release(T object, long readyTime) {
+        if (size == objects.length) {
+            throw new IllegalStateException("object pool full, capacity " + objects.length);
+        }
+
+        int slot = (head + size++) % objects.length;
+        objects[slot] = object;
+        readyTimes[slot] = readyTime;
+    }
+
+    /**
+     * @param now - Current time, in the unit of the ready times.
+     * @return - The object released first, or null if there's none or it isn't ready yet.
+     */
+    @SuppressWarnings("unchecked")
+    public T acquire(long now) {
+        if (size == 0 || readyTimes[head] > now) {
+            return null;
+        }
+
+        T object = (T) objects[head];
+        objects[head] = null;
+        head = (head + 1) % objects.length;
+        size--;
+        return object;
+    }
+
+    public void clear() {
+        while (size > 0) {
+            acquire(Long.MAX_VALUE);
+        }
+    }
+}
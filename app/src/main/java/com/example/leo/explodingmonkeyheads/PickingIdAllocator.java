@@ -0,0 +1,144 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Hands out the picking ids of the objects and maps them back, without locks so loader
+ * threads can register objects while the GL thread resolves taps.
+ *
+ * <p>Ids are the indices of a plain array holding the objects. Fresh ids come from an
+ * atomic counter; released ids go on a lock-free free list (a Treiber stack threaded
+ * through an int array) and are handed out again first. The head of the list carries
+ * a version in its upper 32 bits, so a thread that was preempted between reading the
+ * head and swapping it can't put back an id that was popped and pushed meanwhile.</p>
+ *
+ * <p>Ids fit in {@link ColorProvider}'s 24 bits, which turns them into picking colors.</p>
+ */
+public class PickingIdAllocator<T> {
+    private static final int EMPTY = -1; // end of the free list
+
+    private final int capacity;
+    private final AtomicReferenceArray<T> objects;
+    private final AtomicIntegerArray nextFree; // next id on the free list, for every released id
+    private final AtomicLong freeHead = new AtomicLong(pack(0, EMPTY)); // version, id
+    private final AtomicInteger fresh = new AtomicInteger(); // ids below were handed out at least once
+
+    /**
+     * @param capacity - How many objects may hold an id at the same time.
+     */
+    public PickingIdAllocator(int capacity) {
+        if (capacity < 1 || capacity > ColorProvider.MAX_ID + 1) {
+            throw new IllegalArgumentException("capacity out of range: " + capacity);
+        }
+
+        this.capacity = capacity;
+        objects = new AtomicReferenceArray<>(capacity);
+        nextFree = new AtomicIntegerArray(capacity);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private static long pack(int version, int id) {
+        return (long) version << 32 | (id & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Gives the object an id, safe to call from any thread.
+     *
+     * @return - The id, from 0 to capacity - 1.
+     * @throws IllegalStateException - When every id is taken.
+     */
+    public int allocate(T object) {
+        if (object == null) {
+            throw new IllegalArgumentException("null object");
+        }
+
+        int id = popFree();
+        if (id == EMPTY) {
+            id = fresh.getAndIncrement();
+            if (id >= capacity) {
+                fresh.getAndDecrement(); // keep the counter from overflowing after many failed calls
+                throw new IllegalStateException("out of picking ids, capacity " + capacity);
+            }
+        }
+
+        objects.set(id, object);
+        return id;
+    }
+
+    private int popFree() {
+        while (true) {
+            long head = freeHead.get();
+            int id = (int) head;
+            if (id == EMPTY) {
+                return EMPTY;
+            }
+
+            int version = (int) (head >>> 32);
+            if (freeHead.compareAndSet(head, pack(version + 1, nextFree.get(id)))) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Takes the id back, it may be handed out again right away. Safe to call from any thread.
+     *
+     * @throws IllegalStateException - If the id isn't held by an object.
+     */
+    public void release(int id) {
+        if (id < 0 || id >= capacity || objects.getAndSet(id, null) == null) {
+            throw new IllegalStateException("picking id not allocated: " + id);
+        }
+
+        while (true) {
+            long head = freeHead.get();
+            nextFree.set(id, (int) head);
+
+            int version = (int) (head >>> 32);
+            if (freeHead.compareAndSet(head, pack(version + 1, id))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return - The object holding the id, or null if none does, e.g. for {@link ColorProvider#NO_ID}.
+     */
+    public T get(int id) {
+        return id >= 0 && id < capacity ? objects.get(id) : null;
+    }
+}
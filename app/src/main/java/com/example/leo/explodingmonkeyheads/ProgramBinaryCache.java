@@ -0,0 +1,347 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+
+/**
+ * Keeps linked programs on disk, as returned by glGetProgramBinary, so later runs
+ * skip compiling and linking the shaders. Only GLES 3.0 contexts can do this from Java:
+ * GL_OES_get_program_binary has no Java bindings.
+ *
+ * <p>A binary is only valid for the exact shader sources and driver that produced it,
+ * so every file is named after a hash of both. Any file that doesn't check out (other
+ * driver, wrong checksum, truncated, rejected by glProgramBinary) is deleted and the
+ * caller compiles from source. All values are little-endian:</p>
+ *
+ * <pre>
+ *  0  int    magic ("EPRG")
+ *  4  int    format version
+ *  8  long   FNV-1a hash of the vertex and fragment shader sources
+ * 16  int    binary format, as reported by glGetProgramBinary
+ * 20  int    driver string length in bytes
+ * 24  int    binary length in bytes
+ * 28  int    FNV-1a checksum of the driver string and the binary
+ * 32  byte[] driver string, UTF-8 (GL_VENDOR, GL_RENDERER and GL_VERSION)
+ *  .  byte[] binary
+ * </pre>
+ *
+ * <p>The cache doesn't log, files it drops are reported to its {@link Listener}.</p>
+ */
+public class ProgramBinaryCache {
+
+    public static final int MAGIC = 0x47525045; // "EPRG" read as a little-endian int
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+
+    static final String SUFFIX = ".bin";
+    static final int CHECKSUM_OFFSET = 28;
+    // our programs take a few dozen KB, anything much bigger isn't one of them
+    static final int MAX_BINARY_SIZE = 4 << 20;
+    static final int MAX_DRIVER_SIZE = 4096;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    /**
+     * Told about the files the cache drops, on the GL thread.
+     */
+    public interface Listener {
+        /**
+         * @param fileName - Name of the file in the cache's directory.
+         * @param reason - Why it was deleted or couldn't be saved.
+         */
+        void onDropped(String fileName, String reason);
+    }
+
+    private final File directory;
+    private Listener listener;
+    private String driver; // null until onContextCreated()
+    private String prefix; // of the files written by this driver
+    private final int[] result = new int[1], format = new int[1]; // GL thread only
+
+    /**
+     * @param directory - App-private directory used only for the cache, created when needed.
+     */
+    public ProgramBinaryCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param glesVersion - Major version of the current context.
+     * @return - Whether the current context can save and load programs, must be called on the GL thread.
+     */
+    public static boolean isSupported(GLBackend gl, int glesVersion) {
+        if (glesVersion < 3 || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            return false;
+        }
+        int[] formats = new int[1];
+        gl.glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, formats, 0);
+        return formats[0] > 0;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public Listener getListener() {
+        return listener;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    private void dropped(String fileName, String reason) {
+        if (listener != null) {
+            listener.onDropped(fileName, reason);
+        }
+    }
+
+    /**
+     * Identifies the driver of a new context and deletes the binaries of any other driver,
+     * e.g. the one before a system update. Must be called on the GL thread before
+     * {@link #load} or {@link #store}.
+     */
+    public void onContextCreated(GLBackend gl) {
+        driver = gl.glGetString(GLES20.GL_VENDOR) + "\n" + gl.glGetString(GLES20.GL_RENDERER) + "\n"
+                + gl.glGetString(GLES20.GL_VERSION);
+        prefix = toHex(hash(FNV_OFFSET, driver)) + "-";
+
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            // also leftovers of writes that didn't finish
+            if (!name.startsWith(prefix) || !name.endsWith(SUFFIX)) {
+                dropped(name, "stale");
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Creates a program from the binary saved for these sources, must be called on the GL thread.
+     *
+     * @return - The linked program, or 0 if there's no usable binary.
+     */
+    public int load(GLBackend gl, String vertexShaderCode, String fragmentShaderCode) {
+        File file = fileFor(vertexShaderCode, fragmentShaderCode);
+        if (!file.isFile()) {
+            return 0;
+        }
+
+        ByteBuffer binary;
+        try {
+            binary = read(file, sourceHash(vertexShaderCode, fragmentShaderCode));
+        } catch (IOException e) {
+            dropped(file.getName(), e.getMessage());
+            file.delete();
+            return 0;
+        }
+
+        int program = gl.glCreateProgram();
+        gl.glProgramBinary(program, format[0], binary, binary.remaining());
+        gl.glGetProgramiv(program, GLES20.GL_LINK_STATUS, result, 0);
+        if (result[0] != GLES20.GL_TRUE) {
+            // the driver may reject a binary for any reason, an unknown format raises an error
+            while (gl.glGetError() != GLES20.GL_NO_ERROR) {
+                // drained so it isn't blamed on a later call
+            }
+            gl.glDeleteProgram(program);
+            dropped(file.getName(), "rejected by the driver");
+            file.delete();
+            return 0;
+        }
+        return program;
+    }
+
+    /**
+     * Saves a program linked from these sources, must be called on the GL thread. Link the
+     * program with GL_PROGRAM_BINARY_RETRIEVABLE_HINT set.
+     *
+     * @return - Whether the binary was saved; failing only means the next run compiles again.
+     */
+    public boolean store(GLBackend gl, int program, String vertexShaderCode, String fragmentShaderCode) {
+        gl.glGetProgramiv(program, GLES30.GL_PROGRAM_BINARY_LENGTH, result, 0);
+        int length = result[0];
+        if (length <= 0 || length > MAX_BINARY_SIZE) {
+            return false;
+        }
+
+        ByteBuffer binary = ByteBuffer.allocateDirect(length);
+        gl.glGetProgramBinary(program, length, result, 0, format, 0, binary);
+        binary.limit(result[0]);
+
+        File file = fileFor(vertexShaderCode, fragmentShaderCode);
+        File temp = new File(directory, file.getName() + ".tmp");
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("cannot create " + directory);
+            }
+            write(temp, sourceHash(vertexShaderCode, fragmentShaderCode), format[0], binary);
+            // readers never see a half written file
+            if (!temp.renameTo(file)) {
+                throw new IOException("cannot rename " + temp.getName());
+            }
+            return true;
+        } catch (IOException e) {
+            dropped(file.getName(), "could not save: " + e.getMessage());
+            temp.delete();
+            return false;
+        }
+    }
+
+    /**
+     * @return - The file that holds (or would hold) the binary for these sources.
+     */
+    File fileFor(String vertexShaderCode, String fragmentShaderCode) {
+        if (driver == null) {
+            throw new IllegalStateException("onContextCreated() wasn't called");
+        }
+        return new File(directory, prefix + toHex(sourceHash(vertexShaderCode, fragmentShaderCode)) + SUFFIX);
+    }
+
+    private void write(File file, long sourceHash, int binaryFormat, ByteBuffer binary) throws IOException {
+        byte[] driverBytes = driver.getBytes(UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + driverBytes.length + binary.remaining())
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(sourceHash);
+        buffer.putInt(binaryFormat);
+        buffer.putInt(driverBytes.length);
+        buffer.putInt(binary.remaining());
+        buffer.position(HEADER_SIZE);
+        buffer.put(driverBytes);
+        buffer.put(binary);
+        buffer.putInt(CHECKSUM_OFFSET, MeshFile.checksum(buffer, HEADER_SIZE, buffer.capacity()));
+        buffer.flip();
+
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            FileChannel channel = out.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return - The binary, in a direct buffer as glProgramBinary needs; its format goes to {@link #format}.
+     * @throws IOException - If the file can't be read or isn't a binary of these sources for this driver.
+     */
+    private ByteBuffer read(File file, long sourceHash) throws IOException {
+        long size = file.length();
+        if (size < HEADER_SIZE || size > HEADER_SIZE + MAX_DRIVER_SIZE + MAX_BINARY_SIZE) {
+            throw new IOException("bad size " + size);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("truncated");
+                }
+            }
+        } finally {
+            in.close();
+        }
+
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("not a program binary");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("unsupported version " + buffer.getInt(4));
+        }
+        if (buffer.getLong(8) != sourceHash) {
+            throw new IOException("built from other sources");
+        }
+        int driverLength = buffer.getInt(20);
+        int binaryLength = buffer.getInt(24);
+        if (driverLength < 0 || binaryLength <= 0 || HEADER_SIZE + (long) driverLength + binaryLength != size) {
+            throw new IOException("bad lengths");
+        }
+        if (buffer.getInt(CHECKSUM_OFFSET) != MeshFile.checksum(buffer, HEADER_SIZE, (int) size)) {
+            throw new IOException("checksum mismatch");
+        }
+
+        byte[] driverBytes = new byte[driverLength];
+        buffer.position(HEADER_SIZE);
+        buffer.get(driverBytes);
+        if (!driver.equals(new String(driverBytes, UTF_8))) {
+            throw new IOException("built by another driver");
+        }
+
+        format[0] = buffer.getInt(16);
+        return buffer.slice();
+    }
+
+    static long sourceHash(String vertexShaderCode, String fragmentShaderCode) {
+        // the separator keeps "ab" + "c" and "a" + "bc" apart
+        return hash(hash(hash(FNV_OFFSET, vertexShaderCode), "\0"), fragmentShaderCode);
+    }
+
+    /**
+     * 64-bit FNV-1a of the UTF-16 code units of a string, continuing from the given hash.
+     */
+    static long hash(long hash, String string) {
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            hash ^= c & 0xFF;
+            hash *= FNV_PRIME;
+            hash ^= c >>> 8;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static String toHex(long value) {
+        String hex = Long.toHexString(value);
+        return "0000000000000000".substring(hex.length()) + hex;
+    }
+}
@@ -0,0 +1,237 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import android.opengl.GLES20;
+
+/**
+ * The vertices of a {@link Mesh} packed for the GPU in half the memory: positions as
+ * 16-bit integers on a grid spanning the mesh's bounding box, normals as 16-bit
+ * octahedral coordinates. The vertex shaders decode them as
+ *
+ * <pre>
+ *   position = vPosition.xyz * uPositionScale.xyz + uPositionOffset.xyz
+ *   normal   = octahedral(vNormal / NORMAL_RANGE)
+ * </pre>
+ *
+ * The integers aren't normalized by the GPU, since GLES 2.0 and 3.0 map normalized
+ * shorts to floats slightly differently; the position scale takes care of that and the
+ * normals divide by the constant range. The mesh keeps its float data for the CPU side.
+ */
+public class QuantizedMesh {
+    // quantized values go from -RANGE to RANGE
+    public static final int POSITION_RANGE = 32767;
+    public static final int NORMAL_RANGE = 32767;
+
+    public static final VertexLayout LAYOUT = new VertexLayout()
+            .add("vPosition", Mesh.COORDS_PER_VERTEX, GLES20.GL_SHORT, false) // 6 bytes, padded to 8
+            .add("vNormal", 2, GLES20.GL_SHORT, false);
+
+    private final Mesh mesh;
+    private final ByteBuffer vertices;
+    private final float[] positionScale = new float[4], positionOffset = new float[4];
+
+    private QuantizedMesh(Mesh mesh) {
+        this.mesh = mesh;
+        this.vertices = ByteBuffer.allocateDirect(mesh.getVertexCount() * LAYOUT.getStride())
+                .order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Packs the vertices of a mesh, the index list (if any) is shared with it.
+     */
+    public static QuantizedMesh quantize(Mesh mesh) {
+        QuantizedMesh quantized = new QuantizedMesh(mesh);
+        int vertexCount = mesh.getVertexCount();
+
+        // the grid covers the bounding box, centered on it
+        for (int c = 0; c < Mesh.COORDS_PER_VERTEX; c++) {
+            float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+            for (int v = 0; v < vertexCount; v++) {
+                min = Math.min(min, mesh.getPosition(v, c));
+                max = Math.max(max, mesh.getPosition(v, c));
+            }
+            if (vertexCount == 0) {
+                min = max = 0f;
+            }
+            float halfExtent = (max - min) / 2;
+            quantized.positionOffset[c] = min + halfExtent;
+            // a flat box still needs a scale to divide by
+            quantized.positionScale[c] = halfExtent > 0f ? halfExtent / POSITION_RANGE : 1f;
+        }
+
+        float[] values = new float[Mesh.COORDS_PER_VERTEX];
+        for (int v = 0; v < vertexCount; v++) {
+            for (int c = 0; c < Mesh.COORDS_PER_VERTEX; c++) {
+                float q = (mesh.getPosition(v, c) - quantized.positionOffset[c]) / quantized.positionScale[c];
+                values[c] = Math.max(-POSITION_RANGE, Math.min(POSITION_RANGE, q));
+            }
+            LAYOUT.put(quantized.vertices, v, 0, values, 0);
+
+            encodeOctahedral(mesh.getNormal(v, 0), mesh.getNormal(v, 1), mesh.getNormal(v, 2), values, 0);
+            LAYOUT.put(quantized.vertices, v, 1, values, 0);
+        }
+        return quantized;
+    }
+
+    public Mesh getMesh() {
+        return mesh;
+    }
+
+    /**
+     * @return - The packed vertices in {@link #LAYOUT}, in a native-order direct buffer.
+     */
+    public ByteBuffer getVertices() {
+        return vertices;
+    }
+
+    public int getVertexCount() {
+        return mesh.getVertexCount();
+    }
+
+    /**
+     * @return - The uPositionScale uniform, w is 0; not to be modified.
+     */
+    public float[] getPositionScale() {
+        return positionScale;
+    }
+
+    /**
+     * @return - The uPositionOffset uniform, w is 0; not to be modified.
+     */
+    public float[] getPositionOffset() {
+        return positionOffset;
+    }
+
+    /**
+     * @return - Bytes of the packed vertices.
+     */
+    public int getByteCount() {
+        return getVertexCount() * LAYOUT.getStride();
+    }
+
+    /**
+     * @return - Bytes saved over the float vertices of the mesh.
+     */
+    public int getSavedBytes() {
+        return getVertexCount() * Mesh.STRIDE - getByteCount();
+    }
+
+    /**
+     * Decodes a position the way the vertex shaders do.
+     *
+     * @return - result, for chaining.
+     */
+    public float[] getPosition(int vertex, float[] result) {
+        int position = vertex * LAYOUT.getStride() + LAYOUT.getAttribute(0).offset;
+        for (int c = 0; c < Mesh.COORDS_PER_VERTEX; c++) {
+            result[c] = vertices.getShort(position + c * 2) * positionScale[c] + positionOffset[c];
+        }
+        return result;
+    }
+
+    /**
+     * Decodes a normal the way the vertex shaders do.
+     *
+     * @return - result, for chaining.
+     */
+    public float[] getNormal(int vertex, float[] result) {
+        int position = vertex * LAYOUT.getStride() + LAYOUT.getAttribute(1).offset;
+        decodeOctahedral(vertices.getShort(position), vertices.getShort(position + 2), result, 0);
+        return result;
+    }
+
+    /**
+     * Maps a direction to the octahedral square, scaled to +-{@link #NORMAL_RANGE}. Of the
+     * four grid points around it, the one that decodes closest to the direction is picked.
+     *
+     * @param result - Receives the two coordinates at offset.
+     */
+    static void encodeOctahedral(float x, float y, float z, float[] result, int offset) {
+        float l1 = Math.abs(x) + Math.abs(y) + Math.abs(z);
+        if (l1 == 0f) {
+            result[offset] = result[offset + 1] = 0f;
+            return;
+        }
+        float u = x / l1, v = y / l1;
+        if (z < 0f) {
+            // the lower half folds over the diagonals
+            float fu = (1f - Math.abs(v)) * signNotZero(u);
+            v = (1f - Math.abs(u)) * signNotZero(v);
+            u = fu;
+        }
+
+        // compared by distance, a float cosine is too close to 1 to tell these apart
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        float nx = x / length, ny = y / length, nz = z / length;
+        float[] decoded = new float[3];
+        float bestU = 0f, bestV = 0f, bestDistance = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < 4; i++) {
+            float qu = (i & 1) == 0 ? (float) Math.floor(u * NORMAL_RANGE) : (float) Math.ceil(u * NORMAL_RANGE);
+            float qv = (i & 2) == 0 ? (float) Math.floor(v * NORMAL_RANGE) : (float) Math.ceil(v * NORMAL_RANGE);
+            decodeOctahedral(qu, qv, decoded, 0);
+            float dx = decoded[0] - nx, dy = decoded[1] - ny, dz = decoded[2] - nz;
+            float distance = dx * dx + dy * dy + dz * dz;
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                bestU = qu;
+                bestV = qv;
+            }
+        }
+        result[offset] = bestU;
+        result[offset + 1] = bestV;
+    }
+
+    /**
+     * @param u - First coordinate, scaled to +-{@link #NORMAL_RANGE}.
+     * @param v - Second coordinate, scaled likewise.
+     * @param result - Receives the unit direction at offset.
+     */
+    static void decodeOctahedral(float u, float v, float[] result, int offset) {
+        float x = u / NORMAL_RANGE, y = v / NORMAL_RANGE;
+        float z = 1f - Math.abs(x) - Math.abs(y);
+        if (z < 0f) {
+            float fx = (1f - Math.abs(y)) * signNotZero(x);
+            y = (1f - Math.abs(x)) * signNotZero(y);
+            x = fx;
+        }
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        result[offset] = x / length;
+        result[offset + 1] = y / length;
+        result[offset + 2] = z / length;
+    }
+
+    // step(0.0, x) * 2.0 - 1.0 in the shaders
+    private static float signNotZero(float value) {
+        return value >= 0f ? 1f : -1f;
+    }
+}
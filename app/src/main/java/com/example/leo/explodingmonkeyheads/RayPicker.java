@@ -0,0 +1,385 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Finds the object under a tap on the CPU, without drawing anything: the tap is
+ * unprojected into a ray through the inverse of projection * camera, every object's
+ * bounding sphere is tested against the ray, and the survivors are tested, nearest
+ * first, against their bounding box and then every triangle of the mesh
+ * (Möller–Trumbore) in the object's own space.
+ *
+ * <p>All the objects share one mesh and are placed by their model matrix, as the
+ * heads are. Nothing allocates once the candidate list has grown to its working size.</p>
+ */
+public class RayPicker {
+    public static final int NO_HIT = -1;
+
+    private final Mesh mesh;
+    private final MeshBounds bounds;
+    private final float[] triangles; // 9 floats per triangle, the corners in local space
+
+    // the ray, in the space the model matrices map into: p(t) = origin + t * direction,
+    // t = 0 on the near plane and 1 on the far plane
+    private final float[] origin = new float[4], direction = new float[4];
+
+    // scratch storage
+    private final float[] viewProjection = new float[16], inverse = new float[16];
+    private final float[] point = new float[4], nearPoint = new float[4], farPoint = new float[4];
+    private final float[] sphere = new float[4];
+    private float enter, exit;
+    private int[] candidates = new int[16];
+    private float[] candidateDistances = new float[16];
+    private int candidateCount;
+
+    private float hitDistance = Float.NaN;
+
+    // the exact test of the objects a SceneBvh finds along the ray
+    private float[][] bvhModels;
+    private final SceneBvh.RayTester meshTester = new SceneBvh.RayTester() {
+        @Override
+        public float intersect(int object, float maxDistance) {
+            float[] m = bvhModels[object];
+            return m == null ? Float.POSITIVE_INFINITY : meshDistance(m);
+        }
+    };
+    private SceneStore bvhScene;
+    private final SceneBvh.RayTester sceneTester = new SceneBvh.RayTester() {
+        @Override
+        public float intersect(int object, float maxDistance) {
+            return bvhScene.isExploding(object) ? Float.POSITIVE_INFINITY
+                    : meshDistance(bvhScene.drawnModels, object * SceneStore.MATRIX);
+        }
+    };
+
+    public RayPicker(Mesh mesh) {
+        this.mesh = mesh;
+        int triangleCount = mesh.getElementCount() / 3;
+        triangles = new float[triangleCount * 9];
+        for (int corner = 0; corner < triangleCount * 3; corner++) {
+            int vertex = vertexAt(mesh, corner);
+            for (int c = 0; c < 3; c++) {
+                triangles[corner * 3 + c] = mesh.getPosition(vertex, c);
+            }
+        }
+
+        bounds = new MeshBounds(mesh);
+    }
+
+    private static int vertexAt(Mesh mesh, int corner) {
+        if (!mesh.isIndexed()) {
+            return corner;
+        }
+        if (mesh.getIndices() instanceof ShortBuffer) {
+            return ((ShortBuffer) mesh.getIndices()).get(corner) & 0xffff;
+        }
+        return ((IntBuffer) mesh.getIndices()).get(corner);
+    }
+
+    public Mesh getMesh() {
+        return mesh;
+    }
+
+    public MeshBounds getBounds() {
+        return bounds;
+    }
+
+    /**
+     * @return - Where the last hit is along the ray, 0 on the near plane and 1 on the far
+     *           plane, NaN if the last pick missed.
+     */
+    public float getHitDistance() {
+        return hitDistance;
+    }
+
+    /**
+     * Unprojects a point of the window into the ray the next picks are tested against.
+     *
+     * @param x - Window x, in pixels from the left.
+     * @param y - Window y, in pixels from the top as in touch events.
+     * @param projection - Projection matrix used to draw the frame.
+     * @param camera - Camera matrix used to draw the frame.
+     * @return - False if projection * camera can't be inverted, nothing can be picked then.
+     */
+    public boolean setRay(float x, float y, int viewportWidth, int viewportHeight, float[] projection,
+                          float[] camera) {
+        Mat4.multiplyMM(viewProjection, 0, projection, 0, camera, 0);
+        if (!Mat4.invertM(inverse, 0, viewProjection, 0)) {
+            return false;
+        }
+
+        float ndcX = 2f * x / viewportWidth - 1f;
+        float ndcY = 1f - 2f * y / viewportHeight;
+        if (!unproject(ndcX, ndcY, -1f, nearPoint) || !unproject(ndcX, ndcY, 1f, farPoint)) {
+            return false;
+        }
+
+        for (int i = 0; i < 3; i++) {
+            origin[i] = nearPoint[i];
+            direction[i] = farPoint[i] - nearPoint[i];
+        }
+        origin[3] = 1f;
+        direction[3] = 0f;
+        return true;
+    }
+
+    private boolean unproject(float x, float y, float z, float[] result) {
+        point[0] = x;
+        point[1] = y;
+        point[2] = z;
+        point[3] = 1f;
+        Mat4.multiplyMV(result, 0, inverse, 0, point, 0);
+        if (result[3] == 0f) {
+            return false;
+        }
+
+        for (int i = 0; i < 3; i++) {
+            result[i] /= result[3];
+        }
+        return true;
+    }
+
+    /**
+     * @param modelMatrices - Model matrix of every object, only the first count are tested.
+     * @return - Index of the nearest object whose mesh the ray hits, or NO_HIT.
+     */
+    public int pick(float[][] modelMatrices, int count) {
+        hitDistance = Float.NaN;
+        candidateCount = 0;
+
+        for (int i = 0; i < count; i++) {
+            float distance = sphereDistance(modelMatrices[i]);
+            if (distance == distance) {
+                addCandidate(i, distance);
+            }
+        }
+
+        int hit = NO_HIT;
+        float best = Float.POSITIVE_INFINITY;
+        for (int c = 0; c < candidateCount; c++) {
+            if (candidateDistances[c] > best) {
+                break; // sorted by distance, the remaining spheres are all behind the hit
+            }
+
+            float distance = meshDistance(modelMatrices[candidates[c]]);
+            if (distance < best) {
+                best = distance;
+                hit = candidates[c];
+            }
+        }
+
+        if (hit != NO_HIT) {
+            hitDistance = best;
+        }
+        return hit;
+    }
+
+    /**
+     * Same as {@link #pick(float[][], int)}, but only visits the objects whose box in the
+     * hierarchy the ray goes through.
+     *
+     * @param bvh - Hierarchy over the bounds of the objects, up to date with the matrices.
+     * @param modelMatrices - Model matrix of every object of the hierarchy, null to skip one.
+     */
+    public int pick(SceneBvh bvh, float[][] modelMatrices) {
+        bvhModels = modelMatrices;
+        int hit = pick(bvh, meshTester);
+        bvhModels = null;
+        return hit;
+    }
+
+    /**
+     * Same as {@link #pick(SceneBvh, float[][])} over the heads of a store, skipping the
+     * exploding ones: they aren't where their mesh says anymore, and can't explode twice.
+     */
+    public int pick(SceneBvh bvh, SceneStore scene) {
+        bvhScene = scene;
+        int hit = pick(bvh, sceneTester);
+        bvhScene = null;
+        return hit;
+    }
+
+    private int pick(SceneBvh bvh, SceneBvh.RayTester tester) {
+        int hit = bvh.raycast(origin[0], origin[1], origin[2], direction[0], direction[1], direction[2], 1f,
+                tester);
+        hitDistance = bvh.getHitDistance();
+        return hit == SceneBvh.NONE ? NO_HIT : hit;
+    }
+
+    /**
+     * Inserts into the candidates kept sorted by distance, there are only a few of them.
+     */
+    private void addCandidate(int index, float distance) {
+        if (candidateCount == candidates.length) {
+            int[] grownCandidates = new int[candidateCount * 2];
+            float[] grownDistances = new float[candidateCount * 2];
+            System.arraycopy(candidates, 0, grownCandidates, 0, candidateCount);
+            System.arraycopy(candidateDistances, 0, grownDistances, 0, candidateCount);
+            candidates = grownCandidates;
+            candidateDistances = grownDistances;
+        }
+
+        int i = candidateCount++;
+        while (i > 0 && candidateDistances[i - 1] > distance) {
+            candidates[i] = candidates[i - 1];
+            candidateDistances[i] = candidateDistances[i - 1];
+            i--;
+        }
+        candidates[i] = index;
+        candidateDistances[i] = distance;
+    }
+
+    /**
+     * @return - Where the ray enters the object's bounding sphere, clamped to the near
+     *           plane, or NaN if it misses it between the near and far planes.
+     */
+    float sphereDistance(float[] m) {
+        bounds.transformSphere(m, 0f, sphere);
+        float cx = sphere[0], cy = sphere[1], cz = sphere[2];
+        float r2 = sphere[3] * sphere[3];
+
+        // |origin + t * direction - center|^2 = r^2
+        float ox = origin[0] - cx, oy = origin[1] - cy, oz = origin[2] - cz;
+        float a = direction[0] * direction[0] + direction[1] * direction[1] + direction[2] * direction[2];
+        float b = ox * direction[0] + oy * direction[1] + oz * direction[2];
+        float c = ox * ox + oy * oy + oz * oz - r2;
+        float discriminant = b * b - a * c;
+        if (discriminant < 0f) {
+            return Float.NaN;
+        }
+
+        float root = (float) Math.sqrt(discriminant);
+        float near = (-b - root) / a, far = (-b + root) / a;
+        if (far < 0f || near > 1f) {
+            return Float.NaN;
+        }
+        return Math.max(near, 0f);
+    }
+
+    /**
+     * Tests the ray against the mesh in the object's space, where the hit distance along
+     * the ray is the same as in the space of the matrices since the map is affine.
+     *
+     * @return - Distance of the nearest triangle hit in [0, 1], or +Infinity.
+     */
+    float meshDistance(float[] m) {
+        return meshDistance(m, 0);
+    }
+
+    float meshDistance(float[] m, int offset) {
+        if (!Mat4.invertM(inverse, 0, m, offset)) {
+            return Float.POSITIVE_INFINITY;
+        }
+
+        Mat4.multiplyMV(nearPoint, 0, inverse, 0, origin, 0);
+        Mat4.multiplyMV(farPoint, 0, inverse, 0, direction, 0);
+        float ox = nearPoint[0], oy = nearPoint[1], oz = nearPoint[2];
+        float dx = farPoint[0], dy = farPoint[1], dz = farPoint[2];
+
+        if (!hitsBounds(ox, oy, oz, dx, dy, dz)) {
+            return Float.POSITIVE_INFINITY;
+        }
+
+        float best = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < triangles.length; i += 9) {
+            float t = intersectTriangle(triangles, i, ox, oy, oz, dx, dy, dz);
+            if (t >= 0f && t <= 1f && t < best) {
+                best = t;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Slab test of the ray segment between the near and far planes against the local bounding box.
+     */
+    private boolean hitsBounds(float ox, float oy, float oz, float dx, float dy, float dz) {
+        enter = 0f;
+        exit = 1f;
+        return slab(ox, dx, bounds.minX, bounds.maxX) && slab(oy, dy, bounds.minY, bounds.maxY)
+                && slab(oz, dz, bounds.minZ, bounds.maxZ);
+    }
+
+    /**
+     * Narrows [enter, exit] down to where the ray is between min and max along one axis.
+     *
+     * @return - False once the interval is empty.
+     */
+    private boolean slab(float o, float d, float min, float max) {
+        if (d == 0f) {
+            return o >= min && o <= max;
+        }
+
+        float t0 = (min - o) / d, t1 = (max - o) / d;
+        enter = Math.max(enter, Math.min(t0, t1));
+        exit = Math.min(exit, Math.max(t0, t1));
+        return enter <= exit;
+    }
+
+    /**
+     * Möller–Trumbore ray / triangle intersection, both faces count.
+     *
+     * @param triangles - Corners of the triangles, 9 floats each.
+     * @param offset - Offset of the triangle's first corner.
+     * @return - t such that origin + t * direction is on the triangle, or NaN if the ray
+     *           misses it or runs parallel to it.
+     */
+    static float intersectTriangle(float[] triangles, int offset, float ox, float oy, float oz,
+                                   float dx, float dy, float dz) {
+        float x0 = triangles[offset], y0 = triangles[offset + 1], z0 = triangles[offset + 2];
+        float e1x = triangles[offset + 3] - x0, e1y = triangles[offset + 4] - y0, e1z = triangles[offset + 5] - z0;
+        float e2x = triangles[offset + 6] - x0, e2y = triangles[offset + 7] - y0, e2z = triangles[offset + 8] - z0;
+
+        // p = direction x e2
+        float px = dy * e2z - dz * e2y, py = dz * e2x - dx * e2z, pz = dx * e2y - dy * e2x;
+        float det = e1x * px + e1y * py + e1z * pz;
+        if (Math.abs(det) < 1e-12f) {
+            return Float.NaN;
+        }
+        float invDet = 1f / det;
+
+        float sx = ox - x0, sy = oy - y0, sz = oz - z0;
+        float u = (sx * px + sy * py + sz * pz) * invDet;
+        if (u < 0f || u > 1f) {
+            return Float.NaN;
+        }
+
+        // q = s x e1
+        float qx = sy * e1z - sz * e1y, qy = sz * e1x - sx * e1z, qz = sx * e1y - sy * e1x;
+        float v = (dx * qx + dy * qy + dz * qz) * invDet;
+        if (v < 0f || u + v > 1f) {
+            return Float.NaN;
+        }
+
+        return (e2x * qx + e2y * qy + e2z * qz) * invDet;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+/**
+ * Picks the fraction of the surface's resolution the scene is rendered at, so fill-bound
+ * frames fit their budget: a PID controller on the mean cost of the last {@link #WINDOW}
+ * frames. The error is the log of the scale change that would bring the mean to
+ * {@link #HEADROOM} of the budget if the cost were all fill, i.e. grew with the pixel
+ * count; the fixed part of the cost is what the integral term takes care of.
+ *
+ * <p>Every change refills the window, and the frames still in flight when it happened
+ * are skipped, so the controller only ever judges a scale by its own frames. Errors
+ * within {@link #DEADBAND} leave the scale alone, which keeps it from hunting around
+ * the target. The scale moves by whole {@link #STEP}s, between {@link #MIN_SCALE} and
+ * {@link #MAX_SCALE}.</p>
+ *
+ * <p>Only the GPU's work depends on the resolution, so GPU times are used when timer
+ * queries are available, the GL thread's time otherwise. GL thread only.</p>
+ */
+public class RenderScaleController {
+    public static final float MIN_SCALE = 0.5f, MAX_SCALE = 1f;
+    // a frame budget at 60 Hz, for when no FramePacer tells the actual one
+    public static final long DEFAULT_BUDGET_NANOS = 16666667L;
+
+    static final int WINDOW = 15; // frames averaged, a quarter of a second at 60 Hz
+    // GPU times arrive this many frames late, after a change they still show the old scale
+    static final int SETTLE_FRAMES = GpuFrameTimer.QUERY_COUNT;
+    static final float HEADROOM = 0.85f; // of the budget the frames aim at, room for the spikes
+    static final float KP = 0.2f, KI = 0.7f, KD = 0.05f;
+    static final float DEADBAND = 0.04f, MAX_ERROR = 0.5f;
+    static final float STEP = 1f / 64;
+
+    private float scale = MAX_SCALE;
+    private final long[] costs = new long[WINDOW];
+    private int count, next, settling;
+    private long sum;
+    private boolean gpuTimed; // once GPU times show up, frames without one are skipped
+    private float error, lastError, previousError;
+
+    /**
+     * @return - Fraction of the surface's width and height to render at.
+     */
+    public float getScale() {
+        return scale;
+    }
+
+    /**
+     * @return - Error of the last evaluation, positive when the frames have time to spare.
+     */
+    public float getError() {
+        return error;
+    }
+
+    /**
+     * @return - Whether the frame rate is up to the FramePacer: the scale can't go any
+     *           lower, or it's at its highest and the frames fit their budget. Otherwise
+     *           the resolution changes first.
+     */
+    public boolean isSaturated() {
+        return scale <= MIN_SCALE || (scale >= MAX_SCALE && error >= 0f);
+    }
+
+    /**
+     * @param size - Width or height of the surface.
+     * @return - The size rendered at the given scale, at least a pixel.
+     */
+    public static int scaledSize(int size, float scale) {
+        return Math.max(1, Math.round(size * scale));
+    }
+
+    /**
+     * Forgets the frames measured so far, e.g. for a new context. The scale stays.
+     */
+    public void reset() {
+        count = next = settling = 0;
+        sum = 0;
+        gpuTimed = false;
+        error = lastError = previousError = 0f;
+    }
+
+    /**
+     * Takes the cost of a frame into account and adjusts the scale once the window is full.
+     *
+     * @param cpuNanos - Time the GL thread spent on the frame.
+     * @param gpuNanos - GPU time of a recent frame, or FrameMetrics.NOT_MEASURED.
+     * @param budgetNanos - Time the frame has, e.g. the FramePacer's interval.
+     * @return - Whether the scale changed.
+     */
+    public boolean onFrameRendered(long cpuNanos, long gpuNanos, long budgetNanos) {
+        if (gpuNanos != FrameMetrics.NOT_MEASURED) {
+            gpuTimed = true;
+        } else if (gpuTimed) {
+            return false;
+        }
+        if (settling > 0) {
+            settling--;
+            return false;
+        }
+
+        long cost = gpuTimed ? gpuNanos : cpuNanos;
+        if (count == WINDOW) {
+            sum -= costs[next];
+        } else {
+            count++;
+        }
+        costs[next] = cost;
+        sum += cost;
+        next = (next + 1) % WINDOW;
+        if (count < WINDOW) {
+            return false;
+        }
+
+        double mean = Math.max(1.0, (double) sum / WINDOW);
+        float e = (float) (0.5 * Math.log(HEADROOM * budgetNanos / mean));
+        error = Math.max(-MAX_ERROR, Math.min(MAX_ERROR, e));
+
+        float delta = KP * (error - lastError) + KI * error + KD * (error - 2 * lastError + previousError);
+        previousError = lastError;
+        lastError = error;
+        if (Math.abs(error) < DEADBAND || (error > 0f && scale >= MAX_SCALE)) {
+            return false;
+        }
+
+        float target = Math.round(scale * (float) Math.exp(delta) / STEP) * STEP;
+        target = Math.max(MIN_SCALE, Math.min(MAX_SCALE, target));
+        if (target == scale) {
+            return false;
+        }
+
+        // judge the new scale by its own frames only
+        scale = target;
+        count = next = 0;
+        sum = 0;
+        settling = gpuTimed ? SETTLE_FRAMES : 0;
+        return true;
+    }
+}
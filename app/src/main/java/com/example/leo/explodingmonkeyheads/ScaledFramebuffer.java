@@ -0,0 +1,170 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.util.Log;
+
+/**
+ * Offscreen target for rendering below the surface's resolution: the frame is drawn
+ * into the lower left part of a framebuffer as large as the surface, then stretched
+ * over the surface by glBlitFramebuffer. Only the part drawn into follows the scale,
+ * the storage is reallocated when the surface's size changes.
+ *
+ * <p>After the blit the framebuffer's contents are invalidated, so tiled GPUs don't
+ * write them back to memory. GLES 3.0 only, for the blit and the RGBA8 and 24-bit
+ * depth renderbuffers.</p>
+ */
+public class ScaledFramebuffer {
+    private static final String TAG = "ScaledFramebuffer";
+
+    private final GLBackend gl;
+    private final int[] ids = new int[2];
+    private final int[] attachments = { GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_DEPTH_ATTACHMENT };
+    private int framebuffer, colorBuffer, depthBuffer;
+    private int width, height; // of the storage, 0 until allocated
+    private int drawnWidth, drawnHeight;
+    private boolean created, bound;
+
+    public ScaledFramebuffer(GLBackend gl) {
+        this.gl = gl;
+    }
+
+    /**
+     * @return - Whether the context can blit, i.e. is a GLES 3.0 one.
+     */
+    public static boolean isSupported(int glesVersion) {
+        return InstancedBatch.isSupported(glesVersion); // same requirements as the GLES30 bindings
+    }
+
+    /**
+     * Creates the framebuffer, its storage is allocated by the first {@link #begin}. Must
+     * be called on the GL thread every time a context is created.
+     */
+    public void create() {
+        gl.glGenFramebuffers(1, ids, 0);
+        framebuffer = ids[0];
+        gl.glGenRenderbuffers(2, ids, 0);
+        colorBuffer = ids[0];
+        depthBuffer = ids[1];
+        width = height = 0;
+        bound = false;
+        created = true;
+    }
+
+    /**
+     * Forgets the GL objects, for when the context that owned them is gone.
+     */
+    public void invalidate() {
+        created = bound = false;
+        width = height = 0;
+    }
+
+    public boolean isCreated() {
+        return created;
+    }
+
+    public int getDrawnWidth() {
+        return drawnWidth;
+    }
+
+    public int getDrawnHeight() {
+        return drawnHeight;
+    }
+
+    /**
+     * Binds the framebuffer and sets the viewport to the scaled size, the frame is then
+     * drawn as usual and handed to the surface by {@link #end()}.
+     *
+     * @param surfaceWidth, surfaceHeight - Size of the surface, the framebuffer follows it.
+     * @param scale - Fraction of the surface's width and height to draw.
+     * @return - False if the framebuffer can't be used, the frame is then drawn to the surface.
+     */
+    public boolean begin(int surfaceWidth, int surfaceHeight, float scale) {
+        if (!created) {
+            return false;
+        }
+        if ((surfaceWidth != width || surfaceHeight != height) && !allocate(surfaceWidth, surfaceHeight)) {
+            return false;
+        }
+
+        drawnWidth = Math.min(width, RenderScaleController.scaledSize(width, scale));
+        drawnHeight = Math.min(height, RenderScaleController.scaledSize(height, scale));
+        gl.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffer);
+        gl.glViewport(0, 0, drawnWidth, drawnHeight);
+        bound = true;
+        return true;
+    }
+
+    /**
+     * Stretches the drawn part over the surface, then leaves the default framebuffer
+     * bound with the viewport covering the surface. Nothing happens without a {@link #begin}.
+     */
+    public void end() {
+        if (!bound) {
+            return;
+        }
+
+        // the framebuffer stays bound for reading
+        gl.glBindFramebuffer(GLES30.GL_DRAW_FRAMEBUFFER, 0);
+        gl.glBlitFramebuffer(0, 0, drawnWidth, drawnHeight, 0, 0, width, height, GLES20.GL_COLOR_BUFFER_BIT,
+                GLES20.GL_LINEAR);
+        gl.glInvalidateFramebuffer(GLES30.GL_READ_FRAMEBUFFER, attachments.length, attachments, 0);
+        gl.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        gl.glViewport(0, 0, width, height);
+        bound = false;
+    }
+
+    private boolean allocate(int surfaceWidth, int surfaceHeight) {
+        gl.glBindRenderbuffer(GLES20.GL_RENDERBUFFER, colorBuffer);
+        gl.glRenderbufferStorage(GLES20.GL_RENDERBUFFER, GLES30.GL_RGBA8, surfaceWidth, surfaceHeight);
+        gl.glBindRenderbuffer(GLES20.GL_RENDERBUFFER, depthBuffer);
+        gl.glRenderbufferStorage(GLES20.GL_RENDERBUFFER, GLES30.GL_DEPTH_COMPONENT24, surfaceWidth, surfaceHeight);
+        gl.glBindRenderbuffer(GLES20.GL_RENDERBUFFER, 0);
+
+        gl.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffer);
+        gl.glFramebufferRenderbuffer(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_RENDERBUFFER,
+                colorBuffer);
+        gl.glFramebufferRenderbuffer(GLES20.GL_FRAMEBUFFER, GLES20.GL_DEPTH_ATTACHMENT, GLES20.GL_RENDERBUFFER,
+                depthBuffer);
+        int status = gl.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+        gl.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        if (status != GLES20.GL_FRAMEBUFFER_COMPLETE) {
+            // e.g. out of memory, the frames keep going to the surface at full resolution
+            Log.w(TAG, "incomplete framebuffer for " + surfaceWidth + "x" + surfaceHeight + ": " + status);
+            created = false;
+            return false;
+        }
+
+        width = surfaceWidth;
+        height = surfaceHeight;
+        return true;
+    }
+}
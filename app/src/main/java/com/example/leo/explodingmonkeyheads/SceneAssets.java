@@ -0,0 +1,85 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+/**
+ * Everything the renderer needs before it can draw the heads, as loaded by
+ * {@link AssetLoader}. The instanced shaders are null when instancing isn't available,
+ * the levels of detail and packed vertices when they weren't built.
+ */
+public class SceneAssets {
+    private final Mesh mesh;
+    private final MeshLods meshLods;
+    private final QuantizedMesh quantizedMesh;
+    private final String explosionVertexShaderCode, simpleFragmentShaderCode;
+    private final String instancedVertexShaderCode, instancedFragmentShaderCode;
+
+    public SceneAssets(Mesh mesh, MeshLods meshLods, QuantizedMesh quantizedMesh, String explosionVertexShaderCode,
+                       String simpleFragmentShaderCode, String instancedVertexShaderCode,
+                       String instancedFragmentShaderCode) {
+        this.mesh = mesh;
+        this.meshLods = meshLods;
+        this.quantizedMesh = quantizedMesh;
+        this.explosionVertexShaderCode = explosionVertexShaderCode;
+        this.simpleFragmentShaderCode = simpleFragmentShaderCode;
+        this.instancedVertexShaderCode = instancedVertexShaderCode;
+        this.instancedFragmentShaderCode = instancedFragmentShaderCode;
+    }
+
+    public Mesh getMesh() {
+        return mesh;
+    }
+
+    public MeshLods getMeshLods() {
+        return meshLods;
+    }
+
+    /**
+     * @return - The vertices of the levels of detail (or of the mesh) packed for upload.
+     */
+    public QuantizedMesh getQuantizedMesh() {
+        return quantizedMesh;
+    }
+
+    public String getExplosionVertexShaderCode() {
+        return explosionVertexShaderCode;
+    }
+
+    public String getSimpleFragmentShaderCode() {
+        return simpleFragmentShaderCode;
+    }
+
+    public String getInstancedVertexShaderCode() {
+        return instancedVertexShaderCode;
+    }
+
+    public String getInstancedFragmentShaderCode() {
+        return instancedFragmentShaderCode;
+    }
+}
@@ -0,0 +1,554 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+/**
+ * Bounding volume hierarchy over the world-space boxes of the scene objects, so taps
+ * and culling don't have to visit every object.
+ *
+ * <p>The tree is built top-down with the surface area heuristic, evaluated over a few
+ * bins of the box centers, and stored in flat arrays: every node covers a contiguous
+ * range of {@link #objects}, and the two children of an inner node are stored next to
+ * each other, after their parent. Objects that move only need their box updated with
+ * {@link #setBounds} followed by a {@link #refit()}, which keeps the topology; call
+ * {@link #build(int)} again if they moved so far that queries slow down.</p>
+ *
+ * <p>Nothing allocates after the construction, except the traversal stack of a
+ * degenerate tree growing past its initial size.</p>
+ */
+public class SceneBvh {
+    public static final int NONE = -1;
+    static final int MAX_LEAF_SIZE = 4;
+    static final int BINS = 12;
+    static final float TRAVERSAL_COST = 1f; // relative to testing one object
+
+    /**
+     * Exact test of a single object, called by {@link #raycast} for the objects whose
+     * box the ray goes through.
+     */
+    public interface RayTester {
+        /**
+         * @param maxDistance - Hits past this distance don't matter anymore.
+         * @return - Distance along the ray of the object's nearest hit, or +Infinity.
+         */
+        float intersect(int object, float maxDistance);
+    }
+
+    private final int capacity;
+    private int objectCount, nodeCount;
+
+    private final float[] objectBounds; // min xyz, max xyz per object
+    final int[] objects; // object ids in tree order
+
+    // bounds and centers of the objects in tree order, only used while building: the
+    // splits then scan memory sequentially
+    private final float[] sortedBounds, centers;
+
+    private final float[] nodeBounds; // min xyz, max xyz per node
+    private final int[] nodeStart, nodeSize; // the range of objects under every node
+    private final int[] nodeChild; // left child of inner nodes, right is the next one, NONE for leaves
+
+    // build scratch
+    private final int[] binCounts = new int[3 * BINS];
+    private final float[] binBounds = new float[3 * BINS * 6];
+    private final float[] rightCosts = new float[BINS];
+    private final float[] binScales = new float[3];
+    private final float[] box = new float[6], side = new float[6];
+
+    // traversal stack
+    private int[] stack = new int[64];
+    private float[] stackDistances = new float[64];
+
+    private float hitDistance = Float.NaN;
+
+    public SceneBvh(int capacity) {
+        this.capacity = capacity;
+        objectBounds = new float[capacity * 6];
+        sortedBounds = new float[capacity * 6];
+        centers = new float[capacity * 3];
+        objects = new int[capacity];
+
+        int maxNodes = Math.max(1, 2 * capacity - 1);
+        nodeBounds = new float[maxNodes * 6];
+        nodeStart = new int[maxNodes];
+        nodeSize = new int[maxNodes];
+        nodeChild = new int[maxNodes];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getObjectCount() {
+        return objectCount;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return - Distance of the last {@link #raycast} hit, NaN if it missed.
+     */
+    public float getHitDistance() {
+        return hitDistance;
+    }
+
+    public void setBounds(int object, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int i = object * 6;
+        objectBounds[i] = minX;
+        objectBounds[i + 1] = minY;
+        objectBounds[i + 2] = minZ;
+        objectBounds[i + 3] = maxX;
+        objectBounds[i + 4] = maxY;
+        objectBounds[i + 5] = maxZ;
+    }
+
+    /**
+     * Sets the box of an object to the one around a sphere.
+     */
+    public void setSphere(int object, float x, float y, float z, float radius) {
+        setBounds(object, x - radius, y - radius, z - radius, x + radius, y + radius, z + radius);
+    }
+
+    /**
+     * Builds the tree over the first count objects, whose bounds must have been set.
+     */
+    public void build(int count) {
+        if (count < 0 || count > capacity) {
+            throw new IllegalArgumentException("count must be between 0 and " + capacity);
+        }
+
+        objectCount = count;
+        nodeCount = 0;
+        System.arraycopy(objectBounds, 0, sortedBounds, 0, count * 6);
+        for (int i = 0; i < count; i++) {
+            objects[i] = i;
+            for (int c = 0; c < 3; c++) {
+                centers[i * 3 + c] = (objectBounds[i * 6 + c] + objectBounds[i * 6 + 3 + c]) / 2f;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+
+        int sp = 0;
+        stack[sp++] = newNode(0, count);
+        while (sp > 0) {
+            int node = stack[--sp];
+            fitNode(node);
+
+            int split = findSplit(node);
+            if (split < 0) {
+                continue; // stays a leaf
+            }
+
+            int start = nodeStart[node], end = start + nodeSize[node];
+            int left = newNode(start, split - start);
+            newNode(split, end - split);
+            nodeChild[node] = left;
+
+            ensureStack(sp + 2);
+            stack[sp++] = left + 1;
+            stack[sp++] = left;
+        }
+    }
+
+    private int newNode(int start, int size) {
+        int node = nodeCount++;
+        nodeStart[node] = start;
+        nodeSize[node] = size;
+        nodeChild[node] = NONE;
+        return node;
+    }
+
+    /**
+     * Recomputes the boxes of every node from the objects' current bounds, bottom-up.
+     */
+    public void refit() {
+        for (int node = nodeCount - 1; node >= 0; node--) {
+            fitNode(node);
+        }
+    }
+
+    private void fitNode(int node) {
+        int b = node * 6;
+        int child = nodeChild[node];
+        if (child != NONE) {
+            // children come after their parent, so they are already up to date
+            System.arraycopy(nodeBounds, child * 6, nodeBounds, b, 6);
+            growBox(nodeBounds, b, nodeBounds, (child + 1) * 6);
+            return;
+        }
+
+        resetBox(nodeBounds, b);
+        for (int i = nodeStart[node], end = i + nodeSize[node]; i < end; i++) {
+            growBox(nodeBounds, b, objectBounds, objects[i] * 6);
+        }
+    }
+
+    private static void resetBox(float[] boxes, int b) {
+        boxes[b] = boxes[b + 1] = boxes[b + 2] = Float.POSITIVE_INFINITY;
+        boxes[b + 3] = boxes[b + 4] = boxes[b + 5] = Float.NEGATIVE_INFINITY;
+    }
+
+    // comparisons rather than Math.min / max, which also order NaN and -0 and are much slower
+    private static void growBox(float[] boxes, int b, float[] other, int o) {
+        for (int c = 0; c < 3; c++) {
+            if (other[o + c] < boxes[b + c]) {
+                boxes[b + c] = other[o + c];
+            }
+            if (other[o + 3 + c] > boxes[b + 3 + c]) {
+                boxes[b + 3 + c] = other[o + 3 + c];
+            }
+        }
+    }
+
+    private static float area(float[] boxes, int b) {
+        float dx = boxes[b + 3] - boxes[b], dy = boxes[b + 4] - boxes[b + 1], dz = boxes[b + 5] - boxes[b + 2];
+        if (dx < 0f || dy < 0f || dz < 0f) {
+            return 0f; // empty
+        }
+        return 2f * (dx * dy + dy * dz + dz * dx);
+    }
+
+    /**
+     * Picks the cheapest split of the node by the surface area heuristic and partitions
+     * its objects accordingly.
+     *
+     * @return - Index of the first object of the right child, or -1 to keep a leaf.
+     */
+    private int findSplit(int node) {
+        int start = nodeStart[node], size = nodeSize[node], end = start + size;
+        if (size <= 1) {
+            return -1;
+        }
+
+        // bounds of the centers, the bins span them
+        resetBox(box, 0);
+        for (int i = start * 3; i < end * 3; i += 3) {
+            for (int c = 0; c < 3; c++) {
+                float center = centers[i + c];
+                if (center < box[c]) {
+                    box[c] = center;
+                }
+                if (center > box[3 + c]) {
+                    box[3 + c] = center;
+                }
+            }
+        }
+
+        // bin the objects along the three axes in one pass, flat axes get no bins
+        for (int axis = 0; axis < 3; axis++) {
+            float extent = box[3 + axis] - box[axis];
+            binScales[axis] = extent > 0f ? BINS / extent : 0f;
+        }
+        for (int bin = 0; bin < 3 * BINS; bin++) {
+            binCounts[bin] = 0;
+            resetBox(binBounds, bin * 6);
+        }
+        for (int i = start; i < end; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                if (binScales[axis] == 0f) {
+                    continue;
+                }
+                int bin = axis * BINS + binOf(centers[i * 3 + axis], box[axis], binScales[axis]);
+                binCounts[bin]++;
+                growBox(binBounds, bin * 6, sortedBounds, i * 6);
+            }
+        }
+
+        int bestAxis = -1, bestBin = -1;
+        float bestCost = Float.POSITIVE_INFINITY;
+        for (int axis = 0; axis < 3; axis++) {
+            if (binScales[axis] == 0f) {
+                continue;
+            }
+
+            // sweep from the right, then from the left, the split goes after bin i
+            int first = axis * BINS;
+            resetBox(side, 0);
+            int count = 0;
+            for (int bin = BINS - 1; bin > 0; bin--) {
+                growBox(side, 0, binBounds, (first + bin) * 6);
+                count += binCounts[first + bin];
+                rightCosts[bin - 1] = count == 0 ? Float.NaN : area(side, 0) * count;
+            }
+            resetBox(side, 0);
+            count = 0;
+            for (int bin = 0; bin < BINS - 1; bin++) {
+                growBox(side, 0, binBounds, (first + bin) * 6);
+                count += binCounts[first + bin];
+                float cost = area(side, 0) * count + rightCosts[bin];
+                if (count > 0 && cost < bestCost) { // NaN, an empty right side, never wins
+                    bestCost = cost;
+                    bestAxis = axis;
+                    bestBin = bin;
+                }
+            }
+        }
+
+        float nodeArea = area(nodeBounds, node * 6);
+        if (bestAxis < 0) {
+            // every center in the same spot, only a split in the middle can bound the leaf size
+            return size <= MAX_LEAF_SIZE ? -1 : start + size / 2;
+        }
+        if (size <= MAX_LEAF_SIZE && bestCost + TRAVERSAL_COST * nodeArea >= nodeArea * size) {
+            return -1;
+        }
+
+        int i = start, j = end - 1;
+        while (i <= j) {
+            if (binOf(centers[i * 3 + bestAxis], box[bestAxis], binScales[bestAxis]) <= bestBin) {
+                i++;
+            } else {
+                swap(i, j--);
+            }
+        }
+        return i;
+    }
+
+    private static int binOf(float center, float min, float scale) {
+        int bin = (int) ((center - min) * scale);
+        return bin < BINS ? bin : BINS - 1;
+    }
+
+    private void swap(int i, int j) {
+        int object = objects[i];
+        objects[i] = objects[j];
+        objects[j] = object;
+
+        for (int c = 0; c < 3; c++) {
+            float center = centers[i * 3 + c];
+            centers[i * 3 + c] = centers[j * 3 + c];
+            centers[j * 3 + c] = center;
+        }
+        for (int c = 0; c < 6; c++) {
+            float bound = sortedBounds[i * 6 + c];
+            sortedBounds[i * 6 + c] = sortedBounds[j * 6 + c];
+            sortedBounds[j * 6 + c] = bound;
+        }
+    }
+
+    private void ensureStack(int size) {
+        if (size > stack.length) {
+            int[] grownStack = new int[size * 2];
+            float[] grownDistances = new float[size * 2];
+            System.arraycopy(stack, 0, grownStack, 0, stack.length);
+            System.arraycopy(stackDistances, 0, grownDistances, 0, stackDistances.length);
+            stack = grownStack;
+            stackDistances = grownDistances;
+        }
+    }
+
+    /**
+     * @return - Where the ray origin + t * direction enters the box, or +Infinity if it
+     *           doesn't go through it with t in [0, maxDistance].
+     */
+    static float boxEntry(float[] boxes, int b, float ox, float oy, float oz, float dx, float dy, float dz,
+                          float maxDistance) {
+        float enter = 0f, exit = maxDistance;
+        for (int c = 0; c < 3; c++) {
+            float o = c == 0 ? ox : (c == 1 ? oy : oz);
+            float d = c == 0 ? dx : (c == 1 ? dy : dz);
+            float min = boxes[b + c], max = boxes[b + 3 + c];
+            if (d == 0f) {
+                if (o < min || o > max) {
+                    return Float.POSITIVE_INFINITY;
+                }
+                continue;
+            }
+
+            float t0 = (min - o) / d, t1 = (max - o) / d;
+            enter = Math.max(enter, Math.min(t0, t1));
+            exit = Math.min(exit, Math.max(t0, t1));
+            if (enter > exit) {
+                return Float.POSITIVE_INFINITY;
+            }
+        }
+        return enter;
+    }
+
+    /**
+     * Finds the nearest object hit by the ray origin + t * direction, with t in [0, maxDistance].
+     * Boxes are visited nearest first and skipped once they are behind the best hit.
+     *
+     * @return - The object hit, or NONE. See {@link #getHitDistance()} for where.
+     */
+    public int raycast(float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance,
+                       RayTester tester) {
+        hitDistance = Float.NaN;
+        if (nodeCount == 0) {
+            return NONE;
+        }
+
+        float best = maxDistance;
+        int hit = NONE;
+
+        float rootEntry = boxEntry(nodeBounds, 0, ox, oy, oz, dx, dy, dz, best);
+        if (rootEntry == Float.POSITIVE_INFINITY) {
+            return NONE;
+        }
+        int sp = 0;
+        stack[sp] = 0;
+        stackDistances[sp++] = rootEntry;
+
+        while (sp > 0) {
+            int node = stack[--sp];
+            if (stackDistances[sp] > best) {
+                continue;
+            }
+
+            int child = nodeChild[node];
+            if (child == NONE) {
+                for (int i = nodeStart[node], end = i + nodeSize[node]; i < end; i++) {
+                    int object = objects[i];
+                    if (boxEntry(objectBounds, object * 6, ox, oy, oz, dx, dy, dz, best) == Float.POSITIVE_INFINITY) {
+                        continue;
+                    }
+
+                    float distance = tester.intersect(object, best);
+                    if (distance < best || (hit == NONE && distance == best && distance < Float.POSITIVE_INFINITY)) {
+                        best = distance;
+                        hit = object;
+                    }
+                }
+                continue;
+            }
+
+            float leftEntry = boxEntry(nodeBounds, child * 6, ox, oy, oz, dx, dy, dz, best);
+            float rightEntry = boxEntry(nodeBounds, (child + 1) * 6, ox, oy, oz, dx, dy, dz, best);
+            ensureStack(sp + 2);
+            // push the farther child first so the nearer one is visited first
+            if (leftEntry <= rightEntry) {
+                sp = push(sp, child + 1, rightEntry);
+                sp = push(sp, child, leftEntry);
+            } else {
+                sp = push(sp, child, leftEntry);
+                sp = push(sp, child + 1, rightEntry);
+            }
+        }
+
+        if (hit != NONE) {
+            hitDistance = best;
+        }
+        return hit;
+    }
+
+    private int push(int sp, int node, float entry) {
+        if (entry == Float.POSITIVE_INFINITY) {
+            return sp;
+        }
+        stack[sp] = node;
+        stackDistances[sp] = entry;
+        return sp + 1;
+    }
+
+    private static final int OUTSIDE = 0, INTERSECTING = 1, INSIDE = 2;
+
+    /**
+     * @param planes - a, b, c, d of every plane, the inside is where a * x + b * y + c * z + d >= 0.
+     */
+    private static int classify(float[] boxes, int b, float[] planes, int planeCount) {
+        int result = INSIDE;
+        for (int p = 0; p < planeCount * 4; p += 4) {
+            float a = planes[p], bb = planes[p + 1], c = planes[p + 2], d = planes[p + 3];
+
+            // the corners furthest along and against the plane normal
+            float far = a * (a >= 0f ? boxes[b + 3] : boxes[b]) + bb * (bb >= 0f ? boxes[b + 4] : boxes[b + 1])
+                    + c * (c >= 0f ? boxes[b + 5] : boxes[b + 2]) + d;
+            if (far < 0f) {
+                return OUTSIDE;
+            }
+            float near = a * (a >= 0f ? boxes[b] : boxes[b + 3]) + bb * (bb >= 0f ? boxes[b + 1] : boxes[b + 4])
+                    + c * (c >= 0f ? boxes[b + 2] : boxes[b + 5]) + d;
+            if (near < 0f) {
+                result = INTERSECTING;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Collects the objects whose box is at least partly inside every plane, e.g. the view frustum.
+     *
+     * @param planes - a, b, c, d of every plane, the inside is where a * x + b * y + c * z + d >= 0.
+     * @param result - Receives the objects, must hold {@link #getObjectCount()} of them.
+     * @return - Number of objects written to result, in no particular order.
+     */
+    public int queryPlanes(float[] planes, int planeCount, int[] result) {
+        if (nodeCount == 0) {
+            return 0;
+        }
+
+        int found = 0;
+        int sp = 0;
+        stack[sp++] = 0;
+        while (sp > 0) {
+            int node = stack[--sp];
+            int side = classify(nodeBounds, node * 6, planes, planeCount);
+            if (side == OUTSIDE) {
+                continue;
+            }
+
+            int start = nodeStart[node], size = nodeSize[node];
+            if (side == INSIDE) {
+                // the whole subtree is in, its objects are contiguous
+                System.arraycopy(objects, start, result, found, size);
+                found += size;
+            } else if (nodeChild[node] == NONE) {
+                for (int i = start; i < start + size; i++) {
+                    if (classify(objectBounds, objects[i] * 6, planes, planeCount) != OUTSIDE) {
+                        result[found++] = objects[i];
+                    }
+                }
+            } else {
+                ensureStack(sp + 2);
+                stack[sp++] = nodeChild[node] + 1;
+                stack[sp++] = nodeChild[node];
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return - Depth of the deepest leaf, the root alone being 1.
+     */
+    int getDepth() {
+        return depth(0);
+    }
+
+    private int depth(int node) {
+        if (nodeCount == 0) {
+            return 0;
+        }
+        int child = nodeChild[node];
+        return child == NONE ? 1 : 1 + Math.max(depth(child), depth(child + 1));
+    }
+}
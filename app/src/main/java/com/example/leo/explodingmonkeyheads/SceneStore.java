@@ -0,0 +1,354 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+/**
+ * State of every head, laid out as one primitive array per field instead of one object
+ * per head: a frame walks each array front to back, so the update, the bounds and the
+ * instance upload stream through memory instead of chasing pointers across the heap.
+ * {@link MonkeyHead} is just an index into the store.
+ *
+ * <p>The heads spin by the same angle every update, around their own axis, so the
+ * rotation is computed once when a head is added and the update is a 3x3 product.</p>
+ *
+ * <p>Updates are the fixed steps of a {@link SimulationClock}. The state before the last
+ * step is kept, and what's drawn (the drawn arrays, read by the rendering, the bounds and
+ * the picking) is interpolated between the two at the clock's alpha.</p>
+ *
+ * <p>An explosion lasts {@link #getExplosionDuration()}, fading to the fade color over its
+ * end, then the head is finished: no longer drawn nor picked until it's respawned.</p>
+ */
+public class SceneStore {
+    public static final int MATRIX = 16, AXIS = 3, ROTATION = 9, COLOR = 4;
+    public static final byte EXPLODING = 1, FINISHED = 2; // flags
+
+    private final int capacity;
+    private final float step; // degrees per update, and explosion time too
+    private int count;
+    // in explosion time, i.e. step per update
+    private float explosionDuration = Float.POSITIVE_INFINITY, fadeDuration;
+    private final float[] fadeColor = new float[3];
+
+    final float[] models; // column-major model matrix of every head
+    final float[] previousModels; // before the last update
+    final float[] drawnModels; // interpolated between the two
+    final float[] axes; // rotation axis
+    final float[] rotations; // rotation of one update, row-major 3x3
+    final float[] colors; // rgba
+    final float[] explosionTimes; // time the explosion has been running, kept when it stops
+    final float[] previousExplosionTimes;
+    final float[] drawnExplosionTimes;
+    final byte[] flags;
+
+    private final float[] unit = new float[MATRIX];
+
+    /**
+     * @param step - Angle in degrees every head turns by per update, also added to the explosion times.
+     */
+    public SceneStore(int capacity, float step) {
+        this.capacity = capacity;
+        this.step = step;
+        models = new float[capacity * MATRIX];
+        previousModels = new float[capacity * MATRIX];
+        drawnModels = new float[capacity * MATRIX];
+        axes = new float[capacity * AXIS];
+        rotations = new float[capacity * ROTATION];
+        colors = new float[capacity * COLOR];
+        explosionTimes = new float[capacity];
+        previousExplosionTimes = new float[capacity];
+        drawnExplosionTimes = new float[capacity];
+        flags = new byte[capacity];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public float getStep() {
+        return step;
+    }
+
+    public float getExplosionDuration() {
+        return explosionDuration;
+    }
+
+    /**
+     * @param explosionDuration - Explosion time after which a head is finished, infinite by default.
+     * @param fadeDuration - How much of that the head spends fading out, at the end.
+     */
+    public void setExplosionDuration(float explosionDuration, float fadeDuration) {
+        if (!(explosionDuration > 0f) || fadeDuration < 0f || fadeDuration > explosionDuration) {
+            throw new IllegalArgumentException("bad explosion " + explosionDuration + " or fade " + fadeDuration);
+        }
+
+        this.explosionDuration = explosionDuration;
+        this.fadeDuration = fadeDuration;
+    }
+
+    public float getFadeDuration() {
+        return fadeDuration;
+    }
+
+    /**
+     * Sets the color the exploding heads fade to, the background's so they vanish into it.
+     */
+    public void setFadeColor(float r, float g, float b) {
+        fadeColor[0] = r;
+        fadeColor[1] = g;
+        fadeColor[2] = b;
+    }
+
+    /**
+     * Adds a head with an identity model matrix.
+     *
+     * @param x, y, z - Axis the head spins around, need not be normalized.
+     * @return - Index of the head.
+     * @throws IllegalStateException - When the store is full.
+     */
+    public int add(float x, float y, float z, float r, float g, float b, float a) {
+        if (count == capacity) {
+            throw new IllegalStateException("scene store full, capacity " + capacity);
+        }
+
+        int i = count++;
+        Mat4.setIdentityM(models, i * MATRIX);
+        reset(i, x, y, z, r, g, b, a);
+        return i;
+    }
+
+    /**
+     * Brings a head back intact, unrotated where it was, with a new axis and color.
+     */
+    public void respawn(int i, float x, float y, float z, float r, float g, float b, float a) {
+        int m = i * MATRIX;
+        float tx = models[m + 12], ty = models[m + 13], tz = models[m + 14];
+        Mat4.setIdentityM(models, m);
+        models[m + 12] = tx;
+        models[m + 13] = ty;
+        models[m + 14] = tz;
+        reset(i, x, y, z, r, g, b, a);
+    }
+
+    private void reset(int i, float x, float y, float z, float r, float g, float b, float a) {
+        setAxis(i, x, y, z);
+        colors[i * COLOR] = r;
+        colors[i * COLOR + 1] = g;
+        colors[i * COLOR + 2] = b;
+        colors[i * COLOR + 3] = a;
+        explosionTimes[i] = 0f;
+        flags[i] = 0;
+        resetInterpolation(i);
+    }
+
+    /**
+     * Makes the current model matrix and explosion time of a head the previous and drawn
+     * ones too, after they were written directly, so it doesn't glide over from its old state.
+     */
+    public void resetInterpolation(int i) {
+        System.arraycopy(models, i * MATRIX, previousModels, i * MATRIX, MATRIX);
+        System.arraycopy(models, i * MATRIX, drawnModels, i * MATRIX, MATRIX);
+        previousExplosionTimes[i] = drawnExplosionTimes[i] = explosionTimes[i];
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Sets the axis a head spins around and computes the rotation of one update.
+     */
+    public void setAxis(int i, float x, float y, float z) {
+        axes[i * AXIS] = x;
+        axes[i * AXIS + 1] = y;
+        axes[i * AXIS + 2] = z;
+
+        // the rotation of one step, from a unit matrix turned exactly like Mat4.rotateM does
+        int r = i * ROTATION;
+        Mat4.setIdentityM(unit, 0);
+        Mat4.rotateM(unit, 0, step, x, y, z);
+        for (int row = 0; row < 3; row++) {
+            for (int column = 0; column < 3; column++) {
+                rotations[r + row * 3 + column] = unit[column * 4 + row];
+            }
+        }
+    }
+
+    public boolean isExploding(int i) {
+        return (flags[i] & EXPLODING) != 0;
+    }
+
+    /**
+     * Starts or stops the explosion of a head, stopping it also makes a finished head intact again.
+     */
+    public void setExploding(int i, boolean exploding) {
+        flags[i] = (byte) (exploding ? flags[i] | EXPLODING : flags[i] & ~(EXPLODING | FINISHED));
+    }
+
+    /**
+     * @return - Whether the explosion of the head is over, it's no longer drawn nor picked.
+     */
+    public boolean isFinished(int i) {
+        return (flags[i] & FINISHED) != 0;
+    }
+
+    /**
+     * @return - How far the head has faded out as drawn, from 0 to 1.
+     */
+    public float getFade(int i) {
+        if ((flags[i] & EXPLODING) == 0 || fadeDuration == 0f) {
+            return (flags[i] & FINISHED) != 0 ? 1f : 0f;
+        }
+
+        float fade = (drawnExplosionTimes[i] - explosionDuration + fadeDuration) / fadeDuration;
+        return Math.max(0f, Math.min(fade, 1f));
+    }
+
+    /**
+     * Copies the color of the head as drawn, faded out towards the fade color.
+     *
+     * @param result - Receives rgba.
+     */
+    public void getDrawnColor(int i, float[] result) {
+        float fade = getFade(i);
+        int c = i * COLOR;
+        for (int k = 0; k < 3; k++) {
+            result[k] = colors[c + k] + fade * (fadeColor[k] - colors[c + k]);
+        }
+        result[3] = colors[c + 3];
+    }
+
+    /**
+     * @return - The time passed to the explosion shader as drawn, 0 while the head is intact.
+     */
+    public float getExplosionTime(int i) {
+        return (flags[i] & EXPLODING) != 0 ? drawnExplosionTimes[i] : 0f;
+    }
+
+    /**
+     * Advances the rotation and, if active, the explosion of every head by one step, and
+     * draws them where that step left them.
+     */
+    public void update() {
+        update(0, count);
+    }
+
+    /**
+     * Same as {@link #update()}, for the heads from start to end - 1.
+     */
+    public void update(int start, int end) {
+        update(start, end, 1, 1f);
+    }
+
+    /**
+     * Runs a frame of the simulation for the heads from start to end - 1.
+     *
+     * @param steps - Updates to run, may be 0.
+     * @param alpha - Where to draw the heads between the state before the last update (0)
+     *              and after it (1), see {@link SimulationClock#getAlpha()}.
+     */
+    public void update(int start, int end, int steps, float alpha) {
+        for (int i = start; i < end; i++) {
+            if (steps > 0) {
+                step(i, steps, alpha);
+            } else {
+                interpolate(i, alpha);
+            }
+        }
+    }
+
+    private void interpolate(int i, float alpha) {
+        int m = i * MATRIX;
+        float previousTime = previousExplosionTimes[i];
+        drawnExplosionTimes[i] = previousTime + alpha * (explosionTimes[i] - previousTime);
+        for (int k = m; k < m + 12; k++) { // the translation doesn't move
+            float previous = previousModels[k];
+            drawnModels[k] = previous + alpha * (models[k] - previous);
+        }
+    }
+
+    private void step(int i, int steps, float alpha) {
+        int m = i * MATRIX, r = i * ROTATION;
+        float r00 = rotations[r], r01 = rotations[r + 1], r02 = rotations[r + 2];
+        float r10 = rotations[r + 3], r11 = rotations[r + 4], r12 = rotations[r + 5];
+        float r20 = rotations[r + 6], r21 = rotations[r + 7], r22 = rotations[r + 8];
+
+        // m = m * R, only the first three columns change
+        for (int s = 0; s < steps - 1; s++) {
+            for (int row = 0; row < 4; row++) {
+                float m0 = models[m + row], m1 = models[m + 4 + row], m2 = models[m + 8 + row];
+                models[m + row] = m0 * r00 + m1 * r10 + m2 * r20;
+                models[m + 4 + row] = m0 * r01 + m1 * r11 + m2 * r21;
+                models[m + 8 + row] = m0 * r02 + m1 * r12 + m2 * r22;
+            }
+        }
+
+        // the last step keeps the state it started from and interpolates in the same pass
+        for (int row = 0; row < 4; row++) {
+            float m0 = models[m + row], m1 = models[m + 4 + row], m2 = models[m + 8 + row];
+            float n0 = m0 * r00 + m1 * r10 + m2 * r20;
+            float n1 = m0 * r01 + m1 * r11 + m2 * r21;
+            float n2 = m0 * r02 + m1 * r12 + m2 * r22;
+            models[m + row] = n0;
+            models[m + 4 + row] = n1;
+            models[m + 8 + row] = n2;
+            previousModels[m + row] = m0;
+            previousModels[m + 4 + row] = m1;
+            previousModels[m + 8 + row] = m2;
+            drawnModels[m + row] = m0 + alpha * (n0 - m0);
+            drawnModels[m + 4 + row] = m1 + alpha * (n1 - m1);
+            drawnModels[m + 8 + row] = m2 + alpha * (n2 - m2);
+        }
+        for (int k = m + 12; k < m + 16; k++) {
+            previousModels[k] = drawnModels[k] = models[k];
+        }
+
+        float time = explosionTimes[i];
+        if ((flags[i] & (EXPLODING | FINISHED)) == EXPLODING) {
+            float previousTime = time;
+            for (int s = 0; s < steps; s++) {
+                previousTime = time;
+                time += step;
+                if (time >= explosionDuration) {
+                    time = explosionDuration;
+                    flags[i] |= FINISHED;
+                    break;
+                }
+            }
+            explosionTimes[i] = time;
+            previousExplosionTimes[i] = previousTime;
+            drawnExplosionTimes[i] = previousTime + alpha * (time - previousTime);
+        } else {
+            previousExplosionTimes[i] = drawnExplosionTimes[i] = time;
+        }
+    }
+}
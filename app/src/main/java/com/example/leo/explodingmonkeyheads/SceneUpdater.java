@@ -0,0 +1,165 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import android.os.Build;
+
+/**
+ * Runs the update of a {@link SceneStore} on a fork/join pool: the heads are split in
+ * halves until a range is no larger than the grain, and idle workers steal the halves
+ * still waiting. Every head only touches its own slots of the store, so the result is
+ * the same as {@link SceneStore#update()}, bit for bit, whatever the number of threads.
+ *
+ * <p>The task tree is built once for a given number of heads and re-armed every frame,
+ * so an update doesn't allocate. {@link #update} returns when every range is done, the
+ * GL thread then sees every write.</p>
+ *
+ * <p>ForkJoinPool is only in the framework since Android 5.0; without a pool the heads
+ * are updated on the calling thread.</p>
+ */
+public class SceneUpdater {
+    public static final int DEFAULT_GRAIN = 4096; // heads a task updates without splitting further
+
+    private static ForkJoinPool defaultPool; // shared by the renderers, created on first use
+
+    private final ForkJoinPool pool;
+    private final int grain;
+
+    private SceneStore scene; // the store the tree was built for
+    private int steps; // of the frame being run
+    private float alpha;
+    private int builtCount = -1;
+    private Range root;
+
+    /**
+     * A range of heads, with its two halves already built when it's larger than the grain.
+     */
+    private final class Range extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final int start, end;
+        final Range left, right;
+
+        Range(int start, int end) {
+            this.start = start;
+            this.end = end;
+            if (end - start > grain) {
+                int middle = (start + end) >>> 1;
+                left = new Range(start, middle);
+                right = new Range(middle, end);
+            } else {
+                left = right = null;
+            }
+        }
+
+        @Override
+        protected void compute() {
+            if (left == null) {
+                scene.update(start, end, steps, alpha);
+                return;
+            }
+
+            // the previous frame completed them, arm them again
+            left.reinitialize();
+            right.reinitialize();
+            invokeAll(left, right);
+        }
+    }
+
+    /**
+     * @param pool - Workers of the update, or null to update on the calling thread.
+     * @param grain - Heads below which a range isn't split anymore.
+     */
+    public SceneUpdater(ForkJoinPool pool, int grain) {
+        if (grain < 1) {
+            throw new IllegalArgumentException("grain must be positive: " + grain);
+        }
+
+        this.pool = pool;
+        this.grain = grain;
+    }
+
+    /**
+     * @return - A pool with a worker per core, shared by every caller, or null where it
+     * wouldn't help: before Android 5.0, or with a single core.
+     */
+    public static synchronized ForkJoinPool getDefaultPool() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP || cores < 2) {
+            return null;
+        }
+
+        if (defaultPool == null) {
+            defaultPool = new ForkJoinPool(cores);
+        }
+        return defaultPool;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public int getGrain() {
+        return grain;
+    }
+
+    /**
+     * Advances every head of the store by one step, in parallel when there are enough of them.
+     * Must not be called from two threads at once.
+     */
+    public void update(SceneStore scene) {
+        update(scene, 1, 1f);
+    }
+
+    /**
+     * Same as {@link SceneStore#update(int, int, int, float)} for every head of the store,
+     * in parallel when there are enough of them.
+     */
+    public void update(SceneStore scene, int steps, float alpha) {
+        int count = scene.getCount();
+        if (pool == null || count <= grain) {
+            scene.update(0, count, steps, alpha);
+            return;
+        }
+
+        if (scene != this.scene || count != builtCount) {
+            root = new Range(0, count);
+            builtCount = count;
+        }
+
+        this.scene = scene;
+        this.steps = steps;
+        this.alpha = alpha;
+        root.reinitialize();
+        pool.invoke(root);
+    }
+}
@@ -0,0 +1,205 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.util.Log;
+
+/**
+ * A linked GLSL program. Compile and link errors are reported with the driver's
+ * info log instead of surfacing later as an obscure glError, and attribute and
+ * uniform locations are looked up once and cached, so callers resolve them right
+ * after linking and never query the driver while drawing.
+ *
+ * <p>{@link #use()} and the typed setters go through a {@link GLStateCache}, so setting
+ * a uniform to the value it already has costs nothing. They only poll glGetError in
+ * debug builds, see {@link MonkeyHeadsRenderer#checkGlError(GLBackend, String)}.</p>
+ *
+ * <p>With a {@link ProgramBinaryCache}, the program saved by an earlier run is loaded
+ * instead, and the shaders are only compiled when there's none (or it doesn't load).</p>
+ */
+public class ShaderProgram {
+    private static final String TAG = "ShaderProgram";
+
+    private final GLStateCache state;
+    private final GLBackend gl;
+    private final int id;
+    private final Map<String, Integer> attributeLocations = new HashMap<>();
+    private final Map<String, Integer> uniformLocations = new HashMap<>();
+    private final int[] status = new int[1];
+    private final boolean cached;
+
+    /**
+     * Compiles both shaders and links them, must be called on the GL thread.
+     *
+     * @throws RuntimeException - If a shader doesn't compile or the program doesn't link.
+     */
+    public ShaderProgram(GLStateCache state, String vertexShaderCode, String fragmentShaderCode) {
+        this(state, vertexShaderCode, fragmentShaderCode, null);
+    }
+
+    /**
+     * Loads the program from the cache, or compiles and links it and saves it there.
+     *
+     * @param cache - Null to always compile, otherwise it must be ready for the current context.
+     * @throws RuntimeException - If a shader doesn't compile or the program doesn't link.
+     */
+    public ShaderProgram(GLStateCache state, String vertexShaderCode, String fragmentShaderCode,
+                         ProgramBinaryCache cache) {
+        this.state = state;
+        this.gl = state.getBackend();
+
+        int loaded = cache != null ? cache.load(gl, vertexShaderCode, fragmentShaderCode) : 0;
+        cached = loaded != 0;
+        if (cached) {
+            id = loaded;
+        } else {
+            id = link(vertexShaderCode, fragmentShaderCode, cache != null);
+            if (cache != null) {
+                cache.store(gl, id, vertexShaderCode, fragmentShaderCode);
+            }
+        }
+    }
+
+    private int link(String vertexShaderCode, String fragmentShaderCode, boolean retrievable) {
+        int vertexShader = MonkeyHeadsRenderer.loadShader(gl, GLES20.GL_VERTEX_SHADER, vertexShaderCode);
+        int fragmentShader = MonkeyHeadsRenderer.loadShader(gl, GLES20.GL_FRAGMENT_SHADER, fragmentShaderCode);
+
+        int id = gl.glCreateProgram();
+        if (retrievable) {
+            gl.glProgramParameteri(id, GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLES20.GL_TRUE);
+        }
+        gl.glAttachShader(id, vertexShader);
+        gl.glAttachShader(id, fragmentShader);
+        gl.glLinkProgram(id);
+
+        // the program keeps what it needs, the shader objects can go
+        gl.glDetachShader(id, vertexShader);
+        gl.glDetachShader(id, fragmentShader);
+        gl.glDeleteShader(vertexShader);
+        gl.glDeleteShader(fragmentShader);
+
+        gl.glGetProgramiv(id, GLES20.GL_LINK_STATUS, status, 0);
+        if (status[0] != GLES20.GL_TRUE) {
+            String log = gl.glGetProgramInfoLog(id);
+            gl.glDeleteProgram(id);
+            Log.e(TAG, "could not link program: " + log);
+            throw new RuntimeException("could not link program: " + log);
+        }
+        return id;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return - Whether the program was loaded from a {@link ProgramBinaryCache} instead of compiled.
+     */
+    public boolean isCached() {
+        return cached;
+    }
+
+    public void use() {
+        state.useProgram(id);
+    }
+
+    /**
+     * Deletes the program while the context is still alive.
+     */
+    public void release() {
+        gl.glDeleteProgram(id);
+        state.onProgramDeleted(id);
+    }
+
+    /**
+     * @return - Location of the attribute, or -1 if the program doesn't use it.
+     */
+    public int getAttribLocation(String name) {
+        Integer location = attributeLocations.get(name);
+        if (location == null) {
+            location = gl.glGetAttribLocation(id, name);
+            attributeLocations.put(name, location);
+        }
+        return location;
+    }
+
+    /**
+     * @return - Location of the uniform, or -1 if the program doesn't use it.
+     */
+    public int getUniformLocation(String name) {
+        Integer location = uniformLocations.get(name);
+        if (location == null) {
+            location = gl.glGetUniformLocation(id, name);
+            uniformLocations.put(name, location);
+        }
+        return location;
+    }
+
+    /**
+     * Resolves the locations of all the attributes of a layout, in layout order.
+     */
+    public int[] getAttribLocations(VertexLayout layout) {
+        int[] locations = new int[layout.getAttributeCount()];
+        for (int i = 0; i < locations.length; i++) {
+            locations[i] = getAttribLocation(layout.getAttribute(i).name);
+        }
+        return locations;
+    }
+
+    // the setters below act on the program in use
+
+    public void setFloat(int location, float value) {
+        state.uniform1f(location, value);
+        MonkeyHeadsRenderer.checkGlError(gl, "glUniform1f");
+    }
+
+    public void setVec4(int location, float x, float y, float z, float w) {
+        state.uniform4f(location, x, y, z, w);
+        MonkeyHeadsRenderer.checkGlError(gl, "glUniform4f");
+    }
+
+    public void setVec4(int location, float[] value) {
+        state.uniform4fv(location, value, 0);
+        MonkeyHeadsRenderer.checkGlError(gl, "glUniform4fv");
+    }
+
+    public void setMat4(int location, float[] value) {
+        setMat4(location, value, 0);
+    }
+
+    public void setMat4(int location, float[] value, int offset) {
+        state.uniformMatrix4fv(location, value, offset);
+        MonkeyHeadsRenderer.checkGlError(gl, "glUniformMatrix4fv");
+    }
+}
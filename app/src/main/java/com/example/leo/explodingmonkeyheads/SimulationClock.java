@@ -0,0 +1,135 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+/**
+ * Fixed-timestep clock of the simulation: every frame adds the real time since the
+ * previous one to an accumulator, and the simulation runs as many fixed steps as fit in
+ * it. The animations then go at the same speed whatever the frame rate, and the rest of
+ * the accumulator, as a fraction of a step, tells how far to interpolate between the last
+ * two steps so motion stays smooth when frames and steps don't line up.
+ *
+ * <p>A frame that took very long (a pause, a debugger) only counts as
+ * {@link #getMaxFrameNanos()}, so the simulation doesn't spiral into catching up.</p>
+ */
+public class SimulationClock {
+    public static final long DEFAULT_STEP_NANOS = 1000000000L / 60; // the rate the animations were tuned at
+    public static final long DEFAULT_MAX_FRAME_NANOS = 250000000L;
+
+    /**
+     * Where the time comes from, System.nanoTime() outside of tests.
+     */
+    public interface TimeSource {
+        long nanoTime();
+    }
+
+    public static final TimeSource SYSTEM_TIME = new TimeSource() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    private final TimeSource time;
+    private final long stepNanos, maxFrameNanos;
+
+    private boolean started;
+    private long lastTime, accumulator;
+    private long steps; // steps run since the clock was created
+
+    public SimulationClock() {
+        this(SYSTEM_TIME, DEFAULT_STEP_NANOS, DEFAULT_MAX_FRAME_NANOS);
+    }
+
+    /**
+     * @param stepNanos - Simulated time of one step.
+     * @param maxFrameNanos - Most time a single frame can add, at least one step.
+     */
+    public SimulationClock(TimeSource time, long stepNanos, long maxFrameNanos) {
+        if (stepNanos <= 0 || maxFrameNanos < stepNanos) {
+            throw new IllegalArgumentException("bad step " + stepNanos + " or max frame " + maxFrameNanos);
+        }
+
+        this.time = time;
+        this.stepNanos = stepNanos;
+        this.maxFrameNanos = maxFrameNanos;
+    }
+
+    public long getStepNanos() {
+        return stepNanos;
+    }
+
+    public long getMaxFrameNanos() {
+        return maxFrameNanos;
+    }
+
+    public long getSteps() {
+        return steps;
+    }
+
+    /**
+     * Forgets the time of the previous frame, e.g. when rendering resumes after a pause.
+     * The next {@link #advance()} starts over from there.
+     */
+    public void reset() {
+        started = false;
+    }
+
+    /**
+     * Adds the time since the previous call to the accumulator and takes whole steps out of it.
+     *
+     * @return - How many steps the simulation must run this frame, 0 on the first frame.
+     */
+    public int advance() {
+        long now = time.nanoTime();
+        if (!started) {
+            started = true;
+            lastTime = now;
+            accumulator = 0L;
+            return 0;
+        }
+
+        long elapsed = now - lastTime;
+        lastTime = now;
+        accumulator += Math.max(0L, Math.min(elapsed, maxFrameNanos));
+
+        int due = (int) (accumulator / stepNanos);
+        accumulator -= due * stepNanos;
+        steps += due;
+        return due;
+    }
+
+    /**
+     * @return - How far the frame is between the last two steps, from 0 (the one before
+     * the last) to just below 1 (the last).
+     */
+    public float getAlpha() {
+        return (float) accumulator / stepNanos;
+    }
+}
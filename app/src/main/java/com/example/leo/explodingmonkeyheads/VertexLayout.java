@@ -0,0 +1,171 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import android.opengl.GLES20;
+
+/**
+ * Describes how the attributes of one vertex are packed in an interleaved buffer:
+ * the byte offset of every attribute and the stride between consecutive vertices.
+ * Every attribute starts on a 4 bytes boundary, as recommended for GLES vertex fetch.
+ *
+ * <p>The class doesn't touch OpenGL, it only uses the GLES20 type constants, so it
+ * can be used (and tested) on the JVM.</p>
+ */
+public class VertexLayout {
+    static final int ALIGNMENT = 4;
+
+    public static class Attribute {
+        public final String name; // name of the attribute in the vertex shader
+        public final int components, type, offset, size;
+        public final boolean normalized;
+
+        Attribute(String name, int components, int type, boolean normalized, int offset) {
+            this.name = name;
+            this.components = components;
+            this.type = type;
+            this.normalized = normalized;
+            this.offset = offset;
+            this.size = components * sizeOf(type);
+        }
+    }
+
+    private final List<Attribute> attributes = new ArrayList<>();
+    private int stride;
+
+    /**
+     * Appends an attribute after the previous ones.
+     *
+     * @param name - Name of the attribute in the vertex shader.
+     * @param components - Number of components, 1 to 4.
+     * @param type - GL_FLOAT, GL_SHORT, GL_UNSIGNED_SHORT, GL_BYTE or GL_UNSIGNED_BYTE.
+     * @param normalized - Whether integer values are mapped to [-1, 1] (or [0, 1]) by the GPU.
+     * @return - This layout, so calls can be chained.
+     */
+    public VertexLayout add(String name, int components, int type, boolean normalized) {
+        if (components < 1 || components > 4) {
+            throw new IllegalArgumentException("attributes have 1 to 4 components, got " + components);
+        }
+
+        Attribute attribute = new Attribute(name, components, type, normalized, stride);
+        attributes.add(attribute);
+        stride = align(stride + attribute.size);
+
+        return this;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    public int getAttributeCount() {
+        return attributes.size();
+    }
+
+    public Attribute getAttribute(int index) {
+        return attributes.get(index);
+    }
+
+    /**
+     * @return - The index of the attribute with the given name, or -1.
+     */
+    public int indexOf(String name) {
+        for (int i = 0; i < attributes.size(); i++) {
+            if (attributes.get(i).name.equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes one attribute of one vertex, converting the float values to the attribute's type.
+     *
+     * @param dst - Buffer holding the interleaved vertices; its byte order must already be set.
+     * @param vertex - Index of the vertex in the buffer.
+     * @param attribute - Index of the attribute in this layout.
+     * @param src - Source values, one per component.
+     * @param srcOffset - Index of the first component in src.
+     */
+    public void put(ByteBuffer dst, int vertex, int attribute, float[] src, int srcOffset) {
+        Attribute a = attributes.get(attribute);
+        int position = vertex * stride + a.offset;
+
+        for (int c = 0; c < a.components; c++) {
+            float value = src[srcOffset + c];
+
+            switch (a.type) {
+                case GLES20.GL_FLOAT:
+                    dst.putFloat(position + c * 4, value);
+                    break;
+                case GLES20.GL_SHORT:
+                    dst.putShort(position + c * 2, (short) (a.normalized ? normalize(value, -1f, 32767f) : Math.round(value)));
+                    break;
+                case GLES20.GL_UNSIGNED_SHORT:
+                    dst.putShort(position + c * 2, (short) (a.normalized ? normalize(value, 0f, 65535f) : Math.round(value)));
+                    break;
+                case GLES20.GL_BYTE:
+                    dst.put(position + c, (byte) (a.normalized ? normalize(value, -1f, 127f) : Math.round(value)));
+                    break;
+                case GLES20.GL_UNSIGNED_BYTE:
+                    dst.put(position + c, (byte) (a.normalized ? normalize(value, 0f, 255f) : Math.round(value)));
+                    break;
+                default:
+                    throw new IllegalStateException("unsupported attribute type 0x" + Integer.toHexString(a.type));
+            }
+        }
+    }
+
+    private static int normalize(float value, float min, float scale) {
+        return Math.round(Math.max(min, Math.min(1f, value)) * scale);
+    }
+
+    static int align(int bytes) {
+        return (bytes + ALIGNMENT - 1) & ~(ALIGNMENT - 1);
+    }
+
+    public static int sizeOf(int type) {
+        switch (type) {
+            case GLES20.GL_FLOAT:
+                return 4;
+            case GLES20.GL_SHORT:
+            case GLES20.GL_UNSIGNED_SHORT:
+                return 2;
+            case GLES20.GL_BYTE:
+            case GLES20.GL_UNSIGNED_BYTE:
+                return 1;
+            default:
+                throw new IllegalArgumentException("unsupported attribute type 0x" + Integer.toHexString(type));
+        }
+    }
+}
@@ -0,0 +1,39 @@
+#version 300 es
+
+uniform mat4 uCameraMatrix;
+uniform mat4 uProjectionMatrix;
+
+// decode the quantized attributes, see QuantizedMesh
+uniform vec4 uPositionScale;
+uniform vec4 uPositionOffset;
+
+in vec4 vPosition;
+in vec2 vNormal;
+
+// per-instance attributes, see InstanceBuffer.LAYOUT
+in vec4 iModelColumn0;
+in vec4 iModelColumn1;
+in vec4 iModelColumn2;
+in vec4 iModelColumn3;
+in vec4 iColor;
+in float iTime;
+
+out vec4 fColor;
+
+vec3 decodeNormal(vec2 e) {
+     e *= 1.0 / 32767.0;
+     vec3 n = vec3(e, 1.0 - abs(e.x) - abs(e.y));
+     if (n.z < 0.0) {
+          n.xy = (1.0 - abs(n.yx)) * (step(0.0, n.xy) * 2.0 - 1.0);
+     }
+     return normalize(n);
+}
+
+void main() {
+     mat4 modelViewMatrix = mat4(iModelColumn0, iModelColumn1, iModelColumn2, iModelColumn3);
+     vec4 position = vec4(vPosition.xyz * uPositionScale.xyz + uPositionOffset.xyz, 1.0);
+     vec4 dir = vec4(decodeNormal(vNormal), 1.0) * iTime;
+     vec4 vertexPosition = uCameraMatrix * modelViewMatrix * (position + dir);
+     gl_Position = uProjectionMatrix * vertexPosition;
+     fColor = iColor;
+}
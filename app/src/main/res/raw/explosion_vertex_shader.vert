@@ -3,11 +3,25 @@ uniform mat4 uCameraMatrix;
 uniform mat4 uProjectionMatrix;
 uniform float time;
 
+// decode the quantized attributes, see QuantizedMesh
+uniform vec4 uPositionScale;
+uniform vec4 uPositionOffset;
+
 attribute vec4 vPosition;
-attribute vec4 vNormal;
+attribute vec2 vNormal;
+
+vec3 decodeNormal(vec2 e) {
+     e *= 1.0 / 32767.0;
+     vec3 n = vec3(e, 1.0 - abs(e.x) - abs(e.y));
+     if (n.z < 0.0) {
+          n.xy = (1.0 - abs(n.yx)) * (step(0.0, n.xy) * 2.0 - 1.0);
+     }
+     return normalize(n);
+}
 
 void main() {
-     vec4 dir = vNormal * time;
-     vec4 vertexPosition = uCameraMatrix * uModelViewMatrix * (vPosition + dir);
+     vec4 position = vec4(vPosition.xyz * uPositionScale.xyz + uPositionOffset.xyz, 1.0);
+     vec4 dir = vec4(decodeNormal(vNormal), 1.0) * time;
+     vec4 vertexPosition = uCameraMatrix * uModelViewMatrix * (position + dir);
      gl_Position = uProjectionMatrix * vertexPosition;
 }
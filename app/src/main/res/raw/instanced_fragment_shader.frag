@@ -0,0 +1,9 @@
+#version 300 es
+precision mediump float;
+
+in vec4 fColor;
+out vec4 fragColor;
+
+void main() {
+	fragColor = fColor;
+}
@@ -0,0 +1,220 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class AssetLoaderTest {
+    private ExecutorService executor;
+    private AssetLoader loader;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+        loader = new AssetLoader(executor);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static Callable<String> value(final String value) {
+        return new Callable<String>() {
+            @Override
+            public String call() {
+                return value;
+            }
+        };
+    }
+
+    /**
+     * @return - A task that waits for the latch to open, at most a few seconds.
+     */
+    private static Callable<String> waitingFor(final CountDownLatch latch, final String value) {
+        return new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                if (!latch.await(5, TimeUnit.SECONDS)) {
+                    throw new AssertionError("latch never opened");
+                }
+                return value;
+            }
+        };
+    }
+
+    @Test
+    public void independentAssetsLoadInParallel() throws Exception {
+        // each task waits for the other to have started, so they must run at the same time
+        final CountDownLatch started = new CountDownLatch(2);
+        Callable<String> task = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                started.countDown();
+                return started.await(5, TimeUnit.SECONDS) ? "ok" : "alone";
+            }
+        };
+
+        AssetLoader.Asset<String> a = loader.load("a", task), b = loader.load("b", task);
+        assertEquals("ok", a.get());
+        assertEquals("ok", b.get());
+    }
+
+    @Test
+    public void dependentAssetsWaitForTheirParts() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        final AssetLoader.Asset<String> mesh = loader.load("mesh", waitingFor(release, "mesh"));
+        final AssetLoader.Asset<String> shader = loader.load("shader", value("shader"));
+        AssetLoader.Asset<String> scene = loader.load("scene", new Callable<String>() {
+            @Override
+            public String call() {
+                return mesh.getValue() + "+" + shader.getValue();
+            }
+        }, mesh, shader);
+
+        shader.get();
+        assertFalse(scene.isDone());
+
+        release.countDown();
+        assertEquals("mesh+shader", scene.get());
+        assertEquals(AssetLoader.LOADED, scene.getState());
+    }
+
+    @Test
+    public void dependenciesAlreadyLoadedAreFine() throws Exception {
+        AssetLoader.Asset<String> part = loader.load("part", value("part"));
+        part.get();
+        assertEquals("whole", loader.load("whole", value("whole"), part).get());
+    }
+
+    @Test
+    public void failuresReachTheDependentsAndTheCallbacks() throws Exception {
+        final IllegalStateException broken = new IllegalStateException("broken");
+        AssetLoader.Asset<String> part = loader.load("part", new Callable<String>() {
+            @Override
+            public String call() {
+                throw broken;
+            }
+        });
+        AssetLoader.Asset<String> whole = loader.load("whole", value("whole"), part);
+
+        final AtomicReference<Throwable> reported = new AtomicReference<>();
+        final CountDownLatch called = new CountDownLatch(1);
+        whole.addCallback(new AssetLoader.Callback<String>() {
+            @Override
+            public void onLoaded(String value) {
+                fail();
+            }
+
+            @Override
+            public void onFailed(String name, Throwable error) {
+                reported.set(error);
+                called.countDown();
+            }
+        });
+
+        try {
+            whole.get();
+            fail();
+        } catch (ExecutionException expected) {
+            assertSame(broken, expected.getCause());
+        }
+        assertTrue(called.await(5, TimeUnit.SECONDS));
+        assertSame(broken, reported.get());
+    }
+
+    @Test
+    public void callbacksOfLoadedAssetsRunRightAway() throws Exception {
+        AssetLoader.Asset<String> asset = loader.load("a", value("a"));
+        asset.get();
+
+        final AtomicReference<String> loaded = new AtomicReference<>();
+        asset.addCallback(new AssetLoader.Callback<String>() {
+            @Override
+            public void onLoaded(String value) {
+                loaded.set(value);
+            }
+
+            @Override
+            public void onFailed(String name, Throwable error) {
+                fail();
+            }
+        });
+        assertEquals("a", loaded.get());
+    }
+
+    @Test
+    public void cancelStopsEverythingNotDone() throws Exception {
+        final CountDownLatch running = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        final CountDownLatch exited = new CountDownLatch(1);
+        AssetLoader.Asset<String> slow = loader.load("slow", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                running.countDown();
+                try {
+                    Thread.sleep(10000);
+                    return "slow";
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                    throw e;
+                } finally {
+                    exited.countDown();
+                }
+            }
+        });
+        AssetLoader.Asset<String> loaded = loader.load("loaded", value("loaded"));
+        loaded.get();
+
+        final AtomicBoolean dependentRan = new AtomicBoolean();
+        AssetLoader.Asset<String> dependent = loader.load("dependent", new Callable<String>() {
+            @Override
+            public String call() {
+                dependentRan.set(true);
+                return "dependent";
+            }
+        }, slow);
+        dependent.addCallback(new AssetLoader.Callback<String>() {
+            @Override
+            public void onLoaded(String value) {
+                fail();
+            }
+
+            @Override
+            public void onFailed(String name, Throwable error) {
+                fail();
+            }
+        });
+
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        loader.cancel();
+
+        assertEquals(AssetLoader.CANCELLED, slow.getState());
+        assertEquals(AssetLoader.CANCELLED, dependent.getState());
+        assertEquals(AssetLoader.LOADED, loaded.getState()); // done assets stay done
+        try {
+            dependent.get();
+            fail();
+        } catch (CancellationException expected) {
+        }
+
+        assertTrue(exited.await(5, TimeUnit.SECONDS));
+        assertTrue(interrupted.get());
+        assertFalse(dependentRan.get());
+
+        // nothing new starts either
+        assertEquals(AssetLoader.CANCELLED, loader.load("late", value("late")).getState());
+    }
+}
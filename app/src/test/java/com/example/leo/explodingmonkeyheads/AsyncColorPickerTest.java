@@ -0,0 +1,210 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AsyncColorPickerTest {
+    private static final int WIDTH = RayPickerTest.WIDTH, HEIGHT = RayPickerTest.HEIGHT;
+
+    private HeadlessGLBackend gl;
+    private final List<Integer> picked = new ArrayList<>();
+    private final List<float[]> passes = new ArrayList<>();
+    private final float[] projection = new float[16];
+
+    private final AsyncColorPicker.Listener listener = new AsyncColorPicker.Listener() {
+        @Override
+        public void onPicked(int id) {
+            picked.add(id);
+        }
+    };
+    private final AsyncColorPicker.Pass pass = new AsyncColorPicker.Pass() {
+        @Override
+        public void drawPickingPass(float[] projectionMatrix) {
+            passes.add(projectionMatrix.clone());
+        }
+    };
+
+    @Before
+    public void setUp() {
+        gl = new HeadlessGLBackend();
+        float ratio = (float) WIDTH / HEIGHT;
+        Mat4.frustumM(projection, 0, -ratio, ratio, -1, 1, 3, 50);
+    }
+
+    private AsyncColorPicker newPicker(boolean usePixelBuffers) {
+        AsyncColorPicker picker = new AsyncColorPicker(new GLStateCache(gl), usePixelBuffers);
+        picker.setListener(listener);
+        picker.create();
+        return picker;
+    }
+
+    /**
+     * Runs the picker's part of a frame: the late reads, the frame itself, the queued passes.
+     *
+     * @return - Whether anything was read or drawn.
+     */
+    private boolean frame(AsyncColorPicker picker) {
+        boolean read = picker.readBack();
+        return picker.drawQueued(pass, projection, WIDTH, HEIGHT) | read;
+    }
+
+    private void setPixel(int id) {
+        int rgb = id == ColorProvider.NO_ID ? 0 : ColorProvider.encode(id);
+        gl.pixel[0] = (byte) rgb;
+        gl.pixel[1] = (byte) (rgb >> 8);
+        gl.pixel[2] = (byte) (rgb >> 16);
+        gl.pixel[3] = (byte) 255;
+    }
+
+    private void resultArrivesLate(boolean usePixelBuffers) {
+        AsyncColorPicker picker = newPicker(usePixelBuffers);
+        setPixel(0xABCDEF);
+
+        assertTrue(picker.request(10, 20));
+        assertTrue(frame(picker));
+        for (int frame = 0; frame < AsyncColorPicker.FRAME_DELAY; frame++) {
+            assertTrue(picked.isEmpty());
+            assertEquals(frame > 0, frame(picker));
+        }
+        assertEquals(1, passes.size());
+        assertEquals(1, picked.size());
+        assertEquals(0xABCDEF, (int) picked.get(0));
+        assertEquals(0, picker.getPendingCount());
+
+        // nothing to do anymore
+        assertFalse(frame(picker));
+    }
+
+    @Test
+    public void resultArrivesLateThroughPixelBuffers() {
+        resultArrivesLate(true);
+    }
+
+    @Test
+    public void resultArrivesLateThroughDeferredReads() {
+        resultArrivesLate(false);
+    }
+
+    @Test
+    public void backgroundIsNoId() {
+        AsyncColorPicker picker = newPicker(false);
+        setPixel(ColorProvider.NO_ID);
+
+        picker.request(10, 20);
+        for (int frame = 0; frame <= AsyncColorPicker.FRAME_DELAY; frame++) {
+            frame(picker);
+        }
+        assertEquals(ColorProvider.NO_ID, (int) picked.get(0));
+    }
+
+    @Test
+    public void tooManyTapsInFlightAreDropped() {
+        AsyncColorPicker picker = newPicker(true);
+        for (int i = 0; i < AsyncColorPicker.MAX_PENDING; i++) {
+            assertTrue(picker.request(i, i));
+        }
+        assertFalse(picker.request(5, 5));
+        assertEquals(AsyncColorPicker.MAX_PENDING, picker.getPendingCount());
+
+        for (int frame = 0; frame <= AsyncColorPicker.FRAME_DELAY; frame++) {
+            frame(picker);
+        }
+        assertEquals(AsyncColorPicker.MAX_PENDING, picked.size());
+        assertTrue(picker.request(5, 5));
+    }
+
+    @Test
+    public void newContextDropsPendingTaps() {
+        AsyncColorPicker picker = newPicker(true);
+        picker.request(1, 1);
+        picker.invalidate();
+        assertFalse(picker.request(1, 1));
+
+        picker.create();
+        assertEquals(0, picker.getPendingCount());
+    }
+
+    @Test
+    public void pickMatrixBlowsUpTheTappedPixel() {
+        float[] pick = new float[16], clip = new float[4];
+        AsyncColorPicker.setPickMatrix(pick, 100.7f, 200.2f, WIDTH, HEIGHT);
+
+        // the corners of pixel (100, 200) land on the corners of clip space
+        float[][] corners = { { 100, 200, -1, -1 }, { 101, 201, 1, 1 }, { 100.5f, 200.5f, 0, 0 } };
+        for (float[] corner : corners) {
+            float ndcX = 2f * corner[0] / WIDTH - 1f, ndcY = 2f * corner[1] / HEIGHT - 1f;
+            Mat4.multiplyMV(clip, 0, pick, 0, new float[] { ndcX * 2f, ndcY * 2f, 0f, 2f }, 0);
+            assertEquals(corner[2], clip[0] / clip[3], 1e-3f);
+            assertEquals(corner[3], clip[1] / clip[3], 1e-3f);
+        }
+    }
+
+    @Test
+    public void passSeesOnlyTheTappedPoint() {
+        AsyncColorPicker picker = newPicker(true);
+        float[] camera = new float[16];
+        Mat4.setIdentityM(camera, 0);
+        float[] window = RayPickerTest.project(projection, camera, 1f, -2f, -10f);
+
+        picker.request(window[0], window[1]);
+        frame(picker);
+
+        // the tapped point sits in the middle of the narrowed clip space, its neighbors way out
+        float[] clip = new float[4];
+        Mat4.multiplyMV(clip, 0, passes.get(0), 0, new float[] { 1f, -2f, -10f, 1f }, 0);
+        assertEquals(0f, clip[0] / clip[3], 1f);
+        assertEquals(0f, clip[1] / clip[3], 1f);
+        Mat4.multiplyMV(clip, 0, passes.get(0), 0, new float[] { 1.1f, -2f, -10f, 1f }, 0);
+        assertTrue(clip[0] / clip[3] > 1f);
+    }
+
+    @Test
+    public void rendererExplodesThePickedHead() throws Exception {
+        MonkeyHeadsRenderer renderer = new MonkeyHeadsRenderer(gl);
+        renderer.setColorPicking(true);
+        MonkeyHeadsRendererTest.createSurface(renderer);
+        renderer.onDrawFrame(null);
+
+        // the backend has no rasterizer, the pixel read back is whatever it's told
+        int head = FrameAllocationTest.TAPPED_HEAD;
+        setPixel(ColorProvider.decode(renderer.monkeyHeads[head].getPickingColor()));
+        renderer.onTapEvent(FrameAllocationTest.TAP_X, FrameAllocationTest.TAP_Y);
+        assertFalse(renderer.monkeyHeads[head].isUseExplosionAnimation());
+
+        // the picking pass only draws the heads whose bounds are under the tap
+        gl.resetCounters();
+        renderer.onDrawFrame(null);
+        int pickingDraws = gl.drawCalls - renderer.getVisibleCount();
+        assertTrue(pickingDraws >= 1 && pickingDraws <= 2);
+
+        for (int frame = 0; frame < AsyncColorPicker.FRAME_DELAY; frame++) {
+            assertFalse(renderer.monkeyHeads[head].isUseExplosionAnimation());
+            renderer.onDrawFrame(null);
+        }
+        assertTrue(renderer.monkeyHeads[head].isUseExplosionAnimation());
+    }
+
+    @Test
+    public void deferredReadsComeBeforeTheFrame() throws Exception {
+        MonkeyHeadsRenderer renderer = new MonkeyHeadsRenderer(gl);
+        renderer.setColorPicking(true);
+        MonkeyHeadsRendererTest.createSurface(renderer);
+        assertFalse(renderer.colorPicker.isUsingPixelBuffers());
+        renderer.onDrawFrame(null);
+
+        renderer.onTapEvent(FrameAllocationTest.TAP_X, FrameAllocationTest.TAP_Y);
+        for (int frame = 0; frame <= AsyncColorPicker.FRAME_DELAY; frame++) {
+            gl.resetCounters();
+            renderer.onDrawFrame(null);
+        }
+
+        // glReadPixels only waits for earlier frames, none of this frame's heads were drawn yet
+        assertTrue(gl.drawCalls > 0);
+        assertEquals(0, gl.drawCallsBeforeRead);
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.leo.explodingmonkeyheads;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+/**
+ * Tiny JMH-style harness for the plain-JVM benchmarks under src/test: runs a number
+ * of warmup iterations, then measures wall time and bytes allocated by the current
+ * thread per operation. The first (cold) invocation is reported separately.
+ */
+final class Benchmark {
+
+    interface Task {
+        void run() throws Exception;
+    }
+
+    static final class Result {
+        final String name;
+        final long coldNanos;
+        final double nanosPerOp;
+        final long bytesPerOp;
+
+        Result(String name, long coldNanos, double nanosPerOp, long bytesPerOp) {
+            this.name = name;
+            this.coldNanos = coldNanos;
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-40s cold %9.3f ms   warm %12.3f us/op   %,12d B/op",
+                    name, coldNanos / 1e6, nanosPerOp / 1e3, bytesPerOp);
+        }
+    }
+
+    private static final com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private Benchmark() { }
+
+    static Result run(String name, int warmupIterations, int iterations, Task task) throws Exception {
+        long start = System.nanoTime();
+        task.run();
+        long coldNanos = System.nanoTime() - start;
+
+        for (int i = 0; i < warmupIterations; i++) {
+            task.run();
+        }
+
+        long allocatedBefore = allocatedBytes();
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            task.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        Result result = new Result(name, coldNanos, elapsed / (double) iterations, allocated / iterations);
+        System.out.println(result);
+        return result;
+    }
+
+    /**
+     * @return - Total bytes allocated so far by the calling thread.
+     */
+    static long allocatedBytes() {
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Measures scaling-style benchmarks where only the throughput matters.
+     */
+    static double nanosPerOp(int warmupIterations, int iterations, Task task) throws Exception {
+        for (int i = 0; i < warmupIterations; i++) {
+            task.run();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            task.run();
+        }
+        return (System.nanoTime() - start) / (double) iterations;
+    }
+}
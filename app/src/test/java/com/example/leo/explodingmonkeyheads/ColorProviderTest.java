@@ -0,0 +1,59 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ColorProviderTest {
+    @Test
+    public void everyIdRoundTrips() {
+        for (int id = 0; id <= ColorProvider.MAX_ID; id++) {
+            int rgb = ColorProvider.encode(id);
+            int r = rgb & 0xFF, g = (rgb >> 8) & 0xFF, b = (rgb >> 16) & 0xFF;
+            if (ColorProvider.decode(r, g, b) != id) {
+                fail("id " + id + " decoded as " + ColorProvider.decode(r, g, b));
+            }
+        }
+    }
+
+    @Test
+    public void colorsAreUniqueAndNeverBlack() {
+        // the encoding is one to one, so every color is hit exactly once
+        boolean[] seen = new boolean[1 << 24];
+        for (int id = 0; id <= ColorProvider.MAX_ID; id++) {
+            int rgb = ColorProvider.encode(id);
+            assertFalse("id " + id, seen[rgb]);
+            seen[rgb] = true;
+        }
+        assertFalse(seen[0]);
+        assertEquals(ColorProvider.NO_ID, ColorProvider.decode(0, 0, 0));
+    }
+
+    @Test
+    public void colorsMatchTheEncoding() {
+        Color c = ColorProvider.toColor(0x123456);
+        assertEquals(0x57, c.getR());
+        assertEquals(0x34, c.getG());
+        assertEquals(0x12, c.getB());
+        assertEquals(0x123456, ColorProvider.decode(c));
+
+        Color last = ColorProvider.toColor(ColorProvider.MAX_ID);
+        assertEquals(255, last.getR());
+        assertEquals(255, last.getG());
+        assertEquals(255, last.getB());
+    }
+
+    @Test
+    public void outOfRangeIdsAreRejected() {
+        try {
+            ColorProvider.encode(-1);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            ColorProvider.encode(ColorProvider.MAX_ID + 1);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Parses the shipped monkey head positions with the legacy String.split pipeline and
+ * with {@link CsvFloatParser}. The file is read into memory first so that only the
+ * parsing itself is measured.
+ */
+public class CsvFloatParserBenchmark {
+
+    @Test
+    public void streamingParserAvoidsPerTokenGarbage() throws Exception {
+        File file = new File(MeshLoadBenchmark.RAW_DIR, "positions");
+        final byte[] bytes = new byte[(int) file.length()];
+        InputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < bytes.length) {
+                read += in.read(bytes, read, bytes.length - read);
+            }
+        } finally {
+            in.close();
+        }
+
+        Benchmark.Result legacy = Benchmark.run("split + Float.parseFloat", 50, 200, new Benchmark.Task() {
+            @Override
+            public void run() throws Exception {
+                String[] elements = new String(bytes, "US-ASCII").split(",");
+                float[] array = new float[elements.length];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = Float.parseFloat(elements[i]);
+                }
+            }
+        });
+
+        final CsvFloatParser parser = new CsvFloatParser();
+        Benchmark.Result streaming = Benchmark.run("CsvFloatParser (reused)", 50, 200, new Benchmark.Task() {
+            @Override
+            public void run() throws Exception {
+                parser.parseAll(new ByteArrayInputStream(bytes));
+            }
+        });
+
+        assertEquals(8712, parser.getCount());
+        assertTrue(streaming.bytesPerOp < 1024); // just the stream wrapper
+        assertTrue(streaming.bytesPerOp < legacy.bytesPerOp);
+    }
+}
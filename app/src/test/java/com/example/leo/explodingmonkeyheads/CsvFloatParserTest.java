@@ -0,0 +1,115 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CsvFloatParserTest {
+
+    private static float[] parse(String csv) throws IOException {
+        return new CsvFloatParser().parse(new ByteArrayInputStream(csv.getBytes("US-ASCII")));
+    }
+
+    private static CsvFloatParser.MalformedDataException parseMalformed(String csv) throws IOException {
+        try {
+            parse(csv);
+        } catch (CsvFloatParser.MalformedDataException e) {
+            return e;
+        }
+        fail("expected '" + csv + "' to be rejected");
+        return null;
+    }
+
+    @Test
+    public void parsesSimpleValues() throws Exception {
+        assertArrayEquals(new float[] { -0.46875f, 0.757812f, 0.242188f, 1f, -2f, 0f },
+                parse("-0.46875,0.757812,0.242188,1,-2,0"), 0f);
+    }
+
+    @Test
+    public void acceptsWhitespaceNewlinesAndTrailingComma() throws Exception {
+        assertArrayEquals(new float[] { 1.5f, 2f, 3f }, parse(" 1.5 ,\n2,\r\n\t3,\n"), 0f);
+        assertEquals(0, parse("").length);
+        assertEquals(0, parse(" \n").length);
+    }
+
+    @Test
+    public void parsesExponentsAndSigns() throws Exception {
+        assertArrayEquals(new float[] { 1e-3f, 2.5E+4f, -7e2f, 0.5f, 5f, 1e-40f, 3.4028235e38f },
+                parse("1e-3,2.5E+4,-7e2,+.5,5.,1e-40,3.4028235e38"), 0f);
+        assertEquals(Float.floatToIntBits(-0f), Float.floatToIntBits(parse("-0.0")[0]));
+    }
+
+    @Test
+    public void matchesFloatParseFloatBitForBit() throws Exception {
+        Random random = new Random(42);
+        StringBuilder csv = new StringBuilder();
+        String[] tokens = new String[20000];
+
+        for (int i = 0; i < tokens.length; i++) {
+            switch (i % 4) {
+                case 0: tokens[i] = Float.toString((random.nextFloat() - 0.5f) * 4f); break;
+                case 1: tokens[i] = String.format(Locale.US, "%.6f", random.nextDouble() * 2 - 1); break;
+                case 2: tokens[i] = Double.toString(random.nextGaussian() * Math.pow(10, random.nextInt(60) - 30)); break;
+                default: tokens[i] = Long.toString(random.nextLong()) + "." + Math.abs(random.nextInt()); break;
+            }
+            csv.append(tokens[i]).append(',');
+        }
+
+        float[] values = parse(csv.toString());
+        assertEquals(tokens.length, values.length);
+
+        for (int i = 0; i < tokens.length; i++) {
+            assertEquals(tokens[i], Float.floatToIntBits(Float.parseFloat(tokens[i])), Float.floatToIntBits(values[i]));
+        }
+    }
+
+    @Test
+    public void reportsMalformedTokensWithOffsets() throws Exception {
+        CsvFloatParser.MalformedDataException e = parseMalformed("1.0,2.0,abc,4.0");
+        assertEquals(8, e.getOffset());
+        assertEquals(2, e.getIndex());
+        assertTrue(e.getMessage().contains("'a'"));
+
+        assertEquals(4, parseMalformed("1.0,,2.0").getOffset());
+        assertEquals(0, parseMalformed(",1").getOffset());
+        assertEquals(4, parseMalformed("1.0 2.0").getOffset());
+        assertEquals(1, parseMalformed("1,1.2.3").getIndex());
+        assertEquals(0, parseMalformed("-").getIndex());
+        assertEquals(0, parseMalformed("1e").getIndex());
+        assertEquals(0, parseMalformed("1e+-2").getIndex());
+        assertEquals(0, parseMalformed("e5").getIndex());
+    }
+
+    @Test
+    public void tokensMaySpanChunkBoundaries() throws Exception {
+        String csv = "0.123456,-98.7654,1e-5,42";
+        CsvFloatParser parser = new CsvFloatParser(3, 1); // tiny chunks and buffer
+
+        float[] values = parser.parse(new ByteArrayInputStream(csv.getBytes("US-ASCII")));
+        assertArrayEquals(new float[] { 0.123456f, -98.7654f, 1e-5f, 42f }, values, 0f);
+    }
+
+    @Test
+    public void parsesShippedResourcesLikeTheLegacyPath() throws Exception {
+        CsvFloatParser parser = new CsvFloatParser();
+
+        for (String name : new String[] { "positions", "normals" }) {
+            File file = new File(MeshLoadBenchmark.RAW_DIR, name);
+            InputStream in = new FileInputStream(file);
+            try {
+                assertArrayEquals(MeshLoadBenchmark.legacyParse(file), parser.parse(in), 0f);
+            } finally {
+                in.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the frame loop against {@link HeadlessGLBackend} and counts the bytes the
+ * thread allocates: once warmed up, drawing and picking must not allocate at all,
+ * every allocation there is a future GC pause on the device.
+ *
+ * <p>The JIT occasionally allocates a few bytes on the thread it's compiling for, so
+ * the frames are measured in rounds and the cleanest round must be 0. An allocation
+ * made by the frame itself shows up in every round.</p>
+ */
+public class FrameAllocationTest {
+    static final int WARMUP_FRAMES = 200, FRAMES = 1000, ROUNDS = 5;
+    // the nearest head, at (-1, -1, -6), is drawn around (60, 1440) by the default camera
+    static final int TAPPED_HEAD = 2 * 16 + 2 * 4 + 1, TAP_X = 60, TAP_Y = 1440;
+
+    private HeadlessGLBackend gl;
+    private MonkeyHeadsRenderer renderer;
+
+    @Before
+    public void setUp() throws Exception {
+        gl = new HeadlessGLBackend();
+        renderer = MonkeyHeadsRendererTest.newRenderer(gl);
+
+        // the first queries of the counter allocate themselves
+        for (int i = 0; i < 10; i++) {
+            Benchmark.allocatedBytes();
+        }
+    }
+
+    /**
+     * @return - The fewest bytes allocated by FRAMES runs of the task, over ROUNDS rounds.
+     */
+    private static long minAllocatedBytes(Runnable task) {
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            task.run();
+        }
+
+        long min = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = Benchmark.allocatedBytes();
+            for (int i = 0; i < FRAMES; i++) {
+                task.run();
+            }
+            min = Math.min(min, Benchmark.allocatedBytes() - before);
+        }
+        return min;
+    }
+
+    private Runnable drawFrame() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                renderer.onDrawFrame(null);
+            }
+        };
+    }
+
+    @Test
+    public void steadyStateFramesDoNotAllocate() {
+        assertEquals("bytes allocated by " + FRAMES + " frames", 0, minAllocatedBytes(drawFrame()));
+    }
+
+    @Test
+    public void explodingFramesDoNotAllocate() {
+        for (MonkeyHead head : renderer.monkeyHeads) {
+            head.setUseExplosionAnimation(true);
+        }
+
+        assertEquals(0, minAllocatedBytes(drawFrame()));
+    }
+
+    @Test
+    public void recyclingDoesNotAllocate() {
+        renderer.setExplosionDuration(0.2f, 0.1f);
+        renderer.setRespawnDelay(0.1f);
+
+        // every intact head explodes, so heads keep dying and coming back
+        assertEquals(0, minAllocatedBytes(new Runnable() {
+            @Override
+            public void run() {
+                for (MonkeyHead head : renderer.monkeyHeads) {
+                    if (head.getPickingId() != ColorProvider.NO_ID) {
+                        head.setUseExplosionAnimation(true);
+                    }
+                }
+                renderer.onDrawFrame(null);
+            }
+        }));
+    }
+
+    @Test
+    public void tapsDoNotAllocate() {
+        renderer.onDrawFrame(null);
+
+        long allocated = minAllocatedBytes(new Runnable() {
+            @Override
+            public void run() {
+                renderer.monkeyHeads[TAPPED_HEAD].setUseExplosionAnimation(false);
+                renderer.onTapEvent(TAP_X, TAP_Y);
+            }
+        });
+
+        assertTrue(renderer.monkeyHeads[TAPPED_HEAD].isUseExplosionAnimation());
+        assertEquals(0, allocated);
+    }
+
+    @Test
+    public void queuedInputDoesNotAllocate() {
+        final InputQueue input = renderer.getInputQueue();
+
+        // a drag and a tap on the background every frame, as the view queues them
+        assertEquals(0, minAllocatedBytes(new Runnable() {
+            @Override
+            public void run() {
+                input.offer(InputQueue.CAMERA, 0.5f, -0.5f);
+                input.offer(InputQueue.CAMERA, -0.5f, 0.5f);
+                input.offer(InputQueue.TAP, 1000, 1000);
+                renderer.onDrawFrame(null);
+            }
+        }));
+    }
+
+    @Test
+    public void tapOnTheBackgroundPicksNothing() {
+        renderer.onDrawFrame(null);
+        renderer.onTapEvent(1000, 1000);
+
+        for (MonkeyHead head : renderer.monkeyHeads) {
+            assertFalse(head.isUseExplosionAnimation());
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+/**
+ * Times the whole frame loop (update, culling of redundant state and the GL calls of
+ * 64 heads) against {@link HeadlessGLBackend}, i.e. the CPU cost of a frame without
+ * the driver.
+ */
+public class FrameLoopBenchmark {
+
+    @Test
+    public void frameLoop() throws Exception {
+        final HeadlessGLBackend gl = new HeadlessGLBackend();
+        final MonkeyHeadsRenderer renderer = MonkeyHeadsRendererTest.newRenderer(gl);
+
+        Benchmark.run("frame, 64 heads", 500, 5000, new Benchmark.Task() {
+            @Override
+            public void run() {
+                renderer.onDrawFrame(null);
+            }
+        });
+
+        gl.resetCounters();
+        renderer.getGlState().beginFrame();
+        renderer.onDrawFrame(null);
+        System.out.println("per frame: " + gl.calls + " GL calls (" + renderer.getGlState().getElidedCalls()
+                + " elided), " + gl.drawCalls + " draw calls, " + gl.bytesUploaded + " bytes uploaded");
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class FrameMetricsTest {
+
+    private static long[] phases(long camera, long update, long draw, long picking) {
+        return new long[] { camera, update, draw, picking };
+    }
+
+    @Test
+    public void snapshotSummarizesEveryPhase() {
+        FrameMetrics metrics = new FrameMetrics(100);
+        for (int i = 1; i <= 100; i++) {
+            metrics.recordFrame(phases(10, i * 1000, 2000, 0), 16000000, FrameMetrics.NOT_MEASURED);
+        }
+
+        FrameMetrics.Snapshot snapshot = metrics.snapshot();
+
+        assertEquals(100, snapshot.frames);
+        assertEquals(10, snapshot.get(FrameMetrics.PHASE_CAMERA).getMax());
+        assertEquals(50000, snapshot.get(FrameMetrics.PHASE_UPDATE).getValueAtPercentile(50), 50000 * 0.03);
+        assertEquals(99000, snapshot.get(FrameMetrics.PHASE_UPDATE).getValueAtPercentile(99), 99000 * 0.03);
+        assertEquals(100 * 1000 + 2010, snapshot.getCpuTotal().getMax());
+        assertEquals(62.5, snapshot.getFps(), 0.1);
+        assertEquals(0, snapshot.getGpu().getTotalCount()); // never measured
+    }
+
+    @Test
+    public void ringKeepsTheLatestFrames() {
+        FrameMetrics metrics = new FrameMetrics(10);
+        for (int i = 0; i < 25; i++) {
+            metrics.recordFrame(phases(i, 0, 0, 0), FrameMetrics.NOT_MEASURED, i);
+        }
+
+        FrameMetrics.Snapshot snapshot = metrics.snapshot();
+
+        assertEquals(25, metrics.getFrameCount());
+        assertEquals(10, snapshot.frames);
+        assertEquals(15, snapshot.get(FrameMetrics.PHASE_CAMERA).getMin());
+        assertEquals(24, snapshot.getGpu().getMax());
+        assertEquals(0, snapshot.getInterval().getTotalCount());
+    }
+
+    @Test
+    public void emptySnapshot() {
+        FrameMetrics.Snapshot snapshot = new FrameMetrics(4).snapshot();
+
+        assertEquals(0, snapshot.frames);
+        assertEquals(0.0, snapshot.getFps(), 0.0);
+        assertTrue(snapshot.toString().startsWith("0 frames"));
+    }
+
+    @Test
+    public void phasesAccumulateUntilTheFrameEnds() throws InterruptedException {
+        FrameMetrics metrics = new FrameMetrics(4);
+
+        metrics.beginPhase(FrameMetrics.PHASE_PICKING);
+        Thread.sleep(2);
+        metrics.endPhase();
+        metrics.beginPhase(FrameMetrics.PHASE_DRAW);
+        Thread.sleep(2);
+        metrics.beginPhase(FrameMetrics.PHASE_PICKING);
+        Thread.sleep(2);
+        metrics.endFrame();
+        metrics.endFrame();
+
+        FrameMetrics.Snapshot snapshot = metrics.snapshot();
+        LatencyHistogram picking = snapshot.get(FrameMetrics.PHASE_PICKING);
+
+        assertEquals(2, snapshot.frames);
+        assertEquals(0, picking.getMin()); // the second frame had no picking
+        assertTrue(picking.getMax() >= 4000000);
+        assertTrue(snapshot.get(FrameMetrics.PHASE_DRAW).getMax() >= 2000000);
+        assertEquals(1, snapshot.getInterval().getTotalCount()); // the first frame has no previous one
+    }
+
+    @Test
+    public void snapshotsAreConsistentWhileFramesAreWritten() throws Exception {
+        final FrameMetrics metrics = new FrameMetrics(64);
+        final AtomicBoolean done = new AtomicBoolean();
+
+        // every frame is internally consistent: all its phases hold the same value
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long[] phases = new long[FrameMetrics.PHASE_COUNT];
+                for (long i = 0; !done.get(); i++) {
+                    long value = i % 1000;
+                    for (int p = 0; p < phases.length; p++) {
+                        phases[p] = value;
+                    }
+                    metrics.recordFrame(phases, value, value);
+                }
+            }
+        });
+        writer.start();
+
+        try {
+            for (int i = 0; i < 2000; i++) {
+                FrameMetrics.Snapshot snapshot = metrics.snapshot();
+                assertTrue(snapshot.frames <= 64);
+
+                LatencyHistogram camera = snapshot.get(FrameMetrics.PHASE_CAMERA);
+                assertEquals(camera.getTotalCount(), snapshot.getGpu().getTotalCount());
+                assertEquals(camera.getMax(), snapshot.getGpu().getMax());
+                assertEquals(camera.getMin(), snapshot.get(FrameMetrics.PHASE_DRAW).getMin());
+                assertEquals(camera.getMax() * 4, snapshot.getCpuTotal().getMax());
+            }
+        } finally {
+            done.set(true);
+            writer.join();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FramePacerTest {
+    private static final long VSYNC_60 = 1000000000L / 60;
+
+    /**
+     * @return - How many of the vsyncs of a second get a frame, with a little jitter.
+     */
+    private static int framesInASecond(FramePacer pacer, long vsync, int vsyncs) {
+        int frames = 0;
+        for (int v = 0; v < vsyncs; v++) {
+            long jitter = (v % 3 - 1) * vsync / 10;
+            if (pacer.isFrameDue(v * vsync + jitter)) {
+                frames++;
+            }
+        }
+        return frames;
+    }
+
+    @Test
+    public void rendersEveryVsyncByDefault() {
+        FramePacer pacer = new FramePacer(60f);
+        assertEquals(1, pacer.getInterval());
+        assertEquals(60, framesInASecond(pacer, VSYNC_60, 60));
+    }
+
+    @Test
+    public void targetRateSkipsVsyncs() {
+        FramePacer pacer = new FramePacer(60f);
+        pacer.setTargetRate(30f);
+        assertEquals(2, pacer.getInterval());
+        assertEquals(30f, pacer.getRate(), 0.01f);
+        assertEquals(30, framesInASecond(pacer, VSYNC_60, 60));
+
+        // rates between two intervals go to the slower one
+        pacer.setTargetRate(45f);
+        assertEquals(2, pacer.getInterval());
+    }
+
+    @Test
+    public void fastDisplaysDivideTheirRate() {
+        FramePacer pacer = new FramePacer(120f);
+        pacer.setTargetRate(120f);
+        assertEquals(120f, pacer.getRate(), 0.01f);
+        pacer.setTargetRate(90f);
+        assertEquals(60f, pacer.getRate(), 0.01f);
+        pacer.setTargetRate(40f);
+        assertEquals(40f, pacer.getRate(), 0.01f);
+        pacer.setTargetRate(1f);
+        assertEquals(30f, pacer.getRate(), 0.01f); // never below MIN_RATE
+
+        FramePacer ninety = new FramePacer(90f);
+        ninety.setTargetRate(60f);
+        assertEquals(45f, ninety.getRate(), 0.01f);
+        assertEquals(45, framesInASecond(ninety, 1000000000L / 90, 90));
+    }
+
+    @Test
+    public void slowFramesLowerTheRateAndFastOnesRaiseItBack() {
+        FramePacer pacer = new FramePacer(60f);
+
+        // a few slow frames are a hiccup, not a trend
+        for (int i = 0; i < FramePacer.SLOW_FRAMES - 1; i++) {
+            pacer.onFrameRendered(20000000L, FrameMetrics.NOT_MEASURED);
+        }
+        pacer.onFrameRendered(1000000L, FrameMetrics.NOT_MEASURED);
+        assertEquals(1, pacer.getInterval());
+
+        // the GPU counts too
+        for (int i = 0; i < FramePacer.SLOW_FRAMES; i++) {
+            pacer.onFrameRendered(1000000L, 20000000L);
+        }
+        assertEquals(2, pacer.getInterval());
+
+        // frames that would fit 30 Hz, but not 60 Hz comfortably, stay at 30 Hz
+        for (int i = 0; i < FramePacer.FAST_FRAMES * 2; i++) {
+            pacer.onFrameRendered(12000000L, FrameMetrics.NOT_MEASURED);
+        }
+        assertEquals(2, pacer.getInterval());
+
+        for (int i = 0; i < FramePacer.FAST_FRAMES; i++) {
+            pacer.onFrameRendered(4000000L, FrameMetrics.NOT_MEASURED);
+        }
+        assertEquals(1, pacer.getInterval());
+    }
+
+    @Test
+    public void adaptiveRateStaysWithinTheTargetAndTheMinimum() {
+        FramePacer pacer = new FramePacer(120f);
+        pacer.setTargetRate(60f);
+        for (int i = 0; i < 1000; i++) {
+            pacer.onFrameRendered(100000000L, FrameMetrics.NOT_MEASURED);
+        }
+        assertEquals(30f, pacer.getRate(), 0.01f);
+
+        for (int i = 0; i < 1000; i++) {
+            pacer.onFrameRendered(0L, FrameMetrics.NOT_MEASURED);
+        }
+        assertEquals(60f, pacer.getRate(), 0.01f);
+
+        pacer.setAdaptive(false);
+        for (int i = 0; i < 1000; i++) {
+            pacer.onFrameRendered(100000000L, FrameMetrics.NOT_MEASURED);
+        }
+        assertEquals(60f, pacer.getRate(), 0.01f);
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrustumTest {
+    private static final float EPSILON = 1e-5f;
+
+    private final float[] projection = new float[16], camera = new float[16], viewProjection = new float[16];
+    private final Frustum frustum = new Frustum();
+
+    @Before
+    public void setUp() {
+        Mat4.frustumM(projection, 0, -1, 1, -1, 1, 3, 50);
+        Mat4.setIdentityM(camera, 0);
+    }
+
+    private void update() {
+        Mat4.multiplyMM(viewProjection, 0, projection, 0, camera, 0);
+        frustum.set(viewProjection);
+    }
+
+    private boolean sees(float x, float y, float z, float r) {
+        return frustum.intersectsSphere(new float[] { x, y, z, r }, 0);
+    }
+
+    @Test
+    public void planesAreNormalized() {
+        update();
+        float[] planes = frustum.getPlanes();
+        for (int p = 0; p < Frustum.PLANE_COUNT; p++) {
+            float a = planes[p * 4], b = planes[p * 4 + 1], c = planes[p * 4 + 2];
+            assertEquals(1f, a * a + b * b + c * c, EPSILON);
+        }
+
+        // near and far are the distances along -z
+        assertEquals(-3f, planes[16] * 0f + planes[17] * 0f + planes[18] * 0f + planes[19], 1e-4f);
+        assertEquals(50f, planes[20] * 0f + planes[21] * 0f + planes[22] * 0f + planes[23], 1e-3f);
+    }
+
+    @Test
+    public void spheresAgainstEveryPlane() {
+        update();
+
+        assertTrue(sees(0, 0, -10, 0.1f));
+        assertFalse(sees(0, 0, 10, 1f)); // behind
+        assertFalse(sees(0, 0, -1, 1f)); // before the near plane
+        assertTrue(sees(0, 0, -1, 2.5f)); // reaching past it
+        assertFalse(sees(0, 0, -60, 5f)); // past the far plane
+        assertFalse(sees(20, 0, -10, 1f));
+        assertFalse(sees(-20, 0, -10, 1f));
+        assertFalse(sees(0, 20, -10, 1f));
+        assertFalse(sees(0, -20, -10, 1f));
+
+        // the side planes are 45 degrees wide at a 1:1 ratio and near 3, so x = z/3 at the edge
+        float edge = 10f / 3f;
+        assertTrue(sees(edge + 0.5f, 0, -10, 1f));
+        assertFalse(sees(edge + 1.5f, 0, -10, 1f));
+    }
+
+    @Test
+    public void cameraIsTakenIntoAccount() {
+        Mat4.rotateM(camera, 0, 90f, 0f, 1f, 0f); // looking down +x
+        update();
+
+        assertTrue(sees(10, 0, 0, 1f));
+        assertFalse(sees(0, 0, -10, 1f));
+    }
+}
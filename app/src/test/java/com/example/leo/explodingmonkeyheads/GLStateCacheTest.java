@@ -0,0 +1,198 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import android.opengl.GLES20;
+
+import static org.junit.Assert.*;
+
+public class GLStateCacheTest {
+    private RecordingGLBackend gl;
+    private GLStateCache state;
+
+    @Before
+    public void setUp() {
+        gl = new RecordingGLBackend();
+        state = new GLStateCache(gl);
+    }
+
+    @Test
+    public void redundantCallsAreElided() {
+        state.useProgram(3);
+        state.useProgram(3);
+        state.bindBuffer(GLES20.GL_ARRAY_BUFFER, 1);
+        state.bindBuffer(GLES20.GL_ARRAY_BUFFER, 1);
+        state.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 1);
+        state.frontFace(GLES20.GL_CW);
+        state.frontFace(GLES20.GL_CW);
+        state.enable(GLES20.GL_DEPTH_TEST);
+        state.enable(GLES20.GL_DEPTH_TEST);
+
+        assertEquals(5, gl.log.size());
+        assertEquals(5, state.getIssuedCalls());
+        assertEquals(4, state.getElidedCalls());
+    }
+
+    @Test
+    public void changedStateGoesThrough() {
+        state.useProgram(3);
+        state.useProgram(4);
+        state.useProgram(3);
+        state.enableVertexAttribArray(0);
+        state.disableVertexAttribArray(0);
+        state.enableVertexAttribArray(0);
+
+        assertEquals(6, gl.log.size());
+        assertEquals(0, state.getElidedCalls());
+    }
+
+    @Test
+    public void uniformsAreCachedPerProgram() {
+        float[] matrix = new float[16];
+        matrix[0] = 1f;
+
+        state.useProgram(3);
+        state.uniformMatrix4fv(2, matrix, 0);
+        state.uniformMatrix4fv(2, matrix, 0);
+        state.uniform1f(5, 0.3f);
+        state.uniform1f(5, 0.3f);
+
+        // same locations in another program are different uniforms
+        state.useProgram(4);
+        state.uniformMatrix4fv(2, matrix, 0);
+
+        // and the first program still has its values
+        state.useProgram(3);
+        state.uniform1f(5, 0.3f);
+        matrix[15] = 2f;
+        state.uniformMatrix4fv(2, matrix, 0);
+
+        assertEquals(3, gl.count("glUniformMatrix4fv 2"));
+        assertEquals(1, gl.count("glUniform1f"));
+    }
+
+    @Test
+    public void uniformValuesAreComparedExactly() {
+        state.useProgram(1);
+        state.uniform4f(0, 0f, 0f, 0f, 1f);
+        state.uniform4f(0, -0f, 0f, 0f, 1f);
+        state.uniform1f(1, Float.NaN);
+        state.uniform1f(1, Float.NaN);
+
+        assertEquals(5, gl.log.size());
+    }
+
+    @Test
+    public void farLocationsGoThroughUncached() {
+        int location = 0x7f000000; // e.g. a driver that hashes the names
+        state.useProgram(1);
+        state.uniform1f(location, 1f);
+        state.uniform1f(location, 1f);
+        state.uniform1f(GLStateCache.MAX_CACHED_UNIFORM_LOCATION, 1f);
+        state.uniform1f(GLStateCache.MAX_CACHED_UNIFORM_LOCATION, 1f);
+
+        assertEquals(2, gl.count("glUniform1f " + location));
+        assertEquals(1, gl.count("glUniform1f " + GLStateCache.MAX_CACHED_UNIFORM_LOCATION));
+        assertEquals(1, state.getElidedCalls());
+    }
+
+    @Test
+    public void unusedLocationsAreIgnored() {
+        state.useProgram(1);
+        state.uniform1f(-1, 1f);
+        state.enableVertexAttribArray(-1);
+        state.vertexAttribPointer(-1, 3, GLES20.GL_FLOAT, false, 24, 0);
+
+        assertEquals(1, gl.log.size());
+    }
+
+    @Test
+    public void attribPointersDependOnTheBoundBuffer() {
+        state.bindBuffer(GLES20.GL_ARRAY_BUFFER, 1);
+        state.vertexAttribPointer(0, 3, GLES20.GL_FLOAT, false, 24, 0);
+        state.vertexAttribPointer(0, 3, GLES20.GL_FLOAT, false, 24, 0);
+
+        state.bindBuffer(GLES20.GL_ARRAY_BUFFER, 2);
+        state.vertexAttribPointer(0, 3, GLES20.GL_FLOAT, false, 24, 0);
+
+        assertEquals(2, gl.count("glVertexAttribPointer"));
+    }
+
+    @Test
+    public void deletedObjectsAreForgotten() {
+        state.bindBuffer(GLES20.GL_ARRAY_BUFFER, 1);
+        state.onBufferDeleted(1);
+        state.bindBuffer(GLES20.GL_ARRAY_BUFFER, 1);
+
+        state.useProgram(2);
+        state.uniform1f(0, 1f);
+        state.onProgramDeleted(2);
+        state.useProgram(2);
+        state.uniform1f(0, 1f);
+
+        assertEquals(2, gl.count("glBindBuffer"));
+        assertEquals(2, gl.count("glUseProgram"));
+        assertEquals(2, gl.count("glUniform1f"));
+    }
+
+    @Test
+    public void invalidateForgetsEverything() {
+        state.useProgram(1);
+        state.uniform1f(0, 1f);
+        state.frontFace(GLES20.GL_CW);
+
+        state.invalidate();
+
+        state.useProgram(1);
+        state.uniform1f(0, 1f);
+        state.frontFace(GLES20.GL_CW);
+
+        assertEquals(6, gl.log.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void uniformsNeedAProgram() {
+        state.uniform1f(0, 1f);
+    }
+
+    @Test
+    public void reportsElidedCallsPerFrame() {
+        // the call sequence of MonkeyHead.draw for a frame of 64 heads
+        int heads = 64;
+        float[] camera = new float[16], projection = new float[16], model = new float[16];
+        int[] elided = new int[2];
+
+        for (int frame = 0; frame < 2; frame++) {
+            state.beginFrame();
+            gl.log.clear();
+
+            for (int i = 0; i < heads; i++) {
+                model[12] = i;
+
+                state.useProgram(1);
+                state.bindBuffer(GLES20.GL_ARRAY_BUFFER, 1);
+                for (int location = 0; location < 2; location++) {
+                    state.enableVertexAttribArray(location);
+                    state.vertexAttribPointer(location, 3, GLES20.GL_FLOAT, false, 24, location * 12);
+                }
+                state.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 2);
+
+                state.uniform4f(0, i / 64f, 0f, 0f, 1f);
+                state.uniformMatrix4fv(1, camera, 0);
+                state.uniformMatrix4fv(2, projection, 0);
+                state.uniformMatrix4fv(3, model, 0);
+                state.uniform1f(4, 0f);
+                state.frontFace(GLES20.GL_CW);
+            }
+
+            elided[frame] = state.getElidedCalls();
+            assertEquals(heads * 13, state.getIssuedCalls() + state.getElidedCalls());
+        }
+
+        // only the color and model matrix change from head to head
+        assertEquals(heads * 2, gl.log.size());
+        assertEquals(heads * 11, elided[1]);
+        assertEquals(heads * 11 - 11, elided[0]);
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GLTaskQueueTest {
+    private static Runnable record(final List<Integer> ran, final int task, final long sleepMillis) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                ran.add(task);
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+    }
+
+    @Test
+    public void everyFrameRunsAtLeastOneTaskInOrder() {
+        List<Integer> ran = new ArrayList<>();
+        GLTaskQueue queue = new GLTaskQueue();
+        for (int i = 0; i < 3; i++) {
+            queue.post(record(ran, i, 5));
+        }
+
+        // each task is longer than the budget
+        assertEquals(1, queue.run(1000000L));
+        assertEquals(1, queue.run(1000000L));
+        assertEquals(1, queue.size());
+        assertEquals(1, queue.run(0L));
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.run(1000000L));
+        assertEquals(Arrays.asList(0, 1, 2), ran);
+    }
+
+    @Test
+    public void shortTasksShareAFrame() {
+        List<Integer> ran = new ArrayList<>();
+        GLTaskQueue queue = new GLTaskQueue();
+        for (int i = 0; i < 5; i++) {
+            queue.post(record(ran, i, 0));
+        }
+
+        assertEquals(5, queue.run(1000000000L));
+        assertEquals(5, ran.size());
+
+        queue.post(record(ran, 5, 0));
+        queue.clear();
+        queue.runAll();
+        assertEquals(5, ran.size());
+    }
+}
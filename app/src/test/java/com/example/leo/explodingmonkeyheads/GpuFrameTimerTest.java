@@ -0,0 +1,73 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GpuFrameTimerTest {
+    private HeadlessGLBackend gl;
+    private GpuFrameTimer timer;
+
+    @Before
+    public void setUp() {
+        gl = new HeadlessGLBackend();
+        timer = new GpuFrameTimer(gl);
+        timer.create();
+    }
+
+    @Test
+    public void needsTheExtensionAndGles3() {
+        assertFalse(GpuFrameTimer.isSupported(gl, 2));
+        assertFalse(GpuFrameTimer.isSupported(gl, 3)); // no extension
+    }
+
+    @Test
+    public void reportsFinishedQueries() {
+        gl.queryResult = 7000000;
+
+        assertEquals(FrameMetrics.NOT_MEASURED, timer.poll()); // nothing in flight
+        timer.begin();
+        timer.end();
+
+        assertEquals(7000000, timer.poll());
+        assertEquals(FrameMetrics.NOT_MEASURED, timer.poll());
+    }
+
+    @Test
+    public void neverWaitsForTheGpu() {
+        gl.queriesAvailable = false;
+
+        for (int frame = 0; frame < 10; frame++) {
+            timer.begin();
+            timer.end();
+            assertEquals(FrameMetrics.NOT_MEASURED, timer.poll());
+        }
+
+        // the frames after the ring filled up weren't timed, the others still are
+        gl.queriesAvailable = true;
+        gl.queryResult = 5;
+        for (int i = 0; i < GpuFrameTimer.QUERY_COUNT; i++) {
+            assertEquals(5, timer.poll());
+        }
+        assertEquals(FrameMetrics.NOT_MEASURED, timer.poll());
+    }
+
+    @Test
+    public void dropsDisjointResults() {
+        gl.disjoint = true;
+        timer.begin();
+        timer.end();
+
+        assertEquals(FrameMetrics.NOT_MEASURED, timer.poll());
+    }
+
+    @Test
+    public void resultsAreUnsigned() {
+        gl.queryResult = 0xf0000000; // ~4 s, more than an int holds
+        timer.begin();
+        timer.end();
+
+        assertEquals(0xf0000000L, timer.poll());
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GyroCameraTest {
+    static final long STEP = 10000000L; // 100 Hz
+
+    @Test
+    public void turningIsIntegratedIntoDegrees() {
+        GyroCamera camera = new GyroCamera();
+        assertFalse(camera.onSample(0.5f, 1f, 1000L));
+
+        // a second at 1 rad/s around y and 0.5 rad/s around x
+        for (int i = 1; i <= 100; i++) {
+            assertTrue(camera.onSample(0.5f, 1f, 1000L + i * STEP));
+        }
+        assertEquals(Math.toDegrees(1.0), camera.getPendingX(), 1e-3);
+        assertEquals(Math.toDegrees(0.5), camera.getPendingY(), 1e-3);
+
+        camera.clearPending();
+        assertFalse(camera.hasPending());
+        assertEquals(0f, camera.getPendingX(), 0f);
+    }
+
+    @Test
+    public void noiseIsIgnored() {
+        GyroCamera camera = new GyroCamera();
+        for (int i = 0; i < 100; i++) {
+            float drift = i % 2 == 0 ? GyroCamera.DEFAULT_NOISE : -GyroCamera.DEFAULT_NOISE;
+            assertFalse(camera.onSample(drift, drift / 2, i * STEP));
+        }
+
+        // just one axis moving
+        camera.onSample(0f, 2f, 100 * STEP);
+        assertEquals(0f, camera.getPendingY(), 0f);
+        assertTrue(camera.getPendingX() > 0f);
+    }
+
+    @Test
+    public void gapsAreNotIntegrated() {
+        GyroCamera camera = new GyroCamera();
+        camera.onSample(1f, 1f, 0L);
+        assertFalse(camera.onSample(1f, 1f, GyroCamera.MAX_STEP_NANOS + 1));
+        // nor are samples out of order
+        assertFalse(camera.onSample(1f, 1f, GyroCamera.MAX_STEP_NANOS));
+
+        assertTrue(camera.onSample(1f, 1f, GyroCamera.MAX_STEP_NANOS + STEP));
+        assertEquals(Math.toDegrees(0.01), camera.getPendingX(), 1e-4);
+    }
+
+    @Test
+    public void resetForgetsTheLastSample() {
+        GyroCamera camera = new GyroCamera();
+        camera.onSample(1f, 1f, 0L);
+        camera.onSample(1f, 1f, STEP);
+        assertTrue(camera.hasPending());
+
+        // e.g. registered again after a pause
+        camera.reset();
+        assertFalse(camera.hasPending());
+        assertFalse(camera.onSample(1f, 1f, 2 * STEP));
+    }
+
+    @Test
+    public void sensitivityScalesAndInverts() {
+        GyroCamera camera = new GyroCamera();
+        camera.setSensitivity(-2f);
+        camera.onSample(0f, 0f, 0L);
+        camera.onSample(1f, 0.5f, STEP);
+
+        assertEquals(-2 * Math.toDegrees(0.005), camera.getPendingX(), 1e-4);
+        assertEquals(-2 * Math.toDegrees(0.01), camera.getPendingY(), 1e-4);
+    }
+}
@@ -0,0 +1,573 @@
+package com.example.leo.explodingmonkeyheads;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+/**
+ * {@link GLBackend} without a GPU: every shader compiles, every program links and
+ * nothing is drawn, but calls, uploaded bytes and draw calls are counted so the frame
+ * loop can be measured on the JVM. {@link #resetCounters()} starts a new frame.
+ */
+public class HeadlessGLBackend implements GLBackend {
+    private int nextId = 1;
+    // locations are handed out in order of first query, separately per program
+    private final Map<String, Integer> locations = new HashMap<>();
+    private final Map<String, Integer> locationCounts = new HashMap<>();
+
+    // glGetError is only polled in debug builds, so it's counted apart from the other calls
+    // what glReadPixels returns for every pixel, RGBA
+    final byte[] pixel = new byte[4];
+    // draw calls counted when glReadPixels last read into memory, i.e. what it had to wait for
+    int drawCallsBeforeRead = -1;
+
+    // what glGetString(GL_EXTENSIONS) returns, and the time reported by every timer query
+    String extensions = "";
+    int queryResult;
+    boolean queriesAvailable = true, disjoint;
+
+    // program binaries: the binary of a linked program is the source of its shaders, so a
+    // program loaded from a binary is told apart by what it was built from
+    static final int BINARY_FORMAT = 0x1234;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private final Map<Integer, String> shaderSources = new HashMap<>();
+    private final Map<Integer, String> programSources = new HashMap<>();
+    private final Set<Integer> unlinked = new HashSet<>();
+    String renderer = "Headless";
+    int programBinaryFormats; // 0 for no binary support
+    boolean rejectBinaries; // e.g. after a driver update
+    int compiles, binariesLoaded;
+
+    // the framebuffer draws go to, the viewport and the last blit, to follow offscreen rendering
+    int drawFramebuffer;
+    final int[] viewport = new int[4];
+    final int[] lastBlit = new int[8];
+    int blits, offscreenDrawCalls;
+
+    int calls, drawCalls, instances, bytesUploaded, stateChanges, errorChecks;
+    long totalCalls, elements; // elements: vertices (or indices) drawn, times the instances
+
+    void resetCounters() {
+        calls = drawCalls = instances = bytesUploaded = stateChanges = errorChecks = 0;
+        blits = offscreenDrawCalls = 0;
+        elements = 0;
+    }
+
+    private void call() {
+        calls++;
+        totalCalls++;
+    }
+
+    private void stateChange() {
+        call();
+        stateChanges++;
+    }
+
+    private void draw(int count, int instanceCount) {
+        call();
+        drawCalls++;
+        if (drawFramebuffer != 0) {
+            offscreenDrawCalls++;
+        }
+        instances += instanceCount;
+        elements += (long) count * instanceCount;
+    }
+
+    private int location(int program, String kind, String name) {
+        String key = program + " " + kind + " " + name;
+        Integer location = locations.get(key);
+        if (location == null) {
+            String counter = program + " " + kind;
+            Integer count = locationCounts.get(counter);
+            location = count == null ? 0 : count;
+            locationCounts.put(counter, location + 1);
+            locations.put(key, location);
+        }
+        return location;
+    }
+
+    @Override
+    public int glGetError() {
+        errorChecks++;
+        return GLES20.GL_NO_ERROR;
+    }
+
+    @Override
+    public String glGetString(int name) {
+        call();
+        if (name == GLES20.GL_RENDERER) {
+            return renderer;
+        }
+        return name == GLES20.GL_EXTENSIONS ? extensions : "";
+    }
+
+    @Override
+    public void glGetIntegerv(int pname, int[] params, int offset) {
+        call();
+        if (pname == GLES30.GL_NUM_PROGRAM_BINARY_FORMATS) {
+            params[offset] = programBinaryFormats;
+        } else {
+            params[offset] = (pname == GpuFrameTimer.GL_GPU_DISJOINT_EXT && disjoint) ? 1 : 0;
+        }
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+        stateChange();
+    }
+
+    @Override
+    public void glClear(int mask) {
+        call();
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+        stateChange();
+        viewport[0] = x;
+        viewport[1] = y;
+        viewport[2] = width;
+        viewport[3] = height;
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        call();
+        return nextId++;
+    }
+
+    @Override
+    public void glShaderSource(int shader, String string) {
+        call();
+        shaderSources.put(shader, string);
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        call();
+        compiles++;
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+        call();
+        params[offset] = GLES20.GL_TRUE;
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader) {
+        call();
+        return "";
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+        call();
+    }
+
+    @Override
+    public int glCreateProgram() {
+        call();
+        return nextId++;
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        call();
+        String attached = programSources.get(program);
+        programSources.put(program, (attached == null ? "" : attached) + shaderSources.get(shader));
+    }
+
+    @Override
+    public void glDetachShader(int program, int shader) {
+        call();
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        call();
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+        call();
+        if (pname == GLES30.GL_PROGRAM_BINARY_LENGTH) {
+            params[offset] = binaryOf(program).length;
+        } else if (pname == GLES20.GL_LINK_STATUS) {
+            params[offset] = unlinked.contains(program) ? GLES20.GL_FALSE : GLES20.GL_TRUE;
+        } else {
+            params[offset] = GLES20.GL_TRUE;
+        }
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program) {
+        call();
+        return "";
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        call();
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        call();
+        return location(program, "attribute", name);
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        call();
+        return location(program, "uniform", name);
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        call();
+        for (int i = 0; i < n; i++) {
+            buffers[offset + i] = nextId++;
+        }
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+        call();
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        call();
+        if (data != null) {
+            bytesUploaded += size;
+        }
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data) {
+        call();
+        bytesUploaded += size;
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        draw(count, 1);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        draw(count, 1);
+    }
+
+    @Override
+    public void glReadPixels(int x, int y, int width, int height, int format, int type, Buffer pixels) {
+        call();
+        drawCallsBeforeRead = drawCalls;
+        ByteBuffer dst = (ByteBuffer) pixels;
+        for (int i = 0; i < width * height * 4; i++) {
+            dst.put(dst.position() + i, pixel[i % 4]);
+        }
+    }
+
+    @Override
+    public void glScissor(int x, int y, int width, int height) {
+        stateChange();
+    }
+
+    @Override
+    public void glGenFramebuffers(int n, int[] framebuffers, int offset) {
+        call();
+        for (int i = 0; i < n; i++) {
+            framebuffers[offset + i] = nextId++;
+        }
+    }
+
+    @Override
+    public void glDeleteFramebuffers(int n, int[] framebuffers, int offset) {
+        call();
+    }
+
+    @Override
+    public void glBindFramebuffer(int target, int framebuffer) {
+        stateChange();
+        if (target != GLES30.GL_READ_FRAMEBUFFER) {
+            drawFramebuffer = framebuffer;
+        }
+    }
+
+    @Override
+    public void glFramebufferTexture2D(int target, int attachment, int textarget, int texture, int level) {
+        call();
+    }
+
+    @Override
+    public void glFramebufferRenderbuffer(int target, int attachment, int renderbuffertarget, int renderbuffer) {
+        call();
+    }
+
+    @Override
+    public int glCheckFramebufferStatus(int target) {
+        call();
+        return GLES20.GL_FRAMEBUFFER_COMPLETE;
+    }
+
+    @Override
+    public void glGenRenderbuffers(int n, int[] renderbuffers, int offset) {
+        call();
+        for (int i = 0; i < n; i++) {
+            renderbuffers[offset + i] = nextId++;
+        }
+    }
+
+    @Override
+    public void glDeleteRenderbuffers(int n, int[] renderbuffers, int offset) {
+        call();
+    }
+
+    @Override
+    public void glBindRenderbuffer(int target, int renderbuffer) {
+        stateChange();
+    }
+
+    @Override
+    public void glRenderbufferStorage(int target, int internalformat, int width, int height) {
+        call();
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset) {
+        call();
+        for (int i = 0; i < n; i++) {
+            textures[offset + i] = nextId++;
+        }
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset) {
+        call();
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        stateChange();
+    }
+
+    @Override
+    public void glTexParameteri(int target, int pname, int param) {
+        call();
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format,
+                             int type, Buffer pixels) {
+        call();
+    }
+
+    @Override
+    public void glVertexAttribDivisor(int index, int divisor) {
+        stateChange();
+    }
+
+    @Override
+    public void glDrawArraysInstanced(int mode, int first, int count, int instanceCount) {
+        draw(count, instanceCount);
+    }
+
+    @Override
+    public void glDrawElementsInstanced(int mode, int count, int type, int offset, int instanceCount) {
+        draw(count, instanceCount);
+    }
+
+    @Override
+    public void glGenQueries(int n, int[] ids, int offset) {
+        call();
+        for (int i = 0; i < n; i++) {
+            ids[offset + i] = nextId++;
+        }
+    }
+
+    @Override
+    public void glDeleteQueries(int n, int[] ids, int offset) {
+        call();
+    }
+
+    @Override
+    public void glBeginQuery(int target, int id) {
+        call();
+    }
+
+    @Override
+    public void glEndQuery(int target) {
+        call();
+    }
+
+    @Override
+    public void glGetQueryObjectuiv(int id, int pname, int[] params, int offset) {
+        call();
+        params[offset] = pname == GLES30.GL_QUERY_RESULT_AVAILABLE ? (queriesAvailable ? 1 : 0) : queryResult;
+    }
+
+    @Override
+    public void glReadPixels(int x, int y, int width, int height, int format, int type, int offset) {
+        call();
+    }
+
+    @Override
+    public Buffer glMapBufferRange(int target, int offset, int length, int access) {
+        call();
+        ByteBuffer mapped = ByteBuffer.allocate(length);
+        for (int i = 0; i < length; i++) {
+            mapped.put(i, pixel[i % 4]);
+        }
+        return mapped;
+    }
+
+    @Override
+    public boolean glUnmapBuffer(int target) {
+        call();
+        return true;
+    }
+
+    @Override
+    public void glProgramParameteri(int program, int pname, int value) {
+        call();
+    }
+
+    @Override
+    public void glGetProgramBinary(int program, int bufSize, int[] length, int lengthOffset, int[] binaryFormat,
+                                   int binaryFormatOffset, Buffer binary) {
+        call();
+        byte[] bytes = binaryOf(program);
+        ByteBuffer dst = (ByteBuffer) binary;
+        int copied = Math.min(bufSize, bytes.length);
+        for (int i = 0; i < copied; i++) {
+            dst.put(dst.position() + i, bytes[i]);
+        }
+        if (length != null) {
+            length[lengthOffset] = copied;
+        }
+        binaryFormat[binaryFormatOffset] = BINARY_FORMAT;
+    }
+
+    @Override
+    public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+        call();
+        if (rejectBinaries || binaryFormat != BINARY_FORMAT) {
+            unlinked.add(program);
+            return;
+        }
+        ByteBuffer src = (ByteBuffer) binary;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = src.get(src.position() + i);
+        }
+        programSources.put(program, new String(bytes, UTF_8));
+        unlinked.remove(program);
+        binariesLoaded++;
+    }
+
+    @Override
+    public void glBlitFramebuffer(int srcX0, int srcY0, int srcX1, int srcY1, int dstX0, int dstY0, int dstX1,
+                                  int dstY1, int mask, int filter) {
+        call();
+        blits++;
+        lastBlit[0] = srcX0;
+        lastBlit[1] = srcY0;
+        lastBlit[2] = srcX1;
+        lastBlit[3] = srcY1;
+        lastBlit[4] = dstX0;
+        lastBlit[5] = dstY0;
+        lastBlit[6] = dstX1;
+        lastBlit[7] = dstY1;
+    }
+
+    @Override
+    public void glInvalidateFramebuffer(int target, int numAttachments, int[] attachments, int offset) {
+        call();
+    }
+
+    /**
+     * @return - The sources the program was linked from, or loaded as a binary.
+     */
+    String sourceOf(int program) {
+        return programSources.get(program);
+    }
+
+    private byte[] binaryOf(int program) {
+        String source = programSources.get(program);
+        return (source == null ? "" : source).getBytes(UTF_8);
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        stateChange();
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        stateChange();
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        stateChange();
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        stateChange();
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+        stateChange();
+    }
+
+    @Override
+    public void glEnable(int cap) {
+        stateChange();
+    }
+
+    @Override
+    public void glDisable(int cap) {
+        stateChange();
+    }
+
+    @Override
+    public void glFrontFace(int mode) {
+        stateChange();
+    }
+
+    @Override
+    public void glCullFace(int mode) {
+        stateChange();
+    }
+
+    @Override
+    public void glUniform1f(int location, float x) {
+        stateChange();
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w) {
+        stateChange();
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, float[] v, int offset) {
+        stateChange();
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+        stateChange();
+    }
+}
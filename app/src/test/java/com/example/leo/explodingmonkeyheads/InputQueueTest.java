@@ -0,0 +1,129 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class InputQueueTest {
+
+    /**
+     * Writes down what a drain hands over.
+     */
+    static class Recorder implements InputQueue.Consumer {
+        final List<float[]> taps = new ArrayList<>();
+        int rotations;
+        double dx, dy;
+
+        @Override
+        public void onCameraRotated(float dx, float dy) {
+            rotations++;
+            this.dx += dx;
+            this.dy += dy;
+        }
+
+        @Override
+        public void onTap(float x, float y) {
+            taps.add(new float[] { x, y });
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBeAPowerOfTwo() {
+        new InputQueue(48);
+    }
+
+    @Test
+    public void cameraDeltasOfAFrameAreCoalesced() {
+        InputQueue queue = new InputQueue(8);
+        assertTrue(queue.offer(InputQueue.CAMERA, 1f, 2f));
+        assertTrue(queue.offer(InputQueue.TAP, 10f, 20f));
+        assertTrue(queue.offer(InputQueue.CAMERA, 3f, -5f));
+        assertTrue(queue.offer(InputQueue.TAP, 30f, 40f));
+        assertEquals(4, queue.size());
+
+        Recorder recorder = new Recorder();
+        assertEquals(4, queue.drain(recorder));
+        assertEquals(1, recorder.rotations);
+        assertEquals(4.0, recorder.dx, 0.0);
+        assertEquals(-3.0, recorder.dy, 0.0);
+        assertEquals(2, recorder.taps.size());
+        assertArrayEquals(new float[] { 10f, 20f }, recorder.taps.get(0), 0f);
+        assertArrayEquals(new float[] { 30f, 40f }, recorder.taps.get(1), 0f);
+
+        // nothing waiting, nothing called
+        assertEquals(0, queue.size());
+        assertEquals(0, queue.drain(recorder));
+        assertEquals(1, recorder.rotations);
+    }
+
+    @Test
+    public void fullQueueRefusesUntilDrained() {
+        InputQueue queue = new InputQueue(4);
+        Recorder recorder = new Recorder();
+
+        // several times around the ring
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < queue.getCapacity(); i++) {
+                assertTrue(queue.offer(InputQueue.TAP, round, i));
+            }
+            assertFalse(queue.offer(InputQueue.TAP, -1f, -1f));
+            assertEquals(4, queue.drain(recorder));
+        }
+
+        assertEquals(40, recorder.taps.size());
+        for (int i = 0; i < recorder.taps.size(); i++) {
+            assertArrayEquals(new float[] { i / 4, i % 4 }, recorder.taps.get(i), 0f);
+        }
+    }
+
+    @Test
+    public void nothingIsLostBetweenThreads() throws Exception {
+        final int events = 1000000, tapEvery = 100;
+        final InputQueue queue = new InputQueue(MonkeyHeadsRenderer.INPUT_CAPACITY);
+        final Recorder recorder = new Recorder();
+
+        // the UI thread: keeps a refused drag delta for the next event, like the view
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                float pendingX = 0f, pendingY = 0f;
+                for (int i = 0; i < events; i++) {
+                    if (i % tapEvery == 0) {
+                        while (!queue.offer(InputQueue.TAP, i, -i)) {
+                            Thread.yield();
+                        }
+                        continue;
+                    }
+                    pendingX += 1f;
+                    pendingY -= 2f;
+                    if (queue.offer(InputQueue.CAMERA, pendingX, pendingY)) {
+                        pendingX = pendingY = 0f;
+                    }
+                }
+                while (pendingX != 0f && !queue.offer(InputQueue.CAMERA, pendingX, pendingY)) {
+                    Thread.yield();
+                }
+            }
+        });
+
+        producer.start();
+        // this thread plays the GL thread
+        while (producer.isAlive() || queue.size() > 0) {
+            queue.drain(recorder);
+        }
+        producer.join();
+        queue.drain(recorder);
+
+        // the deltas are whole numbers, their float sums are exact
+        int moves = events - events / tapEvery;
+        assertEquals(moves, recorder.dx, 0.0);
+        assertEquals(-2.0 * moves, recorder.dy, 0.0);
+        assertEquals(events / tapEvery, recorder.taps.size());
+        for (int i = 0; i < recorder.taps.size(); i++) {
+            assertArrayEquals(new float[] { i * tapEvery, -i * tapEvery }, recorder.taps.get(i), 0f);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class InstanceBufferTest {
+
+    @Test
+    public void layoutPacksMatrixColorAndTime() {
+        VertexLayout layout = InstanceBuffer.LAYOUT;
+
+        assertEquals(0, InstanceBuffer.MODEL_OFFSET);
+        assertEquals(16, layout.getAttribute(1).offset);
+        assertEquals(48, layout.getAttribute(3).offset);
+        assertEquals(64, InstanceBuffer.COLOR_OFFSET);
+        assertEquals(68, InstanceBuffer.TIME_OFFSET);
+        assertEquals(72, layout.getStride());
+    }
+
+    @Test
+    public void addWritesOneInstancePerStride() {
+        InstanceBuffer instances = new InstanceBuffer(4);
+        float[] model = new float[16];
+        for (int i = 0; i < model.length; i++) {
+            model[i] = i;
+        }
+
+        instances.add(model, 0, 1f, 0f, 0f, 1f, 0f);
+        instances.add(model, 0, 0f, 0f, 1f, 1f, 2.5f);
+
+        ByteBuffer buffer = instances.getBuffer();
+        int stride = InstanceBuffer.LAYOUT.getStride();
+
+        assertEquals(2, instances.getCount());
+        assertEquals(0, buffer.position());
+        assertEquals(2 * stride, buffer.limit());
+
+        for (int i = 0; i < 16; i++) {
+            assertEquals(i, buffer.getFloat(stride + InstanceBuffer.MODEL_OFFSET + i * 4), 0f);
+        }
+        assertEquals(2.5f, buffer.getFloat(stride + InstanceBuffer.TIME_OFFSET), 0f);
+        assertEquals(0f, buffer.getFloat(InstanceBuffer.TIME_OFFSET), 0f);
+    }
+
+    @Test
+    public void pickingColorsSurviveTheByteConversion() {
+        // the renderer identifies tapped heads by reading back these exact 8 bits values
+        InstanceBuffer instances = new InstanceBuffer(1);
+
+        for (int value = 0; value < 256; value++) {
+            instances.clear();
+            instances.add(new float[16], 0, value / 255f, (255 - value) / 255f, 0f, 1f, 0f);
+
+            ByteBuffer buffer = instances.getBuffer();
+            assertEquals(value, buffer.get(InstanceBuffer.COLOR_OFFSET) & 0xff);
+            assertEquals(255 - value, buffer.get(InstanceBuffer.COLOR_OFFSET + 1) & 0xff);
+            assertEquals(255, buffer.get(InstanceBuffer.COLOR_OFFSET + 3) & 0xff);
+        }
+    }
+
+    @Test
+    public void growsAndKeepsPreviousInstances() {
+        InstanceBuffer instances = new InstanceBuffer(1);
+        float[] model = new float[32];
+
+        for (int i = 0; i < 10; i++) {
+            model[16] = i;
+            instances.add(model, 16, 0f, 0f, 0f, 1f, i);
+            instances.getBuffer(); // narrows the limit, add() must cope with it
+        }
+
+        ByteBuffer buffer = instances.getBuffer();
+        int stride = InstanceBuffer.LAYOUT.getStride();
+
+        assertEquals(10, instances.getCount());
+        assertTrue(instances.getCapacity() >= 10);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, buffer.getFloat(i * stride), 0f);
+            assertEquals(i, buffer.getFloat(i * stride + InstanceBuffer.TIME_OFFSET), 0f);
+        }
+    }
+
+    @Test
+    public void clearReusesTheBuffer() {
+        InstanceBuffer instances = new InstanceBuffer(2);
+        instances.add(new float[16], 0, 0f, 0f, 0f, 1f, 0f);
+        ByteBuffer before = instances.getBuffer();
+
+        instances.clear();
+
+        assertEquals(0, instances.getCount());
+        assertEquals(0, instances.getBuffer().limit());
+        assertSame(before, instances.getBuffer());
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverEveryValueOnce() {
+        for (int index = 0; index < LatencyHistogram.indexOf(LatencyHistogram.MAX_VALUE); index++) {
+            assertEquals(LatencyHistogram.highestValueAt(index) + 1, LatencyHistogram.lowestValueAt(index + 1));
+            assertEquals(index, LatencyHistogram.indexOf(LatencyHistogram.lowestValueAt(index)));
+            assertEquals(index, LatencyHistogram.indexOf(LatencyHistogram.highestValueAt(index)));
+        }
+    }
+
+    @Test
+    public void bucketsAreWithinThreePercent() {
+        for (long value = 64; value < LatencyHistogram.MAX_VALUE; value = value * 3 / 2) {
+            int index = LatencyHistogram.indexOf(value);
+            long width = LatencyHistogram.highestValueAt(index) - LatencyHistogram.lowestValueAt(index) + 1;
+            assertTrue(width / (double) value <= 1.0 / LatencyHistogram.SUB_BUCKETS);
+        }
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 50; i++) {
+            h.record(i);
+        }
+
+        assertEquals(50, h.getTotalCount());
+        assertEquals(1, h.getMin());
+        assertEquals(50, h.getMax());
+        assertEquals(25.5, h.getMean(), 1e-9);
+        assertEquals(25, h.getValueAtPercentile(50));
+        assertEquals(50, h.getValueAtPercentile(100));
+        assertEquals(1, h.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void percentilesMatchSortedSamples() {
+        Random random = new Random(42);
+        long[] samples = new long[10000];
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 0; i < samples.length; i++) {
+            // frame-like times: ~16 ms with a long tail
+            samples[i] = (long) (16e6 + Math.abs(random.nextGaussian()) * 4e6 * (random.nextInt(50) == 0 ? 10 : 1));
+            h.record(samples[i]);
+        }
+        Arrays.sort(samples);
+
+        for (double p : new double[] { 50, 90, 95, 99, 99.9 }) {
+            long exact = samples[(int) Math.ceil(p / 100 * samples.length) - 1];
+            long reported = h.getValueAtPercentile(p);
+            assertTrue(p + ": " + reported + " vs " + exact, reported >= exact);
+            assertTrue(p + ": " + reported + " vs " + exact, reported <= exact * 1.04);
+        }
+        assertEquals(samples[samples.length - 1], h.getMax());
+    }
+
+    @Test
+    public void outOfRangeValuesAreClamped() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(-5);
+        h.record(Long.MAX_VALUE);
+
+        assertEquals(0, h.getMin());
+        assertEquals(LatencyHistogram.MAX_VALUE, h.getMax());
+        assertEquals(LatencyHistogram.MAX_VALUE, h.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void resetEmptiesTheHistogram() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(1000);
+        h.reset();
+
+        assertEquals(0, h.getTotalCount());
+        assertEquals(0, h.getMin());
+        assertEquals(0, h.getMax());
+        assertEquals(0, h.getValueAtPercentile(50));
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LodSelectorTest {
+    private LodSelector selector;
+
+    @Before
+    public void setUp() {
+        float[] projection = new float[16];
+        Mat4.frustumM(projection, 0, -0.5f, 0.5f, -1, 1, 3, 50);
+
+        selector = new LodSelector();
+        selector.setLevels(new float[] {0f, 0.01f, 0.02f, 0.04f}, 2);
+        selector.setProjection(projection, 200); // 300 pixels per unit at a depth of 1
+        selector.setPixelTolerance(1f);
+        selector.setHysteresis(0.25f);
+    }
+
+    @Test
+    public void furtherObjectsGetCoarserLevels() {
+        // level l shows under a pixel from 300 * error(l) units on
+        assertEquals(0, selector.select(0, 2f));
+        assertEquals(1, selector.select(0, 5f));
+        assertEquals(2, selector.select(0, 9f));
+        assertEquals(3, selector.select(0, 20f));
+        assertEquals(3, selector.getLevel(0));
+        assertEquals(0, selector.getLevel(1)); // each object has its own
+        assertEquals(0.5f, selector.getProjectedError(3, 24f), 1e-6f);
+    }
+
+    @Test
+    public void coarserLevelsWaitForTheHysteresis() {
+        assertEquals(0, selector.select(0, 2f));
+
+        // level 1 is under the tolerance past 3 units, but only picked past 3 / 0.75 = 4
+        assertEquals(0, selector.select(0, 3.5f));
+        assertEquals(1, selector.select(0, 4.1f));
+
+        // and kept until it really shows
+        assertEquals(1, selector.select(0, 3.1f));
+        assertEquals(0, selector.select(0, 2.9f));
+    }
+
+    @Test
+    public void finerLevelsAreImmediate() {
+        assertEquals(3, selector.select(0, 40f));
+        assertEquals(0, selector.select(0, 1f));
+
+        // and the nearest depths don't divide by zero
+        assertEquals(0, selector.select(1, -3f));
+        assertEquals(0, selector.select(1, 0f));
+    }
+
+    @Test
+    public void newLevelsStartFinest() {
+        selector.select(0, 40f);
+        selector.setLevels(new float[] {0f, 0.05f}, 2);
+        assertEquals(0, selector.getLevel(0));
+        assertEquals(2, selector.getLevelCount());
+    }
+
+    @Test
+    public void levelsMustGetCoarser() {
+        try {
+            selector.setLevels(new float[] {0f, 0.02f, 0.01f}, 1);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            selector.setHysteresis(1f);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
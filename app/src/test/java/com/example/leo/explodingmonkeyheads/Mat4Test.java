@@ -0,0 +1,130 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class Mat4Test {
+    private static final float EPSILON = 1e-5f;
+
+    private static float[] transform(float[] m, float x, float y, float z, float w) {
+        float[] v = { x, y, z, w };
+        float[] r = new float[4];
+        for (int row = 0; row < 4; row++) {
+            for (int col = 0; col < 4; col++) {
+                r[row] += m[col * 4 + row] * v[col];
+            }
+        }
+        return r;
+    }
+
+    @Test
+    public void identity() {
+        float[] m = new float[16];
+        Mat4.setIdentityM(m, 0);
+
+        assertArrayEquals(new float[] { 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1 }, m, 0f);
+    }
+
+    @Test
+    public void translateAppliesAfterExistingTransform() {
+        float[] m = new float[16];
+        Mat4.setIdentityM(m, 0);
+        Mat4.rotateM(m, 0, 90f, 0f, 0f, 1f);
+        Mat4.translateM(m, 0, 1f, 0f, 0f);
+
+        // m = R * T, so the translation is rotated too
+        assertArrayEquals(new float[] { 0, 1, 0, 1 }, transform(m, 0, 0, 0, 1), EPSILON);
+    }
+
+    @Test
+    public void rotateFollowsTheRightHandRule() {
+        float[] m = new float[16];
+        Mat4.setIdentityM(m, 0);
+        Mat4.rotateM(m, 0, 90f, 0f, 0f, 2f); // the axis doesn't need to be normalized
+
+        assertArrayEquals(new float[] { 0, 1, 0, 1 }, transform(m, 1, 0, 0, 1), EPSILON);
+        assertArrayEquals(new float[] { -1, 0, 0, 1 }, transform(m, 0, 1, 0, 1), EPSILON);
+    }
+
+    @Test
+    public void rotationsAccumulate() {
+        float[] a = new float[16], b = new float[16];
+        Mat4.setIdentityM(a, 0);
+        Mat4.setIdentityM(b, 0);
+
+        for (int i = 0; i < 300; i++) {
+            Mat4.rotateM(a, 0, 0.3f, 0.2f, 0.5f, 0.7f);
+        }
+        Mat4.rotateM(b, 0, 90f, 0.2f, 0.5f, 0.7f);
+
+        assertArrayEquals(b, a, 1e-4f);
+    }
+
+    @Test
+    public void frustumMapsNearAndFarPlanes() {
+        float[] m = new float[16];
+        Mat4.frustumM(m, 0, -0.5f, 0.5f, -1f, 1f, 3f, 50f);
+
+        float[] near = transform(m, 0.5f, 1f, -3f, 1f);
+        assertEquals(1f, near[0] / near[3], EPSILON);
+        assertEquals(1f, near[1] / near[3], EPSILON);
+        assertEquals(-1f, near[2] / near[3], EPSILON);
+
+        float[] far = transform(m, 0f, 0f, -50f, 1f);
+        assertEquals(1f, far[2] / far[3], EPSILON);
+    }
+
+    @Test
+    public void multiplyComposesTransforms() {
+        float[] r = new float[16], t = new float[16], m = new float[16];
+        Mat4.setIdentityM(r, 0);
+        Mat4.rotateM(r, 0, 90f, 0f, 0f, 1f);
+        Mat4.setIdentityM(t, 0);
+        Mat4.translateM(t, 0, 1f, 0f, 0f);
+
+        Mat4.multiplyMM(m, 0, r, 0, t, 0);
+
+        float[] expected = r.clone();
+        Mat4.translateM(expected, 0, 1f, 0f, 0f);
+        assertArrayEquals(expected, m, EPSILON);
+    }
+
+    @Test
+    public void multiplyVectorMatchesTransform() {
+        float[] m = new float[16], r = new float[4];
+        Mat4.frustumM(m, 0, -0.5f, 0.5f, -1f, 1f, 3f, 50f);
+        Mat4.rotateM(m, 0, 30f, 1f, 2f, 3f);
+        Mat4.translateM(m, 0, 1f, -2f, -10f);
+
+        Mat4.multiplyMV(r, 0, m, 0, new float[] { 0.5f, 1f, -3f, 1f }, 0);
+
+        assertArrayEquals(transform(m, 0.5f, 1f, -3f, 1f), r, EPSILON);
+    }
+
+    @Test
+    public void invertUndoesTheTransform() {
+        float[] m = new float[16], inverse = new float[16], identity = new float[16], product = new float[16];
+        Mat4.frustumM(m, 0, -0.5f, 0.5f, -1f, 1f, 3f, 50f);
+        Mat4.rotateM(m, 0, 30f, 1f, 2f, 3f);
+        Mat4.translateM(m, 0, 1f, -2f, -10f);
+        Mat4.setIdentityM(identity, 0);
+
+        assertTrue(Mat4.invertM(inverse, 0, m, 0));
+
+        Mat4.multiplyMM(product, 0, m, 0, inverse, 0);
+        assertArrayEquals(identity, product, EPSILON);
+        Mat4.multiplyMM(product, 0, inverse, 0, m, 0);
+        assertArrayEquals(identity, product, EPSILON);
+    }
+
+    @Test
+    public void singularMatricesAreNotInverted() {
+        float[] m = new float[16], inverse = new float[16];
+        Mat4.setIdentityM(m, 0);
+        m[10] = 0f; // flattens z
+
+        assertFalse(Mat4.invertM(inverse, 0, m, 0));
+        assertArrayEquals(new float[16], inverse, 0f);
+    }
+}
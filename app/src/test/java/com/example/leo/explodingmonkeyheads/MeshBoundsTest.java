@@ -0,0 +1,50 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MeshBoundsTest {
+    private static final float EPSILON = 1e-5f;
+
+    @Test
+    public void boxAndSphereOfACube() {
+        MeshBounds bounds = new MeshBounds(RayPickerTest.cube(2f));
+
+        assertEquals(-1f, bounds.minX, 0f);
+        assertEquals(1f, bounds.maxZ, 0f);
+        assertEquals(0f, bounds.centerY, 0f);
+        assertEquals((float) Math.sqrt(3), bounds.radius, EPSILON);
+    }
+
+    @Test
+    public void sphereFollowsTheModelMatrix() {
+        MeshBounds bounds = new MeshBounds(RayPickerTest.cube(2f));
+        float[] m = RayPickerTest.translation(1, 2, 3);
+        Mat4.rotateM(m, 0, 30f, 1f, 1f, 0f);
+        float[] sphere = new float[4];
+
+        bounds.transformSphere(m, 0f, sphere);
+
+        assertArrayEquals(new float[] { 1, 2, 3, (float) Math.sqrt(3) }, sphere, EPSILON);
+    }
+
+    @Test
+    public void sphereGrowsWithTheExplosion() throws Exception {
+        Mesh mesh = MeshIndexerTest.shippedMesh().toMesh();
+        MeshBounds bounds = new MeshBounds(mesh);
+        float[] m = RayPickerTest.translation(0, 0, 0);
+        float[] sphere = new float[4];
+        float time = 7.5f;
+
+        bounds.transformSphere(m, time, sphere);
+
+        // every vertex as displaced by the explosion shader stays inside
+        for (int v = 0; v < mesh.getVertexCount(); v++) {
+            float dx = mesh.getPosition(v, 0) + mesh.getNormal(v, 0) * time - sphere[0];
+            float dy = mesh.getPosition(v, 1) + mesh.getNormal(v, 1) * time - sphere[1];
+            float dz = mesh.getPosition(v, 2) + mesh.getNormal(v, 2) * time - sphere[2];
+            assertTrue(Math.sqrt(dx * dx + dy * dy + dz * dz) <= sphere[3] + EPSILON);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+Leopoldo Lomas - March 2017
+http://leopoldolomas.info
+*/
+
+package com.example.leo.explodingmonkeyheads;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Development tool that converts the legacy comma-separated positions/normals
+ * resources into the binary mesh format read by {@link MeshFile}. The triangle soup
+ * is welded and reordered for the vertex cache by {@link MeshIndexer} on the way.
+ * The build doesn't run it, and it lives with the unit tests so it stays out of the
+ * APK: run it by hand, from the IDE or with the unit-test classes on the classpath,
+ * whenever the source CSV files change, and commit the regenerated mesh:
+ *
+ * <pre>
+ * java com.example.leo.explodingmonkeyheads.MeshConverter \
+ *     app/src/main/res/raw/positions app/src/main/res/raw/normals \
+ *     app/src/main/res/raw/monkey_head.mesh</pre>
+ */
+public class MeshConverter {
+
+    private MeshConverter() { }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("usage: MeshConverter <positions csv> <normals csv> <output mesh>");
+            System.exit(1);
+        }
+
+        float[] positions = readCsv(new File(args[0]));
+        float[] normals = readCsv(new File(args[1]));
+
+        MeshData source = MeshData.fromArrays(positions, normals);
+        MeshData indexed = convert(source, new File(args[2]));
+
+        System.out.println("wrote " + indexed.vertexCount + " unique vertices (from " + source.vertexCount
+                + ") and " + indexed.getTriangleCount() + " triangles to " + args[2]);
+        System.out.println("ACMR " + MeshIndexer.acmr(source, MeshIndexer.REPORTED_CACHE_SIZE)
+                + " -> " + MeshIndexer.acmr(indexed, MeshIndexer.REPORTED_CACHE_SIZE));
+    }
+
+    public static MeshData convert(MeshData source, File output) throws IOException {
+        MeshData indexed = MeshIndexer.process(source);
+
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(output));
+        try {
+            MeshFile.write(out, indexed);
+        } finally {
+            out.close();
+        }
+
+        return indexed;
+    }
+
+    static float[] readCsv(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+
+        try {
+            return new CsvFloatParser().parse(in);
+        } catch (CsvFloatParser.MalformedDataException e) {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+import android.opengl.GLES20;
+
+import static org.junit.Assert.*;
+
+public class MeshFileTest {
+
+    private static final float[] POSITIONS = { 0f, 1f, 2f, 3f, 4f, 5f, -1.5f, 0.25f, 1e-3f };
+    private static final float[] NORMALS = { 0f, 0f, 1f, 0f, 1f, 0f, 1f, 0f, 0f };
+
+    private static byte[] write() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MeshFile.write(out, POSITIONS, NORMALS);
+        return out.toByteArray();
+    }
+
+    private static void assertMeshEquals(Mesh mesh) {
+        assertEquals(3, mesh.getVertexCount());
+
+        for (int v = 0; v < 3; v++) {
+            for (int c = 0; c < 3; c++) {
+                assertEquals(POSITIONS[v * 3 + c], mesh.getPosition(v, c), 0f);
+                assertEquals(NORMALS[v * 3 + c], mesh.getNormal(v, c), 0f);
+            }
+        }
+    }
+
+    @Test
+    public void writesHeaderAndInterleavedLittleEndianFloats() throws Exception {
+        byte[] bytes = write();
+        assertEquals(MeshFile.HEADER_SIZE + 3 * Mesh.STRIDE, bytes.length);
+
+        ByteBuffer bb = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(MeshFile.MAGIC, bb.getInt(0));
+        assertEquals(3, bb.getInt(8));
+        assertEquals(Mesh.STRIDE, bb.getInt(12));
+        assertEquals(NORMALS[0], bb.getFloat(MeshFile.HEADER_SIZE + 12), 0f); // first normal follows first position
+        assertEquals(POSITIONS[3], bb.getFloat(MeshFile.HEADER_SIZE + Mesh.STRIDE), 0f);
+    }
+
+    @Test
+    public void streamRoundTripProducesNativeDirectBuffer() throws Exception {
+        Mesh mesh = MeshFile.read(new ByteArrayInputStream(write()));
+
+        assertMeshEquals(mesh);
+        assertTrue(mesh.getVertices().isDirect());
+        assertEquals(ByteOrder.nativeOrder(), mesh.getVertices().order());
+    }
+
+    @Test
+    public void bufferRoundTrip() throws Exception {
+        byte[] bytes = write();
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        direct.put(bytes).flip();
+
+        assertMeshEquals(MeshFile.fromBuffer(direct));
+    }
+
+    @Test
+    public void interleaveMatchesFileLayout() throws Exception {
+        Mesh fromArrays = Mesh.interleave(POSITIONS, NORMALS);
+        FloatBuffer a = fromArrays.getVertices();
+        FloatBuffer b = MeshFile.read(new ByteArrayInputStream(write())).getVertices();
+
+        assertEquals(0, a.compareTo(b));
+    }
+
+    @Test
+    public void indexedRoundTrip() throws Exception {
+        MeshData indexed = new MeshData(MeshData.fromArrays(POSITIONS, NORMALS).vertices, new int[] { 0, 1, 2, 2, 1, 0 });
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MeshFile.write(out, indexed);
+
+        Mesh mesh = MeshFile.read(new ByteArrayInputStream(out.toByteArray()));
+        assertMeshEquals(mesh);
+        assertEquals(6, mesh.getIndexCount());
+        assertEquals(GLES20.GL_UNSIGNED_SHORT, mesh.getIndexType());
+        assertEquals(2, ((ShortBuffer) mesh.getIndices()).get(3));
+        assertEquals(0, ((ShortBuffer) mesh.getIndices()).get(5));
+    }
+
+    @Test
+    public void readsVersionOneFiles() throws Exception {
+        byte[] bytes = write();
+        bytes[4] = 1;
+
+        assertMeshEquals(MeshFile.read(new ByteArrayInputStream(bytes)));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsCorruptedPayload() throws Exception {
+        byte[] bytes = write();
+        bytes[MeshFile.HEADER_SIZE + 5] ^= 0x10;
+
+        MeshFile.read(new ByteArrayInputStream(bytes));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsBadMagic() throws Exception {
+        byte[] bytes = write();
+        bytes[0] = 'X';
+
+        MeshFile.read(new ByteArrayInputStream(bytes));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedFile() throws Exception {
+        byte[] bytes = write();
+        byte[] truncated = new byte[bytes.length - 4];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+
+        MeshFile.read(new ByteArrayInputStream(truncated));
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+/**
+ * Runs the monkey head through MeshIndexer, then reports the ACMR of every stage, i.e. the
+ * vertices transformed per triangle with a {@link MeshIndexer#REPORTED_CACHE_SIZE} entry
+ * cache, for it and for a shuffled grid with shared vertices.
+ */
+public class MeshIndexerBenchmark {
+
+    @Test
+    public void process() throws Exception {
+        final MeshData source = MeshIndexerTest.shippedMesh();
+        Benchmark.run("index the monkey head", 5, 20, new Benchmark.Task() {
+            @Override
+            public void run() {
+                MeshIndexer.process(source);
+            }
+        });
+
+        MeshData welded = MeshIndexer.weld(source);
+        MeshData processed = MeshIndexer.process(source);
+        System.out.println("monkey head, " + source.vertexCount + " -> " + processed.vertexCount + " vertices: "
+                + MeshIndexerTest.acmrReport(acmr(source), acmr(welded), acmr(processed))
+                + " (soup, welded, optimized)");
+
+        MeshData grid = MeshIndexerTest.shuffledGrid(64);
+        MeshData optimized = new MeshData(grid.vertices,
+                MeshIndexer.optimizeVertexCache(grid.indices, grid.vertexCount));
+        System.out.println("shuffled 64x64 grid: " + MeshIndexerTest.acmrReport(acmr(grid), acmr(optimized)));
+    }
+
+    private static float acmr(MeshData mesh) {
+        return MeshIndexer.acmr(mesh, MeshIndexer.REPORTED_CACHE_SIZE);
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MeshIndexerTest {
+
+    static MeshData shippedMesh() throws Exception {
+        float[] positions = MeshLoadBenchmark.legacyParse(new File(MeshLoadBenchmark.RAW_DIR, "positions"));
+        float[] normals = MeshLoadBenchmark.legacyParse(new File(MeshLoadBenchmark.RAW_DIR, "normals"));
+        return MeshData.fromArrays(positions, normals);
+    }
+
+    /**
+     * Every triangle as a string of its three vertices' raw float bits, sorted, so two
+     * meshes with the same triangles (and windings) in any order compare equal.
+     */
+    static List<String> triangles(MeshData mesh) {
+        List<String> triangles = new ArrayList<>();
+
+        for (int t = 0; t < mesh.getTriangleCount(); t++) {
+            StringBuilder sb = new StringBuilder();
+            for (int k = 0; k < 3; k++) {
+                int v = mesh.vertexAt(t * 3 + k);
+                for (int i = 0; i < Mesh.FLOATS_PER_VERTEX; i++) {
+                    sb.append(Float.floatToIntBits(mesh.vertices[v * Mesh.FLOATS_PER_VERTEX + i])).append(' ');
+                }
+            }
+            triangles.add(sb.toString());
+        }
+
+        Collections.sort(triangles);
+        return triangles;
+    }
+
+    /**
+     * Reads a GL-ready mesh back into arrays.
+     */
+    static MeshData toMeshData(Mesh mesh) {
+        float[] vertices = new float[mesh.getVertexCount() * Mesh.FLOATS_PER_VERTEX];
+        mesh.getVertices().duplicate().get(vertices);
+
+        if (!mesh.isIndexed()) {
+            return new MeshData(vertices, null);
+        }
+
+        int[] indices = new int[mesh.getIndexCount()];
+        if (mesh.getIndices() instanceof ShortBuffer) {
+            ShortBuffer sb = ((ShortBuffer) mesh.getIndices()).duplicate();
+            for (int i = 0; i < indices.length; i++) {
+                indices[i] = sb.get(i) & 0xFFFF;
+            }
+        } else {
+            ((IntBuffer) mesh.getIndices()).duplicate().get(indices);
+        }
+
+        return new MeshData(vertices, indices);
+    }
+
+    /**
+     * @param acmrs - ACMRs with the {@link MeshIndexer#REPORTED_CACHE_SIZE} entry cache, as the
+     *              mesh goes through the stages.
+     * @return - e.g. "ACMR 3.000 -> 2.963".
+     */
+    static String acmrReport(float... acmrs) {
+        StringBuilder sb = new StringBuilder("ACMR");
+        for (int i = 0; i < acmrs.length; i++) {
+            sb.append(i == 0 ? " " : " -> ").append(String.format(Locale.US, "%.3f", acmrs[i]));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A regular grid of quads with shared vertices, triangles in random order.
+     */
+    static MeshData shuffledGrid(int size) {
+        int row = size + 1;
+        float[] vertices = new float[row * row * Mesh.FLOATS_PER_VERTEX];
+        for (int y = 0; y < row; y++) {
+            for (int x = 0; x < row; x++) {
+                int v = (y * row + x) * Mesh.FLOATS_PER_VERTEX;
+                vertices[v] = x;
+                vertices[v + 1] = y;
+                vertices[v + 5] = 1f;
+            }
+        }
+
+        List<int[]> quads = new ArrayList<>();
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int a = y * row + x;
+                quads.add(new int[] { a, a + 1, a + row });
+                quads.add(new int[] { a + 1, a + row + 1, a + row });
+            }
+        }
+        Collections.shuffle(quads, new Random(7));
+
+        int[] indices = new int[quads.size() * 3];
+        for (int t = 0; t < quads.size(); t++) {
+            System.arraycopy(quads.get(t), 0, indices, t * 3, 3);
+        }
+
+        return new MeshData(vertices, indices);
+    }
+
+    @Test
+    public void weldingKeepsTheTriangleSet() throws Exception {
+        MeshData source = shippedMesh();
+        MeshData welded = MeshIndexer.weld(source);
+
+        assertTrue(welded.vertexCount <= source.vertexCount);
+        assertEquals(source.getTriangleCount() * 3, welded.indices.length);
+        assertEquals(triangles(source), triangles(welded));
+    }
+
+    @Test
+    public void processingKeepsTheTriangleSetAndReportsAcmr() throws Exception {
+        MeshData source = shippedMesh();
+        MeshData processed = MeshIndexer.process(source);
+
+        assertEquals(triangles(source), triangles(processed));
+
+        float before = MeshIndexer.acmr(source, MeshIndexer.REPORTED_CACHE_SIZE);
+        float welded = MeshIndexer.acmr(MeshIndexer.weld(source), MeshIndexer.REPORTED_CACHE_SIZE);
+        float after = MeshIndexer.acmr(processed, MeshIndexer.REPORTED_CACHE_SIZE);
+        String report = acmrReport(before, welded, after);
+        assertEquals(report, 3f, before, 0f);
+        // flat shaded, so hardly any vertex is shared: the welded order already comes close to
+        // the floor, the optimized one reaches it, every vertex transformed once
+        float floor = processed.vertexCount / (float) processed.getTriangleCount();
+        assertEquals(report, floor, after, 0.001f);
+        assertTrue(report, after < 2.97f);
+        assertTrue(report, welded > 2.99f);
+    }
+
+    @Test
+    public void cacheOptimizationImprovesSharedVertexMeshes() {
+        MeshData grid = shuffledGrid(64);
+        int[] optimized = MeshIndexer.optimizeVertexCache(grid.indices, grid.vertexCount);
+        MeshData result = new MeshData(grid.vertices, optimized);
+
+        float before = MeshIndexer.acmr(grid, MeshIndexer.REPORTED_CACHE_SIZE);
+        float after = MeshIndexer.acmr(result, MeshIndexer.REPORTED_CACHE_SIZE);
+        String report = acmrReport(before, after);
+        assertEquals(triangles(grid), triangles(result));
+        assertTrue(report, before > 2f);
+        assertTrue(report, after < 0.9f);
+    }
+
+    @Test
+    public void vertexFetchOrderFollowsFirstUse() {
+        MeshData grid = shuffledGrid(16);
+        MeshData result = MeshIndexer.optimizeVertexFetch(grid);
+
+        assertEquals(triangles(grid), triangles(result));
+
+        int next = 0;
+        for (int index : result.indices) {
+            assertTrue(index <= next);
+            if (index == next) {
+                next++;
+            }
+        }
+        assertEquals(result.vertexCount, next);
+    }
+
+    @Test
+    public void toMeshUsesShortIndicesForSmallMeshes() throws Exception {
+        MeshData processed = MeshIndexer.process(shippedMesh());
+        Mesh mesh = processed.toMesh();
+
+        assertTrue(mesh.getIndices() instanceof ShortBuffer);
+        assertEquals(triangles(processed), triangles(toMeshData(mesh)));
+    }
+}
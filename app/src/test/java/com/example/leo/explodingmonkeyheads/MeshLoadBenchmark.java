@@ -0,0 +1,125 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares loading the shipped monkey head through the legacy text path (read the whole
+ * resource into a String, split it and parse every token, then copy the arrays into
+ * direct buffers) against the binary mesh resource.
+ */
+public class MeshLoadBenchmark {
+    static final File RAW_DIR = new File("src/main/res/raw");
+
+    @Test
+    public void binaryMeshLoadsFasterAndWithoutGarbage() throws Exception {
+        final File positions = new File(RAW_DIR, "positions");
+        final File normals = new File(RAW_DIR, "normals");
+        final File mesh = new File(RAW_DIR, "monkey_head.mesh");
+
+        Benchmark.Result text = Benchmark.run("text (split + parseFloat)", 20, 50, new Benchmark.Task() {
+            @Override
+            public void run() throws Exception {
+                legacyLoad(positions, normals);
+            }
+        });
+
+        Benchmark.Result mapped = Benchmark.run("binary (mapped)", 20, 50, new Benchmark.Task() {
+            @Override
+            public void run() throws Exception {
+                RandomAccessFile file = new RandomAccessFile(mesh, "r");
+                try {
+                    MeshFile.map(file.getChannel(), 0, file.length());
+                } finally {
+                    file.close();
+                }
+            }
+        });
+
+        Benchmark.Result streamed = Benchmark.run("binary (streamed)", 20, 50, new Benchmark.Task() {
+            @Override
+            public void run() throws Exception {
+                InputStream in = new FileInputStream(mesh);
+                try {
+                    MeshFile.read(in);
+                } finally {
+                    in.close();
+                }
+            }
+        });
+
+        assertTrue(mapped.bytesPerOp < text.bytesPerOp / 10);
+        assertTrue(streamed.bytesPerOp < text.bytesPerOp / 10);
+    }
+
+    @Test
+    public void shippedBinaryMeshMatchesTextResources() throws Exception {
+        float[] positions = legacyParse(new File(RAW_DIR, "positions"));
+        float[] normals = legacyParse(new File(RAW_DIR, "normals"));
+
+        RandomAccessFile file = new RandomAccessFile(new File(RAW_DIR, "monkey_head.mesh"), "r");
+        try {
+            Mesh mesh = MeshFile.map(file.getChannel(), 0, file.length());
+            assertEquals(MeshIndexerTest.triangles(MeshData.fromArrays(positions, normals)),
+                    MeshIndexerTest.triangles(MeshIndexerTest.toMeshData(mesh)));
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * The pipeline MyGLSurfaceView and MonkeyHead.compileShaders used before the binary format.
+     */
+    static FloatBuffer[] legacyLoad(File positions, File normals) throws IOException {
+        return new FloatBuffer[] { toDirect(legacyParse(positions)), toDirect(legacyParse(normals)) };
+    }
+
+    static float[] legacyParse(File file) throws IOException {
+        BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
+        StringBuilder r = new StringBuilder();
+        String line;
+
+        try {
+            while ((line = br.readLine()) != null) {
+                r.append(line).append('\n');
+            }
+        } finally {
+            br.close();
+        }
+
+        String[] elements = r.toString().split(",");
+        float[] array = new float[elements.length];
+
+        for (int i = 0; i < array.length; i++) {
+            try {
+                array[i] = Float.parseFloat(elements[i]);
+            } catch (NumberFormatException ex) {
+                ex.printStackTrace();
+            }
+        }
+
+        return array;
+    }
+
+    private static FloatBuffer toDirect(float[] array) {
+        ByteBuffer bb = ByteBuffer.allocateDirect(array.length * 4);
+        bb.order(ByteOrder.nativeOrder());
+
+        FloatBuffer fb = bb.asFloatBuffer();
+        fb.put(array);
+        fb.position(0);
+        return fb;
+    }
+}
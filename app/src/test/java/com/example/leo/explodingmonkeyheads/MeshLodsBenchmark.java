@@ -0,0 +1,79 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+/**
+ * Builds the levels of detail of the monkey head, then counts the vertices a frame
+ * sends down the pipeline for grids of heads spreading out to the far plane, with the
+ * whole mesh and with a level per head.
+ */
+public class MeshLodsBenchmark {
+    private static final float SPACING = 5f, NEAR = 3f, FAR = 50f;
+
+    @Test
+    public void build() throws Exception {
+        final Mesh mesh = MeshSimplifierTest.shippedMesh();
+        Benchmark.run("build 4 levels of the monkey head", 5, 20, new Benchmark.Task() {
+            @Override
+            public void run() {
+                MeshLods.build(mesh, MeshLods.DEFAULT_LEVEL_COUNT);
+            }
+        });
+
+        MeshLods lods = MeshLods.build(mesh, MeshLods.DEFAULT_LEVEL_COUNT);
+        for (int level = 0; level < lods.getLevelCount(); level++) {
+            System.out.println(String.format(Locale.US, "level %d: %4d triangles, error %.4f", level,
+                    lods.getTriangleCount(level), lods.getError(level)));
+        }
+    }
+
+    @Test
+    public void grids() throws Exception {
+        MeshLods lods = MeshLods.build(MeshSimplifierTest.shippedMesh(), MeshLods.DEFAULT_LEVEL_COUNT);
+        float[] projection = new float[16];
+        float ratio = 1080f / 1920f;
+        Mat4.frustumM(projection, 0, -ratio, ratio, -1, 1, NEAR, FAR);
+
+        for (int size = 4; size <= 16; size *= 2) {
+            // the camera looks down -z from the middle of the grid's front face
+            final int heads = size * size * size;
+            final float[] depths = new float[heads];
+            int inRange = 0;
+            for (int i = 0; i < heads; i++) {
+                depths[i] = NEAR + (i / (size * size)) * SPACING;
+                inRange += depths[i] <= FAR ? 1 : 0;
+            }
+
+            final LodSelector selector = new LodSelector();
+            selector.setLevels(lods.getErrors(), heads);
+            selector.setProjection(projection, 1920);
+
+            for (float tolerance = 1f; tolerance <= 8f; tolerance *= 2) {
+                selector.setLevels(lods.getErrors(), heads);
+                selector.setPixelTolerance(tolerance);
+
+                long full = 0, reduced = 0;
+                for (int i = 0; i < heads; i++) {
+                    if (depths[i] <= FAR) {
+                        full += lods.getIndexCount(0);
+                        reduced += lods.getIndexCount(selector.select(i, depths[i]));
+                    }
+                }
+                System.out.println(String.format(Locale.US, "%5d heads (%5d before the far plane), %.0f px: "
+                        + "%,10d vertices with the mesh, %,10d with levels (-%.0f%%)",
+                        heads, inRange, tolerance, full, reduced, 100.0 * (full - reduced) / full));
+            }
+
+            Benchmark.run("select levels, " + heads + " heads", 100, 1000, new Benchmark.Task() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < heads; i++) {
+                        selector.select(i, depths[i]);
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class MeshLodsTest {
+
+    @Test
+    public void levelsHalveTheTriangles() throws IOException {
+        Mesh mesh = MeshSimplifierTest.shippedMesh();
+        MeshLods lods = MeshLods.build(mesh, MeshLods.DEFAULT_LEVEL_COUNT);
+
+        assertSame(mesh, lods.getBase());
+        assertEquals(MeshLods.DEFAULT_LEVEL_COUNT, lods.getLevelCount());
+        assertEquals(mesh.getIndexCount() / 3, lods.getTriangleCount(0));
+        assertEquals(0f, lods.getError(0), 0f);
+
+        for (int level = 1; level < lods.getLevelCount(); level++) {
+            assertTrue(lods.getTriangleCount(level) <= lods.getTriangleCount(0) >> level);
+            assertEquals(lods.getTriangleCount(level) * 3, lods.getIndexCount(level));
+            assertTrue(lods.getError(level) > 0f);
+            assertTrue(lods.getError(level) >= lods.getError(level - 1));
+            // the ranges follow each other
+            assertEquals(lods.getFirstIndex(level - 1) + lods.getIndexCount(level - 1), lods.getFirstIndex(level));
+        }
+    }
+
+    @Test
+    public void packedMeshStartsWithTheBase() throws IOException {
+        Mesh mesh = MeshSimplifierTest.shippedMesh();
+        MeshLods lods = MeshLods.build(mesh, MeshLods.DEFAULT_LEVEL_COUNT);
+
+        MeshData base = MeshData.fromMesh(mesh), packed = MeshData.fromMesh(lods.getMesh());
+        for (int i = 0; i < base.vertices.length; i++) {
+            assertEquals(base.vertices[i], packed.vertices[i], 0f);
+        }
+        for (int i = 0; i < base.indices.length; i++) {
+            assertEquals(base.indices[i], packed.indices[i]);
+        }
+
+        // every level only references vertices of its own
+        int last = lods.getLevelCount() - 1;
+        assertEquals(packed.indices.length, lods.getFirstIndex(last) + lods.getIndexCount(last));
+        for (int i = base.indices.length; i < packed.indices.length; i++) {
+            assertTrue(packed.indices[i] >= base.vertexCount);
+            assertTrue(packed.indices[i] < packed.vertexCount);
+        }
+    }
+
+    @Test
+    public void levelsStopWhenNothingIsGained() {
+        // a lone triangle can't get any simpler
+        float[] vertices = new float[3 * Mesh.FLOATS_PER_VERTEX];
+        float[][] corners = {{0, 0}, {1, 0}, {0, 1}};
+        for (int v = 0; v < 3; v++) {
+            vertices[v * Mesh.FLOATS_PER_VERTEX] = corners[v][0];
+            vertices[v * Mesh.FLOATS_PER_VERTEX + 1] = corners[v][1];
+            vertices[v * Mesh.FLOATS_PER_VERTEX + 5] = 1f;
+        }
+        Mesh triangle = new MeshData(vertices, new int[] {0, 1, 2}).toMesh();
+
+        MeshLods lods = MeshLods.build(triangle, 4);
+        assertEquals(1, lods.getLevelCount());
+        assertEquals(3, lods.getIndexCount(0));
+    }
+
+    @Test
+    public void singleLevelIsTheMeshItself() throws IOException {
+        Mesh mesh = MeshSimplifierTest.shippedMesh();
+        MeshLods lods = MeshLods.single(mesh);
+
+        assertEquals(1, lods.getLevelCount());
+        assertSame(mesh, lods.getMesh());
+        assertSame(mesh, lods.getBase());
+        assertEquals(0, lods.getFirstIndex(0));
+        assertEquals(mesh.getElementCount(), lods.getIndexCount(0));
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+public class MeshSimplifierTest {
+
+    static Mesh shippedMesh() throws IOException {
+        InputStream in = new FileInputStream(new File(MeshLoadBenchmark.RAW_DIR, "monkey_head.mesh"));
+        try {
+            return MeshFile.read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * A flat size x size square of quads in the z = 0 plane, flat shaded like the exported
+     * mesh, its normals facing +z or -z.
+     */
+    private static MeshData flatSquare(int size, float normalZ) {
+        final int stride = Mesh.FLOATS_PER_VERTEX;
+        float[] vertices = new float[size * size * 6 * stride];
+        int v = 0;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                float[][] corners = {{x, y}, {x + 1, y}, {x, y + 1}, {x + 1, y}, {x + 1, y + 1}, {x, y + 1}};
+                for (float[] corner : corners) {
+                    vertices[v] = corner[0];
+                    vertices[v + 1] = corner[1];
+                    vertices[v + 5] = normalZ;
+                    v += stride;
+                }
+            }
+        }
+        return MeshIndexer.weld(new MeshData(vertices, null));
+    }
+
+    private static double area(MeshData mesh) {
+        final int stride = Mesh.FLOATS_PER_VERTEX;
+        double area = 0.0;
+        for (int t = 0; t < mesh.getTriangleCount(); t++) {
+            int a = mesh.vertexAt(t * 3) * stride, b = mesh.vertexAt(t * 3 + 1) * stride,
+                    c = mesh.vertexAt(t * 3 + 2) * stride;
+            double ux = mesh.vertices[b] - mesh.vertices[a], uy = mesh.vertices[b + 1] - mesh.vertices[a + 1];
+            double vx = mesh.vertices[c] - mesh.vertices[a], vy = mesh.vertices[c + 1] - mesh.vertices[a + 1];
+            area += Math.abs(ux * vy - uy * vx) / 2.0;
+        }
+        return area;
+    }
+
+    /**
+     * @return - Sum over the triangles of their winding's normal dotted with their stored
+     * normals: positive when the normals follow the windings, negative when they face away.
+     */
+    private static double windingAgreement(MeshData mesh) {
+        final int stride = Mesh.FLOATS_PER_VERTEX;
+        double sum = 0.0;
+        for (int t = 0; t < mesh.getTriangleCount(); t++) {
+            int a = mesh.vertexAt(t * 3) * stride, b = mesh.vertexAt(t * 3 + 1) * stride,
+                    c = mesh.vertexAt(t * 3 + 2) * stride;
+            float[] p = mesh.vertices;
+            double ux = p[b] - p[a], uy = p[b + 1] - p[a + 1], uz = p[b + 2] - p[a + 2];
+            double vx = p[c] - p[a], vy = p[c + 1] - p[a + 1], vz = p[c + 2] - p[a + 2];
+            double nx = uy * vz - uz * vy, ny = uz * vx - ux * vz, nz = ux * vy - uy * vx;
+            double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+            for (int k = 0; k < 3; k++) {
+                int n = mesh.vertexAt(t * 3 + k) * stride + Mesh.NORMAL_OFFSET;
+                double dot = (nx * p[n] + ny * p[n + 1] + nz * p[n + 2]) / length;
+                sum += dot;
+            }
+        }
+        return sum;
+    }
+
+    @Test
+    public void meetsTheTriangleBudget() throws IOException {
+        MeshData mesh = MeshData.fromMesh(shippedMesh());
+        int triangles = mesh.getTriangleCount();
+
+        for (int target = triangles / 2; target >= triangles / 8; target /= 2) {
+            MeshData simplified = MeshSimplifier.simplify(mesh, target, Float.POSITIVE_INFINITY);
+
+            assertTrue(simplified.getTriangleCount() <= target);
+            // a collapse removes two triangles, the budget is used up, not undershot
+            assertTrue(simplified.getTriangleCount() >= target - 2);
+            assertTrue(simplified.isIndexed());
+        }
+    }
+
+    @Test
+    public void staysWithinTheErrorBound() throws IOException {
+        MeshData mesh = MeshData.fromMesh(shippedMesh());
+        int previousTriangles = mesh.getTriangleCount();
+
+        for (float maxError : new float[] {0.001f, 0.01f, 0.05f}) {
+            MeshData simplified = MeshSimplifier.simplify(mesh, 0, maxError);
+
+            float error = MeshSimplifier.measureError(mesh, simplified);
+            assertTrue(maxError + ": " + error, error <= maxError);
+            // a looser bound allows more collapses
+            assertTrue(simplified.getTriangleCount() < previousTriangles);
+            previousTriangles = simplified.getTriangleCount();
+        }
+    }
+
+    @Test
+    public void flatAreasCollapseWithoutError() {
+        MeshData square = flatSquare(8, 1f);
+        MeshData simplified = MeshSimplifier.simplify(square, 0, 1e-4f);
+
+        // the border planes keep the outline, so the square is still covered
+        assertTrue(simplified.getTriangleCount() + " triangles", simplified.getTriangleCount() <= 8);
+        assertEquals(64.0, area(simplified), 1e-3);
+        assertTrue(MeshSimplifier.measureError(square, simplified) < 1e-4f);
+    }
+
+    @Test
+    public void normalsKeepFacingTheSameWay() throws IOException {
+        MeshData[] meshes = {MeshData.fromMesh(shippedMesh()), flatSquare(8, 1f), flatSquare(8, -1f)};
+        for (MeshData mesh : meshes) {
+            MeshData simplified = MeshSimplifier.simplify(mesh, mesh.getTriangleCount() / 4, Float.POSITIVE_INFINITY);
+
+            assertEquals(Math.signum(windingAgreement(mesh)), Math.signum(windingAgreement(simplified)), 0.0);
+            // flat shaded: every corner carries its face's normal
+            assertEquals(simplified.getTriangleCount() * 3, Math.abs(windingAgreement(simplified)), 1e-3);
+        }
+    }
+
+    @Test
+    public void errorIsMeasuredBothWays() {
+        MeshData square = flatSquare(2, 1f);
+        assertEquals(0f, MeshSimplifier.measureError(square, square), 0f);
+
+        // the same square lifted by 0.25
+        float[] lifted = square.vertices.clone();
+        for (int v = 0; v < square.vertexCount; v++) {
+            lifted[v * Mesh.FLOATS_PER_VERTEX + 2] = 0.25f;
+        }
+        assertEquals(0.25f, MeshSimplifier.measureError(square, new MeshData(lifted, square.indices)), 1e-6f);
+    }
+
+    @Test
+    public void distanceToTriangleRegions() {
+        double[] triangle = {0, 0, 0, 1, 0, 0, 0, 1, 0};
+        assertEquals(4.0, MeshSimplifier.squaredDistanceToTriangle(0.25, 0.25, 2, triangle), 1e-12); // face
+        assertEquals(1.0, MeshSimplifier.squaredDistanceToTriangle(-1, -0, 0, triangle), 1e-12); // vertex a
+        assertEquals(1.0, MeshSimplifier.squaredDistanceToTriangle(2, 0, 0, triangle), 1e-12); // vertex b
+        assertEquals(1.0, MeshSimplifier.squaredDistanceToTriangle(0.5, -1, 0, triangle), 1e-12); // edge ab
+        assertEquals(0.5, MeshSimplifier.squaredDistanceToTriangle(1, 1, 0, triangle), 1e-12); // edge bc
+    }
+}
@@ -0,0 +1,391 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Scanner;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the renderer against {@link HeadlessGLBackend} and keeps an eye on the number of
+ * GL calls every frame costs.
+ */
+public class MonkeyHeadsRendererTest {
+    // per head: the color and model matrix uniforms plus the draw call, the rest is shared
+    static final int CALLS_PER_HEAD = 3;
+
+    private HeadlessGLBackend gl;
+    private MonkeyHeadsRenderer renderer;
+
+    /**
+     * @return - A renderer with the shipped mesh and shaders, its surface already created.
+     */
+    static MonkeyHeadsRenderer newRenderer(GLBackend gl) throws IOException {
+        return createSurface(new MonkeyHeadsRenderer(gl));
+    }
+
+    /**
+     * Gives the renderer the shipped mesh and shaders, then creates its surface.
+     */
+    static MonkeyHeadsRenderer createSurface(MonkeyHeadsRenderer renderer) throws IOException {
+        InputStream in = new FileInputStream(new File(MeshLoadBenchmark.RAW_DIR, "monkey_head.mesh"));
+        try {
+            renderer.setMesh(MeshFile.read(in));
+        } finally {
+            in.close();
+        }
+        renderer.setExplosionVertexShaderCode(readRaw("explosion_vertex_shader.vert"));
+        renderer.setSimpleFragmentShaderCode(readRaw("simple_fragment_shader.frag"));
+
+        renderer.setClock(oneStepPerFrame());
+        renderer.onSurfaceCreated(null, null);
+        renderer.onSurfaceChanged(null, 1080, 1920);
+        return renderer;
+    }
+
+    /**
+     * @return - A clock that runs one step every frame, whatever the time the frames take,
+     * and draws the heads a nanosecond short of that step.
+     */
+    static SimulationClock oneStepPerFrame() {
+        final long step = SimulationClock.DEFAULT_STEP_NANOS;
+        SimulationClock clock = new SimulationClock(new SimulationClock.TimeSource() {
+            private long calls;
+
+            @Override
+            public long nanoTime() {
+                // the first frame is a nanosecond short of two steps, the others one step
+                return calls++ == 0 ? 0L : calls * step - 1;
+            }
+        }, step, SimulationClock.DEFAULT_MAX_FRAME_NANOS);
+        clock.advance(); // starts the clock
+        return clock;
+    }
+
+    static String readRaw(String name) throws IOException {
+        Scanner scanner = new Scanner(new File(MeshLoadBenchmark.RAW_DIR, name), "UTF-8");
+        try {
+            return scanner.useDelimiter("\\A").next();
+        } finally {
+            scanner.close();
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        gl = new HeadlessGLBackend();
+        renderer = newRenderer(gl);
+    }
+
+    @Test
+    public void meshIsUploadedOnce() {
+        Mesh mesh = renderer.getMesh();
+        int expected = mesh.getVertexCount() * QuantizedMesh.LAYOUT.getStride() + mesh.getIndexCount() * 2;
+        assertEquals(expected, gl.bytesUploaded);
+
+        gl.resetCounters();
+        renderer.onDrawFrame(null);
+        renderer.onDrawFrame(null);
+
+        assertEquals(0, gl.bytesUploaded);
+    }
+
+    @Test
+    public void drawsEveryVisibleHeadOnce() {
+        gl.resetCounters();
+        renderer.onDrawFrame(null);
+
+        // the camera sits inside the grid, most of the heads are behind it or off to the side
+        int visible = renderer.getVisibleCount();
+        assertTrue(visible > 0);
+        assertTrue(renderer.getCulledCount() > renderer.noOfObjects / 2);
+        assertEquals(renderer.noOfObjects, visible + renderer.getCulledCount());
+        for (int i = 1; i < visible; i++) { // index order, whatever order the hierarchy finds them in
+            assertTrue(renderer.visibleHeads[i - 1].getIndex() < renderer.visibleHeads[i].getIndex());
+        }
+
+        assertEquals(visible, gl.drawCalls);
+        assertEquals(visible, gl.instances);
+    }
+
+    /**
+     * @return - Whether any vertex of the head, as the explosion shader places it, lands inside the clip volume.
+     */
+    private static boolean anyVertexInView(MonkeyHeadsRenderer renderer, MonkeyHead head) {
+        Mesh mesh = renderer.getMesh();
+        float time = head.getExplosionTime();
+        float[] vertex = new float[4], world = new float[4], eye = new float[4], clip = new float[4];
+        for (int v = 0; v < mesh.getVertexCount(); v++) {
+            for (int c = 0; c < 3; c++) {
+                vertex[c] = mesh.getPosition(v, c) + mesh.getNormal(v, c) * time;
+            }
+            vertex[3] = 1f;
+            Mat4.multiplyMV(world, 0, head.getScene().drawnModels, head.getMatrixOffset(), vertex, 0);
+            Mat4.multiplyMV(eye, 0, renderer.mCameraMatrix, 0, world, 0);
+            Mat4.multiplyMV(clip, 0, renderer.mProjectionMatrix, 0, eye, 0);
+            float w = clip[3];
+            if (-w <= clip[0] && clip[0] <= w && -w <= clip[1] && clip[1] <= w && -w <= clip[2] && clip[2] <= w) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isVisible(MonkeyHeadsRenderer renderer, MonkeyHead head) {
+        for (int i = 0; i < renderer.getVisibleCount(); i++) {
+            if (renderer.visibleHeads[i] == head) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void cullingNeverDropsAHeadInView() {
+        // half of the heads exploding, so their bounds grow over the frames
+        for (int i = 0; i < renderer.noOfObjects; i += 2) {
+            renderer.monkeyHeads[i].setUseExplosionAnimation(true);
+        }
+
+        int culled = 0;
+        for (float angle = 0f; angle < 360f; angle += 30f) {
+            renderer.setCameraAngleX(angle);
+            renderer.setCameraAngleY(angle / 2f);
+            renderer.onDrawFrame(null);
+
+            for (MonkeyHead head : renderer.monkeyHeads) {
+                if (anyVertexInView(renderer, head)) {
+                    assertTrue("camera at " + angle, isVisible(renderer, head));
+                }
+            }
+            culled += renderer.getCulledCount();
+        }
+        assertTrue(culled > 0);
+    }
+
+    @Test
+    public void explodingHeadComesIntoView() {
+        renderer.onDrawFrame(null);
+
+        // an intact head just out of view, whose pieces fly into it
+        MonkeyHead head = null;
+        for (MonkeyHead candidate : renderer.monkeyHeads) {
+            if (!isVisible(renderer, candidate) && candidate.getModelViewMatrix(new float[16])[14] < -3f) {
+                head = candidate;
+                break;
+            }
+        }
+        assertNotNull(head);
+
+        head.setUseExplosionAnimation(true);
+        for (int frame = 0; frame < 100 && !isVisible(renderer, head); frame++) {
+            renderer.onDrawFrame(null);
+        }
+        assertTrue(isVisible(renderer, head));
+    }
+
+    @Test
+    public void steadyFrameCallBudget() {
+        renderer.onDrawFrame(null); // the first frame sets up the shared state
+
+        for (int frame = 0; frame < 10; frame++) {
+            gl.resetCounters();
+            renderer.onDrawFrame(null);
+
+            // glClear plus the per-head calls, anything else is a regression
+            int visible = renderer.getVisibleCount();
+            assertEquals(1 + visible * CALLS_PER_HEAD, gl.calls);
+            assertTrue(renderer.getGlState().getElidedCalls() > visible * 5);
+        }
+    }
+
+    @Test
+    public void explodingHeadUpdatesItsTime() {
+        renderer.onDrawFrame(null);
+        assertTrue(renderer.getVisibleCount() > 1);
+        renderer.visibleHeads[0].setUseExplosionAnimation(true);
+
+        gl.resetCounters();
+        renderer.onDrawFrame(null);
+
+        // the time uniform of the exploding head, and back to 0 for the next one
+        assertEquals(1 + renderer.getVisibleCount() * CALLS_PER_HEAD + 2, gl.calls);
+    }
+
+    @Test
+    public void explodedHeadsAreRecycled() {
+        renderer.setExplosionDuration(0.5f, 0.25f); // 30 frames
+        renderer.setRespawnDelay(0.25f); // 15 frames
+        renderer.onDrawFrame(null);
+        MonkeyHead head = renderer.visibleHeads[0];
+        int id = head.getPickingId();
+        head.setUseExplosionAnimation(true);
+
+        for (int frame = 0; frame < 29; frame++) {
+            renderer.onDrawFrame(null);
+        }
+        assertFalse(head.isFinished());
+        assertTrue(isVisible(renderer, head));
+
+        // out of the draw set and the picking index
+        renderer.onDrawFrame(null);
+        assertTrue(head.isFinished());
+        assertFalse(isVisible(renderer, head));
+        assertEquals(ColorProvider.NO_ID, head.getPickingId());
+        assertNull(renderer.findByPickingId(id));
+        assertEquals(1, renderer.deadHeads.size());
+
+        // back, intact and pickable
+        for (int frame = 0; frame < 15; frame++) {
+            renderer.onDrawFrame(null);
+        }
+        assertFalse(head.isUseExplosionAnimation());
+        assertTrue(isVisible(renderer, head));
+        assertSame(head, renderer.findByPickingId(head.getPickingId()));
+        assertEquals(0, renderer.deadHeads.size());
+    }
+
+    @Test
+    public void verticesPackedAheadAreUploaded() throws IOException {
+        // packed on the spot without them
+        assertSame(renderer.getMesh(), MonkeyHead.meshBuffers.getQuantizedMesh().getMesh());
+        assertSame(QuantizedMesh.LAYOUT, MonkeyHead.meshBuffers.getLayout());
+
+        MonkeyHeadsRenderer packedRenderer = new MonkeyHeadsRenderer(new HeadlessGLBackend());
+        Mesh mesh = MeshSimplifierTest.shippedMesh();
+        QuantizedMesh packed = QuantizedMesh.quantize(mesh);
+        packedRenderer.setQuantizedMesh(packed);
+        packedRenderer.setMesh(mesh);
+        packedRenderer.setExplosionVertexShaderCode(readRaw("explosion_vertex_shader.vert"));
+        packedRenderer.setSimpleFragmentShaderCode(readRaw("simple_fragment_shader.frag"));
+        packedRenderer.onSurfaceCreated(null, null);
+        assertSame(packed, MonkeyHead.meshBuffers.getQuantizedMesh());
+    }
+
+    @Test
+    public void farHeadsUseCoarserLevels() throws IOException {
+        HeadlessGLBackend gl = new HeadlessGLBackend();
+        MonkeyHeadsRenderer lodRenderer = new MonkeyHeadsRenderer(gl);
+        Mesh mesh = MeshSimplifierTest.shippedMesh();
+        MeshLods lods = MeshLods.build(mesh, MeshLods.DEFAULT_LEVEL_COUNT);
+        lodRenderer.setMesh(mesh);
+        lodRenderer.setMeshLods(lods);
+        lodRenderer.setExplosionVertexShaderCode(readRaw("explosion_vertex_shader.vert"));
+        lodRenderer.setSimpleFragmentShaderCode(readRaw("simple_fragment_shader.frag"));
+        lodRenderer.setClock(oneStepPerFrame());
+        lodRenderer.onSurfaceCreated(null, null);
+        // a small viewport, so the errors of the levels shrink under the tolerance
+        lodRenderer.onSurfaceChanged(null, 108, 192);
+
+        gl.resetCounters();
+        lodRenderer.onDrawFrame(null);
+
+        int visible = lodRenderer.getVisibleCount();
+        int[] starts = lodRenderer.lodStarts;
+        assertEquals(visible, gl.drawCalls);
+        assertEquals(visible, starts[lods.getLevelCount()]);
+        assertTrue(starts[1] < visible); // some heads are coarser
+
+        long elements = 0;
+        for (int level = 0; level < lods.getLevelCount(); level++) {
+            for (int i = starts[level]; i < starts[level + 1]; i++) {
+                assertEquals(level, lodRenderer.getLodSelector().getLevel(lodRenderer.visibleHeads[i].getIndex()));
+                if (i > starts[level]) { // index order within a level
+                    assertTrue(lodRenderer.visibleHeads[i - 1].getIndex() < lodRenderer.visibleHeads[i].getIndex());
+                }
+            }
+            elements += (long) (starts[level + 1] - starts[level]) * lods.getIndexCount(level);
+        }
+        assertEquals(elements, gl.elements);
+        assertTrue(gl.elements < (long) visible * mesh.getIndexCount());
+
+        // the instanced path draws the same levels, one call each
+        InstancedBatch batch = new InstancedBatch(lodRenderer.getGlState(), visible);
+        batch.create(readRaw("explosion_instanced_vertex_shader.vert"), readRaw("instanced_fragment_shader.frag"));
+        gl.resetCounters();
+        batch.draw(lodRenderer.visibleHeads, starts, lods, MonkeyHead.meshBuffers, new float[16], new float[16], false);
+
+        int usedLevels = 0;
+        for (int level = 0; level < lods.getLevelCount(); level++) {
+            usedLevels += starts[level + 1] > starts[level] ? 1 : 0;
+        }
+        assertEquals(usedLevels, gl.drawCalls);
+        assertEquals(visible, gl.instances);
+        assertEquals(elements, gl.elements);
+    }
+
+    @Test
+    public void placeholderUntilTheAssetsArrive() throws IOException {
+        HeadlessGLBackend gl = new HeadlessGLBackend();
+        MonkeyHeadsRenderer loading = new MonkeyHeadsRenderer(gl);
+        loading.setClock(oneStepPerFrame());
+        loading.onSurfaceCreated(null, null);
+        loading.onSurfaceChanged(null, 1080, 1920);
+
+        for (int frame = 0; frame < 3; frame++) {
+            gl.resetCounters();
+            loading.onDrawFrame(null);
+            assertFalse(loading.isReady());
+            assertEquals(1, gl.calls); // just the clear
+            assertEquals(0, loading.getCulledCount());
+            loading.onTapEvent(540, 960);
+        }
+
+        // what the view's loader hands over
+        InputStream in = new FileInputStream(new File(MeshLoadBenchmark.RAW_DIR, "monkey_head.mesh"));
+        try {
+            loading.onAssetsLoaded(new SceneAssets(MeshFile.read(in), null, null, readRaw("explosion_vertex_shader.vert"),
+                    readRaw("simple_fragment_shader.frag"), null, null));
+        } finally {
+            in.close();
+        }
+        assertFalse(loading.isReady());
+
+        // the GL objects are created over the next frames, then the heads show up
+        for (int frame = 0; frame < 10 && gl.drawCalls == 0; frame++) {
+            gl.resetCounters();
+            loading.onDrawFrame(null);
+        }
+        assertTrue(loading.isReady());
+        assertEquals(loading.getVisibleCount(), gl.drawCalls);
+    }
+
+    @Test
+    public void queuedInputIsAppliedByTheNextFrame() {
+        renderer.onDrawFrame(null);
+        renderer.setCameraAngles(10f, 20f);
+        InputQueue input = renderer.getInputQueue();
+        input.offer(InputQueue.CAMERA, 5f, -1f);
+        input.offer(InputQueue.TAP, FrameAllocationTest.TAP_X, FrameAllocationTest.TAP_Y);
+        input.offer(InputQueue.CAMERA, 5f, -1f);
+
+        // nothing happens until the GL thread drains the queue
+        assertEquals(10f, renderer.getCameraAngleX(), 0f);
+        assertFalse(renderer.monkeyHeads[FrameAllocationTest.TAPPED_HEAD].isUseExplosionAnimation());
+
+        renderer.onDrawFrame(null);
+        assertEquals(0, input.size());
+        assertEquals(20f, renderer.getCameraAngleX(), 0f);
+        assertEquals(18f, renderer.getCameraAngleY(), 0f);
+        // picked with the camera the player saw when tapping
+        assertTrue(renderer.monkeyHeads[FrameAllocationTest.TAPPED_HEAD].isUseExplosionAnimation());
+    }
+
+    @Test
+    public void newContextRecreatesEverything() {
+        renderer.onDrawFrame(null);
+        gl.resetCounters();
+
+        renderer.onSurfaceCreated(null, null);
+        renderer.onSurfaceChanged(null, 1080, 1920);
+        renderer.onDrawFrame(null);
+
+        assertTrue(gl.bytesUploaded > 0);
+        assertEquals(renderer.getVisibleCount(), gl.drawCalls);
+    }
+}
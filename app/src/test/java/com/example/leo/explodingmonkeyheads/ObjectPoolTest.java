@@ -0,0 +1,49 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ObjectPoolTest {
+    @Test
+    public void objectsComeBackInReleaseOrderOnceReady() {
+        ObjectPool<String> pool = new ObjectPool<>(3);
+        pool.release("a", 10);
+        pool.release("b", 12);
+
+        assertNull(pool.acquire(9));
+        assertEquals("a", pool.acquire(10));
+        assertNull(pool.acquire(11));
+        assertEquals("b", pool.acquire(100));
+        assertNull(pool.acquire(100));
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void ringWrapsAround() {
+        ObjectPool<Integer> pool = new ObjectPool<>(3);
+        for (int i = 0; i < 10; i++) {
+            pool.release(i, i);
+            if (i >= 2) {
+                assertEquals(Integer.valueOf(i - 2), pool.acquire(i));
+            }
+        }
+        assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void fullPoolThrows() {
+        ObjectPool<String> pool = new ObjectPool<>(1);
+        pool.release("a", 0);
+        try {
+            pool.release("b", 0);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+
+        pool.clear();
+        assertEquals(0, pool.size());
+        pool.release("b", 0);
+        assertEquals("b", pool.acquire(0));
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Allocates and releases picking ids, against the synchronized map it replaces, on one
+ * thread and on several at once.
+ */
+public class PickingIdAllocatorBenchmark {
+    private static final int BATCH = 1024, ROUNDS = 2000;
+
+    private static final Object OBJECT = new Object();
+
+    /**
+     * The allocator the renderer used to have in mind: a synchronized counter and map.
+     */
+    private static final class LockedIds {
+        private final Map<Integer, Object> objects = new HashMap<>();
+        private int next;
+
+        synchronized int allocate(Object object) {
+            int id = next++;
+            objects.put(id, object);
+            return id;
+        }
+
+        synchronized void release(int id) {
+            objects.remove(id);
+        }
+    }
+
+    private static void churn(PickingIdAllocator<Object> ids, int[] held) {
+        for (int i = 0; i < held.length; i++) {
+            held[i] = ids.allocate(OBJECT);
+        }
+        for (int id : held) {
+            ids.release(id);
+        }
+    }
+
+    private static void churn(LockedIds ids, int[] held) {
+        for (int i = 0; i < held.length; i++) {
+            held[i] = ids.allocate(OBJECT);
+        }
+        for (int id : held) {
+            ids.release(id);
+        }
+    }
+
+    @Test
+    public void singleThread() throws Exception {
+        final PickingIdAllocator<Object> ids = new PickingIdAllocator<>(BATCH);
+        final LockedIds locked = new LockedIds();
+        final int[] held = new int[BATCH];
+
+        Benchmark.run("1024 ids, lock-free", 1000, 10000, new Benchmark.Task() {
+            @Override
+            public void run() {
+                churn(ids, held);
+            }
+        });
+        Benchmark.run("1024 ids, synchronized map", 1000, 10000, new Benchmark.Task() {
+            @Override
+            public void run() {
+                churn(locked, held);
+            }
+        });
+    }
+
+    private static double millis(int threads, final Benchmark.Task task) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1), done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int round = 0; round < ROUNDS; round++) {
+                            task.run();
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        return (System.nanoTime() - begin) / 1e6;
+    }
+
+    @Test
+    public void loaderThreads() throws Exception {
+        for (int threads = 1; threads <= 8; threads *= 2) {
+            final PickingIdAllocator<Object> ids = new PickingIdAllocator<>(BATCH * threads);
+            final LockedIds locked = new LockedIds();
+
+            // warm both up on this thread first
+            int[] held = new int[BATCH];
+            for (int i = 0; i < 200; i++) {
+                churn(ids, held);
+                churn(locked, held);
+            }
+
+            double lockFree = millis(threads, new Benchmark.Task() {
+                private final ThreadLocal<int[]> held = new ThreadLocal<int[]>() {
+                    @Override
+                    protected int[] initialValue() {
+                        return new int[BATCH];
+                    }
+                };
+
+                @Override
+                public void run() {
+                    churn(ids, held.get());
+                }
+            });
+            double synchronizedMap = millis(threads, new Benchmark.Task() {
+                private final ThreadLocal<int[]> held = new ThreadLocal<int[]>() {
+                    @Override
+                    protected int[] initialValue() {
+                        return new int[BATCH];
+                    }
+                };
+
+                @Override
+                public void run() {
+                    churn(locked, held.get());
+                }
+            });
+
+            double ops = 2.0 * BATCH * ROUNDS * threads;
+            System.out.println(String.format(Locale.US, "%d threads: lock-free %6.1f Mops/s, synchronized map %6.1f Mops/s",
+                    threads, ops / lockFree / 1e3, ops / synchronizedMap / 1e3));
+        }
+    }
+}
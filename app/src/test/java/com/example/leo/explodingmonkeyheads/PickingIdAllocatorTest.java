@@ -0,0 +1,162 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class PickingIdAllocatorTest {
+    @Test
+    public void idsMapBackToTheirObjects() {
+        PickingIdAllocator<String> ids = new PickingIdAllocator<>(3);
+        int a = ids.allocate("a"), b = ids.allocate("b");
+
+        assertNotEquals(a, b);
+        assertEquals("a", ids.get(a));
+        assertEquals("b", ids.get(b));
+        assertNull(ids.get(ColorProvider.NO_ID));
+        assertNull(ids.get(3));
+        assertNull(ids.get(2)); // not handed out yet
+    }
+
+    @Test
+    public void releasedIdsAreReusedFirst() {
+        PickingIdAllocator<String> ids = new PickingIdAllocator<>(4);
+        int a = ids.allocate("a"), b = ids.allocate("b");
+        ids.allocate("c");
+
+        ids.release(a);
+        ids.release(b);
+        assertNull(ids.get(a));
+
+        // last in, first out
+        assertEquals(b, ids.allocate("d"));
+        assertEquals(a, ids.allocate("e"));
+        assertEquals(3, ids.allocate("f"));
+        assertEquals("e", ids.get(a));
+    }
+
+    @Test
+    public void fullAllocatorThrows() {
+        PickingIdAllocator<String> ids = new PickingIdAllocator<>(2);
+        ids.allocate("a");
+        ids.allocate("b");
+        for (int attempt = 0; attempt < 3; attempt++) {
+            try {
+                ids.allocate("c");
+                fail();
+            } catch (IllegalStateException expected) {
+            }
+        }
+
+        // failed calls don't leak, a released id is still found
+        ids.release(1);
+        assertEquals(1, ids.allocate("c"));
+    }
+
+    @Test
+    public void releasingTwiceThrows() {
+        PickingIdAllocator<String> ids = new PickingIdAllocator<>(2);
+        int a = ids.allocate("a");
+        ids.release(a);
+        try {
+            ids.release(a);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            ids.release(1);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void capacityIsBoundByTheColors() {
+        try {
+            new PickingIdAllocator<String>(ColorProvider.MAX_ID + 2);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new PickingIdAllocator<String>(0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void concurrentThreadsNeverShareAnId() throws Exception {
+        final int threads = 8, capacity = 256, rounds = 200000;
+        final PickingIdAllocator<Object> ids = new PickingIdAllocator<>(capacity);
+        final AtomicIntegerArray owners = new AtomicIntegerArray(capacity);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch start = new CountDownLatch(1), done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Random random = new Random(seed);
+                        int[] held = new int[capacity / threads];
+                        int heldCount = 0;
+                        start.await();
+                        for (int round = 0; round < rounds; round++) {
+                            // hold up to a fair share of the ids, so allocation never runs dry
+                            if (heldCount < held.length && (heldCount == 0 || random.nextBoolean())) {
+                                Object object = new Object();
+                                int id = ids.allocate(object);
+                                if (owners.incrementAndGet(id) != 1) {
+                                    throw new AssertionError("id " + id + " handed out twice");
+                                }
+                                if (ids.get(id) != object) {
+                                    throw new AssertionError("id " + id + " maps to another object");
+                                }
+                                held[heldCount++] = id;
+                            } else {
+                                int slot = random.nextInt(heldCount);
+                                int id = held[slot];
+                                held[slot] = held[--heldCount];
+                                owners.decrementAndGet(id);
+                                ids.release(id);
+                            }
+                        }
+                        while (heldCount > 0) {
+                            int id = held[--heldCount];
+                            owners.decrementAndGet(id);
+                            ids.release(id);
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        done.await();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        // every id is back on the free list exactly once
+        boolean[] seen = new boolean[capacity];
+        for (int i = 0; i < capacity; i++) {
+            int id = ids.allocate("x");
+            assertFalse(seen[id]);
+            seen[id] = true;
+        }
+        try {
+            ids.allocate("y");
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.leo.explodingmonkeyheads;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ProgramBinaryCacheTest {
+    static final String VERTEX = "attribute vec4 vPosition; void main() { gl_Position = vPosition; }";
+    static final String FRAGMENT = "void main() { gl_FragColor = vec4(1.0); }";
+
+    private HeadlessGLBackend gl;
+    private GLStateCache state;
+    private File root, directory;
+    private ProgramBinaryCache cache;
+    private final List<String> dropped = new ArrayList<>(); // reasons reported to the listener
+
+    @Before
+    public void setUp() throws IOException {
+        gl = new HeadlessGLBackend();
+        gl.programBinaryFormats = 1;
+        state = new GLStateCache(gl);
+        root = File.createTempFile("programs", "");
+        assertTrue(root.delete() && root.mkdir());
+        directory = new File(root, "programs");
+        cache = new ProgramBinaryCache(directory);
+        cache.setListener(new ProgramBinaryCache.Listener() {
+            @Override
+            public void onDropped(String fileName, String reason) {
+                dropped.add(reason);
+            }
+        });
+        cache.onContextCreated(gl);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+        root.delete();
+    }
+
+    private ShaderProgram newProgram() {
+        return new ShaderProgram(state, VERTEX, FRAGMENT, cache);
+    }
+
+    private File onlyFile() {
+        File[] files = directory.listFiles();
+        assertNotNull(files);
+        assertEquals(1, files.length);
+        return files[0];
+    }
+
+    @Test
+    public void warmStartsSkipCompiling() {
+        ShaderProgram cold = newProgram();
+        assertFalse(cold.isCached());
+        assertEquals(2, gl.compiles);
+        assertTrue(onlyFile().getName().endsWith(ProgramBinaryCache.SUFFIX));
+
+        // e.g. the next run, with a new context
+        ProgramBinaryCache next = new ProgramBinaryCache(directory);
+        next.onContextCreated(gl);
+        ShaderProgram warm = new ShaderProgram(state, VERTEX, FRAGMENT, next);
+        assertTrue(warm.isCached());
+        assertEquals(2, gl.compiles);
+        assertEquals(1, gl.binariesLoaded);
+        assertEquals(VERTEX + FRAGMENT, gl.sourceOf(warm.getId()));
+    }
+
+    @Test
+    public void otherSourcesAreCachedApart() {
+        newProgram();
+        ShaderProgram other = new ShaderProgram(state, VERTEX, FRAGMENT + " ", cache);
+        assertFalse(other.isCached());
+        assertEquals(4, gl.compiles);
+        assertEquals(2, directory.listFiles().length);
+
+        assertTrue(newProgram().isCached());
+        assertEquals(VERTEX + FRAGMENT, gl.sourceOf(newProgram().getId()));
+    }
+
+    @Test
+    public void sourcesAreHashedWithASeparator() {
+        assertNotEquals(ProgramBinaryCache.sourceHash("ab", "c"), ProgramBinaryCache.sourceHash("a", "bc"));
+        assertEquals(ProgramBinaryCache.sourceHash(VERTEX, FRAGMENT), ProgramBinaryCache.sourceHash(VERTEX, FRAGMENT));
+    }
+
+    @Test
+    public void anotherDriverRemovesTheOldBinaries() {
+        newProgram();
+        File old = onlyFile();
+
+        gl.renderer = "Headless, updated";
+        cache.onContextCreated(gl);
+        assertFalse(old.exists());
+        assertEquals(1, dropped.size());
+        assertEquals("stale", dropped.get(0));
+
+        assertFalse(newProgram().isCached());
+        assertEquals(4, gl.compiles);
+        assertNotEquals(old.getName(), onlyFile().getName());
+    }
+
+    @Test
+    public void corruptBinariesAreRecompiled() throws IOException {
+        newProgram();
+        File file = onlyFile();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(raf.length() - 1);
+            int last = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(last ^ 0x20);
+        } finally {
+            raf.close();
+        }
+
+        ShaderProgram program = newProgram();
+        assertFalse(program.isCached());
+        assertEquals(4, gl.compiles);
+        assertEquals(0, gl.binariesLoaded);
+        assertEquals(1, dropped.size());
+        // and saved again
+        assertTrue(newProgram().isCached());
+    }
+
+    @Test
+    public void truncatedBinariesAreRecompiled() throws IOException {
+        newProgram();
+        File file = onlyFile();
+        for (long length : new long[] { file.length() - 1, ProgramBinaryCache.HEADER_SIZE - 1, 0 }) {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(length);
+            } finally {
+                raf.close();
+            }
+            assertFalse("length " + length, newProgram().isCached());
+            assertEquals(file.length(), onlyFile().length());
+        }
+        assertTrue(newProgram().isCached());
+    }
+
+    @Test
+    public void binariesRejectedByTheDriverAreRecompiled() {
+        newProgram();
+        gl.rejectBinaries = true;
+
+        ShaderProgram program = newProgram();
+        assertFalse(program.isCached());
+        assertEquals(4, gl.compiles);
+        assertEquals(VERTEX + FRAGMENT, gl.sourceOf(program.getId()));
+        onlyFile();
+        assertEquals(1, dropped.size());
+        assertEquals("rejected by the driver", dropped.get(0));
+
+        gl.rejectBinaries = false;
+        assertTrue(newProgram().isCached());
+    }
+
+    @Test
+    public void leftoverTemporaryFilesAreRemoved() throws IOException {
+        newProgram();
+        File leftover = new File(directory, onlyFile().getName() + ".tmp");
+        assertTrue(leftover.createNewFile());
+
+        cache.onContextCreated(gl);
+        assertFalse(leftover.exists());
+        assertTrue(newProgram().isCached());
+    }
+
+    @Test
+    public void withoutACacheTheProgramIsCompiled() {
+        ShaderProgram program = new ShaderProgram(state, VERTEX, FRAGMENT);
+        assertFalse(program.isCached());
+        assertEquals(2, gl.compiles);
+        assertFalse(directory.exists());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void theContextMustBeKnown() {
+        new ProgramBinaryCache(directory).load(gl, VERTEX, FRAGMENT);
+    }
+
+    @Test
+    public void gles2CannotLoadBinaries() {
+        gl.resetCounters();
+        assertFalse(ProgramBinaryCache.isSupported(gl, 2));
+        assertEquals(0, gl.calls);
+    }
+}
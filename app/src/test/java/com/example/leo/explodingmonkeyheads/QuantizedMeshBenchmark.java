@@ -0,0 +1,47 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+/**
+ * Reports the GPU memory the quantized vertices save for the shipped mesh and its
+ * levels of detail, with the largest errors they introduce, and times the packing.
+ */
+public class QuantizedMeshBenchmark {
+
+    @Test
+    public void report() throws Exception {
+        Mesh mesh = MeshSimplifierTest.shippedMesh();
+        report("monkey head", mesh);
+        report("monkey head, 4 levels", MeshLods.build(mesh, MeshLods.DEFAULT_LEVEL_COUNT).getMesh());
+    }
+
+    private static void report(String name, final Mesh mesh) throws Exception {
+        QuantizedMesh quantized = QuantizedMesh.quantize(mesh);
+        float[] position = new float[3], normal = new float[3];
+        double positionError = 0, normalError = 0;
+        for (int v = 0; v < mesh.getVertexCount(); v++) {
+            quantized.getPosition(v, position);
+            for (int c = 0; c < 3; c++) {
+                positionError = Math.max(positionError, Math.abs(position[c] - mesh.getPosition(v, c)));
+            }
+            quantized.getNormal(v, normal);
+            normalError = Math.max(normalError, QuantizedMeshTest.angle(normal, mesh.getNormal(v, 0),
+                    mesh.getNormal(v, 1), mesh.getNormal(v, 2)));
+        }
+
+        int floatBytes = mesh.getVertexCount() * Mesh.STRIDE;
+        System.out.println(String.format(Locale.US, "%s: %d vertices, %,d bytes as floats, %,d quantized "
+                        + "(-%,d bytes, -%.0f%%), max position error %.2e, max normal error %.2e rad",
+                name, mesh.getVertexCount(), floatBytes, quantized.getByteCount(), quantized.getSavedBytes(),
+                100.0 * quantized.getSavedBytes() / floatBytes, positionError, normalError));
+
+        Benchmark.run("quantize " + name, 5, 20, new Benchmark.Task() {
+            @Override
+            public void run() {
+                QuantizedMesh.quantize(mesh);
+            }
+        });
+    }
+}
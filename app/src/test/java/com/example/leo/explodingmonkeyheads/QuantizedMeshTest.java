@@ -0,0 +1,126 @@
+package com.example.leo.explodingmonkeyheads;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class QuantizedMeshTest {
+    // a 16-bit octahedral grid is finer than 1e-4 radians everywhere
+    static final double MAX_NORMAL_ERROR = 1e-4;
+
+    static double angle(float[] a, float x, float y, float z) {
+        double cx = a[1] * z - a[2] * y, cy = a[2] * x - a[0] * z, cz = a[0] * y - a[1] * x;
+        double dot = a[0] * x + a[1] * y + a[2] * z;
+        return Math.atan2(Math.sqrt(cx * cx + cy * cy + cz * cz), dot);
+    }
+
+    @Test
+    public void verticesTakeHalfTheMemory() throws Exception {
+        assertEquals(12, QuantizedMesh.LAYOUT.getStride());
+        assertEquals(0, QuantizedMesh.LAYOUT.getAttribute(0).offset);
+        assertEquals(8, QuantizedMesh.LAYOUT.getAttribute(1).offset);
+
+        Mesh mesh = MeshSimplifierTest.shippedMesh();
+        QuantizedMesh quantized = QuantizedMesh.quantize(mesh);
+        assertSame(mesh, quantized.getMesh());
+        assertEquals(mesh.getVertexCount() * 12, quantized.getByteCount());
+        assertEquals(quantized.getVertices().capacity(), quantized.getByteCount());
+        assertEquals(mesh.getVertexCount() * Mesh.STRIDE / 2, quantized.getSavedBytes());
+    }
+
+    @Test
+    public void positionsAreWithinHalfAGridStep() throws Exception {
+        Mesh mesh = MeshSimplifierTest.shippedMesh();
+        QuantizedMesh quantized = QuantizedMesh.quantize(mesh);
+        float[] scale = quantized.getPositionScale(), position = new float[3];
+
+        for (int v = 0; v < mesh.getVertexCount(); v++) {
+            quantized.getPosition(v, position);
+            for (int c = 0; c < 3; c++) {
+                assertEquals("vertex " + v, mesh.getPosition(v, c), position[c], scale[c] * 0.501f);
+            }
+        }
+        // the grid spans the bounding box of the head, about 2.7 units wide
+        assertEquals(1.367188f / QuantizedMesh.POSITION_RANGE, scale[0], 1e-9f);
+        assertEquals(0f, quantized.getPositionOffset()[0], 1e-6f);
+        assertEquals(0f, quantized.getPositionScale()[3], 0f);
+    }
+
+    @Test
+    public void normalsAreWithinTheBound() throws Exception {
+        Mesh mesh = MeshSimplifierTest.shippedMesh();
+        QuantizedMesh quantized = QuantizedMesh.quantize(mesh);
+        float[] normal = new float[3];
+
+        for (int v = 0; v < mesh.getVertexCount(); v++) {
+            quantized.getNormal(v, normal);
+            double error = angle(normal, mesh.getNormal(v, 0), mesh.getNormal(v, 1), mesh.getNormal(v, 2));
+            assertTrue("vertex " + v + " off by " + error, error < MAX_NORMAL_ERROR);
+        }
+    }
+
+    @Test
+    public void everyDirectionRoundTrips() {
+        float[][] directions = {
+                { 1, 0, 0 }, { -1, 0, 0 }, { 0, 1, 0 }, { 0, -1, 0 }, { 0, 0, 1 }, { 0, 0, -1 },
+                { 1, 1, -1 }, { -1, 1, -1 }, { 1, -1, -1 }, { -1, -1, -1 }, { 0, 1, -1 }, { -1, 0, -1 }
+        };
+        float[] encoded = new float[2], decoded = new float[3];
+        for (float[] d : directions) {
+            QuantizedMesh.encodeOctahedral(d[0], d[1], d[2], encoded, 0);
+            QuantizedMesh.decodeOctahedral(encoded[0], encoded[1], decoded, 0);
+            assertTrue(angle(decoded, d[0], d[1], d[2]) < MAX_NORMAL_ERROR);
+        }
+
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            float x = (float) random.nextGaussian(), y = (float) random.nextGaussian(), z = (float) random.nextGaussian();
+            QuantizedMesh.encodeOctahedral(x, y, z, encoded, 0);
+            assertTrue(Math.abs(encoded[0]) <= QuantizedMesh.NORMAL_RANGE);
+            assertTrue(Math.abs(encoded[1]) <= QuantizedMesh.NORMAL_RANGE);
+            QuantizedMesh.decodeOctahedral(encoded[0], encoded[1], decoded, 0);
+            float length = (float) Math.sqrt(x * x + y * y + z * z);
+            assertTrue(angle(decoded, x / length, y / length, z / length) < MAX_NORMAL_ERROR);
+        }
+    }
+
+    @Test
+    public void explosionsLookTheSame() throws Exception {
+        Mesh mesh = MeshSimplifierTest.shippedMesh();
+        QuantizedMesh quantized = QuantizedMesh.quantize(mesh);
+        float[] position = new float[3], normal = new float[3];
+
+        // the shaders add (normal, 1) * time, so the head shrinks while the pieces fly out
+        for (float time : new float[] { 0f, 0.3f, 3f, 30f, 300f }) {
+            for (int v = 0; v < mesh.getVertexCount(); v++) {
+                quantized.getPosition(v, position);
+                quantized.getNormal(v, normal);
+                for (int c = 0; c < 3; c++) {
+                    float expected = (mesh.getPosition(v, c) + mesh.getNormal(v, c) * time) / (1f + time);
+                    float actual = (position[c] + normal[c] * time) / (1f + time);
+                    assertEquals("vertex " + v + " at " + time, expected, actual, 1e-4f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void flatMeshesQuantizeExactly() {
+        Mesh triangle = Mesh.interleave(new float[] { 0, 0, 2, 1, 0, 2, 0, 1, 2 }, new float[] { 0, 0, 1, 0, 0, 1, 0, 0, 1 });
+        QuantizedMesh quantized = QuantizedMesh.quantize(triangle);
+        float[] position = new float[3], normal = new float[3];
+
+        for (int v = 0; v < 3; v++) {
+            quantized.getPosition(v, position);
+            quantized.getNormal(v, normal);
+            for (int c = 0; c < 3; c++) {
+                assertEquals(triangle.getPosition(v, c), position[c], 1e-6f);
+                assertEquals(triangle.getNormal(v, c), normal[c], 0f);
+            }
+        }
+        assertEquals(1f, quantized.getPositionScale()[2], 0f);
+        assertEquals(2f, quantized.getPositionOffset()[2], 0f);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Times a tap resolved by {@link RayPicker}: the 64 heads of the renderer with the
+ * shipped mesh, and a grid of 100k cubes where the bounding sphere pass dominates.
+ */
+public class RayPickerBenchmark {
+
+    @Test
+    public void headsGrid() throws Exception {
+        final MonkeyHeadsRenderer renderer = MonkeyHeadsRendererTest.newRenderer(new HeadlessGLBackend());
+        renderer.onDrawFrame(null);
+
+        final float[][] models = new float[renderer.monkeyHeads.length][];
+        for (int i = 0; i < models.length; i++) {
+            models[i] = renderer.monkeyHeads[i].getModelViewMatrix(new float[16]);
+        }
+        final RayPicker picker = new RayPicker(renderer.getMesh());
+
+        Benchmark.run("ray pick, 64 heads", 1000, 20000, new Benchmark.Task() {
+            @Override
+            public void run() {
+                picker.setRay(60, 1440, 1080, 1920, renderer.mProjectionMatrix, renderer.mCameraMatrix);
+                picker.pick(models, models.length);
+            }
+        });
+    }
+
+    @Test
+    public void largeGrid() throws Exception {
+        final int n = 47;
+        Random random = new Random(7);
+        final float[][] models = new float[n * n * n][];
+        int i = 0;
+        for (int x = 0; x < n; x++) {
+            for (int y = 0; y < n; y++) {
+                for (int z = 0; z < n; z++) {
+                    models[i] = RayPickerTest.translation((x - n / 2) * 1.2f, (y - n / 2) * 1.2f, -4f - z * 1.2f);
+                    Mat4.rotateM(models[i], 0, random.nextFloat() * 360f, random.nextFloat(), random.nextFloat(),
+                            random.nextFloat());
+                    i++;
+                }
+            }
+        }
+
+        final float[] projection = new float[16], camera = new float[16];
+        Mat4.frustumM(projection, 0, -0.5625f, 0.5625f, -1, 1, 3, 50);
+        Mat4.setIdentityM(camera, 0);
+        final RayPicker picker = new RayPicker(RayPickerTest.cube(1f));
+
+        Benchmark.run("ray pick, " + models.length + " cubes", 20, 200, new Benchmark.Task() {
+            @Override
+            public void run() {
+                picker.setRay(600, 900, 1080, 1920, projection, camera);
+                picker.pick(models, models.length);
+            }
+        });
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RayPickerTest {
+    static final int WIDTH = 1080, HEIGHT = 1920;
+    private static final float EPSILON = 1e-5f;
+
+    private final float[] projection = new float[16], camera = new float[16];
+    private RayPicker picker;
+
+    /**
+     * @return - An axis-aligned cube of the given size centered on the origin.
+     */
+    static Mesh cube(float size) {
+        float h = size / 2f;
+        float[] vertices = new float[8 * Mesh.FLOATS_PER_VERTEX];
+        for (int v = 0; v < 8; v++) {
+            vertices[v * Mesh.FLOATS_PER_VERTEX] = (v & 1) == 0 ? -h : h;
+            vertices[v * Mesh.FLOATS_PER_VERTEX + 1] = (v & 2) == 0 ? -h : h;
+            vertices[v * Mesh.FLOATS_PER_VERTEX + 2] = (v & 4) == 0 ? -h : h;
+        }
+        int[] indices = {
+                0, 2, 1, 1, 2, 3, 4, 5, 6, 5, 7, 6, // -z, +z
+                0, 1, 4, 1, 5, 4, 2, 6, 3, 3, 6, 7, // -y, +y
+                0, 4, 2, 2, 4, 6, 1, 3, 5, 3, 7, 5, // -x, +x
+        };
+        return new MeshData(vertices, indices).toMesh();
+    }
+
+    static float[] translation(float x, float y, float z) {
+        float[] m = new float[16];
+        Mat4.setIdentityM(m, 0);
+        Mat4.translateM(m, 0, x, y, z);
+        return m;
+    }
+
+    /**
+     * @return - Window coordinates (y from the top) and eye depth of a point.
+     */
+    static float[] project(float[] projection, float[] camera, float x, float y, float z) {
+        float[] eye = new float[4], clip = new float[4];
+        Mat4.multiplyMV(eye, 0, camera, 0, new float[] { x, y, z, 1f }, 0);
+        Mat4.multiplyMV(clip, 0, projection, 0, eye, 0);
+        return new float[] {
+                (clip[0] / clip[3] + 1f) / 2f * WIDTH,
+                (1f - clip[1] / clip[3]) / 2f * HEIGHT,
+                -eye[2]
+        };
+    }
+
+    private int tap(float[][] models, float x, float y, float z) {
+        float[] window = project(projection, camera, x, y, z);
+        assertTrue(picker.setRay(window[0], window[1], WIDTH, HEIGHT, projection, camera));
+        return picker.pick(models, models.length);
+    }
+
+    @Before
+    public void setUp() {
+        // same projection as the renderer
+        float ratio = (float) WIDTH / HEIGHT;
+        Mat4.frustumM(projection, 0, -ratio, ratio, -1, 1, 3, 50);
+        Mat4.setIdentityM(camera, 0);
+        picker = new RayPicker(cube(1f));
+    }
+
+    @Test
+    public void triangleHitsAndMisses() {
+        float[] triangle = { -1, -1, 0, 1, -1, 0, 0, 1, 0 };
+
+        assertEquals(0.5f, RayPicker.intersectTriangle(triangle, 0, 0, 0, 1, 0, 0, -2), EPSILON);
+        assertEquals(0.5f, RayPicker.intersectTriangle(triangle, 0, 0, 0, -1, 0, 0, 2), EPSILON); // back face
+        assertEquals(-0.5f, RayPicker.intersectTriangle(triangle, 0, 0, 0, -1, 0, 0, -2), EPSILON); // behind
+        assertTrue(Float.isNaN(RayPicker.intersectTriangle(triangle, 0, 2, 0, 1, 0, 0, -2))); // outside
+        assertTrue(Float.isNaN(RayPicker.intersectTriangle(triangle, 0, 0, 0, 1, 1, 0, 0))); // parallel
+    }
+
+    @Test
+    public void tapOnAnObject() {
+        float[][] models = { translation(0, 0, -10) };
+
+        assertEquals(0, tap(models, 0, 0, -10));
+        // the front face is 6.5 units past the near plane, which is 47 units from the far one
+        assertEquals(6.5f / 47f, picker.getHitDistance(), 1e-4f);
+
+        assertTrue(picker.setRay(5, 5, WIDTH, HEIGHT, projection, camera));
+        assertEquals(RayPicker.NO_HIT, picker.pick(models, 1));
+        assertTrue(Float.isNaN(picker.getHitDistance()));
+    }
+
+    @Test
+    public void nearestObjectWins() {
+        float[][] models = { translation(0, 0, -20), translation(0, 0, -10), translation(0, 0, -30) };
+
+        assertEquals(1, tap(models, 0, 0, -20));
+
+        // and only the objects passed in count
+        picker.setRay(WIDTH / 2f, HEIGHT / 2f, WIDTH, HEIGHT, projection, camera);
+        assertEquals(0, picker.pick(models, 1));
+    }
+
+    @Test
+    public void boundingSphereIsNotEnough() {
+        float[][] models = { translation(0, 0, -10) };
+
+        // inside the sphere (radius 0.87) but past the side of the cube
+        assertEquals(RayPicker.NO_HIT, tap(models, 0.7f, 0.7f, -9.5f));
+
+        // the same ray hits once the cube is turned 45 degrees
+        Mat4.rotateM(models[0], 0, 45f, 0f, 0f, 1f);
+        assertEquals(0, tap(models, 0.6f, 0f, -9.5f));
+    }
+
+    @Test
+    public void onlyWhatIsBetweenTheClippingPlanesCanBePicked() {
+        assertEquals(RayPicker.NO_HIT, tap(new float[][] { translation(0, 0, 10) }, 0, 0, -10));
+        assertEquals(RayPicker.NO_HIT, tap(new float[][] { translation(0, 0, -60) }, 0, 0, -10));
+        assertEquals(RayPicker.NO_HIT, tap(new float[][] { translation(0, 0, -1) }, 0, 0, -10));
+    }
+
+    @Test
+    public void cameraIsTakenIntoAccount() {
+        Mat4.rotateM(camera, 0, 90f, 0f, 1f, 0f); // looking down +x
+        float[][] models = { translation(0, 0, -10), translation(10, 0, 0) };
+
+        assertEquals(1, tap(models, 10, 0, 0));
+    }
+
+    @Test
+    public void singularMatricesPickNothing() {
+        assertFalse(picker.setRay(5, 5, WIDTH, HEIGHT, projection, new float[16]));
+    }
+
+    /**
+     * @return - The nearest object hit by the current ray, testing every triangle of every object.
+     */
+    private int bruteForce(float[][] models) {
+        int nearest = RayPicker.NO_HIT;
+        float best = Float.POSITIVE_INFINITY;
+        for (int j = 0; j < models.length; j++) {
+            float distance = picker.meshDistance(models[j]);
+            if (distance < best) {
+                best = distance;
+                nearest = j;
+            }
+        }
+        return nearest;
+    }
+
+    @Test
+    public void renderedGridMatchesBruteForce() throws Exception {
+        MonkeyHeadsRenderer renderer = MonkeyHeadsRendererTest.newRenderer(new HeadlessGLBackend());
+        for (float angle = 0f; angle < 360f; angle += 45f) {
+            renderer.setCameraAngleX(angle);
+            renderer.setCameraAngleY(angle / 3f);
+            renderer.onDrawFrame(null);
+
+            MonkeyHead[] heads = renderer.monkeyHeads;
+            float[][] models = new float[heads.length][];
+            for (int i = 0; i < heads.length; i++) {
+                models[i] = heads[i].getModelViewMatrix(new float[16]);
+            }
+            picker = new RayPicker(renderer.getMesh());
+
+            // sweep the window
+            int hits = 0;
+            for (int y = 0; y < HEIGHT; y += 48) {
+                for (int x = 0; x < WIDTH; x += 48) {
+                    assertTrue(picker.setRay(x, y, WIDTH, HEIGHT, renderer.mProjectionMatrix, renderer.mCameraMatrix));
+                    int picked = picker.pick(models, models.length);
+                    assertEquals("tap at " + x + ", " + y, bruteForce(models), picked);
+                    if (picked != RayPicker.NO_HIT) {
+                        hits++;
+                    }
+                }
+            }
+            assertTrue("camera at " + angle, hits > 0);
+        }
+    }
+
+    /**
+     * @return - Model matrices of n^3 randomly turned objects, 1.2 units apart in front of the camera.
+     */
+    static float[][] grid(int n, Random random) {
+        float[][] models = new float[n * n * n][];
+        int i = 0;
+        for (int x = 0; x < n; x++) {
+            for (int y = 0; y < n; y++) {
+                for (int z = 0; z < n; z++) {
+                    models[i] = translation((x - n / 2) * 1.2f, (y - n / 2) * 1.2f, -4f - z * 1.2f);
+                    Mat4.rotateM(models[i], 0, random.nextFloat() * 360f, random.nextFloat(), random.nextFloat(),
+                            random.nextFloat());
+                    i++;
+                }
+            }
+        }
+        return models;
+    }
+
+    /**
+     * @return - A hierarchy over the bounding spheres of the objects.
+     */
+    static SceneBvh bvh(MeshBounds bounds, float[][] models) {
+        SceneBvh bvh = new SceneBvh(models.length);
+        float[] sphere = new float[4];
+        for (int i = 0; i < models.length; i++) {
+            bounds.transformSphere(models[i], 0f, sphere);
+            bvh.setSphere(i, sphere[0], sphere[1], sphere[2], sphere[3]);
+        }
+        bvh.build(models.length);
+        return bvh;
+    }
+
+    @Test
+    public void hierarchyPicksTheSameObjects() {
+        Random random = new Random(8);
+        float[][] models = grid(30, random);
+        SceneBvh bvh = bvh(picker.getBounds(), models);
+
+        for (int tap = 0; tap < 200; tap++) {
+            picker.setRay(random.nextFloat() * WIDTH, random.nextFloat() * HEIGHT, WIDTH, HEIGHT, projection, camera);
+            int expected = picker.pick(models, models.length);
+            float distance = picker.getHitDistance();
+
+            assertEquals(expected, picker.pick(bvh, models));
+            assertEquals(distance, picker.getHitDistance(), 0f);
+        }
+
+        // objects without a matrix are skipped
+        picker.setRay(WIDTH / 2f, HEIGHT / 2f, WIDTH, HEIGHT, projection, camera);
+        int hit = picker.pick(bvh, models);
+        assertNotEquals(RayPicker.NO_HIT, hit);
+        models[hit] = null;
+        assertNotEquals(hit, picker.pick(bvh, models));
+    }
+
+    @Test
+    public void largeGridMatchesBruteForce() {
+        Random random = new Random(7);
+        float[][] models = grid(47, random); // 103823 objects
+
+        for (int tap = 0; tap < 20; tap++) {
+            float x = random.nextFloat() * WIDTH, y = random.nextFloat() * HEIGHT;
+            picker.setRay(x, y, WIDTH, HEIGHT, projection, camera);
+            int picked = picker.pick(models, models.length);
+
+            int expected = bruteForce(models);
+            float best = expected == RayPicker.NO_HIT ? Float.NaN : picker.meshDistance(models[expected]);
+
+            assertEquals("tap at " + x + ", " + y, expected, picked);
+            if (expected != RayPicker.NO_HIT) {
+                assertEquals(best, picker.getHitDistance(), 0f);
+            }
+        }
+    }
+}
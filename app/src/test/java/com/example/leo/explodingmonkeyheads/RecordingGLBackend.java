@@ -0,0 +1,104 @@
+package com.example.leo.explodingmonkeyheads;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link HeadlessGLBackend} that also records the name and arguments of the state
+ * calls that {@link GLStateCache} forwards.
+ */
+public class RecordingGLBackend extends HeadlessGLBackend {
+    final List<String> log = new ArrayList<>();
+
+    private void record(String call) {
+        log.add(call);
+    }
+
+    int count(String prefix) {
+        int n = 0;
+        for (String call : log) {
+            if (call.startsWith(prefix)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        super.glUseProgram(program);
+        record("glUseProgram " + program);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        super.glBindBuffer(target, buffer);
+        record("glBindBuffer " + target + " " + buffer);
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        super.glEnableVertexAttribArray(index);
+        record("glEnableVertexAttribArray " + index);
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        super.glDisableVertexAttribArray(index);
+        record("glDisableVertexAttribArray " + index);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+        super.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+        record("glVertexAttribPointer " + index + " " + size + " " + type + " " + normalized + " " + stride + " " + offset);
+    }
+
+    @Override
+    public void glEnable(int cap) {
+        super.glEnable(cap);
+        record("glEnable " + cap);
+    }
+
+    @Override
+    public void glDisable(int cap) {
+        super.glDisable(cap);
+        record("glDisable " + cap);
+    }
+
+    @Override
+    public void glFrontFace(int mode) {
+        super.glFrontFace(mode);
+        record("glFrontFace " + mode);
+    }
+
+    @Override
+    public void glCullFace(int mode) {
+        super.glCullFace(mode);
+        record("glCullFace " + mode);
+    }
+
+    @Override
+    public void glUniform1f(int location, float x) {
+        super.glUniform1f(location, x);
+        record("glUniform1f " + location + " " + x);
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w) {
+        super.glUniform4f(location, x, y, z, w);
+        record("glUniform4f " + location + " " + x + " " + y + " " + z + " " + w);
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, float[] v, int offset) {
+        super.glUniform4fv(location, count, v, offset);
+        record("glUniform4fv " + location);
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+        super.glUniformMatrix4fv(location, count, transpose, value, offset);
+        record("glUniformMatrix4fv " + location);
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives the controller with synthetic frame times: a fixed part plus a fill part that
+ * follows the pixel count, i.e. the square of the scale, with some noise on top.
+ */
+public class RenderScaleControllerTest {
+    private static final long MS = 1000000L;
+    private static final long BUDGET_60 = RenderScaleController.DEFAULT_BUDGET_NANOS;
+
+    private RenderScaleController controller;
+    private Random random;
+
+    @Before
+    public void setUp() {
+        controller = new RenderScaleController();
+        random = new Random(42);
+    }
+
+    /**
+     * @return - GPU time of a frame at the current scale, with +-10% noise.
+     */
+    private long cost(double fixedMs, double fillMs) {
+        double scale = controller.getScale();
+        double noise = 1.0 + (random.nextDouble() - 0.5) * 0.2;
+        return (long) ((fixedMs + fillMs * scale * scale) * noise * MS);
+    }
+
+    /**
+     * @return - Number of scale changes over the frames.
+     */
+    private int run(int frames, double fixedMs, double fillMs, long budget) {
+        int changes = 0;
+        for (int i = 0; i < frames; i++) {
+            if (controller.onFrameRendered(0L, cost(fixedMs, fillMs), budget)) {
+                changes++;
+            }
+        }
+        return changes;
+    }
+
+    @Test
+    public void fullResolutionWhileTheFramesFit() {
+        assertEquals(0, run(600, 2, 8, BUDGET_60));
+        assertEquals(RenderScaleController.MAX_SCALE, controller.getScale(), 0f);
+        assertTrue(controller.getError() > 0f);
+        assertTrue(controller.isSaturated());
+
+        // frames that would fit a 60 Hz budget only at a lower scale fit 30 Hz as they are
+        assertEquals(0, run(600, 2, 22, 2 * BUDGET_60));
+        assertEquals(RenderScaleController.MAX_SCALE, controller.getScale(), 0f);
+    }
+
+    @Test
+    public void fillBoundFramesSettleUnderTheBudget() {
+        double[][] loads = { { 2, 30 }, { 4, 20 }, { 1, 50 }, { 8, 10 } };
+        for (double[] load : loads) {
+            setUp();
+            int changes = run(300, load[0], load[1], BUDGET_60);
+            assertTrue("changes " + changes, changes > 0 && changes <= 8);
+
+            float scale = controller.getScale();
+            double cost = load[0] + load[1] * scale * scale;
+            assertTrue("scale " + scale, scale > RenderScaleController.MIN_SCALE && scale < 1f);
+            assertTrue("cost " + cost, cost > 0.7 * BUDGET_60 / MS && cost < 0.95 * BUDGET_60 / MS);
+            assertFalse(controller.isSaturated());
+
+            // and stays there, the noise is within the dead band
+            assertEquals(0, run(600, load[0], load[1], BUDGET_60));
+        }
+    }
+
+    @Test
+    public void theMinimumLeavesTheRateToThePacer() {
+        run(300, 6, 40, BUDGET_60);
+        assertEquals(RenderScaleController.MIN_SCALE, controller.getScale(), 0f);
+        assertTrue(controller.getError() < 0f);
+        assertTrue(controller.isSaturated());
+
+        // at 30 Hz the same frames fit at a higher scale
+        run(300, 6, 40, 2 * BUDGET_60);
+        assertTrue(controller.getScale() > 0.7f && controller.getScale() < 0.8f);
+    }
+
+    @Test
+    public void fullResolutionComesBackWithTheHeadroom() {
+        run(300, 2, 30, BUDGET_60);
+        assertTrue(controller.getScale() < 0.7f);
+
+        run(300, 2, 8, BUDGET_60);
+        assertEquals(RenderScaleController.MAX_SCALE, controller.getScale(), 0f);
+        assertTrue(controller.isSaturated());
+    }
+
+    @Test
+    public void singleSpikesAreAveragedOut() {
+        for (int i = 0; i < 600; i++) {
+            long cost = i % 60 == 30 ? 3 * 12 * MS : 12 * MS;
+            assertFalse(controller.onFrameRendered(0L, cost, BUDGET_60));
+        }
+        assertEquals(RenderScaleController.MAX_SCALE, controller.getScale(), 0f);
+    }
+
+    @Test
+    public void gpuTimesWinOverTheGlThread() {
+        // the GL thread is busy with something else, the GPU has time to spare
+        for (int i = 0; i < 100; i++) {
+            controller.onFrameRendered(30 * MS, i % 2 == 0 ? 8 * MS : FrameMetrics.NOT_MEASURED, BUDGET_60);
+        }
+        assertEquals(RenderScaleController.MAX_SCALE, controller.getScale(), 0f);
+
+        // without timer queries the GL thread's time is all there is
+        controller = new RenderScaleController();
+        for (int i = 0; i < 100; i++) {
+            controller.onFrameRendered(30 * MS, FrameMetrics.NOT_MEASURED, BUDGET_60);
+        }
+        assertTrue(controller.getScale() < RenderScaleController.MAX_SCALE);
+    }
+
+    @Test
+    public void aNewScaleIsJudgedByItsOwnFrames() {
+        int frames = 0;
+        while (!controller.onFrameRendered(0L, 30 * MS, BUDGET_60)) {
+            frames++;
+        }
+        assertEquals(RenderScaleController.WINDOW - 1, frames);
+        float scale = controller.getScale();
+
+        // the frames in flight, then a whole window, before the next change
+        for (int i = 0; i < RenderScaleController.SETTLE_FRAMES + RenderScaleController.WINDOW - 1; i++) {
+            assertFalse(controller.onFrameRendered(0L, 30 * MS, BUDGET_60));
+        }
+        assertEquals(scale, controller.getScale(), 0f);
+        assertTrue(controller.onFrameRendered(0L, 30 * MS, BUDGET_60));
+        assertTrue(controller.getScale() < scale);
+
+        // steps are whole
+        float steps = controller.getScale() / RenderScaleController.STEP;
+        assertEquals(Math.round(steps), steps, 0f);
+    }
+
+    @Test
+    public void resetKeepsTheScale() {
+        run(300, 2, 30, BUDGET_60);
+        float scale = controller.getScale();
+
+        controller.reset();
+        assertEquals(scale, controller.getScale(), 0f);
+        assertEquals(0f, controller.getError(), 0f);
+        for (int i = 0; i < RenderScaleController.WINDOW - 1; i++) {
+            assertFalse(controller.onFrameRendered(0L, 40 * MS, BUDGET_60));
+        }
+    }
+
+    @Test
+    public void scaledSizesKeepAPixel() {
+        assertEquals(540, RenderScaleController.scaledSize(1080, 0.5f));
+        assertEquals(1080, RenderScaleController.scaledSize(1080, 1f));
+        assertEquals(1, RenderScaleController.scaledSize(1, 0.5f));
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ScaledFramebufferTest {
+    private static final long MS = 1000000L;
+
+    private HeadlessGLBackend gl;
+    private MonkeyHeadsRenderer renderer;
+    private RenderScaleController controller;
+
+    @Before
+    public void setUp() throws Exception {
+        gl = new HeadlessGLBackend();
+        renderer = MonkeyHeadsRendererTest.newRenderer(gl);
+        controller = new RenderScaleController();
+
+        // what the renderer sets up on a GLES 3.0 context
+        renderer.setRenderScaleController(controller);
+        renderer.scaledFramebuffer = new ScaledFramebuffer(gl);
+        renderer.scaledFramebuffer.create();
+    }
+
+    /**
+     * Brings the scale down with slow frames, as a fill-bound GPU would report them.
+     */
+    private void slowDown() {
+        while (controller.getScale() > 0.75f) {
+            controller.onFrameRendered(0L, 40 * MS, RenderScaleController.DEFAULT_BUDGET_NANOS);
+        }
+    }
+
+    @Test
+    public void fullScaleDrawsStraightToTheSurface() {
+        renderer.onDrawFrame(null);
+
+        assertTrue(gl.drawCalls > 0);
+        assertEquals(0, gl.offscreenDrawCalls);
+        assertEquals(0, gl.blits);
+    }
+
+    @Test
+    public void scaledFramesAreStretchedOverTheSurface() {
+        slowDown();
+        float scale = controller.getScale();
+        gl.resetCounters();
+        renderer.onDrawFrame(null);
+
+        // every head drawn offscreen, then one blit
+        assertTrue(gl.drawCalls > 0);
+        assertEquals(gl.drawCalls, gl.offscreenDrawCalls);
+        assertEquals(1, gl.blits);
+        int width = RenderScaleController.scaledSize(1080, scale);
+        int height = RenderScaleController.scaledSize(1920, scale);
+        assertArrayEquals(new int[] { 0, 0, width, height, 0, 0, 1080, 1920 }, gl.lastBlit);
+        assertEquals(width, renderer.scaledFramebuffer.getDrawnWidth());
+
+        // the surface is left as the frame found it
+        assertEquals(0, gl.drawFramebuffer);
+        assertArrayEquals(new int[] { 0, 0, 1080, 1920 }, gl.viewport);
+    }
+
+    @Test
+    public void tapsStillPickInSurfaceCoordinates() {
+        slowDown();
+        renderer.onDrawFrame(null);
+        renderer.onTapEvent(FrameAllocationTest.TAP_X, FrameAllocationTest.TAP_Y);
+
+        assertTrue(renderer.monkeyHeads[FrameAllocationTest.TAPPED_HEAD].isUseExplosionAnimation());
+    }
+
+    @Test
+    public void storageFollowsTheSurface() {
+        ScaledFramebuffer framebuffer = new ScaledFramebuffer(gl);
+        assertFalse(framebuffer.begin(1080, 1920, 0.5f));
+        framebuffer.create();
+
+        assertTrue(framebuffer.begin(1080, 1920, 0.5f));
+        framebuffer.end();
+        gl.resetCounters();
+        assertTrue(framebuffer.begin(1080, 1920, 0.75f));
+        framebuffer.end();
+        // bind, viewport, then unbind for drawing, blit, invalidate, unbind, viewport
+        assertEquals(7, gl.calls);
+        assertArrayEquals(new int[] { 0, 0, 810, 1440, 0, 0, 1080, 1920 }, gl.lastBlit);
+
+        // turned sideways
+        gl.resetCounters();
+        assertTrue(framebuffer.begin(1920, 1080, 0.5f));
+        assertTrue(gl.calls > 2);
+        framebuffer.end();
+        assertArrayEquals(new int[] { 0, 0, 960, 540, 0, 0, 1920, 1080 }, gl.lastBlit);
+
+        // a lost context
+        framebuffer.invalidate();
+        assertFalse(framebuffer.begin(1920, 1080, 0.5f));
+        gl.resetCounters();
+        framebuffer.end();
+        assertEquals(0, gl.calls);
+    }
+}
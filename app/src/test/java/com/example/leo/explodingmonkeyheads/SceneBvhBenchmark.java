@@ -0,0 +1,93 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Build, refit and query times of {@link SceneBvh} over a grid of 100k randomly turned
+ * cubes, against the linear scans it replaces.
+ */
+public class SceneBvhBenchmark {
+
+    @Test
+    public void grid() throws Exception {
+        final float[][] models = RayPickerTest.grid(47, new Random(7));
+        final RayPicker picker = new RayPicker(RayPickerTest.cube(1f));
+        final MeshBounds bounds = picker.getBounds();
+        final SceneBvh bvh = RayPickerTest.bvh(bounds, models);
+        final int count = models.length;
+        final float[] sphere = new float[4];
+
+        Benchmark.run("bvh build, " + count + " objects", 3, 20, new Benchmark.Task() {
+            @Override
+            public void run() {
+                bvh.build(count);
+            }
+        });
+
+        // what a frame costs once the objects moved
+        Benchmark.run("bvh bounds + refit, " + count + " objects", 5, 50, new Benchmark.Task() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    bounds.transformSphere(models[i], 0f, sphere);
+                    bvh.setSphere(i, sphere[0], sphere[1], sphere[2], sphere[3]);
+                }
+                bvh.refit();
+            }
+        });
+
+        final float[] projection = new float[16], camera = new float[16];
+        Mat4.frustumM(projection, 0, -0.5625f, 0.5625f, -1, 1, 3, 50);
+        Mat4.setIdentityM(camera, 0);
+        final Random random = new Random(1);
+
+        Benchmark.run("ray pick, linear scan", 20, 200, new Benchmark.Task() {
+            @Override
+            public void run() {
+                picker.setRay(random.nextFloat() * 1080, random.nextFloat() * 1920, 1080, 1920, projection, camera);
+                picker.pick(models, count);
+            }
+        });
+        Benchmark.run("ray pick, bvh", 2000, 20000, new Benchmark.Task() {
+            @Override
+            public void run() {
+                picker.setRay(random.nextFloat() * 1080, random.nextFloat() * 1920, 1080, 1920, projection, camera);
+                picker.pick(bvh, models);
+            }
+        });
+
+        // a region holding about a tenth of the objects, as a frustum would
+        final float[] planes = SceneBvhTest.planesAround(0, 0, -30, 12f);
+        final int[] result = new int[count];
+        Benchmark.run("plane query, linear scan", 20, 200, new Benchmark.Task() {
+            @Override
+            public void run() {
+                int found = 0;
+                for (int i = 0; i < count; i++) {
+                    bounds.transformSphere(models[i], 0f, sphere);
+                    if (insideAll(planes, sphere)) {
+                        result[found++] = i;
+                    }
+                }
+            }
+        });
+        Benchmark.run("plane query, bvh", 200, 2000, new Benchmark.Task() {
+            @Override
+            public void run() {
+                bvh.queryPlanes(planes, planes.length / 4, result);
+            }
+        });
+    }
+
+    private static boolean insideAll(float[] planes, float[] sphere) {
+        for (int p = 0; p < planes.length; p += 4) {
+            float distance = planes[p] * sphere[0] + planes[p + 1] * sphere[1] + planes[p + 2] * sphere[2] + planes[p + 3];
+            if (distance < -sphere[3]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,247 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SceneBvhTest {
+
+    /**
+     * Objects of random size scattered in a 100 units cube, the way bounds are kept by
+     * the tests: min xyz, max xyz per object.
+     */
+    static float[] randomBoxes(int count, Random random) {
+        float[] boxes = new float[count * 6];
+        for (int i = 0; i < count; i++) {
+            for (int c = 0; c < 3; c++) {
+                float center = random.nextFloat() * 100f - 50f, half = 0.1f + random.nextFloat();
+                boxes[i * 6 + c] = center - half;
+                boxes[i * 6 + 3 + c] = center + half;
+            }
+        }
+        return boxes;
+    }
+
+    static SceneBvh build(float[] boxes) {
+        int count = boxes.length / 6;
+        SceneBvh bvh = new SceneBvh(count);
+        setAll(bvh, boxes);
+        bvh.build(count);
+        return bvh;
+    }
+
+    static void setAll(SceneBvh bvh, float[] boxes) {
+        for (int i = 0; i < boxes.length / 6; i++) {
+            bvh.setBounds(i, boxes[i * 6], boxes[i * 6 + 1], boxes[i * 6 + 2], boxes[i * 6 + 3], boxes[i * 6 + 4],
+                    boxes[i * 6 + 5]);
+        }
+    }
+
+    /**
+     * Hits the boxes themselves, so the nearest hit is the nearest box.
+     */
+    static SceneBvh.RayTester boxTester(final float[] boxes, final float[] ray) {
+        return new SceneBvh.RayTester() {
+            @Override
+            public float intersect(int object, float maxDistance) {
+                return SceneBvh.boxEntry(boxes, object * 6, ray[0], ray[1], ray[2], ray[3], ray[4], ray[5],
+                        maxDistance);
+            }
+        };
+    }
+
+    static int linearRaycast(float[] boxes, float[] ray, float maxDistance) {
+        int hit = SceneBvh.NONE;
+        float best = maxDistance;
+        for (int i = 0; i < boxes.length / 6; i++) {
+            float distance = SceneBvh.boxEntry(boxes, i * 6, ray[0], ray[1], ray[2], ray[3], ray[4], ray[5], best);
+            if (distance < best || (hit == SceneBvh.NONE && distance == best)) {
+                best = distance;
+                hit = i;
+            }
+        }
+        return hit;
+    }
+
+    static float[] randomRay(Random random) {
+        return new float[] {
+                random.nextFloat() * 120f - 60f, random.nextFloat() * 120f - 60f, -60f,
+                random.nextFloat() * 40f - 20f, random.nextFloat() * 40f - 20f, 120f
+        };
+    }
+
+    static int[] linearQuery(float[] boxes, float[] planes) {
+        int[] result = new int[boxes.length / 6];
+        int found = 0;
+        objects:
+        for (int i = 0; i < boxes.length / 6; i++) {
+            for (int p = 0; p < planes.length; p += 4) {
+                boolean outside = true;
+                for (int corner = 0; corner < 8 && outside; corner++) {
+                    float x = boxes[i * 6 + ((corner & 1) == 0 ? 0 : 3)];
+                    float y = boxes[i * 6 + ((corner & 2) == 0 ? 1 : 4)];
+                    float z = boxes[i * 6 + ((corner & 4) == 0 ? 2 : 5)];
+                    outside = planes[p] * x + planes[p + 1] * y + planes[p + 2] * z + planes[p + 3] < 0f;
+                }
+                if (outside) {
+                    continue objects;
+                }
+            }
+            result[found++] = i;
+        }
+        return Arrays.copyOf(result, found);
+    }
+
+    static int[] query(SceneBvh bvh, float[] planes) {
+        int[] result = new int[bvh.getObjectCount()];
+        int found = bvh.queryPlanes(planes, planes.length / 4, result);
+        result = Arrays.copyOf(result, found);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * @return - A box-shaped region of the given half size around the point, plus a slanted cut.
+     */
+    static float[] planesAround(float x, float y, float z, float half) {
+        return new float[] {
+                1, 0, 0, half - x, -1, 0, 0, half + x,
+                0, 1, 0, half - y, 0, -1, 0, half + y,
+                0, 0, 1, half - z, 0, 0, -1, half + z,
+                0.6f, 0.8f, 0, -0.6f * x - 0.8f * y + half / 2,
+        };
+    }
+
+    @Test
+    public void emptyScene() {
+        SceneBvh bvh = new SceneBvh(10);
+        bvh.build(0);
+
+        float[] ray = { 0, 0, -10, 0, 0, 20 };
+        assertEquals(SceneBvh.NONE, bvh.raycast(0, 0, -10, 0, 0, 20, 1f, boxTester(new float[0], ray)));
+        assertEquals(0, bvh.queryPlanes(planesAround(0, 0, 0, 10), 7, new int[0]));
+    }
+
+    @Test
+    public void treeCoversEveryObjectOnce() {
+        float[] boxes = randomBoxes(10000, new Random(1));
+        SceneBvh bvh = build(boxes);
+
+        int[] objects = Arrays.copyOf(bvh.objects, bvh.getObjectCount());
+        Arrays.sort(objects);
+        for (int i = 0; i < objects.length; i++) {
+            assertEquals(i, objects[i]);
+        }
+        assertTrue(bvh.getNodeCount() <= 2 * 10000 - 1);
+        assertTrue("depth " + bvh.getDepth(), bvh.getDepth() < 40);
+    }
+
+    @Test
+    public void raycastMatchesLinearScan() {
+        Random random = new Random(2);
+        float[] boxes = randomBoxes(5000, random);
+        SceneBvh bvh = build(boxes);
+
+        for (int i = 0; i < 500; i++) {
+            float[] ray = randomRay(random);
+            int expected = linearRaycast(boxes, ray, 1f);
+            int hit = bvh.raycast(ray[0], ray[1], ray[2], ray[3], ray[4], ray[5], 1f, boxTester(boxes, ray));
+
+            assertEquals(expected, hit);
+            if (hit == SceneBvh.NONE) {
+                assertTrue(Float.isNaN(bvh.getHitDistance()));
+            }
+        }
+    }
+
+    @Test
+    public void raycastStopsAtMaxDistance() {
+        float[] boxes = { -1, -1, 9, 1, 1, 11 };
+        SceneBvh bvh = build(boxes);
+        float[] ray = { 0, 0, 0, 0, 0, 1 };
+
+        assertEquals(SceneBvh.NONE, bvh.raycast(0, 0, 0, 0, 0, 1, 8.5f, boxTester(boxes, ray)));
+        assertEquals(0, bvh.raycast(0, 0, 0, 0, 0, 1, 9.5f, boxTester(boxes, ray)));
+        assertEquals(9f, bvh.getHitDistance(), 0f);
+    }
+
+    @Test
+    public void testerDecidesTheHit() {
+        float[] boxes = randomBoxes(1000, new Random(3));
+        SceneBvh bvh = build(boxes);
+
+        // boxes are only the bounds, an object the tester misses is never reported
+        SceneBvh.RayTester missAll = new SceneBvh.RayTester() {
+            @Override
+            public float intersect(int object, float maxDistance) {
+                return Float.POSITIVE_INFINITY;
+            }
+        };
+        assertEquals(SceneBvh.NONE, bvh.raycast(-60, 0, 0, 120, 0, 0, 1f, missAll));
+        assertEquals(SceneBvh.NONE, bvh.raycast(-60, 0, 0, 120, 0, 0, Float.POSITIVE_INFINITY, missAll));
+    }
+
+    @Test
+    public void queryMatchesLinearScan() {
+        Random random = new Random(4);
+        float[] boxes = randomBoxes(5000, random);
+        SceneBvh bvh = build(boxes);
+
+        for (int i = 0; i < 100; i++) {
+            float[] planes = planesAround(random.nextFloat() * 100 - 50, random.nextFloat() * 100 - 50,
+                    random.nextFloat() * 100 - 50, 1f + random.nextFloat() * 40f);
+            assertArrayEquals(linearQuery(boxes, planes), query(bvh, planes));
+        }
+
+        // everything is inside
+        assertEquals(5000, query(bvh, planesAround(0, 0, 0, 1000)).length);
+    }
+
+    @Test
+    public void refitFollowsMovingObjects() {
+        Random random = new Random(5);
+        float[] boxes = randomBoxes(2000, random);
+        SceneBvh bvh = build(boxes);
+
+        for (int step = 0; step < 5; step++) {
+            for (int i = 0; i < boxes.length / 6; i++) {
+                for (int c = 0; c < 3; c++) {
+                    float move = random.nextFloat() * 4f - 2f;
+                    float grow = random.nextFloat() * 0.5f; // e.g. an explosion
+                    boxes[i * 6 + c] += move - grow;
+                    boxes[i * 6 + 3 + c] += move + grow;
+                }
+            }
+            setAll(bvh, boxes);
+            bvh.refit();
+
+            for (int q = 0; q < 50; q++) {
+                float[] ray = randomRay(random);
+                assertEquals(linearRaycast(boxes, ray, 1f),
+                        bvh.raycast(ray[0], ray[1], ray[2], ray[3], ray[4], ray[5], 1f, boxTester(boxes, ray)));
+
+                float[] planes = planesAround(random.nextFloat() * 100 - 50, random.nextFloat() * 100 - 50,
+                        random.nextFloat() * 100 - 50, 10f);
+                assertArrayEquals(linearQuery(boxes, planes), query(bvh, planes));
+            }
+        }
+    }
+
+    @Test
+    public void coincidentObjectsStillSplit() {
+        float[] boxes = new float[100 * 6];
+        for (int i = 0; i < 100; i++) {
+            System.arraycopy(new float[] { -1, -1, -1, 1, 1, 1 }, 0, boxes, i * 6, 6);
+        }
+        SceneBvh bvh = build(boxes);
+
+        assertTrue(bvh.getNodeCount() > 1);
+        float[] ray = { 0, 0, -10, 0, 0, 20 };
+        assertNotEquals(SceneBvh.NONE, bvh.raycast(0, 0, -10, 0, 0, 20, 1f, boxTester(boxes, ray)));
+        assertEquals(0.45f, bvh.getHitDistance(), 0f);
+        assertEquals(100, query(bvh, planesAround(0, 0, 0, 5)).length);
+    }
+}
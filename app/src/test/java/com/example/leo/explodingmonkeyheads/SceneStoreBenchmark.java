@@ -0,0 +1,72 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Updates 100k heads stored one object each, as MonkeyHead used to, against the same heads
+ * in a {@link SceneStore}.
+ */
+public class SceneStoreBenchmark {
+    private static final int HEADS = 100000;
+
+    /**
+     * A head the way it used to be: its own matrix and fields, somewhere on the heap.
+     */
+    private static final class ObjectHead {
+        final float[] color = new float[4];
+        final float[] modelViewMatrix = new float[16];
+        float rotFactorAroundX, rotFactorAroundY, rotFactorAroundZ;
+        boolean useExplosionAnimation;
+        float elapsedTime;
+
+        void update() {
+            Mat4.rotateM(modelViewMatrix, 0, MonkeyHead.step, rotFactorAroundX, rotFactorAroundY, rotFactorAroundZ);
+            if (useExplosionAnimation) {
+                elapsedTime += MonkeyHead.step;
+            }
+        }
+    }
+
+    @Test
+    public void update() throws Exception {
+        Random random = new Random(1);
+        List<ObjectHead> list = new ArrayList<>();
+        final SceneStore scene = new SceneStore(HEADS, MonkeyHead.step);
+
+        for (int i = 0; i < HEADS; i++) {
+            ObjectHead head = new ObjectHead();
+            head.rotFactorAroundX = random.nextFloat();
+            head.rotFactorAroundY = random.nextFloat();
+            head.rotFactorAroundZ = random.nextFloat();
+            head.useExplosionAnimation = i % 10 == 0;
+            Mat4.setIdentityM(head.modelViewMatrix, 0);
+            list.add(head);
+
+            scene.add(head.rotFactorAroundX, head.rotFactorAroundY, head.rotFactorAroundZ, 1f, 1f, 1f, 1f);
+            scene.setExploding(i, head.useExplosionAnimation);
+        }
+        // objects allocated over a session don't stay next to each other
+        Collections.shuffle(list, random);
+        final ObjectHead[] heads = list.toArray(new ObjectHead[HEADS]);
+
+        Benchmark.run("update 100k heads, object per head", 20, 100, new Benchmark.Task() {
+            @Override
+            public void run() {
+                for (ObjectHead head : heads) {
+                    head.update();
+                }
+            }
+        });
+        Benchmark.run("update 100k heads, scene store", 20, 100, new Benchmark.Task() {
+            @Override
+            public void run() {
+                scene.update();
+            }
+        });
+    }
+}
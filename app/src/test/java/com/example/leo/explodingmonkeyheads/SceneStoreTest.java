@@ -0,0 +1,215 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SceneStoreTest {
+    private static final float EPSILON = 1e-4f;
+
+    @Test
+    public void updateMatchesRotatingEveryMatrix() {
+        Random random = new Random(7);
+        SceneStore scene = new SceneStore(20, MonkeyHead.step);
+        float[][] expected = new float[20][16];
+        float[][] axes = new float[20][3];
+
+        for (int i = 0; i < 20; i++) {
+            axes[i] = new float[] { random.nextFloat(), random.nextFloat(), random.nextFloat() };
+            assertEquals(i, scene.add(axes[i][0], axes[i][1], axes[i][2], 1f, 1f, 1f, 1f));
+            Mat4.translateM(scene.models, i * SceneStore.MATRIX, i, -i, 2 * i);
+            System.arraycopy(scene.models, i * SceneStore.MATRIX, expected[i], 0, 16);
+        }
+
+        // what every head used to do on its own matrix
+        for (int frame = 0; frame < 500; frame++) {
+            scene.update();
+            for (int i = 0; i < 20; i++) {
+                Mat4.rotateM(expected[i], 0, MonkeyHead.step, axes[i][0], axes[i][1], axes[i][2]);
+            }
+        }
+
+        for (int i = 0; i < 20; i++) {
+            for (int k = 0; k < 16; k++) {
+                assertEquals("head " + i + ", element " + k, expected[i][k], scene.models[i * SceneStore.MATRIX + k],
+                        EPSILON);
+            }
+        }
+    }
+
+    @Test
+    public void onlyExplodingHeadsAdvanceTheirTime() {
+        SceneStore scene = new SceneStore(3, 0.5f);
+        for (int i = 0; i < 3; i++) {
+            scene.add(0f, 1f, 0f, 1f, 1f, 1f, 1f);
+        }
+        scene.setExploding(1, true);
+
+        for (int frame = 0; frame < 4; frame++) {
+            scene.update();
+        }
+        assertEquals(0f, scene.getExplosionTime(0), 0f);
+        assertEquals(2f, scene.getExplosionTime(1), EPSILON);
+
+        // the time is kept, but only shown while the explosion runs
+        scene.setExploding(1, false);
+        assertFalse(scene.isExploding(1));
+        assertEquals(0f, scene.getExplosionTime(1), 0f);
+        scene.setExploding(1, true);
+        assertEquals(2f, scene.getExplosionTime(1), EPSILON);
+    }
+
+    @Test
+    public void rangeUpdateLeavesTheOtherHeads() {
+        SceneStore scene = new SceneStore(4, 10f);
+        for (int i = 0; i < 4; i++) {
+            scene.add(1f, 0f, 0f, 1f, 1f, 1f, 1f);
+        }
+        scene.update(1, 3);
+
+        float[] identity = new float[16];
+        Mat4.setIdentityM(identity, 0);
+        for (int i = 0; i < 4; i++) {
+            boolean untouched = true;
+            for (int k = 0; k < 16; k++) {
+                untouched &= scene.models[i * SceneStore.MATRIX + k] == identity[k];
+            }
+            assertEquals("head " + i, i == 0 || i == 3, untouched);
+        }
+    }
+
+    @Test
+    public void drawnStateIsInterpolatedBetweenTheLastTwoSteps() {
+        SceneStore scene = new SceneStore(1, 10f), reference = new SceneStore(1, 10f);
+        scene.add(0f, 0f, 1f, 1f, 1f, 1f, 1f);
+        reference.add(0f, 0f, 1f, 1f, 1f, 1f, 1f);
+        scene.setExploding(0, true);
+
+        // three steps at once, drawn a quarter past the second
+        scene.update(0, 1, 3, 0.25f);
+        reference.update();
+        reference.update();
+        float[] before = reference.models.clone();
+        reference.update();
+        for (int k = 0; k < 16; k++) {
+            float expected = before[k] + 0.25f * (reference.models[k] - before[k]);
+            assertEquals("element " + k, expected, scene.drawnModels[k], EPSILON);
+        }
+        assertArrayEquals(reference.models, scene.models, EPSILON);
+        assertEquals(22.5f, scene.getExplosionTime(0), EPSILON);
+
+        // frames between two steps only move the drawn state
+        scene.update(0, 1, 0, 1f);
+        assertArrayEquals(scene.models, scene.drawnModels, 0f);
+        assertEquals(30f, scene.getExplosionTime(0), EPSILON);
+    }
+
+    @Test
+    public void writtenMatricesAreNotInterpolatedFrom() {
+        SceneStore scene = new SceneStore(1, 10f);
+        scene.add(0f, 0f, 1f, 1f, 1f, 1f, 1f);
+        Mat4.translateM(scene.models, 0, 5f, 0f, 0f);
+        scene.resetInterpolation(0);
+
+        scene.update(0, 1, 0, 0.5f);
+        assertEquals(5f, scene.drawnModels[12], 0f);
+        assertArrayEquals(scene.models, scene.previousModels, 0f);
+    }
+
+    @Test
+    public void explosionsFinishAndFadeOut() {
+        SceneStore scene = new SceneStore(2, 1f);
+        scene.add(0f, 0f, 1f, 1f, 0f, 0f, 1f);
+        scene.add(0f, 0f, 1f, 1f, 0f, 0f, 1f);
+        scene.setExplosionDuration(4f, 2f);
+        scene.setFadeColor(0f, 1f, 0f);
+        scene.setExploding(0, true);
+
+        float[] color = new float[4];
+        scene.update(0, 2, 2, 1f);
+        assertEquals(0f, scene.getFade(0), 0f);
+        scene.update(0, 2, 1, 0.5f); // drawn at 2.5 out of 4
+        assertEquals(0.25f, scene.getFade(0), EPSILON);
+        scene.getDrawnColor(0, color);
+        assertArrayEquals(new float[] { 0.75f, 0.25f, 0f, 1f }, color, EPSILON);
+        assertFalse(scene.isFinished(0));
+
+        // the time stops at the duration
+        scene.update(0, 2, 5, 1f);
+        assertTrue(scene.isFinished(0));
+        assertEquals(4f, scene.getExplosionTime(0), 0f);
+        assertEquals(1f, scene.getFade(0), 0f);
+
+        // intact heads are never finished
+        assertFalse(scene.isFinished(1));
+        assertEquals(0f, scene.getFade(1), 0f);
+        scene.getDrawnColor(1, color);
+        assertArrayEquals(new float[] { 1f, 0f, 0f, 1f }, color, 0f);
+    }
+
+    @Test
+    public void respawnedHeadsAreIntactWhereTheyWere() {
+        SceneStore scene = new SceneStore(1, 10f);
+        scene.add(1f, 0f, 0f, 1f, 1f, 1f, 1f);
+        scene.setExplosionDuration(20f, 0f);
+        Mat4.translateM(scene.models, 0, 1f, 2f, 3f);
+        scene.setExploding(0, true);
+        scene.update(0, 1, 5, 0.5f);
+        assertTrue(scene.isFinished(0));
+
+        scene.respawn(0, 0f, 1f, 0f, 0.5f, 0.5f, 0.5f, 1f);
+        assertFalse(scene.isExploding(0));
+        assertFalse(scene.isFinished(0));
+        assertEquals(0f, scene.explosionTimes[0], 0f);
+
+        float[] expected = new float[16];
+        Mat4.setIdentityM(expected, 0);
+        Mat4.translateM(expected, 0, 1f, 2f, 3f);
+        assertArrayEquals(expected, scene.models, 0f);
+        assertArrayEquals(expected, scene.drawnModels, 0f);
+
+        // and spin around their new axis
+        scene.update();
+        Mat4.rotateM(expected, 0, 10f, 0f, 1f, 0f);
+        assertArrayEquals(expected, scene.models, EPSILON);
+    }
+
+    @Test
+    public void headsAreHandlesIntoTheStore() throws Exception {
+        MonkeyHeadsRenderer renderer = MonkeyHeadsRendererTest.newRenderer(new HeadlessGLBackend());
+        SceneStore scene = renderer.scene;
+        MonkeyHead a = renderer.monkeyHeads[0], b = renderer.monkeyHeads[1];
+
+        assertSame(scene, b.getScene());
+        assertEquals(1, b.getIndex());
+        assertEquals(16, b.getMatrixOffset());
+
+        float[] m = new float[16];
+        Mat4.setIdentityM(m, 0);
+        Mat4.translateM(m, 0, 1f, 2f, 3f);
+        b.setModelViewMatrix(m);
+        assertEquals(3f, scene.models[16 + 14], 0f);
+        assertArrayEquals(m, b.getModelViewMatrix(new float[16]), 0f);
+
+        b.setUseExplosionAnimation(true);
+        assertTrue(scene.isExploding(1));
+        assertFalse(a.isUseExplosionAnimation());
+    }
+
+    @Test
+    public void fullStoreThrows() {
+        SceneStore scene = new SceneStore(1, 1f);
+        scene.add(0f, 0f, 1f, 1f, 1f, 1f, 1f);
+        try {
+            scene.add(0f, 0f, 1f, 1f, 1f, 1f, 1f);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+
+        scene.clear();
+        assertEquals(0, scene.getCount());
+        assertEquals(0, scene.add(0f, 0f, 1f, 1f, 1f, 1f, 1f));
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Updates 10k to 1M heads with {@link SceneUpdater} on pools of 1 to 8 workers, against
+ * the plain loop on the calling thread. Only scales as far as the machine has cores.
+ */
+public class SceneUpdaterBenchmark {
+
+    @Test
+    public void scaling() throws Exception {
+        System.out.println("cores: " + Runtime.getRuntime().availableProcessors());
+
+        for (int heads = 10000; heads <= 1000000; heads *= 10) {
+            Random random = new Random(heads);
+            final SceneStore scene = new SceneStore(heads, MonkeyHead.step);
+            for (int i = 0; i < heads; i++) {
+                scene.add(random.nextFloat(), random.nextFloat(), random.nextFloat(), 1f, 1f, 1f, 1f);
+            }
+            int iterations = 10000000 / heads;
+
+            Benchmark.run(heads + " heads, calling thread", iterations / 5, iterations, new Benchmark.Task() {
+                @Override
+                public void run() {
+                    scene.update();
+                }
+            });
+            for (int threads = 1; threads <= 8; threads *= 2) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                final SceneUpdater updater = new SceneUpdater(pool, SceneUpdater.DEFAULT_GRAIN);
+                Benchmark.run(heads + " heads, " + threads + " workers", iterations / 5, iterations,
+                        new Benchmark.Task() {
+                            @Override
+                            public void run() {
+                                updater.update(scene);
+                            }
+                        });
+                pool.shutdown();
+            }
+        }
+    }
+}
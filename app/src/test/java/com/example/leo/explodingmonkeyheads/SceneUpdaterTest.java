@@ -0,0 +1,98 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class SceneUpdaterTest {
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void createPool() {
+        pool = new ForkJoinPool(4); // more workers than cores is fine, they only need to interleave
+    }
+
+    @AfterClass
+    public static void shutdownPool() {
+        pool.shutdown();
+    }
+
+    private static SceneStore newScene(int count, long seed) {
+        Random random = new Random(seed);
+        SceneStore scene = new SceneStore(count, MonkeyHead.step);
+        for (int i = 0; i < count; i++) {
+            scene.add(random.nextFloat(), random.nextFloat(), random.nextFloat(), 1f, 1f, 1f, 1f);
+            Mat4.translateM(scene.models, i * SceneStore.MATRIX, random.nextFloat(), random.nextFloat(), 0f);
+            scene.setExploding(i, random.nextInt(4) == 0);
+        }
+        return scene;
+    }
+
+    private static void assertSameScene(SceneStore expected, SceneStore actual) {
+        assertArrayEquals(expected.models, actual.models, 0f);
+        assertArrayEquals(expected.explosionTimes, actual.explosionTimes, 0f);
+    }
+
+    @Test
+    public void parallelUpdateIsTheSerialOneBitForBit() {
+        for (int count : new int[] { 1, 63, 64, 65, 1000, 5003 }) {
+            SceneStore serial = newScene(count, count), parallel = newScene(count, count);
+            SceneUpdater updater = new SceneUpdater(pool, 64);
+
+            for (int frame = 0; frame < 30; frame++) {
+                serial.update();
+                updater.update(parallel);
+            }
+            assertSameScene(serial, parallel);
+        }
+    }
+
+    @Test
+    public void treeFollowsTheStore() {
+        SceneUpdater updater = new SceneUpdater(pool, 16);
+        SceneStore a = newScene(100, 1), b = newScene(300, 2);
+        SceneStore expectedA = newScene(100, 1), expectedB = newScene(300, 2);
+
+        // alternating stores of different sizes rebuilds the ranges every time
+        for (int frame = 0; frame < 10; frame++) {
+            updater.update(a);
+            expectedA.update();
+            updater.update(b);
+            expectedB.update();
+        }
+        assertSameScene(expectedA, a);
+        assertSameScene(expectedB, b);
+
+        // and so does a store that grows
+        SceneStore growing = new SceneStore(200, MonkeyHead.step), expected = new SceneStore(200, MonkeyHead.step);
+        for (int i = 0; i < 200; i++) {
+            growing.add(0f, 1f, 1f, 1f, 1f, 1f, 1f);
+            expected.add(0f, 1f, 1f, 1f, 1f, 1f, 1f);
+            updater.update(growing);
+            expected.update();
+        }
+        assertSameScene(expected, growing);
+    }
+
+    @Test
+    public void withoutPoolTheCallerUpdates() {
+        SceneStore expected = newScene(500, 3), actual = newScene(500, 3);
+        expected.update();
+        new SceneUpdater(null, 16).update(actual);
+        assertSameScene(expected, actual);
+    }
+
+    @Test
+    public void grainMustBePositive() {
+        try {
+            new SceneUpdater(pool, 0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
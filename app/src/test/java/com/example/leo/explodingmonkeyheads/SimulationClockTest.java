@@ -0,0 +1,118 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SimulationClockTest {
+    private static final long STEP = 10, MAX_FRAME = 45;
+
+    /**
+     * Time that only moves when told to.
+     */
+    private static final class FakeTime implements SimulationClock.TimeSource {
+        long now;
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+    }
+
+    private final FakeTime time = new FakeTime();
+    private final SimulationClock clock = new SimulationClock(time, STEP, MAX_FRAME);
+
+    @Test
+    public void firstFrameOnlyStartsTheClock() {
+        time.now = 12345;
+        assertEquals(0, clock.advance());
+        assertEquals(0f, clock.getAlpha(), 0f);
+    }
+
+    @Test
+    public void stepsAndAlphaFollowTheElapsedTime() {
+        clock.advance();
+
+        time.now = 25;
+        assertEquals(2, clock.advance());
+        assertEquals(0.5f, clock.getAlpha(), 1e-6f);
+
+        time.now = 29;
+        assertEquals(0, clock.advance());
+        assertEquals(0.9f, clock.getAlpha(), 1e-6f);
+
+        time.now = 31;
+        assertEquals(1, clock.advance());
+        assertEquals(0.1f, clock.getAlpha(), 1e-6f);
+        assertEquals(3, clock.getSteps());
+    }
+
+    @Test
+    public void longFramesAreCapped() {
+        clock.advance();
+        time.now = 1000;
+        assertEquals(4, clock.advance()); // 45 of the 1000
+        assertEquals(0.5f, clock.getAlpha(), 1e-6f);
+
+        // a clock going backwards doesn't take steps back
+        time.now = 900;
+        assertEquals(0, clock.advance());
+    }
+
+    @Test
+    public void resetSkipsThePause() {
+        clock.advance();
+        time.now = 15;
+        clock.advance();
+
+        clock.reset();
+        time.now = 5000;
+        assertEquals(0, clock.advance());
+        time.now = 5010;
+        assertEquals(1, clock.advance());
+        assertEquals(0f, clock.getAlpha(), 0f);
+    }
+
+    @Test
+    public void animationSpeedDoesNotDependOnTheFrameRate() {
+        long step = SimulationClock.DEFAULT_STEP_NANOS;
+        SceneStore[] scenes = new SceneStore[3];
+        long[] frameNanos = { 1000000000L / 30, 1000000000L / 60, 1000000000L / 144 };
+
+        for (int s = 0; s < scenes.length; s++) {
+            FakeTime time = new FakeTime();
+            SimulationClock clock = new SimulationClock(time, step, SimulationClock.DEFAULT_MAX_FRAME_NANOS);
+            scenes[s] = new SceneStore(1, MonkeyHead.step);
+            scenes[s].add(0.3f, 0.5f, 0.7f, 1f, 1f, 1f, 1f);
+            scenes[s].setExploding(0, true);
+
+            // two seconds of frames, then the same point in simulated time
+            clock.advance();
+            while (time.now < 2000000000L) {
+                time.now = Math.min(time.now + frameNanos[s], 2000000000L);
+                scenes[s].update(0, 1, clock.advance(), clock.getAlpha());
+            }
+        }
+
+        for (int s = 1; s < scenes.length; s++) {
+            assertArrayEquals(scenes[0].drawnModels, scenes[s].drawnModels, 1e-5f);
+            assertEquals(scenes[0].getExplosionTime(0), scenes[s].getExplosionTime(0), 1e-3f);
+        }
+        // 120 steps, drawn next to the one before the last
+        assertEquals(119 * MonkeyHead.step, scenes[0].getExplosionTime(0), 0.01f);
+    }
+
+    @Test
+    public void badStepsAreRejected() {
+        try {
+            new SimulationClock(time, 0, MAX_FRAME);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new SimulationClock(time, STEP, STEP - 1);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.leo.explodingmonkeyheads;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import android.opengl.GLES20;
+
+import static org.junit.Assert.*;
+
+public class VertexLayoutTest {
+
+    @Test
+    public void meshLayoutMatchesInterleavedData() {
+        VertexLayout layout = Mesh.LAYOUT;
+
+        assertEquals(Mesh.STRIDE, layout.getStride());
+        assertEquals(2, layout.getAttributeCount());
+        assertEquals(Mesh.POSITION_OFFSET * 4, layout.getAttribute(0).offset);
+        assertEquals(Mesh.NORMAL_OFFSET * 4, layout.getAttribute(1).offset);
+        assertEquals(1, layout.indexOf("vNormal"));
+        assertEquals(-1, layout.indexOf("vColor"));
+    }
+
+    @Test
+    public void attributesAreAlignedToFourBytes() {
+        VertexLayout layout = new VertexLayout()
+                .add("a", 3, GLES20.GL_SHORT, true)          // 6 bytes, padded to 8
+                .add("b", 1, GLES20.GL_UNSIGNED_BYTE, false) // 1 byte, padded to 4
+                .add("c", 2, GLES20.GL_FLOAT, false);        // 8 bytes
+
+        assertEquals(0, layout.getAttribute(0).offset);
+        assertEquals(6, layout.getAttribute(0).size);
+        assertEquals(8, layout.getAttribute(1).offset);
+        assertEquals(12, layout.getAttribute(2).offset);
+        assertEquals(20, layout.getStride());
+    }
+
+    @Test
+    public void packsAndConvertsValues() {
+        VertexLayout layout = new VertexLayout()
+                .add("p", 3, GLES20.GL_FLOAT, false)
+                .add("n", 3, GLES20.GL_SHORT, true)
+                .add("c", 4, GLES20.GL_UNSIGNED_BYTE, true);
+        ByteBuffer bb = ByteBuffer.allocate(layout.getStride() * 2).order(ByteOrder.LITTLE_ENDIAN);
+
+        layout.put(bb, 1, 0, new float[] { 1.5f, -2f, 3f }, 0);
+        layout.put(bb, 1, 1, new float[] { 9f, 0f, 0.5f, -1f, 2f }, 2); // values past the source offset
+        layout.put(bb, 1, 2, new float[] { 0f, 1f, 0.5f, 2f }, 0);
+
+        int base = layout.getStride();
+        assertEquals(1.5f, bb.getFloat(base), 0f);
+        assertEquals(3f, bb.getFloat(base + 8), 0f);
+        assertEquals(16384, bb.getShort(base + 12)); // 0.5 * 32767, rounded
+        assertEquals(-32767, bb.getShort(base + 14));
+        assertEquals(32767, bb.getShort(base + 16)); // clamped
+        assertEquals(0, bb.get(base + 20));
+        assertEquals((byte) 255, bb.get(base + 21));
+        assertEquals((byte) 128, bb.get(base + 22));
+        assertEquals((byte) 255, bb.get(base + 23));
+        assertEquals(0f, bb.getFloat(0), 0f); // first vertex untouched
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnsupportedTypes() {
+        new VertexLayout().add("x", 1, GLES20.GL_INT, false);
+    }
+}